@@ -55,7 +55,7 @@ public abstract class AbsGroupCmd<T extends AbsGroupTaskWrapper> extends AbsCmd<
   }
 
   boolean checkTask() {
-    tempTask = (AbsGroupTask) mQueue.getTask(mTaskWrapper.getEntity().getKey());
+    tempTask = (AbsGroupTask) mQueue.getTask(mTaskWrapper);
     if (tempTask == null) {
       createTask();
       if (tempTask.isComplete()) {
@@ -25,6 +25,7 @@ import com.arialyy.aria.core.task.ITask;
 import com.arialyy.aria.core.queue.DGroupTaskQueue;
 import com.arialyy.aria.core.queue.DTaskQueue;
 import com.arialyy.aria.core.queue.UTaskQueue;
+import com.arialyy.aria.core.scheduler.RetryScheduler;
 import com.arialyy.aria.core.listener.ISchedulers;
 import com.arialyy.aria.core.upload.UTaskWrapper;
 import com.arialyy.aria.util.ALog;
@@ -107,6 +108,9 @@ public abstract class AbsNormalCmd<T extends AbsTaskWrapper> extends AbsCmd<T> {
    */
   void stopTask() {
     AbsTask task = getTask();
+    if (task == null) {
+      task = takeParkedTask(mTaskWrapper.getEntity().getKey());
+    }
     if (task == null) {
       task = createTask();
     }
@@ -118,6 +122,9 @@ public abstract class AbsNormalCmd<T extends AbsTaskWrapper> extends AbsCmd<T> {
    */
   void removeTask() {
     AbsTask task = getTask();
+    if (task == null) {
+      task = takeParkedTask(mTaskWrapper.getEntity().getKey());
+    }
     if (task == null) {
       task = createTask();
     }
@@ -128,7 +135,10 @@ public abstract class AbsNormalCmd<T extends AbsTaskWrapper> extends AbsCmd<T> {
    * 删除任务
    */
   void removeTask(AbsTaskWrapper wrapper) {
-    AbsTask tempTask = getTask(wrapper.getKey());
+    AbsTask tempTask = mQueue.getTask(wrapper);
+    if (tempTask == null) {
+      tempTask = takeParkedTask(wrapper.getKey());
+    }
     if (tempTask == null) {
       tempTask = createTask(wrapper);
     }
@@ -164,7 +174,7 @@ public abstract class AbsNormalCmd<T extends AbsTaskWrapper> extends AbsCmd<T> {
    * @return 执行任务
    */
   AbsTask getTask() {
-    return mQueue.getTask(mTaskWrapper.getEntity().getKey());
+    return mQueue.getTask(mTaskWrapper);
   }
 
   /**
@@ -176,6 +186,15 @@ public abstract class AbsNormalCmd<T extends AbsTaskWrapper> extends AbsCmd<T> {
     return mQueue.getTask(key);
   }
 
+  /**
+   * 从熔断挂起的任务中取出任务，挂起的任务不在队列中，取出后不会再被自动恢复
+   *
+   * @return 没有挂起的任务，返回null
+   */
+  AbsTask takeParkedTask(String key) {
+    return (AbsTask) RetryScheduler.getInstance().takeParkedTask(mQueue, key);
+  }
+
   /**
    * 创建任务
    *
@@ -37,12 +37,16 @@ final public class CancelCmd<T extends AbsTaskWrapper> extends AbsNormalCmd<T> {
   @Override public void executeCmd() {
     if (!canExeCmd) return;
     AbsTask task = getTask();
+    if (task == null) {
+      task = takeParkedTask(mTaskWrapper.getEntity().getKey());
+    }
     if (task == null) {
       task = createTask();
     }
     if (task != null) {
       mTaskWrapper.setRemoveFile(removeFile);
-      removeTask();
+      task.getTaskWrapper().setRemoveFile(removeFile);
+      mQueue.cancelTask(task);
     }
   }
 }
\ No newline at end of file
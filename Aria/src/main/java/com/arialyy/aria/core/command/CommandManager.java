@@ -103,6 +103,11 @@ public class CommandManager {
     cmd.executeCmd();
   }
 
+  @Event
+  public void batch(DBatchCmd cmd) {
+    cmd.executeCmd();
+  }
+
   @Event
   public void subStart(DGSubStartCmd cmd) {
     if (CommonUtil.isFastDoubleClick()) {
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.command;
+
+import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.core.common.QueueMod;
+import com.arialyy.aria.core.download.DTaskWrapper;
+import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.listener.ISchedulers;
+import com.arialyy.aria.core.queue.DTaskQueue;
+import com.arialyy.aria.core.task.DownloadTask;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import com.arialyy.aria.util.NetUtils;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 批量下载命令，所有任务一次性进入缓存池，再根据执行队列的空闲数启动任务，
+ * 其余任务进入等待状态
+ */
+public final class DBatchCmd implements ICmd {
+  private final String TAG = CommonUtil.getClassName(this);
+  private List<DTaskWrapper> mWrappers;
+  private boolean isStart;
+
+  /**
+   * @param wrappers 已经保存到数据库的任务
+   * @param isStart {@code true} 创建后启动任务，{@code false} 只添加任务
+   */
+  public DBatchCmd(List<DTaskWrapper> wrappers, boolean isStart) {
+    mWrappers = wrappers;
+    this.isStart = isStart;
+  }
+
+  @Override public void executeCmd() {
+    DTaskQueue queue = DTaskQueue.getInstance();
+    List<DownloadTask> tasks = queue.createTasks(mWrappers);
+    if (tasks.isEmpty()) {
+      return;
+    }
+    Set<String> startedKeys = new HashSet<>();
+    if (isStart) {
+      if (!NetUtils.isConnected(AriaConfig.getInstance().getAPP())) {
+        ALog.e(TAG, "启动任务失败，网络未连接，任务将进入等待状态");
+      } else if (AriaConfig.getInstance().getDConfig().getQueueMod()
+          .equals(QueueMod.NOW.getTag())) {
+        for (DownloadTask task : tasks) {
+          queue.startTask(task);
+          startedKeys.add(task.getKey());
+        }
+      } else {
+        int free = queue.getMaxTaskNum() - queue.getCurrentExePoolNum();
+        for (int i = 0; i < free; i++) {
+          DownloadTask next = queue.getNextTask();
+          if (next == null) {
+            break;
+          }
+          queue.startTask(next);
+          startedKeys.add(next.getKey());
+        }
+      }
+    }
+
+    int waitNum = 0;
+    for (DownloadTask task : tasks) {
+      if (!startedKeys.contains(task.getKey())) {
+        task.getTaskWrapper().setState(IEntity.STATE_WAIT);
+        task.getOutHandler().obtainMessage(ISchedulers.WAIT, task).sendToTarget();
+        waitNum++;
+      }
+    }
+    ALog.d(TAG, String.format("批量任务处理完成，启动%s个任务，%s个任务进入等待状态", startedKeys.size(),
+        waitNum));
+  }
+}
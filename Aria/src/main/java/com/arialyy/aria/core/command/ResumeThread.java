@@ -22,7 +22,6 @@ import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.DownloadGroupEntity;
 import com.arialyy.aria.core.inf.IEntity;
-import com.arialyy.aria.core.inf.IOptionConstant;
 import com.arialyy.aria.core.listener.ISchedulers;
 import com.arialyy.aria.core.manager.TaskWrapperManager;
 import com.arialyy.aria.core.queue.AbsTaskQueue;
@@ -33,19 +32,24 @@ import com.arialyy.aria.core.task.AbsTask;
 import com.arialyy.aria.core.upload.UTaskWrapper;
 import com.arialyy.aria.core.upload.UploadEntity;
 import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
-import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
+import com.arialyy.aria.util.DbDataHelper;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * 恢复任务工具
+ * 恢复任务工具，任务数据分页读取，每页的wrapper通过批量查询创建；
+ * 只有执行队列空闲数加上{@link AbsTaskQueue#PREFETCH_NUM}以内的任务会创建task，
+ * 其余任务以任务id的形式保存在队列的等待列表中
  */
 public class ResumeThread implements Runnable {
+  /**
+   * 每页读取的任务数
+   */
+  private static final int PAGE_SIZE = 200;
   private String TAG = CommonUtil.getClassName(getClass());
-  private List<AbsTaskWrapper> mWaitList = new ArrayList<>();
   private boolean isDownloadCmd;
   private String sqlCondition;
 
@@ -55,127 +59,127 @@ public class ResumeThread implements Runnable {
   }
 
   /**
-   * 查找数据库中的所有任务数据
+   * 分页恢复数据库中的任务，按照停止时间倒序读取，使用(stopTime, rowid)作为分页游标，
+   * 避免恢复过程中任务状态变化导致漏读或重复读取
    *
    * @param type {@code 1}单任务下载任务；{@code 2}任务组下载任务；{@code 3} 单任务上传任务
    */
-  private void findTaskData(int type) {
+  private void resumeTasks(int type) {
+    AbsTaskQueue queue;
+    Class<? extends AbsEntity> clazz;
+    String condition;
     if (type == 1) {
-      List<DownloadEntity> entities =
-          DbEntity.findDatas(DownloadEntity.class,
-              String.format("NOT(isGroupChild) AND NOT(isComplete) AND %s ORDER BY stopTime DESC",
-                  sqlCondition));
-      if (entities != null && !entities.isEmpty()) {
-        for (DownloadEntity entity : entities) {
-          addResumeEntity(TaskWrapperManager.getInstance()
-              .getNormalTaskWrapper(DTaskWrapper.class, entity.getId()));
-        }
-      }
+      queue = DTaskQueue.getInstance();
+      clazz = DownloadEntity.class;
+      condition = String.format("NOT(isGroupChild) AND NOT(isComplete) AND %s", sqlCondition);
     } else if (type == 2) {
-      List<DownloadGroupEntity> entities =
-          DbEntity.findDatas(DownloadGroupEntity.class,
-              String.format("NOT(isComplete) AND %s ORDER BY stopTime DESC",
-                  sqlCondition));
-      if (entities != null && !entities.isEmpty()) {
-        for (DownloadGroupEntity entity : entities) {
-          addResumeEntity(
-              TaskWrapperManager.getInstance()
-                  .getGroupWrapper(DGTaskWrapper.class, entity.getId()));
-        }
-      }
+      queue = DGroupTaskQueue.getInstance();
+      clazz = DownloadGroupEntity.class;
+      condition = String.format("NOT(isComplete) AND %s", sqlCondition);
     } else if (type == 3) {
-      List<UploadEntity> entities =
-          DbEntity.findDatas(UploadEntity.class,
-              String.format("NOT(isComplete) AND %s ORDER BY stopTime DESC",
-                  sqlCondition));
-      if (entities != null && !entities.isEmpty()) {
-        for (UploadEntity entity : entities) {
-          addResumeEntity(TaskWrapperManager.getInstance()
-              .getNormalTaskWrapper(UTaskWrapper.class, entity.getId()));
+      queue = UTaskQueue.getInstance();
+      clazz = UploadEntity.class;
+      condition = String.format("NOT(isComplete) AND %s", sqlCondition);
+    } else {
+      ALog.e(TAG, "任务类型错误");
+      return;
+    }
+
+    int createNum = Math.max(queue.getMaxTaskNum() - queue.getCurrentExePoolNum(), 0)
+        + AbsTaskQueue.PREFETCH_NUM - queue.getCurrentCachePoolNum();
+    AbsEntity last = null;
+    int total = 0;
+    while (true) {
+      String where = condition;
+      if (last != null) {
+        where = String.format("%s AND (stopTime<%s OR (stopTime=%s AND rowid<%s))", condition,
+            last.getStopTime(), last.getStopTime(), last.getId());
+      }
+      List<? extends AbsEntity> entities = DbEntity.findDatas(clazz, 1, PAGE_SIZE,
+          where + " ORDER BY stopTime DESC, rowid DESC");
+      if (entities == null || entities.isEmpty()) {
+        break;
+      }
+      last = entities.get(entities.size() - 1);
+
+      List<AbsEntity> createEntities = new ArrayList<>();
+      List<Long> pendingIds = new ArrayList<>();
+      for (AbsEntity entity : entities) {
+        if (TextUtils.isEmpty(entity.getKey())
+            || queue.isPendingTask(entity.getId())
+            || queue.getExecutePool().taskExits(entity.getKey())
+            || queue.getCachePool().taskExits(entity.getKey())) {
+          continue;
+        }
+        if (createEntities.size() < createNum) {
+          createEntities.add(entity);
+        } else {
+          pendingIds.add(entity.getId());
         }
       }
-    }
-  }
+      createNum -= createEntities.size();
 
-  /**
-   * 添加恢复实体
-   */
-  private void addResumeEntity(AbsTaskWrapper te) {
-    if (te == null || te.getEntity() == null || TextUtils.isEmpty(te.getKey())) {
-      return;
+      List<Long> waitIds = new ArrayList<>(pendingIds);
+      resumeEntities(queue, type, createEntities, waitIds);
+      DbDataHelper.updateTaskState(clazz, waitIds, IEntity.STATE_WAIT);
+      if (!pendingIds.isEmpty()) {
+        queue.addPendingTasks(pendingIds);
+      }
+      total += createEntities.size() + pendingIds.size();
+
+      if (entities.size() < PAGE_SIZE) {
+        break;
+      }
+    }
+    if (total > 0) {
+      ALog.d(TAG, String.format("恢复了%s个任务，等待列表中有%s个任务", total,
+          queue.getPendingTaskNum()));
     }
-    mWaitList.add(te);
   }
 
   /**
-   * 处理等待状态的任务
+   * 批量创建wrapper，执行队列未满时启动任务，否则任务进入等待状态
+   *
+   * @param waitIds 进入等待状态的任务id
    */
-  private void resumeWaitTask() {
-
-    if (mWaitList == null || mWaitList.isEmpty()) {
+  private void resumeEntities(AbsTaskQueue queue, int type, List<AbsEntity> entities,
+      List<Long> waitIds) {
+    if (entities.isEmpty()) {
       return;
     }
-    List<AbsEntity> resumeEntities = new ArrayList<>();
-
-    for (AbsTaskWrapper wrapper : mWaitList) {
-      AbsTaskQueue queue = null;
-      if (wrapper instanceof DTaskWrapper) {
-        queue = DTaskQueue.getInstance();
-      } else if (wrapper instanceof UTaskWrapper) {
-        queue = UTaskQueue.getInstance();
-      } else if (wrapper instanceof DGTaskWrapper) {
-        queue = DGroupTaskQueue.getInstance();
-      }
-
-      if (queue == null) {
-        ALog.e(TAG, "任务类型错误");
-        continue;
+    List<? extends AbsTaskWrapper> wrappers;
+    TaskWrapperManager manager = TaskWrapperManager.getInstance();
+    if (type == 1) {
+      wrappers = manager.getNormalTaskWrappers(DTaskWrapper.class, entities);
+    } else if (type == 2) {
+      List<Long> ids = new ArrayList<>();
+      for (AbsEntity entity : entities) {
+        ids.add(entity.getId());
       }
+      wrappers = manager.getGroupWrappers(DGTaskWrapper.class, ids);
+    } else {
+      wrappers = manager.getNormalTaskWrappers(UTaskWrapper.class, entities);
+    }
 
-      if (wrapper.getEntity() == null || TextUtils.isEmpty(wrapper.getKey())) {
+    for (AbsTaskWrapper wrapper : wrappers) {
+      if (wrapper == null || wrapper.getEntity() == null || TextUtils.isEmpty(wrapper.getKey())) {
         ALog.e(TAG, "任务实体为空或key为空");
         continue;
       }
 
-      AbsTask task = queue.getTask(wrapper.getKey());
-      if (task != null) {
-        ALog.w(TAG, "任务已存在");
-        continue;
-      }
-
-      int maxTaskNum = queue.getMaxTaskNum();
-      task = queue.createTask(wrapper);
+      AbsTask task = queue.createTask(wrapper);
       if (task == null) {
         continue;
       }
 
-      handleWrapper(wrapper);
-
-      if (queue.getCurrentExePoolNum() < maxTaskNum) {
+      if (queue.getCurrentExePoolNum() < queue.getMaxTaskNum()) {
         queue.startTask(task);
       } else {
         wrapper.getEntity().setState(IEntity.STATE_WAIT);
         sendWaitState(task);
-        resumeEntities.add(wrapper.getEntity());
+        waitIds.add(wrapper.getEntity().getId());
       }
     }
-    if (!resumeEntities.isEmpty()) {
-      DbEntity.updateManyData(resumeEntities);
-    }
-  }
-
-  /**
-   * 处理ftp的wrapper
-   */
-  private void handleWrapper(AbsTaskWrapper wrapper) {
-    int requestType = wrapper.getRequestType();
-    if (requestType == ITaskWrapper.D_FTP
-        || requestType == ITaskWrapper.U_FTP
-        || requestType == ITaskWrapper.D_FTP_DIR) {
-      wrapper.getOptionParams()
-          .setParams(IOptionConstant.ftpUrlEntity,
-              CommonUtil.getFtpUrlInfo(wrapper.getEntity().getKey()));
-    }
   }
 
   /**
@@ -190,11 +194,10 @@ public class ResumeThread implements Runnable {
 
   @Override public void run() {
     if (isDownloadCmd) {
-      findTaskData(1);
-      findTaskData(2);
+      resumeTasks(1);
+      resumeTasks(2);
     } else {
-      findTaskData(3);
+      resumeTasks(3);
     }
-    resumeWaitTask();
   }
 }
@@ -109,7 +109,7 @@ final public class StartCmd<T extends AbsTaskWrapper> extends AbsNormalCmd<T> {
         ALog.w(TAG, String.format("任务【%s】已经在运行", task.getTaskName()));
       }
     }
-    if (mQueue.getCurrentCachePoolNum() == 0) {
+    if (mQueue.getCurrentCachePoolNum() == 0 && mQueue.getPendingTaskNum() == 0) {
       findAllWaitTask();
     }
   }
@@ -16,10 +16,13 @@
 
 package com.arialyy.aria.core.command;
 
+import com.arialyy.aria.core.common.AbsEntity;
 import com.arialyy.aria.core.task.AbsTask;
 import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
 import com.arialyy.aria.core.inf.IEntity;
 import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.DbDataHelper;
+import java.util.Collections;
 
 /**
  * Created by lyy on 2016/9/20.
@@ -33,7 +36,18 @@ final class StopCmd<T extends AbsTaskWrapper> extends AbsNormalCmd<T> {
 
   @Override public void executeCmd() {
     if (!canExeCmd) return;
+    AbsEntity entity = mTaskWrapper.getEntity();
+    if (mQueue.removePendingTask(entity.getId())) {
+      // 任务只在轻量级等待列表中，还没有创建task，直接保存停止状态
+      entity.setState(IEntity.STATE_STOP);
+      DbDataHelper.updateTaskState(entity.getClass(), Collections.singletonList(entity.getId()),
+          IEntity.STATE_STOP);
+      return;
+    }
     AbsTask task = getTask();
+    if (task == null) {
+      task = takeParkedTask(mTaskWrapper.getEntity().getKey());
+    }
     if (task == null) {
       if (mTaskWrapper.getEntity().getState() == IEntity.STATE_RUNNING) {
         stopTask();
@@ -41,7 +55,7 @@ final class StopCmd<T extends AbsTaskWrapper> extends AbsNormalCmd<T> {
         ALog.w(TAG, "停止命令执行失败，【调度器中没有该任务】");
       }
     } else {
-      stopTask();
+      mQueue.stopTask(task);
     }
   }
 }
\ No newline at end of file
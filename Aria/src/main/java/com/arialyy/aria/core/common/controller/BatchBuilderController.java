@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.controller;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.arialyy.aria.core.command.DBatchCmd;
+import com.arialyy.aria.core.common.HttpOption;
+import com.arialyy.aria.core.download.CheckDBatchEntityUtil;
+import com.arialyy.aria.core.download.DTaskWrapper;
+import com.arialyy.aria.core.download.DownloadSpec;
+import com.arialyy.aria.core.event.EventMsgUtil;
+import com.arialyy.aria.core.listener.ISchedulers;
+import com.arialyy.aria.core.scheduler.TaskSchedulers;
+import com.arialyy.aria.core.task.ITask;
+import com.arialyy.aria.util.CommonUtil;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量创建下载任务时使用的控制器，所有任务只做一次权限检查、一次数据库事务，并通过一条命令进入队列
+ */
+public final class BatchBuilderController {
+  private final String TAG = CommonUtil.getClassName(getClass());
+  private List<DownloadSpec> mSpecs;
+  private HttpOption mOption;
+  private boolean ignoreCheckPermissions = false;
+  private boolean ignoreFilePathOccupy = false;
+
+  public BatchBuilderController(List<DownloadSpec> specs) {
+    mSpecs = specs == null ? new ArrayList<DownloadSpec>() : specs;
+  }
+
+  /**
+   * 是否忽略权限检查
+   */
+  public void ignoreCheckPermissions() {
+    ignoreCheckPermissions = true;
+  }
+
+  /**
+   * 强制执行任务，不管文件路径是否被占用
+   */
+  public void ignoreFilePathOccupy() {
+    ignoreFilePathOccupy = true;
+  }
+
+  /**
+   * 设置所有任务共用的http请求参数
+   */
+  public void setOption(HttpOption option) {
+    mOption = option;
+  }
+
+  /**
+   * 添加任务，只添加任务不进行下载
+   *
+   * @return 和任务描述列表一一对应的任务id，添加失败的任务id为-1
+   */
+  public List<Long> add() {
+    return handleTasks(false);
+  }
+
+  /**
+   * 开始任务
+   *
+   * @return 和任务描述列表一一对应的任务id，创建失败的任务id为-1
+   */
+  public List<Long> create() {
+    return handleTasks(true);
+  }
+
+  private List<Long> handleTasks(boolean isStart) {
+    List<Long> ids = new ArrayList<>(mSpecs.size());
+    List<DTaskWrapper> wrappers = null;
+    if (ignoreCheckPermissions || FeatureController.checkPermission(TAG)) {
+      wrappers = CheckDBatchEntityUtil.newInstance(mSpecs, mOption, ignoreFilePathOccupy)
+          .checkAndSave();
+    }
+    List<DTaskWrapper> validWrappers = new ArrayList<>(mSpecs.size());
+    for (int i = 0, len = mSpecs.size(); i < len; i++) {
+      DTaskWrapper wrapper = wrappers == null ? null : wrappers.get(i);
+      if (wrapper == null) {
+        ids.add(-1L);
+      } else {
+        ids.add(wrapper.getEntity().getId());
+        validWrappers.add(wrapper);
+      }
+    }
+
+    if (validWrappers.size() < mSpecs.size()) {
+      new Handler(Looper.getMainLooper(), TaskSchedulers.getInstance()).obtainMessage(
+          ISchedulers.CHECK_FAIL, ITask.DOWNLOAD, -1, null).sendToTarget();
+    }
+    if (!validWrappers.isEmpty()) {
+      EventMsgUtil.getDefault().post(new DBatchCmd(validWrappers, isStart));
+    }
+    return ids;
+  }
+}
@@ -145,7 +145,7 @@ public abstract class FeatureController {
    * 如果检查实体失败，将错误回调
    */
   boolean checkConfig() {
-    if (!ignoreCheckPermissions && !checkPermission()) {
+    if (!ignoreCheckPermissions && !checkPermission(TAG)) {
       return false;
     }
     boolean b = checkEntity();
@@ -166,27 +166,27 @@ public abstract class FeatureController {
    *
    * @return {@code false} 缺少权限
    */
-  private boolean checkPermission() {
+  static boolean checkPermission(String tag) {
 
     if (AriaConfig.getInstance()
         .getAPP()
         .checkCallingOrSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE)
         != PackageManager.PERMISSION_GRANTED) {
-      ALog.e(TAG, "启动失败，缺少权限：Manifest.permission.WRITE_EXTERNAL_STORAGE");
+      ALog.e(tag, "启动失败，缺少权限：Manifest.permission.WRITE_EXTERNAL_STORAGE");
       return false;
     }
     if (AriaConfig.getInstance()
         .getAPP()
         .checkCallingOrSelfPermission(Manifest.permission.INTERNET)
         != PackageManager.PERMISSION_GRANTED) {
-      ALog.e(TAG, "启动失败，缺少权限：Manifest.permission.INTERNET");
+      ALog.e(tag, "启动失败，缺少权限：Manifest.permission.INTERNET");
       return false;
     }
     if (AriaConfig.getInstance()
         .getAPP()
         .checkCallingOrSelfPermission(Manifest.permission.READ_EXTERNAL_STORAGE)
         != PackageManager.PERMISSION_GRANTED) {
-      ALog.e(TAG, "启动失败，缺少权限：Manifest.permission.READ_EXTERNAL_STORAGE");
+      ALog.e(tag, "启动失败，缺少权限：Manifest.permission.READ_EXTERNAL_STORAGE");
       return false;
     }
 
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.download;
+
+import android.text.TextUtils;
+import com.arialyy.aria.core.common.HttpOption;
+import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.wrapper.ITaskWrapper;
+import com.arialyy.aria.orm.DbEntity;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CheckUtil;
+import com.arialyy.aria.util.CommonUtil;
+import com.arialyy.aria.util.RecordUtil;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 检查批量下载任务的实体，所有检查都在内存中完成，路径冲突通过分批的IN查询获取，
+ * 合法的实体会在同一个事务中写入数据库
+ */
+public class CheckDBatchEntityUtil {
+  private final String TAG = CommonUtil.getClassName(getClass());
+
+  private List<DownloadSpec> mSpecs;
+  private HttpOption mOption;
+  private boolean isIgnoreFilePathOccupy;
+
+  public static CheckDBatchEntityUtil newInstance(List<DownloadSpec> specs, HttpOption option,
+      boolean ignoreFilePathOccupy) {
+    return new CheckDBatchEntityUtil(specs, option, ignoreFilePathOccupy);
+  }
+
+  private CheckDBatchEntityUtil(List<DownloadSpec> specs, HttpOption option,
+      boolean ignoreFilePathOccupy) {
+    mSpecs = specs;
+    mOption = option;
+    isIgnoreFilePathOccupy = ignoreFilePathOccupy;
+  }
+
+  /**
+   * 检查并保存所有任务
+   *
+   * @return 和任务描述列表一一对应的wrapper列表，检查失败的任务对应的位置为null
+   */
+  public List<DTaskWrapper> checkAndSave() {
+    List<DTaskWrapper> wrappers = new ArrayList<>(mSpecs.size());
+    Set<String> urls = new HashSet<>();
+    List<String> paths = new ArrayList<>();
+    Set<String> pathSet = new HashSet<>();
+    for (DownloadSpec spec : mSpecs) {
+      if (spec == null || !checkUrl(spec.getUrl()) || !checkFilePath(spec.getFilePath())) {
+        wrappers.add(null);
+        continue;
+      }
+      if (!urls.add(spec.getUrl())) {
+        ALog.e(TAG, String.format("添加任务失败，下载地址【%s】在本次批量任务中重复", spec.getUrl()));
+        wrappers.add(null);
+        continue;
+      }
+      if (!pathSet.add(spec.getFilePath())) {
+        ALog.e(TAG, String.format("添加任务失败，保存路径【%s】在本次批量任务中重复", spec.getFilePath()));
+        wrappers.add(null);
+        continue;
+      }
+      paths.add(spec.getFilePath());
+      wrappers.add(createWrapper(spec));
+    }
+
+    Set<String> occupiedPaths = findOccupiedPaths(paths);
+    List<DownloadEntity> entities = new ArrayList<>(paths.size());
+    for (int i = 0, len = wrappers.size(); i < len; i++) {
+      DTaskWrapper wrapper = wrappers.get(i);
+      if (wrapper == null) {
+        continue;
+      }
+      String filePath = wrapper.getEntity().getFilePath();
+      if (occupiedPaths.contains(filePath)) {
+        if (!isIgnoreFilePathOccupy) {
+          ALog.e(TAG, String.format("下载失败，保存路径【%s】已经被其它任务占用，请设置其它保存路径", filePath));
+          wrappers.set(i, null);
+          continue;
+        }
+        ALog.w(TAG, String.format("保存路径【%s】已经被其它任务占用，当前任务将覆盖该路径的文件", filePath));
+        RecordUtil.delTaskRecord(filePath, ITaskWrapper.D_HTTP, false, true);
+      }
+      entities.add(wrapper.getEntity());
+    }
+
+    if (!entities.isEmpty()) {
+      DbEntity.insertManyData(entities);
+    }
+    for (int i = 0, len = wrappers.size(); i < len; i++) {
+      DTaskWrapper wrapper = wrappers.get(i);
+      if (wrapper != null && wrapper.getEntity().getId() == -1) {
+        wrappers.set(i, null);
+      }
+    }
+    return wrappers;
+  }
+
+  private DTaskWrapper createWrapper(DownloadSpec spec) {
+    String filePath = spec.getFilePath();
+    DownloadEntity entity = new DownloadEntity();
+    entity.setUrl(spec.getUrl());
+    entity.setFilePath(filePath);
+    entity.setFileName(new File(filePath).getName());
+    entity.setTaskType(ITaskWrapper.D_HTTP);
+    entity.setState(IEntity.STATE_WAIT);
+    entity.setPriority(spec.getPriority());
+    entity.setDeadline(Math.max(spec.getDeadline(), 0));
+    if (!TextUtils.isEmpty(spec.getExtendField())) {
+      entity.setStr(spec.getExtendField());
+    }
+
+    DTaskWrapper wrapper = new DTaskWrapper(entity);
+    wrapper.setRequestType(ITaskWrapper.D_HTTP);
+    wrapper.setNewTask(true);
+    wrapper.setTempFilePath(filePath);
+    wrapper.setIgnoreFilePathOccupy(isIgnoreFilePathOccupy);
+    if (mOption != null) {
+      wrapper.getOptionParams().setParams(mOption);
+    }
+    return wrapper;
+  }
+
+  /**
+   * 分批查询已经被其它任务占用的保存路径
+   */
+  private Set<String> findOccupiedPaths(List<String> paths) {
+    Set<String> occupied = new HashSet<>();
+    for (DownloadEntity entity : DbEntity.findDatasIn(DownloadEntity.class, "downloadPath",
+        paths)) {
+      occupied.add(entity.getFilePath());
+    }
+    return occupied;
+  }
+
+  private boolean checkFilePath(String filePath) {
+    if (TextUtils.isEmpty(filePath)) {
+      ALog.e(TAG, "下载失败，文件保存路径为null");
+      return false;
+    } else if (!filePath.startsWith("/")) {
+      ALog.e(TAG, String.format("下载失败，文件保存路径【%s】错误", filePath));
+      return false;
+    }
+    if (new File(filePath).isDirectory()) {
+      ALog.e(TAG,
+          String.format("下载失败，保存路径【%s】不能为文件夹，路径需要是完整的文件路径，如：/mnt/sdcard/game.zip", filePath));
+      return false;
+    }
+    return true;
+  }
+
+  private boolean checkUrl(String url) {
+    if (TextUtils.isEmpty(url)) {
+      ALog.e(TAG, "下载失败，url为null");
+      return false;
+    } else if (!CheckUtil.checkUrl(url) || url.indexOf("://") == -1) {
+      ALog.e(TAG, "下载失败，url【" + url + "】错误");
+      return false;
+    }
+    return true;
+  }
+}
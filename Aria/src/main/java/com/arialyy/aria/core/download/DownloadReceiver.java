@@ -31,16 +31,21 @@ import com.arialyy.aria.core.download.target.FtpDirNormalTarget;
 import com.arialyy.aria.core.download.target.FtpNormalTarget;
 import com.arialyy.aria.core.download.target.GroupBuilderTarget;
 import com.arialyy.aria.core.download.target.GroupNormalTarget;
+import com.arialyy.aria.core.download.target.HttpBatchBuilderTarget;
 import com.arialyy.aria.core.download.target.HttpBuilderTarget;
 import com.arialyy.aria.core.download.target.HttpNormalTarget;
 import com.arialyy.aria.core.event.EventMsgUtil;
 import com.arialyy.aria.core.inf.AbsReceiver;
 import com.arialyy.aria.core.inf.ReceiverType;
+import com.arialyy.aria.core.play.PlayServer;
 import com.arialyy.aria.core.queue.DGroupTaskQueue;
 import com.arialyy.aria.core.queue.DTaskQueue;
 import com.arialyy.aria.core.scheduler.TaskSchedulers;
 import com.arialyy.aria.core.task.ITask;
+import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.DbEntity;
+import com.arialyy.aria.orm.EntityCursor;
+import com.arialyy.aria.orm.Query;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CheckUtil;
 import com.arialyy.aria.util.CommonUtil;
@@ -80,6 +85,17 @@ public class DownloadReceiver extends AbsReceiver {
         .generateBuilderTarget(HttpBuilderTarget.class, url);
   }
 
+  /**
+   * 批量加载Http、https单任务，所有任务在一个数据库事务中保存，并一次性进入任务队列，
+   * 适用于一次添加大量任务的场景，如果需要控制任务停止或删除等操作，请使用{@link #load(long)}
+   *
+   * @param specs 任务描述列表
+   */
+  public HttpBatchBuilderTarget loadAll(List<DownloadSpec> specs) {
+    ComponentUtil.getInstance().checkComponentExist(ComponentUtil.COMPONENT_TYPE_HTTP);
+    return DTargetFactory.getInstance().generateBatchBuilderTarget(specs);
+  }
+
   /**
    * 用于任务停止、删除等操作
    *
@@ -240,6 +256,30 @@ public class DownloadReceiver extends AbsReceiver {
     return DbEntity.findFirst(DownloadEntity.class, "rowid=?", String.valueOf(taskId));
   }
 
+  /**
+   * 获取边下边播的本地播放地址，任务下载时播放器就可以通过该地址播放。
+   * m3u8点播任务返回播放列表的地址，播放器请求未下载的切片时会优先下载该切片；其它任务返回文件的地址，支持范围读取。
+   * 播放器请求的数据未下载时，请求会等待数据下载完成。
+   * 注意：边下边播时，m3u8点播任务的渐进式合并会在任务完成后才追加切片
+   *
+   * @param taskId 任务id
+   * @return 任务不存在、直播任务或服务启动失败时返回null
+   */
+  public String getPlayUrl(long taskId) {
+    DownloadEntity entity = getDownloadEntity(taskId);
+    if (entity == null) {
+      ALog.e(TAG, "任务不存在");
+      return null;
+    }
+    int taskType = entity.getTaskType();
+    if (taskType == ITaskWrapper.M3U8_LIVE) {
+      ALog.e(TAG, "直播任务不支持边下边播");
+      return null;
+    }
+    boolean isHls = taskType == ITaskWrapper.M3U8_VOD && !entity.isComplete();
+    return PlayServer.getInstance().getPlayUrl(entity.getKey(), isHls);
+  }
+
   /**
    * 获取第一个匹配url的下载实体，如果你有多个任务的下载地址都相同，请使用{@link #getDownloadEntity(long)}
    * 或{@link #getDownloadEntity(String)}
@@ -407,36 +447,89 @@ public class DownloadReceiver extends AbsReceiver {
    */
   public List<DownloadEntity> getAllCompleteTask(int page, int num) {
     CheckUtil.checkPageParams(page, num);
-    return DbEntity.findDatas(DownloadEntity.class,
+    return DbEntity.findDatas(DownloadEntity.class, page, num,
         "isGroupChild=? and downloadPath!='' and isComplete=?", "false", "true");
   }
 
   /**
-   * 获取任务组列表
+   * 流式读取所有普通下载任务，任务记录很多时使用，内存占用不会随任务数量增长，
+   * 读取完成后需要关闭游标，详见{@link EntityCursor}
+   */
+  public EntityCursor<DownloadEntity> iterateTaskList() {
+    return DbEntity.iterateData(DownloadEntity.class, "isGroupChild=? and downloadPath!=''",
+        "false");
+  }
+
+  /**
+   * 游标分页获取普通下载任务，按任务id升序排列，翻页的耗时不会随页数增加
+   *
+   * @param lastId 上一页最后一个任务的{@link DownloadEntity#getId()}，小于0时获取第一页
+   * @param num 每页数量，不能小于1
+   * @return 没有数据返回空列表
+   */
+  public List<DownloadEntity> getTaskListAfter(long lastId, int num) {
+    CheckUtil.checkPageParams(1, num);
+    return DbEntity.findDatasAfter(DownloadEntity.class, lastId, num,
+        "isGroupChild=? and downloadPath!=''", "false");
+  }
+
+  /**
+   * 流式读取所有已经完成的普通任务，按完成时间倒序排列，读取完成后需要关闭游标，详见{@link EntityCursor}
+   */
+  public EntityCursor<DownloadEntity> iterateCompleteTask() {
+    return completeQuery(null).iterate();
+  }
+
+  /**
+   * 游标分页获取已经完成的普通任务，按完成时间倒序排列，翻页的耗时不会随页数增加
+   *
+   * @param last 上一页的最后一个任务，为null时获取第一页
+   * @param num 每页数量，不能小于1
+   * @return 没有数据返回空列表
+   */
+  public List<DownloadEntity> getCompleteTaskAfter(DownloadEntity last, int num) {
+    CheckUtil.checkPageParams(1, num);
+    return completeQuery(last).limit(num).find();
+  }
+
+  private Query<DownloadEntity> completeQuery(DownloadEntity last) {
+    return Query.of(DownloadEntity.class)
+        .where("isGroupChild=? and downloadPath!='' and isComplete=?", "false", "true")
+        .after("completeTime", false, last == null ? null : last.getCompleteTime(),
+            last == null ? -1 : last.getId());
+  }
+
+  /**
+   * 获取任务组列表，返回的任务组不会加载子任务，子任务在第一次调用
+   * {@link DownloadGroupEntity#getSubEntities()}时加载，需要遍历多个任务组的子任务时，
+   * 使用{@link DbDataHelper#fetchSubEntities(List)}批量加载
    *
    * @return 如果没有任务组列表，则返回null
    */
   public List<DownloadGroupEntity> getGroupTaskList() {
-    return getGroupTaskList(1,10);
+    List<DownloadGroupEntity> entities = Query.of(DownloadGroupEntity.class).find();
+    return entities.isEmpty() ? null : entities;
   }
 
   /**
-   * 分页获取祝贺任务列表
+   * 分页获取祝贺任务列表，返回的任务组不会加载子任务，详见{@link #getGroupTaskList()}
    *
    * @param page 当前页，不能小于1
    * @param num 每页数量，不能小于1
    * @return 如果没有任务组列表，则返回null
    */
   public List<DownloadGroupEntity> getGroupTaskList(int page, int num) {
-    List<DGEntityWrapper> wrappers = DbEntity.findRelationData(DGEntityWrapper.class, page, num);
-    if (wrappers == null || wrappers.isEmpty()) {
-      return null;
-    }
-    List<DownloadGroupEntity> entities = new ArrayList<>();
-    for (DGEntityWrapper wrapper : wrappers) {
-      entities.add(wrapper.groupEntity);
-    }
-    return entities;
+    CheckUtil.checkPageParams(page, num);
+    List<DownloadGroupEntity> entities =
+        Query.of(DownloadGroupEntity.class).limit(page, num).find();
+    return entities.isEmpty() ? null : entities;
+  }
+
+  /**
+   * 流式读取所有任务组，任务组不会加载子任务，读取完成后需要关闭游标，详见{@link EntityCursor}
+   */
+  public EntityCursor<DownloadGroupEntity> iterateGroupTaskList() {
+    return DbEntity.iterateData(DownloadGroupEntity.class);
   }
 
   /**
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.download;
+
+import com.arialyy.aria.core.inf.TaskPriority;
+
+/**
+ * 批量下载时单个任务的描述信息，配合{@link DownloadReceiver#loadAll(java.util.List)}使用
+ */
+public class DownloadSpec {
+  private String url;
+  private String filePath;
+  private String extendField;
+  private int priority = TaskPriority.NORMAL;
+  private long deadline = 0;
+
+  /**
+   * @param url 下载地址
+   * @param filePath 文件保存路径，必须为完整的文件路径，不能为文件夹路径
+   */
+  public DownloadSpec(String url, String filePath) {
+    this.url = url;
+    this.filePath = filePath;
+  }
+
+  /**
+   * 设置扩展字段
+   */
+  public DownloadSpec setExtendField(String extendField) {
+    this.extendField = extendField;
+    return this;
+  }
+
+  /**
+   * 设置任务优先级，{@link TaskPriority}
+   */
+  public DownloadSpec setPriority(int priority) {
+    this.priority = priority;
+    return this;
+  }
+
+  /**
+   * 设置任务截止时间，单位：毫秒
+   */
+  public DownloadSpec setDeadline(long deadline) {
+    this.deadline = deadline;
+    return this;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getFilePath() {
+    return filePath;
+  }
+
+  public String getExtendField() {
+    return extendField;
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  public long getDeadline() {
+    return deadline;
+  }
+}
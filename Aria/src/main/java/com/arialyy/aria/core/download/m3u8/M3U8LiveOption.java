@@ -26,6 +26,7 @@ public class M3U8LiveOption extends M3U8Option<M3U8LiveOption> {
 
   private ILiveTsUrlConverter liveTsUrlConverter;
   private long liveUpdateInterval;
+  private int liveRetainPeerNum;
 
   public M3U8LiveOption() {
     super();
@@ -45,6 +46,7 @@ public class M3U8LiveOption extends M3U8Option<M3U8LiveOption> {
 
   /**
    * 设置直播的m3u8文件更新间隔，默认10000微秒。
+   * 注意：m3u8文件中有#EXT-X-TARGETDURATION时，将按照协议根据目标时长安排更新，该间隔只在没有目标时长时使用
    *
    * @param liveUpdateInterval 更新间隔，单位微秒
    */
@@ -57,4 +59,19 @@ public class M3U8LiveOption extends M3U8Option<M3U8LiveOption> {
     this.liveUpdateInterval = liveUpdateInterval;
     return this;
   }
+
+  /**
+   * 不合并切片时，只保留最近下载完成的若干个切片，更早的切片会按顺序删除，可用于时移播放
+   * 默认保留所有切片；合并切片时，切片在追加到目标文件后会立即删除，该设置无效
+   *
+   * @param retainPeerNum 保留的切片数量
+   */
+  public M3U8LiveOption setRetainPeerNum(int retainPeerNum) {
+    if (retainPeerNum < 1) {
+      ALog.e(TAG, "保留的切片数量不能小于1");
+      return this;
+    }
+    this.liveRetainPeerNum = retainPeerNum;
+    return this;
+  }
 }
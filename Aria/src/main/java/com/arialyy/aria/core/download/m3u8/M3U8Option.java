@@ -36,8 +36,10 @@ public class M3U8Option<OP extends M3U8Option> extends BaseOption {
   private IBandWidthUrlConverter bandWidthUrlConverter;
   private IKeyUrlConverter keyUrlConverter;
   private boolean ignoreFailureTs = false;
+  private boolean decrypt = false;
   private String keyPath;
   private boolean useDefConvert = true;
+  private boolean adaptiveVariant = false;
 
   M3U8Option() {
     super();
@@ -76,6 +78,15 @@ public class M3U8Option<OP extends M3U8Option> extends BaseOption {
     return (OP) this;
   }
 
+  /**
+   * 下载时解密使用AES-128加密的切片，保存的ts文件为解密后的数据，支持多个密钥轮换的情况
+   * 注意：SAMPLE-AES 只加密了部分媒体数据，不会被解密
+   */
+  public OP decrypt() {
+    this.decrypt = true;
+    return (OP) this;
+  }
+
   /**
    * 生成m3u8索引文件
    * 注意：创建索引文件，{@link #merge(boolean)}方法设置与否都不再合并文件
@@ -116,6 +127,16 @@ public class M3U8Option<OP extends M3U8Option> extends BaseOption {
     return (OP) this;
   }
 
+  /**
+   * 多码率播放列表根据网络吞吐量自动选择码率，选择下载速度能够跟上播放速度的最高码率。
+   * 吞吐量根据之前已完成切片的下载速度估算，还没有测量数据时选择最低的码率；
+   * 恢复任务时使用上次选择的码率。设置了{@link #setBandWidth(int)}时，该方法无效
+   */
+  public OP adaptiveVariant() {
+    this.adaptiveVariant = true;
+    return (OP) this;
+  }
+
   /**
    * M3U8 bandWidth 码率url转换器，对于某些服务器，返回的ts地址可以是相对地址，也可能是处理过的，
    * 对于这种情况，你需要使用url转换器将地址转换为可正常访问的http地址
@@ -26,6 +26,9 @@ public class M3U8VodOption extends M3U8Option<M3U8VodOption> {
   private long fileSize;
   private int maxTsQueueNum;
   private int jumpIndex;
+  private boolean progressiveMerge;
+  private boolean switchVariant;
+  private long targetCompleteTime;
   private IVodTsUrlConverter vodUrlConverter;
 
   public M3U8VodOption() {
@@ -92,6 +95,46 @@ public class M3U8VodOption extends M3U8Option<M3U8VodOption> {
     return this;
   }
 
+  /**
+   * 渐进式合并，下载过程中将已完成的连续切片按顺序追加到目标文件，并删除已追加的ts文件，
+   * 下载完成时只需要追加剩余的切片，减少完成时的合并耗时和缓存占用
+   * 注意：只有{@link #merge(boolean)}设置合并ts文件，并且没有设置{@link #setMergeHandler}和{@link #generateIndexFile()}时，该方法才会生效
+   */
+  public M3U8VodOption progressiveMerge() {
+    this.progressiveMerge = true;
+    return this;
+  }
+
+  /**
+   * 下载过程中根据吞吐量切换剩余切片的码率，吞吐量下降时降低码率，吞吐量提高时提高码率，
+   * 每个切片使用的码率记录在{@link com.arialyy.aria.core.download.M3U8Entity#getPeerBandWidth(int)}中。
+   * 注意：
+   * 1、只在编码格式相同、切片数量一致（切片对齐）的码率之间切换；
+   * 2、加密的播放列表不切换码率；
+   * 3、设置该方法会同时设置{@link #adaptiveVariant()}
+   */
+  public M3U8VodOption switchVariant() {
+    this.switchVariant = true;
+    adaptiveVariant();
+    return this;
+  }
+
+  /**
+   * 设置目标完成时间，自动选择码率时，选择能在目标时间内下载完成的最高码率，
+   * 设置该方法会同时设置{@link #adaptiveVariant()}
+   *
+   * @param targetCompleteTime 目标完成时间，单位秒
+   */
+  public M3U8VodOption setTargetCompleteTime(long targetCompleteTime) {
+    if (targetCompleteTime <= 0) {
+      ALog.e(TAG, "目标完成时间必须大于0");
+      return this;
+    }
+    this.targetCompleteTime = targetCompleteTime;
+    adaptiveVariant();
+    return this;
+  }
+
   public long getFileSize() {
     return fileSize;
   }
@@ -17,6 +17,7 @@ package com.arialyy.aria.core.download.target;
 
 import com.arialyy.aria.core.common.AbsBuilderTarget;
 import com.arialyy.aria.core.common.AbsNormalTarget;
+import com.arialyy.aria.core.download.DownloadSpec;
 import java.util.List;
 
 /**
@@ -77,4 +78,8 @@ public class DTargetFactory {
   public GroupBuilderTarget generateGroupBuilderTarget(List<String> urls) {
     return new GroupBuilderTarget(urls);
   }
+
+  public HttpBatchBuilderTarget generateBatchBuilderTarget(List<DownloadSpec> specs) {
+    return new HttpBatchBuilderTarget(specs);
+  }
 }
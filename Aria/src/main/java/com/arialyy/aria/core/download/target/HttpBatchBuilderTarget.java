@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.download.target;
+
+import com.arialyy.aria.core.common.HttpOption;
+import com.arialyy.aria.core.common.controller.BatchBuilderController;
+import com.arialyy.aria.core.download.DownloadSpec;
+import java.util.List;
+
+/**
+ * 批量创建http下载任务
+ */
+public class HttpBatchBuilderTarget {
+  private BatchBuilderController mController;
+
+  HttpBatchBuilderTarget(List<DownloadSpec> specs) {
+    mController = new BatchBuilderController(specs);
+  }
+
+  /**
+   * 设置http请求参数，header等信息，所有任务共用该配置
+   */
+  public HttpBatchBuilderTarget option(HttpOption option) {
+    if (option == null) {
+      throw new NullPointerException("任务配置为空");
+    }
+    mController.setOption(option);
+    return this;
+  }
+
+  /**
+   * 是否忽略权限检查
+   */
+  public HttpBatchBuilderTarget ignoreCheckPermissions() {
+    mController.ignoreCheckPermissions();
+    return this;
+  }
+
+  /**
+   * 忽略文件占用，不管文件路径是否被其它任务占用，都执行下载任务
+   * 需要注意的是：如果文件被其它任务占用，并且还调用了该方法，将自动删除占用了该文件路径的任务
+   */
+  public HttpBatchBuilderTarget ignoreFilePathOccupy() {
+    mController.ignoreFilePathOccupy();
+    return this;
+  }
+
+  /**
+   * 添加任务，只添加任务不进行下载
+   *
+   * @return 和任务描述列表一一对应的任务id，添加失败的任务id为-1
+   */
+  public List<Long> add() {
+    return mController.add();
+  }
+
+  /**
+   * 创建并启动任务，超出最大任务数的任务将进入等待状态
+   *
+   * @return 和任务描述列表一一对应的任务id，创建失败的任务id为-1
+   */
+  public List<Long> create() {
+    return mController.create();
+  }
+}
@@ -71,6 +71,36 @@ public abstract class AbsTarget<TARGET extends AbsTarget> {
     return (TARGET) this;
   }
 
+  /**
+   * 设置任务优先级，只有在配置中将缓存池调度策略设置为priority、sjf或deadline时，优先级才会生效
+   * 注意：如果在后续方法调用链中没有调用 {@link ITargetHandler#start()}、{@link ITargetHandler#stop()}、{@link
+   * ITargetHandler#cancel()}、{@link ITargetHandler#resume()}
+   * 等操作任务的方法，那么你需要调用{@link NormalController#save()}才能将修改保存到数据库
+   *
+   * @param priority 优先级，{@link TaskPriority}
+   */
+  public TARGET setPriority(int priority) {
+    mEntity.setPriority(priority);
+    return (TARGET) this;
+  }
+
+  /**
+   * 设置任务截止时间，缓存池调度策略为deadline时，截止时间越早的任务越先执行
+   * 注意：如果在后续方法调用链中没有调用 {@link ITargetHandler#start()}、{@link ITargetHandler#stop()}、{@link
+   * ITargetHandler#cancel()}、{@link ITargetHandler#resume()}
+   * 等操作任务的方法，那么你需要调用{@link NormalController#save()}才能将修改保存到数据库
+   *
+   * @param deadline 截止时间的时间戳，单位：毫秒，为0表示没有截止时间
+   */
+  public TARGET setDeadline(long deadline) {
+    if (deadline < 0) {
+      ALog.e(TAG, "截止时间不能小于0");
+      return (TARGET) this;
+    }
+    mEntity.setDeadline(deadline);
+    return (TARGET) this;
+  }
+
   /**
    * 重置状态，将任务状态设置为未开始状态
    * 注意：如果在后续方法调用链中没有调用 {@link NormalController#stop()}、{@link NormalController#cancel()}、
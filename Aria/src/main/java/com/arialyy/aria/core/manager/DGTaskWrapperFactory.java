@@ -15,13 +15,17 @@
  */
 package com.arialyy.aria.core.manager;
 
+import android.text.TextUtils;
 import com.arialyy.aria.core.download.DGEntityWrapper;
 import com.arialyy.aria.core.download.DGTaskWrapper;
 import com.arialyy.aria.core.download.DownloadGroupEntity;
 import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.util.CommonUtil;
 import com.arialyy.aria.util.DbDataHelper;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Aria.Lao on 2017/11/1. 组合任务wrapper
@@ -57,6 +61,41 @@ class DGTaskWrapperFactory implements IGroupWrapperFactory<DownloadGroupEntity,
     return wrapper;
   }
 
+  @Override public List<DGTaskWrapper> getGroupWrappers(List<Long> taskIds) {
+    Map<Long, DGTaskWrapper> temp = new HashMap<>();
+    for (int start = 0, size = taskIds.size(); start < size;
+        start += DbEntity.IN_QUERY_BATCH_SIZE) {
+      int end = Math.min(start + DbEntity.IN_QUERY_BATCH_SIZE, size);
+      List<DGEntityWrapper> list = DbEntity.findRelationData(DGEntityWrapper.class,
+          String.format("DownloadGroupEntity.rowid IN (%s)",
+              TextUtils.join(",", taskIds.subList(start, end))));
+      if (list == null) {
+        continue;
+      }
+      for (DGEntityWrapper dgWrapper : list) {
+        DownloadGroupEntity entity = dgWrapper.groupEntity;
+        if (entity == null) {
+          continue;
+        }
+        DGTaskWrapper wrapper = new DGTaskWrapper(entity);
+        if (entity.getSubEntities() != null && !entity.getSubEntities().isEmpty()) {
+          wrapper.setSubTaskWrapper(DbDataHelper.createDGSubTaskWrapper(entity));
+        }
+        wrapper.setRequestType(entity.getTaskType());
+        temp.put(entity.getId(), wrapper);
+      }
+    }
+    // 保持和传入的任务id相同的顺序
+    List<DGTaskWrapper> wrappers = new ArrayList<>(temp.size());
+    for (Long taskId : taskIds) {
+      DGTaskWrapper wrapper = temp.get(taskId);
+      if (wrapper != null) {
+        wrappers.add(wrapper);
+      }
+    }
+    return wrappers;
+  }
+
   /**
    * 获取组合任务实体 如果数据库不存在该实体，则新创建一个新的任务组实体
    */
@@ -18,10 +18,16 @@ package com.arialyy.aria.core.manager;
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
+import com.arialyy.aria.core.download.M3U8Entity;
 import com.arialyy.aria.core.inf.IEntity;
 import com.arialyy.aria.core.loader.IRecordHandler;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
+import com.arialyy.aria.orm.DbEntity;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 创建下载任务wrapper Created by Aria.Lao on 2017/11/1.
@@ -56,6 +62,49 @@ class DTaskWrapperFactory implements INormalTEFactory<DownloadEntity, DTaskWrapp
     return wrapper;
   }
 
+  @Override public List<DTaskWrapper> create(List<DownloadEntity> entities) {
+    List<String> paths = new ArrayList<>(entities.size());
+    List<String> unCompletePaths = new ArrayList<>(entities.size());
+    for (DownloadEntity entity : entities) {
+      paths.add(entity.getFilePath());
+      if (!entity.isComplete()) {
+        unCompletePaths.add(entity.getFilePath());
+      }
+    }
+    Map<String, TaskRecord> records = new HashMap<>();
+    for (TaskRecord record : DbEntity.findDatasIn(TaskRecord.class, "filePath",
+        unCompletePaths)) {
+      records.put(record.filePath, record);
+    }
+    Map<String, M3U8Entity> m3u8Entities = new HashMap<>();
+    for (M3U8Entity m3u8 : DbEntity.findDatasIn(M3U8Entity.class, "filePath", paths)) {
+      m3u8Entities.put(m3u8.getFilePath(), m3u8);
+    }
+
+    List<DTaskWrapper> wrappers = new ArrayList<>(entities.size());
+    for (DownloadEntity entity : entities) {
+      checkEntity(entity, records.get(entity.getFilePath()));
+      DTaskWrapper wrapper = new DTaskWrapper(entity);
+      wrapper.setRequestType(getTaskType(entity, m3u8Entities.get(entity.getFilePath())));
+      wrappers.add(wrapper);
+    }
+    return wrappers;
+  }
+
+  /**
+   * 和{@link DownloadEntity#getTaskType()}的逻辑一致，但使用批量查询得到的m3u8实体，避免再次查询数据库
+   */
+  private int getTaskType(DownloadEntity entity, M3U8Entity m3u8Entity) {
+    String url = entity.getUrl();
+    if (url == null || !url.startsWith("http")) {
+      return entity.getTaskType();
+    }
+    if (m3u8Entity == null) {
+      return ITaskWrapper.D_HTTP;
+    }
+    return m3u8Entity.isLive() ? ITaskWrapper.M3U8_LIVE : ITaskWrapper.M3U8_VOD;
+  }
+
   /**
    * 如果任务存在，但是下载实体不存在，则通过下载地址获取下载实体
    */
@@ -68,32 +117,41 @@ class DTaskWrapperFactory implements INormalTEFactory<DownloadEntity, DTaskWrapp
       entity = new DownloadEntity();
       return entity;
     }
-    File file = new File(entity.getFilePath());
-
     if (!entity.isComplete()) {
-      TaskRecord record =
-          TaskRecord.findFirst(TaskRecord.class, "filePath=?", entity.getFilePath());
-      if (record == null) {
-        resetEntity(entity);
-      } else {
-        if (record.isBlock) {
-          int count = 0;
-          for (int i = 0, len = record.threadNum; i < len; i++) {
-            File temp = new File(String.format(IRecordHandler.SUB_PATH, record.filePath, i));
-            if (!temp.exists()) {
-              count++;
-            }
-          }
-          if (count == record.threadNum) {
-            resetEntity(entity);
-          }
-        } else if (!file.exists()
-            && record.taskType != ITaskWrapper.M3U8_VOD) { // 非分块文件需要判断文件是否存在
-          resetEntity(entity);
+      checkEntity(entity,
+          TaskRecord.findFirst(TaskRecord.class, "filePath=?", entity.getFilePath()));
+    }
+    return entity;
+  }
+
+  /**
+   * 检查未完成任务的记录，如果记录或文件已经不存在，则重置下载实体
+   *
+   * @param record 任务记录，可以为null
+   */
+  private void checkEntity(DownloadEntity entity, TaskRecord record) {
+    if (entity.isComplete()) {
+      return;
+    }
+    if (record == null) {
+      resetEntity(entity);
+      return;
+    }
+    if (record.isBlock) {
+      int count = 0;
+      for (int i = 0, len = record.threadNum; i < len; i++) {
+        File temp = new File(String.format(IRecordHandler.SUB_PATH, record.filePath, i));
+        if (!temp.exists()) {
+          count++;
         }
       }
+      if (count == record.threadNum) {
+        resetEntity(entity);
+      }
+    } else if (!new File(entity.getFilePath()).exists()
+        && record.taskType != ITaskWrapper.M3U8_VOD) { // 非分块文件需要判断文件是否存在
+      resetEntity(entity);
     }
-    return entity;
   }
 
   /**
@@ -17,6 +17,7 @@ package com.arialyy.aria.core.manager;
 
 import com.arialyy.aria.core.common.AbsEntity;
 import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
+import java.util.List;
 
 /**
  * 任务组通过组创建任务
@@ -32,4 +33,11 @@ interface IGroupWrapperFactory<ENTITY extends AbsEntity, TASK_ENTITY extends Abs
    * @param taskId 组合任务任务Id
    */
   TASK_ENTITY getGroupWrapper(long taskId);
+
+  /**
+   * 批量获取任务组的任务实体，组合任务和子任务通过一次关联查询读取，数据库中不存在的任务会被忽略
+   *
+   * @param taskIds 组合任务任务Id
+   */
+  List<TASK_ENTITY> getGroupWrappers(List<Long> taskIds);
 }
@@ -17,6 +17,7 @@ package com.arialyy.aria.core.manager;
 
 import com.arialyy.aria.core.common.AbsEntity;
 import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
+import java.util.List;
 
 /**
  * Created by Aria.Lao on 2017/11/1.
@@ -27,4 +28,9 @@ interface INormalTEFactory<ENTITY extends AbsEntity, TASK_ENTITY extends AbsTask
    * 通过key创建任务，只适应于单任务
    */
   TASK_ENTITY create(long taskId);
+
+  /**
+   * 通过已经从数据库中读取的实体批量创建任务，关联数据会批量查询，不会逐个查询数据库
+   */
+  List<TASK_ENTITY> create(List<ENTITY> entities);
 }
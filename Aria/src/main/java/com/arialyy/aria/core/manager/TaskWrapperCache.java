@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.manager;
+
+import com.arialyy.aria.core.common.AbsEntity;
+import com.arialyy.aria.core.download.AbsGroupTaskWrapper;
+import com.arialyy.aria.core.download.DownloadGroupEntity;
+import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
+import com.arialyy.aria.util.ALog;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务Wrapper缓存，读取不加锁；按照wrapper的估算权重淘汰最久未使用的wrapper，
+ * 执行中的任务的wrapper不会被淘汰
+ */
+final class TaskWrapperCache {
+  private static final String TAG = "TaskWrapperCache";
+
+  /**
+   * 淘汰时会将总权重降低到最大权重的该比例以下，避免每次添加都触发淘汰
+   */
+  private static final float TRIM_RATIO = 0.9f;
+
+  private final Map<String, Node> mMap = new ConcurrentHashMap<>();
+  private final long mMaxWeight;
+  private final AtomicLong mWeight = new AtomicLong();
+  private final AtomicLong mClock = new AtomicLong();
+  private final AtomicLong mHitCount = new AtomicLong();
+  private final AtomicLong mMissCount = new AtomicLong();
+  private final AtomicLong mEvictionCount = new AtomicLong();
+  private final Object mEvictLock = new Object();
+
+  private static class Node {
+    final AbsTaskWrapper wrapper;
+    final int weight;
+    volatile long accessTime;
+
+    Node(AbsTaskWrapper wrapper, int weight, long accessTime) {
+      this.wrapper = wrapper;
+      this.weight = weight;
+      this.accessTime = accessTime;
+    }
+  }
+
+  /**
+   * @param maxWeight 最大权重，普通任务的权重为1，任务组的权重为1+子任务数
+   */
+  TaskWrapperCache(long maxWeight) {
+    mMaxWeight = maxWeight;
+  }
+
+  /**
+   * 获取wrapper，并记录命中情况
+   */
+  AbsTaskWrapper get(String key) {
+    Node node = mMap.get(key);
+    if (node == null) {
+      mMissCount.incrementAndGet();
+      return null;
+    }
+    node.accessTime = mClock.incrementAndGet();
+    mHitCount.incrementAndGet();
+    return node.wrapper;
+  }
+
+  /**
+   * 获取wrapper，不记录命中情况
+   */
+  AbsTaskWrapper peek(String key) {
+    Node node = mMap.get(key);
+    return node == null ? null : node.wrapper;
+  }
+
+  void put(String key, AbsTaskWrapper wrapper) {
+    Node node = new Node(wrapper, weightOf(wrapper), mClock.incrementAndGet());
+    Node old = mMap.put(key, node);
+    mWeight.addAndGet(node.weight - (old == null ? 0 : old.weight));
+    if (mWeight.get() > mMaxWeight) {
+      trim();
+    }
+  }
+
+  void remove(String key) {
+    Node old = mMap.remove(key);
+    if (old != null) {
+      mWeight.addAndGet(-old.weight);
+    }
+  }
+
+  /**
+   * 淘汰最久未使用的wrapper，直到总权重低于最大权重的{@link #TRIM_RATIO}
+   */
+  private void trim() {
+    synchronized (mEvictLock) {
+      long target = (long) (mMaxWeight * TRIM_RATIO);
+      if (mWeight.get() <= mMaxWeight) {
+        return;
+      }
+      List<Map.Entry<String, Node>> entries = new ArrayList<>(mMap.entrySet());
+      Collections.sort(entries, new Comparator<Map.Entry<String, Node>>() {
+        @Override public int compare(Map.Entry<String, Node> o1, Map.Entry<String, Node> o2) {
+          long t1 = o1.getValue().accessTime, t2 = o2.getValue().accessTime;
+          return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+        }
+      });
+      for (Map.Entry<String, Node> entry : entries) {
+        if (mWeight.get() <= target) {
+          break;
+        }
+        Node node = entry.getValue();
+        if (isRunning(node.wrapper)) {
+          continue;
+        }
+        // 只有在节点没有被替换时才移除
+        if (mMap.remove(entry.getKey(), node)) {
+          mWeight.addAndGet(-node.weight);
+          mEvictionCount.incrementAndGet();
+        }
+      }
+      if (mWeight.get() > mMaxWeight) {
+        ALog.w(TAG, String.format("执行中的任务过多，缓存权重【%s】超过了最大权重【%s】", mWeight.get(),
+            mMaxWeight));
+      }
+    }
+  }
+
+  private boolean isRunning(AbsTaskWrapper wrapper) {
+    int state = wrapper.getEntity() == null ? IEntity.STATE_OTHER : wrapper.getState();
+    return state == IEntity.STATE_RUNNING
+        || state == IEntity.STATE_PRE
+        || state == IEntity.STATE_POST_PRE;
+  }
+
+  /**
+   * 估算wrapper的权重，任务组的子任务都会被缓存在wrapper中，所以每个子任务计1
+   */
+  private int weightOf(AbsTaskWrapper wrapper) {
+    int weight = 1;
+    if (wrapper instanceof AbsGroupTaskWrapper) {
+      List subWrappers = ((AbsGroupTaskWrapper) wrapper).getSubTaskWrapper();
+      int subNum = subWrappers == null ? 0 : subWrappers.size();
+      AbsEntity entity = wrapper.getEntity();
+      if (entity instanceof DownloadGroupEntity
+          && ((DownloadGroupEntity) entity).isSubEntitiesLoaded()) {
+        subNum = Math.max(subNum, ((DownloadGroupEntity) entity).getSubEntities().size());
+      }
+      weight += subNum;
+    }
+    return weight;
+  }
+
+  int size() {
+    return mMap.size();
+  }
+
+  long weight() {
+    return mWeight.get();
+  }
+
+  long hitCount() {
+    return mHitCount.get();
+  }
+
+  long missCount() {
+    return mMissCount.get();
+  }
+
+  long evictionCount() {
+    return mEvictionCount.get();
+  }
+}
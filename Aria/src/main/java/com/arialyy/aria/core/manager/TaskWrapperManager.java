@@ -15,13 +15,19 @@
  */
 package com.arialyy.aria.core.manager;
 
-import android.util.LruCache;
+import com.arialyy.aria.core.common.AbsEntity;
 import com.arialyy.aria.core.download.DGTaskWrapper;
 import com.arialyy.aria.core.download.DTaskWrapper;
+import com.arialyy.aria.core.inf.IOptionConstant;
 import com.arialyy.aria.core.upload.UTaskWrapper;
 import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
+import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -31,7 +37,14 @@ import java.util.concurrent.locks.ReentrantLock;
 public class TaskWrapperManager {
   private static final String TAG = "TaskWrapperManager";
   private static volatile TaskWrapperManager INSTANCE = null;
-  private LruCache<String, AbsTaskWrapper> cache = new LruCache<>(1024);
+  /**
+   * 缓存的最大权重，普通任务的权重为1，任务组的权重为1+子任务数
+   */
+  private static final int MAX_CACHE_WEIGHT = 4096;
+  private TaskWrapperCache cache = new TaskWrapperCache(MAX_CACHE_WEIGHT);
+  /**
+   * 只用于创建wrapper，避免同一个任务被重复创建，读取缓存不需要加锁
+   */
   private Lock lock;
 
   public static TaskWrapperManager getInstance() {
@@ -71,11 +84,17 @@ public class TaskWrapperManager {
    * @return 创建失败，返回null；成功返回{@link DTaskWrapper}或者{@link UTaskWrapper}
    */
   public <TW extends AbsTaskWrapper> TW getNormalTaskWrapper(Class<TW> clazz, long taskId) {
+    String key = convertKey(clazz, taskId);
+    if (taskId != -1) {
+      AbsTaskWrapper wrapper = cache.get(key);
+      if (wrapper != null && wrapper.getClass() == clazz) {
+        return (TW) wrapper;
+      }
+    }
     final Lock lock = this.lock;
     lock.lock();
     try {
-
-      AbsTaskWrapper wrapper = cache.get(convertKey(clazz, taskId));
+      AbsTaskWrapper wrapper = cache.peek(key);
       if (wrapper == null || wrapper.getClass() != clazz) {
         INormalTEFactory factory = chooseNormalFactory(clazz);
         if (factory == null) {
@@ -91,6 +110,50 @@ public class TaskWrapperManager {
     }
   }
 
+  /**
+   * 批量获取普通任务的Wrapper，缓存中没有的Wrapper会通过已读取的实体批量创建
+   *
+   * @param entities 已经从数据库中读取的任务实体
+   * @return 和实体列表顺序一致的Wrapper列表，创建失败返回空列表
+   */
+  public <TW extends AbsTaskWrapper, E extends AbsEntity> List<TW> getNormalTaskWrappers(
+      Class<TW> clazz, List<E> entities) {
+    final Lock lock = this.lock;
+    lock.lock();
+    try {
+      List<TW> wrappers = new ArrayList<>(entities.size());
+      List<E> missEntities = new ArrayList<>();
+      List<Integer> missIndexes = new ArrayList<>();
+      for (E entity : entities) {
+        AbsTaskWrapper wrapper = cache.get(convertKey(clazz, entity.getId()));
+        if (wrapper == null || wrapper.getClass() != clazz) {
+          missIndexes.add(wrappers.size());
+          missEntities.add(entity);
+          wrappers.add(null);
+        } else {
+          wrappers.add((TW) wrapper);
+        }
+      }
+      if (!missEntities.isEmpty()) {
+        INormalTEFactory factory = chooseNormalFactory(clazz);
+        if (factory == null) {
+          ALog.e(TAG, "任务实体创建失败");
+          return new ArrayList<>();
+        }
+        List<AbsTaskWrapper> created = factory.create(missEntities);
+        for (int i = 0, len = created.size(); i < len; i++) {
+          AbsTaskWrapper wrapper = created.get(i);
+          handleFtpWrapper(wrapper);
+          putTaskWrapper(wrapper);
+          wrappers.set(missIndexes.get(i), (TW) wrapper);
+        }
+      }
+      return wrappers;
+    } finally {
+      lock.unlock();
+    }
+  }
+
   /**
    * 从缓存中获取HTTP任务组的任务实体，如果任务实体不存在，则创建任务实体 获取{}
    *
@@ -98,10 +161,17 @@ public class TaskWrapperManager {
    * @return 地址列表为null或创建实体失败，返回null；成功返回{@link DGTaskWrapper}
    */
   public <TW extends AbsTaskWrapper> TW getGroupWrapper(Class<TW> clazz, long taskId) {
+    String key = convertKey(clazz, taskId);
+    if (taskId != -1) {
+      AbsTaskWrapper tWrapper = cache.get(key);
+      if (tWrapper != null && tWrapper.getClass() == clazz) {
+        return (TW) tWrapper;
+      }
+    }
     final Lock lock = this.lock;
     lock.lock();
     try {
-      AbsTaskWrapper tWrapper = cache.get(convertKey(clazz, taskId));
+      AbsTaskWrapper tWrapper = cache.peek(key);
       if (tWrapper == null || tWrapper.getClass() != clazz) {
         IGroupWrapperFactory factory = chooseGroupFactory(clazz);
         if (factory == null) {
@@ -117,6 +187,53 @@ public class TaskWrapperManager {
     }
   }
 
+  /**
+   * 批量获取任务组的Wrapper，缓存中没有的Wrapper会通过一次关联查询批量创建
+   *
+   * @param taskIds 任务组id
+   * @return 和任务id顺序一致的Wrapper列表，数据库中不存在的任务会被忽略
+   */
+  public <TW extends AbsTaskWrapper> List<TW> getGroupWrappers(Class<TW> clazz,
+      List<Long> taskIds) {
+    final Lock lock = this.lock;
+    lock.lock();
+    try {
+      Map<Long, AbsTaskWrapper> temp = new HashMap<>();
+      List<Long> missIds = new ArrayList<>();
+      for (Long taskId : taskIds) {
+        AbsTaskWrapper wrapper = cache.get(convertKey(clazz, taskId));
+        if (wrapper == null || wrapper.getClass() != clazz) {
+          missIds.add(taskId);
+        } else {
+          temp.put(taskId, wrapper);
+        }
+      }
+      if (!missIds.isEmpty()) {
+        IGroupWrapperFactory factory = chooseGroupFactory(clazz);
+        if (factory == null) {
+          ALog.e(TAG, "任务实体创建失败");
+          return new ArrayList<>();
+        }
+        List<AbsTaskWrapper> created = factory.getGroupWrappers(missIds);
+        for (AbsTaskWrapper wrapper : created) {
+          handleFtpWrapper(wrapper);
+          putTaskWrapper(wrapper);
+          temp.put(wrapper.getEntity().getId(), wrapper);
+        }
+      }
+      List<TW> wrappers = new ArrayList<>(temp.size());
+      for (Long taskId : taskIds) {
+        AbsTaskWrapper wrapper = temp.get(taskId);
+        if (wrapper != null) {
+          wrappers.add((TW) wrapper);
+        }
+      }
+      return wrappers;
+    } finally {
+      lock.unlock();
+    }
+  }
+
   /**
    * 更新任务Wrapper
    */
@@ -128,12 +245,21 @@ public class TaskWrapperManager {
     if (wrapper.getEntity() == null || wrapper.getEntity().getId() == -1) {
       return;
     }
-    final Lock lock = this.lock;
-    lock.lock();
-    try {
+    cache.put(convertKey(wrapper.getClass(), wrapper.getEntity().getId()), wrapper);
+  }
+
+  /**
+   * 批量更新任务Wrapper
+   */
+  public void putTaskWrappers(List<? extends AbsTaskWrapper> wrappers) {
+    if (wrappers == null || wrappers.isEmpty()) {
+      return;
+    }
+    for (AbsTaskWrapper wrapper : wrappers) {
+      if (wrapper == null || wrapper.getEntity() == null || wrapper.getEntity().getId() == -1) {
+        continue;
+      }
       cache.put(convertKey(wrapper.getClass(), wrapper.getEntity().getId()), wrapper);
-    } finally {
-      lock.unlock();
     }
   }
 
@@ -141,12 +267,55 @@ public class TaskWrapperManager {
    * 通过key删除任务实体 当任务complete或删除记录时将删除缓存
    */
   public void removeTaskWrapper(AbsTaskWrapper wrapper) {
-    final Lock lock = this.lock;
-    lock.lock();
-    try {
-      cache.remove(convertKey(wrapper.getClass(), wrapper.getEntity().getId()));
-    } finally {
-      lock.unlock();
+    cache.remove(convertKey(wrapper.getClass(), wrapper.getEntity().getId()));
+  }
+
+  /**
+   * 缓存命中次数
+   */
+  public long getCacheHitCount() {
+    return cache.hitCount();
+  }
+
+  /**
+   * 缓存未命中次数
+   */
+  public long getCacheMissCount() {
+    return cache.missCount();
+  }
+
+  /**
+   * 被淘汰的wrapper数量
+   */
+  public long getCacheEvictionCount() {
+    return cache.evictionCount();
+  }
+
+  /**
+   * 缓存的wrapper数量
+   */
+  public int getCacheSize() {
+    return cache.size();
+  }
+
+  /**
+   * 缓存的总权重
+   */
+  public long getCacheWeight() {
+    return cache.weight();
+  }
+
+  /**
+   * 从数据库恢复的ftp任务需要重新设置ftp地址信息
+   */
+  private void handleFtpWrapper(AbsTaskWrapper wrapper) {
+    int requestType = wrapper.getRequestType();
+    if (requestType == ITaskWrapper.D_FTP
+        || requestType == ITaskWrapper.U_FTP
+        || requestType == ITaskWrapper.D_FTP_DIR) {
+      wrapper.getOptionParams()
+          .setParams(IOptionConstant.ftpUrlEntity,
+              CommonUtil.getFtpUrlInfo(wrapper.getEntity().getKey()));
     }
   }
 
@@ -18,6 +18,8 @@ package com.arialyy.aria.core.manager;
 import com.arialyy.aria.core.upload.UTaskWrapper;
 import com.arialyy.aria.core.upload.UploadEntity;
 import com.arialyy.aria.util.ALog;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Aria.Lao on 2017/11/1. 任务实体工厂
@@ -50,6 +52,16 @@ class UTaskWrapperFactory implements INormalTEFactory<UploadEntity, UTaskWrapper
     return wrapper;
   }
 
+  @Override public List<UTaskWrapper> create(List<UploadEntity> entities) {
+    List<UTaskWrapper> wrappers = new ArrayList<>(entities.size());
+    for (UploadEntity entity : entities) {
+      UTaskWrapper wrapper = new UTaskWrapper(entity);
+      wrapper.setRequestType(entity.getTaskType());
+      wrappers.add(wrapper);
+    }
+    return wrappers;
+  }
+
   /**
    * 从数据中读取上传实体，如果数据库查不到，则新创建一个上传实体
    */
@@ -16,9 +16,12 @@
 
 package com.arialyy.aria.core.queue;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.util.Log;
 import com.arialyy.aria.core.common.AbsEntity;
+import com.arialyy.aria.core.config.BaseTaskConfig;
 import com.arialyy.aria.core.inf.IEntity;
 import com.arialyy.aria.core.inf.TaskSchedulerType;
 import com.arialyy.aria.core.manager.TaskWrapperManager;
@@ -27,7 +30,9 @@ import com.arialyy.aria.core.queue.pool.BaseCachePool;
 import com.arialyy.aria.core.queue.pool.BaseExecutePool;
 import com.arialyy.aria.core.queue.pool.DGLoadSharePool;
 import com.arialyy.aria.core.queue.pool.DLoadSharePool;
+import com.arialyy.aria.core.queue.policy.QueuePolicyFactory;
 import com.arialyy.aria.core.queue.pool.UploadSharePool;
+import com.arialyy.aria.core.scheduler.RetryScheduler;
 import com.arialyy.aria.core.task.AbsTask;
 import com.arialyy.aria.core.task.DownloadGroupTask;
 import com.arialyy.aria.core.task.DownloadTask;
@@ -35,8 +40,18 @@ import com.arialyy.aria.core.task.UploadTask;
 import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
+import com.arialyy.aria.util.DbDataHelper;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by lyy on 2017/2/23. 任务队列
@@ -47,9 +62,26 @@ public abstract class AbsTaskQueue<TASK extends AbsTask, TASK_WRAPPER extends Ab
   final int TYPE_DG_QUEUE = 2;
   final int TYPE_U_QUEUE = 3;
 
+  /**
+   * 执行队列之外预先创建的等待任务数，恢复任务时，超出执行队列空闲数和预取数的任务不会创建task，
+   * 只以任务id的形式保存在等待列表中
+   */
+  public static final int PREFETCH_NUM = 4;
+
   private final String TAG = CommonUtil.getClassName(this);
   BaseCachePool<TASK> mCachePool;
   BaseExecutePool<TASK> mExecutePool;
+  /**
+   * 轻量级的等待任务，只保存任务id，按恢复顺序排列
+   */
+  private final Deque<Long> mPendingIds = new ArrayDeque<>();
+  private final Set<Long> mPendingIdSet = new HashSet<>();
+  private final AtomicBoolean isLoadingPending = new AtomicBoolean(false);
+  /**
+   * 所有队列共用的等待任务读取线程
+   */
+  private static final ExecutorService PENDING_LOADER = Executors.newSingleThreadExecutor();
+  private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
 
   AbsTaskQueue() {
     switch (getQueueType()) {
@@ -70,6 +102,175 @@ public abstract class AbsTaskQueue<TASK extends AbsTask, TASK_WRAPPER extends Ab
 
   abstract int getQueueType();
 
+  /**
+   * 通过任务id批量创建任务的wrapper，只需要返回依然处于等待状态并且没有完成的任务
+   *
+   * @param taskIds 等待列表中的任务id
+   */
+  abstract List<TASK_WRAPPER> loadPendingWrappers(List<Long> taskIds);
+
+  /**
+   * 获取队列对应的任务实体类型
+   */
+  abstract Class<? extends AbsEntity> getEntityClass();
+
+  /**
+   * 获取队列对应的任务配置
+   */
+  abstract BaseTaskConfig getTaskConfig();
+
+  /**
+   * 添加轻量级的等待任务，只保存任务id，当缓存池中的任务不足{@link #PREFETCH_NUM}个时，
+   * 才会读取数据库并创建task，任务的状态需要由调用者设置为{@link IEntity#STATE_WAIT}
+   *
+   * @param taskIds 任务id
+   */
+  public void addPendingTasks(List<Long> taskIds) {
+    synchronized (mPendingIds) {
+      for (Long taskId : taskIds) {
+        if (mPendingIdSet.add(taskId)) {
+          mPendingIds.offer(taskId);
+        }
+      }
+    }
+    loadPendingTasks();
+  }
+
+  /**
+   * 任务是否在轻量级的等待列表中
+   */
+  public boolean isPendingTask(long taskId) {
+    synchronized (mPendingIds) {
+      return mPendingIdSet.contains(taskId);
+    }
+  }
+
+  /**
+   * 将任务移出轻量级的等待列表，任务的状态需要由调用者修改
+   *
+   * @return {@code true} 任务在等待列表中，并且已经移除
+   */
+  public boolean removePendingTask(long taskId) {
+    synchronized (mPendingIds) {
+      if (!mPendingIdSet.remove(taskId)) {
+        return false;
+      }
+      mPendingIds.remove(taskId);
+      return true;
+    }
+  }
+
+  /**
+   * 获取轻量级等待任务的数量
+   */
+  public int getPendingTaskNum() {
+    synchronized (mPendingIds) {
+      return mPendingIds.size();
+    }
+  }
+
+  private List<Long> pollPendingIds(int num) {
+    List<Long> ids = new ArrayList<>();
+    synchronized (mPendingIds) {
+      while (ids.size() < num && !mPendingIds.isEmpty()) {
+        Long taskId = mPendingIds.poll();
+        mPendingIdSet.remove(taskId);
+        ids.add(taskId);
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * 缓存池中的任务不足时，在子线程中从数据库读取等待任务，再回到主线程创建任务并启动执行队列中空闲位置的任务，
+   * 任务的启动和调度器的{@code startNextTask}都在主线程中执行，避免执行队列已满时挤掉正在执行的任务
+   */
+  private void loadPendingTasks() {
+    if (mCachePool.size() >= PREFETCH_NUM || getPendingTaskNum() == 0) {
+      return;
+    }
+    if (!isLoadingPending.compareAndSet(false, true)) {
+      return;
+    }
+    final int num = Math.max(getMaxTaskNum() - mExecutePool.size(), 0) + PREFETCH_NUM
+        - mCachePool.size();
+    PENDING_LOADER.execute(new Runnable() {
+      @Override public void run() {
+        boolean isPosted = false;
+        try {
+          List<Long> ids = pollPendingIds(num);
+          if (ids.isEmpty()) {
+            return;
+          }
+          final List<TASK_WRAPPER> wrappers = loadPendingWrappers(ids);
+          isPosted = MAIN_HANDLER.post(new Runnable() {
+            @Override public void run() {
+              try {
+                startPendingTasks(wrappers);
+              } finally {
+                isLoadingPending.set(false);
+              }
+              loadPendingTasks();
+            }
+          });
+        } finally {
+          if (!isPosted) {
+            isLoadingPending.set(false);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * 在主线程中创建从等待列表读取的任务，并启动执行队列中空闲位置的任务
+   */
+  private void startPendingTasks(List<TASK_WRAPPER> wrappers) {
+    for (TASK_WRAPPER wrapper : wrappers) {
+      createTask(wrapper);
+    }
+    ALog.d(TAG, String.format("从等待列表创建了%s个任务，剩余%s个等待任务", wrappers.size(),
+        getPendingTaskNum()));
+    while (mExecutePool.size() < getMaxTaskNum()) {
+      TASK task = pollNextTask();
+      if (task == null) {
+        break;
+      }
+      if (task.getState() == IEntity.STATE_WAIT) {
+        startTask(task);
+      }
+    }
+  }
+
+  /**
+   * 清空轻量级的等待任务，并将这些任务的状态修改为停止
+   */
+  private void clearPendingTasks() {
+    List<Long> ids = pollPendingIds(Integer.MAX_VALUE);
+    DbDataHelper.updateTaskState(getEntityClass(), ids, IEntity.STATE_STOP);
+  }
+
+  /**
+   * 按照任务id的顺序排列实体
+   */
+  <E extends AbsEntity> List<E> sortByIds(List<E> entities, List<Long> taskIds) {
+    List<E> result = new ArrayList<>();
+    if (entities == null || entities.isEmpty()) {
+      return result;
+    }
+    Map<Long, E> temp = new HashMap<>();
+    for (E entity : entities) {
+      temp.put(entity.getId(), entity);
+    }
+    for (Long taskId : taskIds) {
+      E entity = temp.get(taskId);
+      if (entity != null) {
+        result.add(entity);
+      }
+    }
+    return result;
+  }
+
   /**
    * 获取执行中的任务
    *
@@ -154,6 +355,24 @@ public abstract class AbsTaskQueue<TASK extends AbsTask, TASK_WRAPPER extends Ab
     }
     ThreadTaskManager.getInstance().removeAllThreadTask();
     mCachePool.clear();
+    clearPendingTasks();
+    stopParkedTasks();
+  }
+
+  /**
+   * 停止因为熔断而挂起的任务，挂起的任务不在队列中，需要从重试调度器中取出
+   */
+  private void stopParkedTasks() {
+    List<TASK> tasks = RetryScheduler.getInstance().takeParkedTasks(this);
+    if (tasks.isEmpty()) {
+      return;
+    }
+    List<Long> ids = new ArrayList<>();
+    for (TASK task : tasks) {
+      task.stop(TaskSchedulerType.TYPE_STOP_NOT_NEXT);
+      ids.add(task.getTaskWrapper().getEntity().getId());
+    }
+    DbDataHelper.updateTaskState(getEntityClass(), ids, IEntity.STATE_STOP);
   }
 
   /**
@@ -229,6 +448,24 @@ public abstract class AbsTaskQueue<TASK extends AbsTask, TASK_WRAPPER extends Ab
     return getTask(key) != null;
   }
 
+  @Override public boolean taskExists(TASK_WRAPPER wrapper) {
+    return taskExists(wrapper.getEntity().getKey()) || isPendingTask(wrapper.getEntity().getId());
+  }
+
+  /**
+   * 获取任务，如果任务只在轻量级等待列表中，则将任务移出等待列表并创建task，
+   * 避免命令重复创建任务，或者等待列表在之后再次启动已经被处理的任务
+   *
+   * @return 队列和等待列表中都没有该任务，返回null
+   */
+  public TASK getTask(TASK_WRAPPER wrapper) {
+    TASK task = getTask(wrapper.getEntity().getKey());
+    if (task == null && removePendingTask(wrapper.getEntity().getId())) {
+      task = createTask(wrapper);
+    }
+    return task;
+  }
+
   @Override public TASK getTask(String key) {
     TASK task = mExecutePool.getTask(key);
     if (task == null) {
@@ -366,6 +603,14 @@ public abstract class AbsTaskQueue<TASK extends AbsTask, TASK_WRAPPER extends Ab
   }
 
   @Override public TASK getNextTask() {
-    return mCachePool.pollTask();
+    TASK task = pollNextTask();
+    loadPendingTasks();
+    return task;
+  }
+
+  private TASK pollNextTask() {
+    BaseTaskConfig config = getTaskConfig();
+    return mCachePool.pollTask(QueuePolicyFactory.getPolicy(config.getQueuePolicy()),
+        config.getQueueAgingInterval());
   }
 }
@@ -16,15 +16,24 @@
 
 package com.arialyy.aria.core.queue;
 
+import android.text.TextUtils;
 import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.core.common.AbsEntity;
+import com.arialyy.aria.core.config.BaseTaskConfig;
 import com.arialyy.aria.core.download.DGTaskWrapper;
+import com.arialyy.aria.core.download.DownloadGroupEntity;
 import com.arialyy.aria.core.event.DGMaxNumEvent;
 import com.arialyy.aria.core.event.Event;
 import com.arialyy.aria.core.event.EventMsgUtil;
+import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.manager.TaskWrapperManager;
 import com.arialyy.aria.core.scheduler.TaskSchedulers;
 import com.arialyy.aria.core.task.DownloadGroupTask;
+import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by AriaL on 2017/6/29. 任务组下载队列
@@ -48,10 +57,29 @@ public class DGroupTaskQueue
   private DGroupTaskQueue() {
   }
 
+  @Override BaseTaskConfig getTaskConfig() {
+    return AriaConfig.getInstance().getDGConfig();
+  }
+
   @Override int getQueueType() {
     return TYPE_DG_QUEUE;
   }
 
+  @Override List<DGTaskWrapper> loadPendingWrappers(List<Long> taskIds) {
+    List<DownloadGroupEntity> entities = DbEntity.findDatas(DownloadGroupEntity.class,
+        String.format("rowid IN (%s) AND state=%s AND NOT(isComplete)",
+            TextUtils.join(",", taskIds), IEntity.STATE_WAIT));
+    List<Long> ids = new ArrayList<>();
+    for (DownloadGroupEntity entity : sortByIds(entities, taskIds)) {
+      ids.add(entity.getId());
+    }
+    return TaskWrapperManager.getInstance().getGroupWrappers(DGTaskWrapper.class, ids);
+  }
+
+  @Override Class<? extends AbsEntity> getEntityClass() {
+    return DownloadGroupEntity.class;
+  }
+
   @Event
   public void maxTaskNum(DGMaxNumEvent event) {
     setMaxTaskNum(event.maxNum);
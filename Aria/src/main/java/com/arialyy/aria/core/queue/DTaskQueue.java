@@ -16,16 +16,24 @@
 
 package com.arialyy.aria.core.queue;
 
+import android.text.TextUtils;
 import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.core.common.AbsEntity;
+import com.arialyy.aria.core.config.BaseTaskConfig;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.event.DMaxNumEvent;
 import com.arialyy.aria.core.event.Event;
 import com.arialyy.aria.core.event.EventMsgUtil;
+import com.arialyy.aria.core.inf.IEntity;
 import com.arialyy.aria.core.inf.TaskSchedulerType;
+import com.arialyy.aria.core.manager.TaskWrapperManager;
 import com.arialyy.aria.core.scheduler.TaskSchedulers;
 import com.arialyy.aria.core.task.DownloadTask;
+import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.util.ALog;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -51,10 +59,26 @@ public class DTaskQueue extends AbsTaskQueue<DownloadTask, DTaskWrapper> {
   private DTaskQueue() {
   }
 
+  @Override BaseTaskConfig getTaskConfig() {
+    return AriaConfig.getInstance().getDConfig();
+  }
+
   @Override int getQueueType() {
     return TYPE_D_QUEUE;
   }
 
+  @Override List<DTaskWrapper> loadPendingWrappers(List<Long> taskIds) {
+    List<DownloadEntity> entities = DbEntity.findDatas(DownloadEntity.class,
+        String.format("rowid IN (%s) AND state=%s AND NOT(isGroupChild) AND NOT(isComplete)",
+            TextUtils.join(",", taskIds), IEntity.STATE_WAIT));
+    return TaskWrapperManager.getInstance()
+        .getNormalTaskWrappers(DTaskWrapper.class, sortByIds(entities, taskIds));
+  }
+
+  @Override Class<? extends AbsEntity> getEntityClass() {
+    return DownloadEntity.class;
+  }
+
   @Event
   public void maxTaskNum(DMaxNumEvent event) {
     setMaxTaskNum(event.maxNum);
@@ -120,6 +144,29 @@ public class DTaskQueue extends AbsTaskQueue<DownloadTask, DTaskWrapper> {
     return task;
   }
 
+  /**
+   * 批量创建任务，所有任务在同一次加锁中进入缓存池，已存在的任务不会被重复创建
+   *
+   * @return 成功进入缓存池的任务
+   */
+  public List<DownloadTask> createTasks(List<DTaskWrapper> wrappers) {
+    TaskWrapperManager.getInstance().putTaskWrappers(wrappers);
+    Set<String> exeKeys = new HashSet<>();
+    for (DownloadTask task : mExecutePool.getAllTask()) {
+      exeKeys.add(task.getKey());
+    }
+    List<DownloadTask> tasks = new ArrayList<>(wrappers.size());
+    for (DTaskWrapper wrapper : wrappers) {
+      if (exeKeys.contains(wrapper.getKey())) {
+        ALog.w(TAG, String.format("任务【%s】已存在", wrapper.getKey()));
+        continue;
+      }
+      tasks.add((DownloadTask) TaskFactory.getInstance()
+          .createTask(wrapper, TaskSchedulers.getInstance()));
+    }
+    return mCachePool.putTasks(tasks);
+  }
+
   @Override public void stopTask(DownloadTask task) {
     task.setHighestPriority(false);
     super.stopTask(task);
@@ -39,6 +39,13 @@ public interface ITaskQueue<TASK extends ITask, TASK_WRAPPER extends AbsTaskWrap
    */
   boolean taskExists(String key);
 
+  /**
+   * 判断任务是否存在，只以任务id保存在等待列表中的任务也认为存在
+   *
+   * @return {@code true} 任务存在
+   */
+  boolean taskExists(TASK_WRAPPER wrapper);
+
   /**
    * 通过key判断任务是否正在执行
    *
@@ -147,7 +154,7 @@ public interface ITaskQueue<TASK extends ITask, TASK_WRAPPER extends AbsTaskWrap
   TASK getTask(String key);
 
   /**
-   * 获取缓存池的下一个任务
+   * 按照配置的调度策略获取缓存池的下一个任务
    *
    * @return 下载任务 or null
    */
@@ -16,15 +16,23 @@
 
 package com.arialyy.aria.core.queue;
 
+import android.text.TextUtils;
 import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.core.common.AbsEntity;
+import com.arialyy.aria.core.config.BaseTaskConfig;
 import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.event.Event;
 import com.arialyy.aria.core.event.EventMsgUtil;
 import com.arialyy.aria.core.event.UMaxNumEvent;
+import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.manager.TaskWrapperManager;
 import com.arialyy.aria.core.scheduler.TaskSchedulers;
 import com.arialyy.aria.core.upload.UTaskWrapper;
+import com.arialyy.aria.core.upload.UploadEntity;
 import com.arialyy.aria.core.task.UploadTask;
+import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.util.ALog;
+import java.util.List;
 
 /**
  * Created by lyy on 2017/2/27. 上传任务队列
@@ -51,10 +59,26 @@ public class UTaskQueue extends AbsTaskQueue<UploadTask, UTaskWrapper> {
     setMaxTaskNum(event.maxNum);
   }
 
+  @Override BaseTaskConfig getTaskConfig() {
+    return AriaConfig.getInstance().getUConfig();
+  }
+
   @Override int getQueueType() {
     return TYPE_U_QUEUE;
   }
 
+  @Override List<UTaskWrapper> loadPendingWrappers(List<Long> taskIds) {
+    List<UploadEntity> entities = DbEntity.findDatas(UploadEntity.class,
+        String.format("rowid IN (%s) AND state=%s AND NOT(isComplete)",
+            TextUtils.join(",", taskIds), IEntity.STATE_WAIT));
+    return TaskWrapperManager.getInstance()
+        .getNormalTaskWrappers(UTaskWrapper.class, sortByIds(entities, taskIds));
+  }
+
+  @Override Class<? extends AbsEntity> getEntityClass() {
+    return UploadEntity.class;
+  }
+
   @Override public int getOldMaxNum() {
     return AriaConfig.getInstance().getUConfig().oldMaxTaskNum;
   }
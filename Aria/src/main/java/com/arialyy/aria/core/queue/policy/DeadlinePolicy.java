@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.queue.policy;
+
+import com.arialyy.aria.core.common.AbsEntity;
+
+/**
+ * 截止时间最早的任务先执行
+ * 没有设置截止时间的任务，视为截止时间为进入缓存池后的{@link #DEFAULT_SLACK}个老化间隔，
+ * 因此等待时间足够长的任务最终也会被执行
+ */
+final class DeadlinePolicy implements IQueuePolicy {
+  private static final int DEFAULT_SLACK = 4;
+
+  @Override
+  public double getWeight(AbsEntity entity, long waitTime, long now, long agingInterval) {
+    double weight;
+    if (entity.getDeadline() > 0) {
+      weight = (double) (now - entity.getDeadline()) / agingInterval;
+    } else {
+      weight = (double) waitTime / agingInterval - DEFAULT_SLACK;
+    }
+    return entity.getPriority() + weight;
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.queue.policy;
+
+import com.arialyy.aria.core.common.AbsEntity;
+
+/**
+ * 先进先出，等待时间最长的任务先执行，缓存池默认的调度策略
+ */
+final class FifoPolicy implements IQueuePolicy {
+
+  @Override
+  public double getWeight(AbsEntity entity, long waitTime, long now, long agingInterval) {
+    return waitTime;
+  }
+}
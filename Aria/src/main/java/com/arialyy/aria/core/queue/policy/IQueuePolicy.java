@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.queue.policy;
+
+import com.arialyy.aria.core.common.AbsEntity;
+
+/**
+ * 缓存池调度策略，缓存池会优先取出权重最大的任务，权重相同时，按任务进入缓存池的顺序取出
+ */
+public interface IQueuePolicy {
+
+  /**
+   * 计算任务的调度权重
+   *
+   * @param entity 任务实体
+   * @param waitTime 任务在缓存池中的等待时间，单位：毫秒
+   * @param now 当前时间，单位：毫秒
+   * @param agingInterval 老化间隔，单位：毫秒，任务每等待一个老化间隔，权重应该提升1
+   * @return 任务权重
+   */
+  double getWeight(AbsEntity entity, long waitTime, long now, long agingInterval);
+}
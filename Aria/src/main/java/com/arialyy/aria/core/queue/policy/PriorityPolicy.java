@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.queue.policy;
+
+import com.arialyy.aria.core.common.AbsEntity;
+
+/**
+ * 优先级调度，优先级高的任务先执行，同一优先级的任务按等待时间执行
+ * 任务每等待一个老化间隔，优先级提升1，防止低优先级任务饿死
+ */
+final class PriorityPolicy implements IQueuePolicy {
+
+  @Override
+  public double getWeight(AbsEntity entity, long waitTime, long now, long agingInterval) {
+    return entity.getPriority() + (double) waitTime / agingInterval;
+  }
+}
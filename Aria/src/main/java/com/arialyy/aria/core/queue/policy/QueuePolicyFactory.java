@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.queue.policy;
+
+import android.text.TextUtils;
+import com.arialyy.aria.util.ALog;
+
+/**
+ * 缓存池调度策略工厂
+ */
+public class QueuePolicyFactory {
+  private static final String TAG = "QueuePolicyFactory";
+  public static final String FIFO = "fifo";
+  public static final String PRIORITY = "priority";
+  public static final String SJF = "sjf";
+  public static final String DEADLINE = "deadline";
+
+  private static final IQueuePolicy FIFO_POLICY = new FifoPolicy();
+  private static final IQueuePolicy PRIORITY_POLICY = new PriorityPolicy();
+  private static final IQueuePolicy SJF_POLICY = new ShortestFirstPolicy();
+  private static final IQueuePolicy DEADLINE_POLICY = new DeadlinePolicy();
+
+  /**
+   * 根据配置获取调度策略，无法识别的策略将使用fifo
+   *
+   * @param policy fifo、priority、sjf、deadline
+   */
+  public static IQueuePolicy getPolicy(String policy) {
+    if (TextUtils.isEmpty(policy)) {
+      return FIFO_POLICY;
+    }
+    switch (policy.toLowerCase()) {
+      case FIFO:
+        return FIFO_POLICY;
+      case PRIORITY:
+        return PRIORITY_POLICY;
+      case SJF:
+        return SJF_POLICY;
+      case DEADLINE:
+        return DEADLINE_POLICY;
+      default:
+        ALog.w(TAG, String.format("无法识别的调度策略【%s】，将使用fifo", policy));
+        return FIFO_POLICY;
+    }
+  }
+
+  /**
+   * 是否是先进先出策略
+   */
+  public static boolean isFifo(IQueuePolicy policy) {
+    return policy == null || policy == FIFO_POLICY;
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.queue.policy;
+
+import com.arialyy.aria.core.common.AbsEntity;
+
+/**
+ * 最短预期时间优先，剩余长度越短的任务越先执行
+ * 剩余长度每增加一倍，权重降低1，相当于需要多等待一个老化间隔才能执行
+ */
+final class ShortestFirstPolicy implements IQueuePolicy {
+  /**
+   * 未知文件长度的任务，按64m估算
+   */
+  private static final long UNKNOWN_SIZE = 64 * 1024 * 1024;
+
+  private static final double LN2 = Math.log(2);
+
+  @Override
+  public double getWeight(AbsEntity entity, long waitTime, long now, long agingInterval) {
+    long remain = entity.getFileSize() > 0
+        ? Math.max(entity.getFileSize() - entity.getCurrentProgress(), 1)
+        : UNKNOWN_SIZE;
+    return entity.getPriority()
+        + (double) waitTime / agingInterval
+        - Math.log(remain) / LN2;
+  }
+}
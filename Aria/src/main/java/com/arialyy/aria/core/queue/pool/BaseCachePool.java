@@ -17,12 +17,18 @@
 package com.arialyy.aria.core.queue.pool;
 
 import android.text.TextUtils;
+import com.arialyy.aria.core.queue.policy.IQueuePolicy;
+import com.arialyy.aria.core.queue.policy.QueuePolicyFactory;
 import com.arialyy.aria.core.task.AbsTask;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.LinkedBlockingDeque;
 
 /**
@@ -33,6 +39,14 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
   private static final int MAX_NUM = Integer.MAX_VALUE;  //最大下载任务数
   private static final Object LOCK = new Object();
   private Deque<TASK> mCacheQueue;
+  /**
+   * 任务进入缓存池的时间，key为任务key
+   */
+  private Map<String, Long> mEnqueueTimes = new HashMap<>();
+  /**
+   * 通过{@link #putTaskToFirst(AbsTask)}放在队首的任务，这些任务不参与调度策略，会最先被取出
+   */
+  private Set<String> mFirstKeys = new HashSet<>();
 
   BaseCachePool() {
     mCacheQueue = new LinkedBlockingDeque<>(MAX_NUM);
@@ -49,14 +63,32 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
    * 清除所有缓存的任务
    */
   public void clear() {
-    mCacheQueue.clear();
+    synchronized (LOCK) {
+      mCacheQueue.clear();
+      mEnqueueTimes.clear();
+      mFirstKeys.clear();
+    }
   }
 
   /**
    * 将任务放在队首
    */
   public boolean putTaskToFirst(TASK task) {
-    return mCacheQueue.offerFirst(task);
+    synchronized (LOCK) {
+      if (task == null) {
+        ALog.e(TAG, "任务不能为空！！");
+        return false;
+      }
+      mCacheQueue.remove(task);
+      boolean s = mCacheQueue.offerFirst(task);
+      if (s) {
+        if (!mEnqueueTimes.containsKey(task.getKey())) {
+          mEnqueueTimes.put(task.getKey(), System.currentTimeMillis());
+        }
+        mFirstKeys.add(task.getKey());
+      }
+      return s;
+    }
   }
 
   @Override public boolean putTask(TASK task) {
@@ -70,18 +102,98 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
         return false;
       } else {
         boolean s = mCacheQueue.offer(task);
+        if (s) {
+          mEnqueueTimes.put(task.getKey(), System.currentTimeMillis());
+        }
         ALog.d(TAG, "任务【" + task.getTaskName() + "】进入缓存队列" + (s ? "成功" : "失败"));
         return s;
       }
     }
   }
 
+  /**
+   * 批量添加任务，所有任务在同一次加锁中进入缓存池，已经在缓存池中的任务会被忽略
+   *
+   * @return 成功进入缓存池的任务
+   */
+  public List<TASK> putTasks(List<TASK> tasks) {
+    synchronized (LOCK) {
+      List<TASK> added = new ArrayList<>();
+      if (tasks == null || tasks.isEmpty()) {
+        return added;
+      }
+      long now = System.currentTimeMillis();
+      for (TASK task : tasks) {
+        if (task == null || mEnqueueTimes.containsKey(task.getKey())) {
+          continue;
+        }
+        if (mCacheQueue.offer(task)) {
+          mEnqueueTimes.put(task.getKey(), now);
+          added.add(task);
+        }
+      }
+      ALog.d(TAG, String.format("批量添加任务，%s个任务进入缓存队列，%s个任务被忽略", added.size(),
+          tasks.size() - added.size()));
+      return added;
+    }
+  }
+
   @Override public TASK pollTask() {
     synchronized (LOCK) {
-      return mCacheQueue.pollFirst();
+      TASK task = mCacheQueue.pollFirst();
+      if (task != null) {
+        onTaskRemoved(task.getKey());
+      }
+      return task;
+    }
+  }
+
+  /**
+   * 按照调度策略取出任务，通过{@link #putTaskToFirst(AbsTask)}放在队首的任务会最先被取出
+   *
+   * @param policy 调度策略，为null时按先进先出的原则取出任务
+   * @param agingInterval 老化间隔，单位：毫秒
+   * @return 返回null或者下载任务
+   */
+  public TASK pollTask(IQueuePolicy policy, long agingInterval) {
+    synchronized (LOCK) {
+      if (QueuePolicyFactory.isFifo(policy) || mCacheQueue.size() <= 1) {
+        return pollTask();
+      }
+      if (agingInterval <= 0) {
+        agingInterval = 1;
+      }
+      long now = System.currentTimeMillis();
+      TASK target = null;
+      double maxWeight = 0;
+      for (TASK task : mCacheQueue) {
+        String key = task.getKey();
+        if (mFirstKeys.contains(key)) {
+          target = task;
+          break;
+        }
+        Long enqueueTime = mEnqueueTimes.get(key);
+        long waitTime = enqueueTime == null ? 0 : Math.max(now - enqueueTime, 0);
+        double weight =
+            policy.getWeight(task.getTaskWrapper().getEntity(), waitTime, now, agingInterval);
+        if (target == null || weight > maxWeight) {
+          target = task;
+          maxWeight = weight;
+        }
+      }
+      if (target != null) {
+        mCacheQueue.remove(target);
+        onTaskRemoved(target.getKey());
+      }
+      return target;
     }
   }
 
+  private void onTaskRemoved(String key) {
+    mEnqueueTimes.remove(key);
+    mFirstKeys.remove(key);
+  }
+
   @Override public TASK getTask(String key) {
     synchronized (LOCK) {
       if (TextUtils.isEmpty(key)) {
@@ -107,7 +219,11 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
         ALog.e(TAG, "任务不能为空");
         return false;
       } else {
-        return mCacheQueue.remove(task);
+        boolean s = mCacheQueue.remove(task);
+        if (s) {
+          onTaskRemoved(task.getKey());
+        }
+        return s;
       }
     }
   }
@@ -118,7 +234,11 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
         ALog.e(TAG, "请传入有效的下载链接");
         return false;
       }
-      return mCacheQueue.remove(getTask(key));
+      boolean s = mCacheQueue.remove(getTask(key));
+      if (s) {
+        onTaskRemoved(key);
+      }
+      return s;
     }
   }
 
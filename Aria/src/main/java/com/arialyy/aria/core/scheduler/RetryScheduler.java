@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.scheduler;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.core.common.AbsEntity;
+import com.arialyy.aria.core.common.AbsNormalEntity;
+import com.arialyy.aria.core.download.DownloadGroupEntity;
+import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.listener.ISchedulers;
+import com.arialyy.aria.core.manager.TaskWrapperManager;
+import com.arialyy.aria.core.queue.ITaskQueue;
+import com.arialyy.aria.core.task.AbsTask;
+import com.arialyy.aria.core.task.ITask;
+import com.arialyy.aria.orm.DbEntity;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 失败任务的重试调度器，替代原来阻塞线程的失败处理方式。
+ * 1、所有重试都由Aria主线程的定时消息驱动，不占用额外线程；
+ * 2、重试间隔为指数退避加全抖动：random(0, min(上限, 重试间隔 * 2^(失败次数 - 1)))；
+ * 3、同一服务器共享重试预算，预算耗尽后的重试会被顺延；
+ * 4、同一服务器连续失败达到阈值后熔断，熔断期间失败的任务会被移出队列并挂起，让出的位置交给其它任务，
+ * 冷却结束后先放行一个探测任务，探测成功则恢复所有挂起的任务，探测失败则延长冷却时间。
+ * 除挂起列表外，所有状态只在主线程中读写，因此不需要加锁，统计数据使用原子变量，可以在任意线程读取；
+ * 挂起的任务不在队列中，停止、删除等命令需要从挂起列表中取出任务，因此挂起列表的读写需要持有{@link #mHosts}的锁。
+ */
+public class RetryScheduler<TASK extends ITask> {
+  private final String TAG = CommonUtil.getClassName(getClass());
+
+  private static volatile RetryScheduler INSTANCE;
+
+  private static final long MAX_RETRY_DELAY = 60 * 1000; // 退避间隔上限
+  private static final int BREAKER_THRESHOLD = 5; // 熔断阈值，同一服务器连续失败的次数
+  private static final long BREAKER_COOLDOWN = 30 * 1000; // 首次熔断的冷却时间
+  private static final long MAX_BREAKER_COOLDOWN = 10 * 60 * 1000; // 熔断冷却时间上限
+  private static final int RETRY_BUDGET = 20; // 每个服务器每分钟的重试预算
+  private static final long BUDGET_PERIOD = 60 * 1000;
+
+  private TaskSchedulers mSchedulers;
+  private Handler mHandler;
+  private final Random mRandom = new Random();
+  /**
+   * 等待重试的任务，key为任务的key
+   */
+  private final Map<String, Runnable> mScheduled = new HashMap<>();
+  /**
+   * 服务器状态，key为服务器地址
+   */
+  private final Map<String, HostState> mHosts = new HashMap<>();
+
+  private final AtomicLong mScheduledNum = new AtomicLong(0);
+  private final AtomicLong mExecutedNum = new AtomicLong(0);
+  private final AtomicLong mExhaustedNum = new AtomicLong(0);
+  private final AtomicLong mParkedNum = new AtomicLong(0);
+  private final AtomicLong mBreakerOpenNum = new AtomicLong(0);
+
+  static RetryScheduler init(TaskSchedulers schedulers) {
+    if (INSTANCE == null) {
+      synchronized (RetryScheduler.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new RetryScheduler(schedulers);
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  public static RetryScheduler getInstance() {
+    if (INSTANCE == null) {
+      TaskSchedulers.getInstance();
+    }
+    return INSTANCE;
+  }
+
+  private RetryScheduler(TaskSchedulers schedulers) {
+    mSchedulers = schedulers;
+    mHandler = AriaConfig.getInstance().getAriaHandler();
+  }
+
+  /**
+   * 提交失败的任务，任务会在退避时间后重试，如果服务器处于熔断状态，任务将被挂起
+   */
+  void offer(final TASK task) {
+    final String key = task.getKey();
+    if (mScheduled.containsKey(key)) {
+      return;
+    }
+    final ITaskQueue queue = mSchedulers.getQueue(task.getTaskType());
+    if (!task.isNeedRetry()) {
+      giveUp(queue, task);
+      return;
+    }
+    HostState host = getHostState(task);
+    host.failNum++;
+    long now = SystemClock.elapsedRealtime();
+    if (host.state == HostState.HALF_OPEN) {
+      // 探测任务失败，重新熔断
+      openBreaker(host);
+    } else if (host.state == HostState.CLOSED && host.failNum >= BREAKER_THRESHOLD) {
+      openBreaker(host);
+    }
+    if (host.state != HostState.CLOSED) {
+      park(queue, host, task);
+      return;
+    }
+
+    long delay = Math.max(getBackoff(task), host.acquire(now));
+    Runnable runnable = new Runnable() {
+      @Override public void run() {
+        mScheduled.remove(key);
+        execute(queue, task);
+      }
+    };
+    mScheduled.put(key, runnable);
+    mScheduledNum.incrementAndGet();
+    ALog.d(TAG, String.format("任务【%s】将在%sms后重试", task.getTaskName(), delay));
+    mHandler.postDelayed(runnable, delay);
+  }
+
+  /**
+   * 任务开始或完成，说明服务器已经恢复，关闭熔断并恢复挂起的任务
+   */
+  void onTaskSuccess(TASK task) {
+    String key = getHost(task);
+    HostState host;
+    synchronized (mHosts) {
+      host = mHosts.get(key);
+    }
+    if (host == null) {
+      return;
+    }
+    host.failNum = 0;
+    if (host.state != HostState.CLOSED) {
+      ALog.i(TAG, String.format("服务器【%s】已恢复", host.host));
+      host.state = HostState.CLOSED;
+      host.tripNum = 0;
+      releaseAll(host);
+    }
+    synchronized (mHosts) {
+      if (host.parked.isEmpty()) {
+        mHosts.remove(host.host);
+      }
+    }
+  }
+
+  /**
+   * 从挂起列表中取出任务，取出的任务交给调用者处理，不会再被自动恢复
+   *
+   * @param queue 任务所在的队列
+   * @param key 任务的key
+   * @return 没有挂起的任务，返回null
+   */
+  public TASK takeParkedTask(ITaskQueue queue, String key) {
+    synchronized (mHosts) {
+      for (HostState host : mHosts.values()) {
+        Iterator<TASK> iterator = host.parked.iterator();
+        while (iterator.hasNext()) {
+          TASK task = iterator.next();
+          if (task.getKey().equals(key) && mSchedulers.getQueue(task.getTaskType()) == queue) {
+            iterator.remove();
+            return task;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 取出队列所有挂起的任务，用于停止所有任务
+   *
+   * @param queue 任务所在的队列
+   */
+  public List<TASK> takeParkedTasks(ITaskQueue queue) {
+    List<TASK> tasks = new ArrayList<>();
+    synchronized (mHosts) {
+      for (HostState host : mHosts.values()) {
+        Iterator<TASK> iterator = host.parked.iterator();
+        while (iterator.hasNext()) {
+          TASK task = iterator.next();
+          if (mSchedulers.getQueue(task.getTaskType()) == queue) {
+            iterator.remove();
+            tasks.add(task);
+          }
+        }
+      }
+    }
+    return tasks;
+  }
+
+  private void execute(ITaskQueue queue, TASK task) {
+    if (task.isStop() || task.isCancel()) {
+      return;
+    }
+    HostState host = getHostState(task);
+    if (host.state != HostState.CLOSED) {
+      // 等待期间服务器被熔断
+      park(queue, host, task);
+      return;
+    }
+    AbsEntity entity = task.getTaskWrapper().getEntity();
+    if (entity.getFailNum() <= task.getTaskWrapper().getConfig().getReTryNum()) {
+      ALog.d(TAG, String.format("任务【%s】开始重试", task.getTaskName()));
+      mExecutedNum.incrementAndGet();
+      queue.reTryStart(task);
+    } else {
+      giveUp(queue, task);
+    }
+  }
+
+  private void giveUp(ITaskQueue queue, TASK task) {
+    mExhaustedNum.incrementAndGet();
+    queue.removeTaskFormQueue(task.getKey());
+    mSchedulers.startNextTask(queue, task.getSchedulerType());
+    TaskWrapperManager.getInstance().removeTaskWrapper(task.getTaskWrapper());
+  }
+
+  /**
+   * 挂起任务，任务被移出队列，让出的位置交给其它任务，任务状态保存为等待，并发送等待事件
+   */
+  private void park(ITaskQueue queue, HostState host, TASK task) {
+    ALog.w(TAG, String.format("服务器【%s】已熔断，任务【%s】被挂起", host.host, task.getTaskName()));
+    mParkedNum.incrementAndGet();
+    queue.removeTaskFormQueue(task.getKey());
+    AbsEntity entity = task.getTaskWrapper().getEntity();
+    entity.setState(IEntity.STATE_WAIT);
+    entity.update();
+    synchronized (mHosts) {
+      if (!host.parked.contains(task)) {
+        host.parked.add(task);
+      }
+    }
+    ((AbsTask) task).getOutHandler().obtainMessage(ISchedulers.WAIT, task).sendToTarget();
+    mSchedulers.startNextTask(queue, task.getSchedulerType());
+  }
+
+  private void openBreaker(HostState host) {
+    host.state = HostState.OPEN;
+    host.tripNum++;
+    long cooldown = Math.min(MAX_BREAKER_COOLDOWN, BREAKER_COOLDOWN << Math.min(host.tripNum - 1, 10));
+    mBreakerOpenNum.incrementAndGet();
+    ALog.w(TAG, String.format("服务器【%s】连续失败%s次，熔断%sms", host.host, host.failNum, cooldown));
+    mHandler.removeCallbacks(host.probe);
+    mHandler.postDelayed(host.probe, cooldown);
+  }
+
+  /**
+   * 冷却结束，放行一个探测任务
+   */
+  private void probe(HostState host) {
+    if (host.state != HostState.OPEN) {
+      return;
+    }
+    host.state = HostState.HALF_OPEN;
+    while (true) {
+      TASK task;
+      synchronized (mHosts) {
+        if (host.parked.isEmpty()) {
+          break;
+        }
+        task = host.parked.get(0);
+      }
+      if (release(host, task)) {
+        ALog.d(TAG, String.format("服务器【%s】冷却结束，任务【%s】开始探测", host.host, task.getTaskName()));
+        return;
+      }
+    }
+    // 没有可以探测的任务，下一个失败的任务将作为探测任务
+    host.state = HostState.CLOSED;
+    host.failNum = BREAKER_THRESHOLD - 1;
+  }
+
+  private void releaseAll(final HostState host) {
+    List<TASK> tasks;
+    synchronized (mHosts) {
+      tasks = new ArrayList<>(host.parked);
+    }
+    long base = MAX_RETRY_DELAY;
+    for (final TASK task : tasks) {
+      base = Math.min(base, task.getTaskWrapper().getConfig().getReTryInterval());
+    }
+    for (final TASK task : tasks) {
+      // 恢复的任务同样加入抖动，避免同时请求服务器
+      mHandler.postDelayed(new Runnable() {
+        @Override public void run() {
+          release(host, task);
+        }
+      }, randomDelay(base));
+    }
+  }
+
+  /**
+   * 将挂起的任务重新放回队列，有空闲位置则直接启动。
+   * 等待恢复的任务依然保留在挂起列表中，如果期间被停止或删除命令取出，则不再恢复
+   *
+   * @return true 任务已放回队列
+   */
+  private boolean release(HostState host, TASK task) {
+    synchronized (mHosts) {
+      if (!host.parked.remove(task)) {
+        return false;
+      }
+      if (host.parked.isEmpty() && host.state == HostState.CLOSED
+          && mHosts.get(host.host) == host) {
+        mHosts.remove(host.host);
+      }
+    }
+    if (task.isStop() || task.isCancel()) {
+      return false;
+    }
+    AbsEntity entity = task.getTaskWrapper().getEntity();
+    AbsEntity dbEntity =
+        DbEntity.findFirst(entity.getClass(), "rowid=?", String.valueOf(entity.getId()));
+    if (dbEntity == null || dbEntity.getState() != IEntity.STATE_WAIT) {
+      ALog.d(TAG, String.format("任务【%s】已停止或已删除，不再恢复", task.getTaskName()));
+      return false;
+    }
+    ITaskQueue queue = mSchedulers.getQueue(task.getTaskType());
+    if (queue.taskExists(task.getTaskWrapper())) {
+      // 任务已被重新创建，或者已经被放回等待列表
+      return false;
+    }
+    ITask newTask = queue.createTask(task.getTaskWrapper());
+    if (newTask == null) {
+      return false;
+    }
+    if (queue.getCurrentExePoolNum() < queue.getMaxTaskNum()) {
+      queue.startTask(newTask);
+    }
+    return true;
+  }
+
+  /**
+   * 指数退避加全抖动
+   */
+  private long getBackoff(TASK task) {
+    long base = Math.max(1, task.getTaskWrapper().getConfig().getReTryInterval());
+    int failNum = Math.max(1, task.getTaskWrapper().getEntity().getFailNum());
+    long cap = Math.max(base, MAX_RETRY_DELAY);
+    long backoff = base << Math.min(failNum - 1, 20);
+    return randomDelay(backoff <= 0 ? cap : Math.min(cap, backoff));
+  }
+
+  private long randomDelay(long max) {
+    return max <= 0 ? 0 : (long) (mRandom.nextDouble() * max);
+  }
+
+  private HostState getHostState(TASK task) {
+    String key = getHost(task);
+    synchronized (mHosts) {
+      HostState host = mHosts.get(key);
+      if (host == null) {
+        host = new HostState(key);
+        mHosts.put(key, host);
+      }
+      return host;
+    }
+  }
+
+  /**
+   * 获取任务所在的服务器，无法解析地址时使用任务的key，即每个任务单独统计
+   */
+  private String getHost(TASK task) {
+    AbsEntity entity = task.getTaskWrapper().getEntity();
+    String url = null;
+    if (entity instanceof AbsNormalEntity) {
+      url = ((AbsNormalEntity) entity).getUrl();
+    } else if (entity instanceof DownloadGroupEntity) {
+      DownloadGroupEntity groupEntity = (DownloadGroupEntity) entity;
+      if (groupEntity.getSubEntities() != null && !groupEntity.getSubEntities().isEmpty()) {
+        url = groupEntity.getSubEntities().get(0).getUrl();
+      }
+    }
+    if (!TextUtils.isEmpty(url)) {
+      try {
+        String host = new URL(url).getHost();
+        if (!TextUtils.isEmpty(host)) {
+          return host;
+        }
+      } catch (Exception e) {
+        // ftp、sftp等协议无法通过URL解析，直接截取地址
+        int start = url.indexOf("://");
+        if (start != -1) {
+          int end = url.indexOf('/', start + 3);
+          return end == -1 ? url.substring(start + 3) : url.substring(start + 3, end);
+        }
+      }
+    }
+    return task.getKey();
+  }
+
+  /**
+   * 已经安排的重试次数
+   */
+  public long getScheduledNum() {
+    return mScheduledNum.get();
+  }
+
+  /**
+   * 已经执行的重试次数
+   */
+  public long getExecutedNum() {
+    return mExecutedNum.get();
+  }
+
+  /**
+   * 重试次数用尽或不需要重试而放弃的任务数
+   */
+  public long getExhaustedNum() {
+    return mExhaustedNum.get();
+  }
+
+  /**
+   * 因为熔断而被挂起的次数
+   */
+  public long getParkedNum() {
+    return mParkedNum.get();
+  }
+
+  /**
+   * 熔断次数
+   */
+  public long getBreakerOpenNum() {
+    return mBreakerOpenNum.get();
+  }
+
+  /**
+   * 当前挂起的任务数
+   */
+  public int getCurrentParkedNum() {
+    int num = 0;
+    synchronized (mHosts) {
+      Iterator<HostState> iterator = mHosts.values().iterator();
+      while (iterator.hasNext()) {
+        num += iterator.next().parked.size();
+      }
+    }
+    return num;
+  }
+
+  private class HostState {
+    static final int CLOSED = 0;
+    static final int OPEN = 1;
+    static final int HALF_OPEN = 2;
+
+    final String host;
+    int state = CLOSED;
+    int failNum; // 连续失败次数
+    int tripNum; // 连续熔断次数
+    double tokens = RETRY_BUDGET;
+    long refillTime = SystemClock.elapsedRealtime();
+    final List<TASK> parked = new ArrayList<>();
+    final Runnable probe = new Runnable() {
+      @Override public void run() {
+        probe(HostState.this);
+      }
+    };
+
+    HostState(String host) {
+      this.host = host;
+    }
+
+    /**
+     * 从重试预算中取出一次重试机会
+     *
+     * @return 预算不足时需要顺延的时间
+     */
+    long acquire(long now) {
+      double rate = RETRY_BUDGET / (double) BUDGET_PERIOD;
+      tokens = Math.min(RETRY_BUDGET, tokens + (now - refillTime) * rate);
+      refillTime = now;
+      tokens -= 1;
+      return tokens >= 0 ? 0 : (long) (-tokens / rate);
+    }
+  }
+}
@@ -51,7 +51,7 @@ public class TaskSchedulers<TASK extends ITask> implements ISchedulers {
   private final String TAG = CommonUtil.getClassName(getClass());
 
   private static volatile TaskSchedulers INSTANCE;
-  private static FailureTaskHandler mFailureTaskHandler;
+  private static RetryScheduler mRetryScheduler;
 
   private Map<String, Map<TaskEnum, Object>> mObservers = new ConcurrentHashMap<>();
   private AriaConfig mAriaConfig;
@@ -65,7 +65,7 @@ public class TaskSchedulers<TASK extends ITask> implements ISchedulers {
       synchronized (TaskSchedulers.class) {
         if (INSTANCE == null) {
           INSTANCE = new TaskSchedulers();
-          mFailureTaskHandler = FailureTaskHandler.init(INSTANCE);
+          mRetryScheduler = RetryScheduler.init(INSTANCE);
         }
       }
     }
@@ -336,6 +336,10 @@ public class TaskSchedulers<TASK extends ITask> implements ISchedulers {
         break;
     }
 
+    if (what == START || what == COMPLETE) {
+      mRetryScheduler.onTaskSuccess(task);
+    }
+
     if (what == FAIL || what == CHECK_FAIL) {
       return;
     }
@@ -538,7 +542,7 @@ public class TaskSchedulers<TASK extends ITask> implements ISchedulers {
       return;
     }
 
-    mFailureTaskHandler.offer(task);
+    mRetryScheduler.offer(task);
   }
 
   /**
@@ -37,6 +37,8 @@ import com.arialyy.aria.core.upload.target.HttpBuilderTarget;
 import com.arialyy.aria.core.upload.target.HttpNormalTarget;
 import com.arialyy.aria.core.upload.target.UTargetFactory;
 import com.arialyy.aria.orm.DbEntity;
+import com.arialyy.aria.orm.EntityCursor;
+import com.arialyy.aria.orm.Query;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CheckUtil;
 import com.arialyy.aria.util.ComponentUtil;
@@ -222,6 +224,52 @@ public class UploadReceiver extends AbsReceiver {
         "isGroupChild=? and downloadPath!='' and isComplete=?", "false", "true");
   }
 
+  /**
+   * 流式读取所有上传任务，任务记录很多时使用，内存占用不会随任务数量增长，
+   * 读取完成后需要关闭游标，详见{@link EntityCursor}
+   */
+  public EntityCursor<UploadEntity> iterateTaskList() {
+    return DbEntity.iterateData(UploadEntity.class);
+  }
+
+  /**
+   * 游标分页获取上传任务，按任务id升序排列，翻页的耗时不会随页数增加
+   *
+   * @param lastId 上一页最后一个任务的{@link UploadEntity#getId()}，小于0时获取第一页
+   * @param num 每页数量，不能小于1
+   * @return 没有数据返回空列表
+   */
+  public List<UploadEntity> getTaskListAfter(long lastId, int num) {
+    CheckUtil.checkPageParams(1, num);
+    return DbEntity.findDatasAfter(UploadEntity.class, lastId, num);
+  }
+
+  /**
+   * 流式读取所有已经完成的上传任务，按完成时间倒序排列，读取完成后需要关闭游标，详见{@link EntityCursor}
+   */
+  public EntityCursor<UploadEntity> iterateCompleteTask() {
+    return completeQuery(null).iterate();
+  }
+
+  /**
+   * 游标分页获取已经完成的上传任务，按完成时间倒序排列，翻页的耗时不会随页数增加
+   *
+   * @param last 上一页的最后一个任务，为null时获取第一页
+   * @param num 每页数量，不能小于1
+   * @return 没有数据返回空列表
+   */
+  public List<UploadEntity> getCompleteTaskAfter(UploadEntity last, int num) {
+    CheckUtil.checkPageParams(1, num);
+    return completeQuery(last).limit(num).find();
+  }
+
+  private Query<UploadEntity> completeQuery(UploadEntity last) {
+    return Query.of(UploadEntity.class)
+        .where("isGroupChild=? and isComplete=?", "false", "true")
+        .after("completeTime", false, last == null ? null : last.getCompleteTime(),
+            last == null ? -1 : last.getId());
+  }
+
   /**
    * 停止所有正在下载的任务，并清空等待队列。
    */
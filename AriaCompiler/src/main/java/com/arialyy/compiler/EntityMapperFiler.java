@@ -0,0 +1,529 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.compiler;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * 数据库实体映射器文件，规则和DelegateUpdate、DelegateFind中的反射读写保持一致：
+ * 1、只扫描实体类和它的两级父类中的字段；
+ * 2、忽略static、final、rowID、shadow$_klass_、shadow$_monitor_和{@code @Ignore}注解的字段；
+ * 3、只支持String、int、long、float、double、boolean、byte[]、{@code List<String>}、{@code Map<String, String>}，
+ * 实体中有其它类型的字段时不生成映射器，继续使用反射。
+ *
+ * <pre>
+ *   <code>
+ * public final class ThreadRecord$$EntityMapper extends AbsEntityMapper<ThreadRecord> {
+ *   private static final String[] COLUMNS = new String[] {"taskKey", "startLocation"};
+ *
+ *   public ThreadRecord$$EntityMapper() {
+ *     super(COLUMNS, "rowid");
+ *   }
+ *
+ *   protected ContentValues toContentValues(ThreadRecord entity) {
+ *     ContentValues values = new ContentValues();
+ *     String v0 = entity.taskKey;
+ *     if (!isEmpty(v0)) values.put("taskKey", v0);
+ *     values.put("startLocation", String.valueOf(entity.startLocation));
+ *     return values;
+ *   }
+ *
+ *   protected ThreadRecord fromCursor(Cursor cursor, int[] index) {
+ *     ThreadRecord entity = new ThreadRecord();
+ *     ...
+ *     return entity;
+ *   }
+ * }
+ *   </code>
+ * </pre>
+ */
+final class EntityMapperFiler {
+  private static final String ORM_PACKAGE = "com.arialyy.aria.orm";
+  private static final String DB_ENTITY = ORM_PACKAGE + ".DbEntity";
+  private static final String IGNORE = ORM_PACKAGE + ".annotation.Ignore";
+  private static final String PRIMARY = ORM_PACKAGE + ".annotation.Primary";
+  private static final String MAPPER_SUFFIX = "$$EntityMapper";
+  private static final int MAX_LEVEL = 2; // 和CommonUtil.getAllFields一样，最多扫描两级父类
+
+  private static final ClassName ABS_MAPPER = ClassName.get(ORM_PACKAGE, "AbsEntityMapper");
+  private static final ClassName CONTENT_VALUES = ClassName.get("android.content", "ContentValues");
+  private static final ClassName CURSOR = ClassName.get("android.database", "Cursor");
+  private static final TypeName STRING_LIST =
+      ParameterizedTypeName.get(List.class, String.class);
+  private static final TypeName STRING_MAP =
+      ParameterizedTypeName.get(Map.class, String.class, String.class);
+
+  private enum Kind {
+    STRING, INT, LONG, FLOAT, DOUBLE, BOOLEAN, BYTES, LIST, MAP
+  }
+
+  private Filer mFiler;
+  private Elements mElements;
+  private Types mTypes;
+  /**
+   * 已经生成映射器的实体，一个实体只生成一次
+   */
+  private Set<String> mCreated = new HashSet<>();
+
+  EntityMapperFiler(Filer filer, Elements elements, Types types) {
+    mFiler = filer;
+    mElements = elements;
+    mTypes = types;
+  }
+
+  /**
+   * 为扫描到的实体创建映射器文件
+   */
+  void createMapperFiles(Set<? extends Element> rootElements) {
+    TypeElement dbEntity = mElements.getTypeElement(DB_ENTITY);
+    if (dbEntity == null) {
+      return;
+    }
+    TypeMirror dbEntityType = mTypes.erasure(dbEntity.asType());
+    List<TypeElement> types = new ArrayList<>();
+    for (Element element : rootElements) {
+      collectTypes(element, types);
+    }
+    for (TypeElement type : types) {
+      if (type.equals(dbEntity)
+          || !mTypes.isSubtype(mTypes.erasure(type.asType()), dbEntityType)
+          || !mCreated.add(type.getQualifiedName().toString())) {
+        continue;
+      }
+      try {
+        createMapperFile(type);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private void collectTypes(Element element, List<TypeElement> types) {
+    if (element.getKind() != ElementKind.CLASS) {
+      return;
+    }
+    types.add((TypeElement) element);
+    for (TypeElement child : ElementFilter.typesIn(element.getEnclosedElements())) {
+      collectTypes(child, types);
+    }
+  }
+
+  private void createMapperFile(TypeElement type) throws IOException {
+    if (!canInstance(type)) {
+      return;
+    }
+    List<FieldInfo> fields = getFields(type);
+    if (fields == null) {
+      PrintLog.getInstance()
+          .info(String.format("实体【%s】中有不支持的字段类型，将使用反射读写", type.getQualifiedName()));
+      return;
+    }
+    String pkg = mElements.getPackageOf(type).getQualifiedName().toString();
+    String binaryName = mElements.getBinaryName(type).toString();
+    String mapperName =
+        (pkg.isEmpty() ? binaryName : binaryName.substring(pkg.length() + 1)) + MAPPER_SUFFIX;
+    ClassName entityName = ClassName.get(type);
+
+    String rowIdColumn = "rowid";
+    CodeBlock.Builder columns = CodeBlock.builder().add("new String[] {");
+    for (int i = 0, len = fields.size(); i < len; i++) {
+      FieldInfo info = fields.get(i);
+      columns.add(i == 0 ? "$S" : ", $S", info.name);
+      if (info.isPrimary && info.kind == Kind.INT) {
+        rowIdColumn = info.name;
+      }
+    }
+    columns.add("}");
+
+    TypeSpec.Builder builder = TypeSpec.classBuilder(mapperName)
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .superclass(ParameterizedTypeName.get(ABS_MAPPER, entityName))
+        .addField(FieldSpec.builder(String[].class, "COLUMNS", Modifier.PRIVATE, Modifier.STATIC,
+            Modifier.FINAL).initializer(columns.build()).build());
+    for (FieldInfo info : fields) {
+      if (!info.isDirect) {
+        builder.addField(FieldSpec.builder(Field.class, info.fieldConstant(), Modifier.PRIVATE,
+            Modifier.STATIC, Modifier.FINAL)
+            .initializer("getField($T.class, $L, $S)", entityName, info.level, info.name)
+            .build());
+      }
+    }
+    builder.addMethod(MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addStatement("super(COLUMNS, $S)", rowIdColumn)
+        .build());
+    builder.addMethod(createToValuesMethod(entityName, fields));
+    builder.addMethod(createFromCursorMethod(entityName, fields));
+
+    JavaFile jf = JavaFile.builder(pkg, builder.build())
+        .addFileComment("该文件由AriaCompiler生成，请勿修改")
+        .build();
+    if (ProxyConstance.DEBUG) {
+      jf.writeTo(System.out);
+    } else {
+      jf.writeTo(mFiler);
+    }
+  }
+
+  private MethodSpec createToValuesMethod(ClassName entityName, List<FieldInfo> fields) {
+    MethodSpec.Builder builder = MethodSpec.methodBuilder("toContentValues")
+        .addAnnotation(Override.class)
+        .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+            .addMember("value", "$S", "unchecked")
+            .build())
+        .addModifiers(Modifier.PROTECTED)
+        .returns(CONTENT_VALUES)
+        .addParameter(entityName, "entity")
+        .addException(IllegalAccessException.class)
+        .addStatement("$T values = new $T()", CONTENT_VALUES, CONTENT_VALUES);
+    int i = 0;
+    for (FieldInfo info : fields) {
+      if (info.isAutoincrement) {
+        continue;
+      }
+      String var = "v" + i++;
+      switch (info.kind) {
+        case STRING:
+          builder.addStatement("$T $L = $L", String.class, var, info.read(String.class));
+          builder.addStatement("if (!isEmpty($L)) values.put($S, $L)", var, info.name, var);
+          break;
+        case BYTES:
+          builder.addStatement("$T $L = $L", byte[].class, var, info.read(byte[].class));
+          builder.addStatement("if ($L != null) values.put($S, $L)", var, info.name, var);
+          break;
+        case LIST:
+          builder.addStatement("$T $L = $L", STRING_LIST, var, info.read(STRING_LIST));
+          builder.addStatement("if ($L != null && !$L.isEmpty()) values.put($S, list2Str($L))",
+              var, var, info.name, var);
+          break;
+        case MAP:
+          builder.addStatement("$T $L = $L", STRING_MAP, var, info.read(STRING_MAP));
+          builder.addStatement("if ($L != null && !$L.isEmpty()) values.put($S, map2Str($L))",
+              var, var, info.name, var);
+          break;
+        default:
+          builder.addStatement("values.put($S, $T.valueOf($L))", info.name, String.class,
+              info.read(null));
+          break;
+      }
+    }
+    return builder.addStatement("return values").build();
+  }
+
+  private MethodSpec createFromCursorMethod(ClassName entityName, List<FieldInfo> fields) {
+    MethodSpec.Builder builder = MethodSpec.methodBuilder("fromCursor")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PROTECTED)
+        .returns(entityName)
+        .addParameter(CURSOR, "cursor")
+        .addParameter(int[].class, "index")
+        .addException(IllegalAccessException.class)
+        .addStatement("$T entity = new $T()", entityName, entityName);
+    for (int i = 0, len = fields.size(); i < len; i++) {
+      FieldInfo info = fields.get(i);
+      String column = "index[" + i + "]";
+      builder.beginControlFlow("if ($L != -1)", column);
+      switch (info.kind) {
+        case STRING:
+        case LIST:
+        case MAP:
+          String var = "v" + i;
+          builder.addStatement("$T $L = cursor.getString($L)", String.class, var, column);
+          String value = info.kind == Kind.STRING ? var
+              : info.kind == Kind.LIST ? "str2List(" + var + ")" : "str2Map(" + var + ")";
+          builder.addStatement("if (!isEmpty($L)) $L", var, info.write(value));
+          break;
+        case BYTES:
+          builder.addStatement("$L", info.write("cursor.getBlob(" + column + ")"));
+          break;
+        case INT:
+          builder.addStatement("$L", info.write("cursor.getInt(" + column + ")"));
+          break;
+        case LONG:
+          builder.addStatement("$L", info.write("cursor.getLong(" + column + ")"));
+          break;
+        case FLOAT:
+          builder.addStatement("$L", info.write("cursor.getFloat(" + column + ")"));
+          break;
+        case DOUBLE:
+          builder.addStatement("$L", info.write("cursor.getDouble(" + column + ")"));
+          break;
+        case BOOLEAN:
+          builder.addStatement("$L", info.write("str2Boolean(cursor.getString(" + column + "))"));
+          break;
+      }
+      builder.endControlFlow();
+    }
+    return builder.addStatement("return entity").build();
+  }
+
+  /**
+   * 实体必须可以在它所在的包中通过无参构造函数创建
+   */
+  private boolean canInstance(TypeElement type) {
+    if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+      return false;
+    }
+    Element element = type;
+    while (element instanceof TypeElement) {
+      TypeElement temp = (TypeElement) element;
+      if (temp.getModifiers().contains(Modifier.PRIVATE)
+          || (temp.getNestingKind() == NestingKind.MEMBER && !temp.getModifiers()
+          .contains(Modifier.STATIC))) {
+        return false;
+      }
+      element = temp.getEnclosingElement();
+    }
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty() && !constructor.getModifiers()
+          .contains(Modifier.PRIVATE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 获取需要读写的字段，顺序和CommonUtil.getAllFields一致
+   *
+   * @return 有不支持的字段时返回null
+   */
+  private List<FieldInfo> getFields(TypeElement type) {
+    List<TypeElement> hierarchy = new ArrayList<>();
+    TypeElement temp = type;
+    for (int level = 0; level <= MAX_LEVEL && temp != null; level++) {
+      hierarchy.add(0, temp);
+      TypeMirror superType = temp.getSuperclass();
+      temp = superType.getKind() == TypeKind.DECLARED ? (TypeElement) mTypes.asElement(superType)
+          : null;
+    }
+    String pkg = mElements.getPackageOf(type).getQualifiedName().toString();
+    List<FieldInfo> fields = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+    for (int i = 0, size = hierarchy.size(); i < size; i++) {
+      TypeElement owner = hierarchy.get(i);
+      int level = size - 1 - i;
+      for (VariableElement field : ElementFilter.fieldsIn(owner.getEnclosedElements())) {
+        if (isIgnore(field)) {
+          continue;
+        }
+        Kind kind = getKind(field.asType());
+        String name = field.getSimpleName().toString();
+        if (kind == null || !names.add(name)) {
+          return null;
+        }
+        FieldInfo info = new FieldInfo();
+        info.name = name;
+        info.kind = kind;
+        info.level = level;
+        info.isDirect = isAccessible(owner, field, pkg);
+        AnnotationMirror primary = getAnnotation(field, PRIMARY);
+        info.isPrimary = primary != null;
+        info.isAutoincrement = primary != null && getBoolean(primary, "autoincrement");
+        fields.add(info);
+      }
+    }
+    return fields;
+  }
+
+  private boolean isIgnore(VariableElement field) {
+    Set<Modifier> modifiers = field.getModifiers();
+    String name = field.getSimpleName().toString();
+    if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)
+        || name.equals("rowID") || name.equals("shadow$_klass_") || name.equals(
+        "shadow$_monitor_")) {
+      return true;
+    }
+    AnnotationMirror ignore = getAnnotation(field, IGNORE);
+    return ignore != null && getBoolean(ignore, "value");
+  }
+
+  /**
+   * 映射器和实体在同一个包中，public字段和同一个包中的非private字段可以直接访问
+   */
+  private boolean isAccessible(TypeElement owner, VariableElement field, String pkg) {
+    Set<Modifier> modifiers = field.getModifiers();
+    if (modifiers.contains(Modifier.PRIVATE)) {
+      return false;
+    }
+    boolean samePkg = mElements.getPackageOf(owner).getQualifiedName().contentEquals(pkg);
+    if (!samePkg && !modifiers.contains(Modifier.PUBLIC)) {
+      return false;
+    }
+    Element element = owner;
+    while (element instanceof TypeElement) {
+      Set<Modifier> ownerModifiers = element.getModifiers();
+      if (ownerModifiers.contains(Modifier.PRIVATE) || (!samePkg && !ownerModifiers.contains(
+          Modifier.PUBLIC))) {
+        return false;
+      }
+      element = element.getEnclosingElement();
+    }
+    return true;
+  }
+
+  private Kind getKind(TypeMirror type) {
+    switch (type.getKind()) {
+      case INT:
+        return Kind.INT;
+      case LONG:
+        return Kind.LONG;
+      case FLOAT:
+        return Kind.FLOAT;
+      case DOUBLE:
+        return Kind.DOUBLE;
+      case BOOLEAN:
+        return Kind.BOOLEAN;
+      case ARRAY:
+        return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? Kind.BYTES : null;
+      case DECLARED:
+        DeclaredType declaredType = (DeclaredType) type;
+        String name =
+            ((TypeElement) declaredType.asElement()).getQualifiedName().toString();
+        List<? extends TypeMirror> args = declaredType.getTypeArguments();
+        if (name.equals(String.class.getName())) {
+          return Kind.STRING;
+        } else if (name.equals(List.class.getName()) && args.size() == 1 && isString(
+            args.get(0))) {
+          return Kind.LIST;
+        } else if (name.equals(Map.class.getName()) && args.size() == 2 && isString(args.get(0))
+            && isString(args.get(1))) {
+          return Kind.MAP;
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  private boolean isString(TypeMirror type) {
+    return type.getKind() == TypeKind.DECLARED && ((TypeElement) mTypes.asElement(type))
+        .getQualifiedName().contentEquals(String.class.getName());
+  }
+
+  private AnnotationMirror getAnnotation(Element element, String annotation) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+          .contentEquals(annotation)) {
+        return mirror;
+      }
+    }
+    return null;
+  }
+
+  private boolean getBoolean(AnnotationMirror mirror, String key) {
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mElements
+        .getElementValuesWithDefaults(mirror).entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(key)) {
+        return Boolean.TRUE.equals(entry.getValue().getValue());
+      }
+    }
+    return false;
+  }
+
+  private static class FieldInfo {
+    String name;
+    Kind kind;
+    int level;
+    boolean isDirect;
+    boolean isPrimary;
+    boolean isAutoincrement;
+
+    String fieldConstant() {
+      return "F_" + name;
+    }
+
+    /**
+     * 读取字段的表达式
+     *
+     * @param castType 对象类型字段通过反射读取时需要转换的类型
+     */
+    CodeBlock read(Object castType) {
+      if (isDirect) {
+        return CodeBlock.of("entity.$L", name);
+      }
+      switch (kind) {
+        case INT:
+          return CodeBlock.of("$L.getInt(entity)", fieldConstant());
+        case LONG:
+          return CodeBlock.of("$L.getLong(entity)", fieldConstant());
+        case FLOAT:
+          return CodeBlock.of("$L.getFloat(entity)", fieldConstant());
+        case DOUBLE:
+          return CodeBlock.of("$L.getDouble(entity)", fieldConstant());
+        case BOOLEAN:
+          return CodeBlock.of("$L.getBoolean(entity)", fieldConstant());
+        default:
+          return CodeBlock.of("($T) $L.get(entity)", castType, fieldConstant());
+      }
+    }
+
+    /**
+     * 设置字段的语句
+     */
+    String write(String value) {
+      if (isDirect) {
+        return String.format("entity.%s = %s", name, value);
+      }
+      switch (kind) {
+        case INT:
+          return String.format("%s.setInt(entity, %s)", fieldConstant(), value);
+        case LONG:
+          return String.format("%s.setLong(entity, %s)", fieldConstant(), value);
+        case FLOAT:
+          return String.format("%s.setFloat(entity, %s)", fieldConstant(), value);
+        case DOUBLE:
+          return String.format("%s.setDouble(entity, %s)", fieldConstant(), value);
+        case BOOLEAN:
+          return String.format("%s.setBoolean(entity, %s)", fieldConstant(), value);
+        default:
+          return String.format("%s.set(entity, %s)", fieldConstant(), value);
+      }
+    }
+  }
+}
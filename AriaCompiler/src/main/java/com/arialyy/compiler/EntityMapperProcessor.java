@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.compiler;
+
+import com.google.auto.service.AutoService;
+import java.util.Collections;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * 数据库实体扫描器，为所有非抽象的DbEntity子类生成实体映射器。
+ * 实体不需要注解，因此扫描所有的类，并且不占用任何注解，避免影响其它注解处理器。
+ */
+@AutoService(Processor.class) public class EntityMapperProcessor extends AbstractProcessor {
+  private EntityMapperFiler mFiler;
+
+  @Override public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    PrintLog.init(processingEnv.getMessager());
+    mFiler = new EntityMapperFiler(processingEnv.getFiler(), processingEnv.getElementUtils(),
+        processingEnv.getTypeUtils());
+  }
+
+  @Override public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton("*");
+  }
+
+  @Override public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    mFiler.createMapperFiles(roundEnv.getRootElements());
+    return false;
+  }
+}
@@ -94,10 +94,10 @@ public abstract class BaseM3U8Loader extends AbsNormalLoader<DTaskWrapper> {
           reader.readLine(); // 继续读一行，避免写入源索引文件的切片地址
           i++;
         } else if (line.startsWith("#EXT-X-KEY")) {
-          M3U8Entity m3U8Entity = getEntity().getM3U8Entity();
-          String keyInfo = String.format("#EXT-X-KEY:METHOD=%s,URI=%s,IV=%s\r\n", m3U8Entity.method,
-              m3U8Entity.keyPath, m3U8Entity.iv);
-          bytes = keyInfo.getBytes(Charset.forName("UTF-8"));
+          bytes = getKeyLine(mM3U8Option.getKeyTable().getKey(i)).getBytes(Charset.forName("UTF-8"));
+        } else if (line.startsWith("#EXT-X-MAP") && mM3U8Option.getMapInfo() != null) {
+          bytes = String.format("#EXT-X-MAP:URI=\"%s\"\r\n", mM3U8Option.getMapInfo().path)
+              .getBytes(Charset.forName("UTF-8"));
         } else {
           bytes = line.concat("\r\n").getBytes(Charset.forName("UTF-8"));
         }
@@ -133,6 +133,29 @@ public abstract class BaseM3U8Loader extends AbsNormalLoader<DTaskWrapper> {
     return false;
   }
 
+  /**
+   * 生成索引文件中的密钥信息，密钥对之后的切片生效，因此使用下一个切片的密钥
+   * 切片已在下载时解密的，密钥信息改为不加密
+   *
+   * @param keyInfo 切片使用的密钥，为空时使用实体中保存的密钥信息
+   */
+  private String getKeyLine(M3U8KeyInfo keyInfo) {
+    if (keyInfo == null) {
+      M3U8Entity m3U8Entity = getEntity().getM3U8Entity();
+      return String.format("#EXT-X-KEY:METHOD=%s,URI=%s,IV=%s\r\n", m3U8Entity.method,
+          m3U8Entity.keyPath, m3U8Entity.iv);
+    }
+    if (mM3U8Option.isDecrypt() && keyInfo.isAes128()) {
+      return "#EXT-X-KEY:METHOD=NONE\r\n";
+    }
+    if (TextUtils.isEmpty(keyInfo.iv)) {
+      return String.format("#EXT-X-KEY:METHOD=%s,URI=\"%s\"\r\n", keyInfo.method,
+          keyInfo.keyPath);
+    }
+    return String.format("#EXT-X-KEY:METHOD=%s,URI=\"%s\",IV=%s\r\n", keyInfo.method,
+        keyInfo.keyPath, keyInfo.iv);
+  }
+
   @Override public long getCurrentProgress() {
     return isRunning() ? getStateManager().getCurrentProgress() : getEntity().getCurrentProgress();
   }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+/**
+ * #EXT-X-BYTERANGE 标签的字节范围，切片只是资源文件中的一段数据
+ */
+public final class M3U8ByteRange {
+
+  /**
+   * 在资源文件中的开始位置
+   */
+  public long offset;
+
+  /**
+   * 数据长度
+   */
+  public long length;
+
+  public M3U8ByteRange(long offset, long length) {
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * 解析字节范围，格式：长度[@开始位置]
+   *
+   * @param value 标签值
+   * @param lastEnd 没有开始位置时，使用同一资源上一个字节范围的结束位置
+   * @return 格式错误时返回null
+   */
+  public static M3U8ByteRange parse(String value, long lastEnd) {
+    if (value == null) {
+      return null;
+    }
+    int index = value.indexOf('@');
+    try {
+      long length = Long.parseLong((index == -1 ? value : value.substring(0, index)).trim());
+      long offset = index == -1 ? lastEnd : Long.parseLong(value.substring(index + 1).trim());
+      if (length <= 0 || offset < 0) {
+        return null;
+      }
+      return new M3U8ByteRange(offset, length);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * 结束位置，不包含该位置
+   */
+  public long getEnd() {
+    return offset + length;
+  }
+
+  /**
+   * http请求头中Range的值
+   */
+  public String getRangeHeader() {
+    return String.format("bytes=%s-%s", offset, getEnd() - 1);
+  }
+
+  @Override public String toString() {
+    return length + "@" + offset;
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+import com.arialyy.aria.exception.AriaM3U8Exception;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-128 切片的流式解密，数据在写入ts文件前解密，不需要下载完成后再读写一遍
+ * Cipher不是线程安全的，每个下载线程缓存一个Cipher，切片开始时使用该切片的密钥和iv重新初始化
+ */
+final class M3U8Decryptor {
+  private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+  private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+
+  private final Cipher mCipher;
+
+  private M3U8Decryptor(Cipher cipher) {
+    mCipher = cipher;
+  }
+
+  /**
+   * 创建切片的解密器
+   *
+   * @param peerIndex 切片索引
+   * @return 没有开启解密或切片不需要解密时返回null
+   */
+  static M3U8Decryptor create(M3U8TaskOption option, int peerIndex) throws AriaM3U8Exception {
+    if (option == null || !option.isDecrypt()) {
+      return null;
+    }
+    M3U8KeyTable table = option.getKeyTable();
+    M3U8KeyInfo key = table.getKey(peerIndex);
+    // SAMPLE-AES 只加密了部分媒体数据，这里不处理
+    if (key == null || !key.isAes128()) {
+      return null;
+    }
+    try {
+      byte[] iv = key.iv == null ? sequenceToIv(table.getSequence(peerIndex)) : parseIv(key.iv);
+      Cipher cipher = CIPHER.get();
+      if (cipher == null) {
+        cipher = Cipher.getInstance(TRANSFORMATION);
+        CIPHER.set(cipher);
+      }
+      cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(table.getKeyData(key), "AES"),
+          new IvParameterSpec(iv));
+      return new M3U8Decryptor(cipher);
+    } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+      throw new AriaM3U8Exception(String.format("初始化切片【%s】的解密器失败", peerIndex), e);
+    }
+  }
+
+  /**
+   * 解密数据
+   *
+   * @return 解密后的数据，数据不足一个分组时返回null
+   */
+  byte[] update(byte[] data, int offset, int len) {
+    return mCipher.update(data, offset, len);
+  }
+
+  /**
+   * 结束解密，去除填充数据
+   */
+  byte[] doFinal() throws AriaM3U8Exception {
+    try {
+      return mCipher.doFinal();
+    } catch (GeneralSecurityException e) {
+      throw new AriaM3U8Exception("切片解密失败，请检查密钥是否正确", e);
+    }
+  }
+
+  /**
+   * 没有IV属性时，使用切片的媒体序列号作为iv，序列号以大端序填充到16字节中
+   */
+  private static byte[] sequenceToIv(long sequence) {
+    byte[] iv = new byte[16];
+    for (int i = 15; i >= 8; i--) {
+      iv[i] = (byte) sequence;
+      sequence >>>= 8;
+    }
+    return iv;
+  }
+
+  /**
+   * 解析十六进制的iv，如：0x1234...
+   */
+  private static byte[] parseIv(String value) {
+    String hex = value.trim();
+    if (hex.startsWith("0x") || hex.startsWith("0X")) {
+      hex = hex.substring(2);
+    }
+    if (hex.isEmpty() || hex.length() > 32) {
+      throw new IllegalArgumentException(String.format("iv格式错误，iv: %s", value));
+    }
+    byte[] iv = new byte[16];
+    int pos = 15;
+    for (int i = hex.length(); i > 0; i -= 2) {
+      iv[pos--] = (byte) Integer.parseInt(hex.substring(Math.max(0, i - 2), i), 16);
+    }
+    return iv;
+  }
+}
@@ -37,21 +37,22 @@ import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CheckUtil;
 import com.arialyy.aria.util.CommonUtil;
 import com.arialyy.aria.util.FileUtil;
-import com.arialyy.aria.util.Regular;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 解析url中获取到到m3u8文件信息
@@ -69,6 +70,88 @@ final public class M3U8InfoTask implements IInfoTask {
   private HttpTaskOption mHttpOption;
   private M3U8TaskOption mM3U8Option;
   private Callback mCallback;
+  /**
+   * 当前切片使用的密钥
+   */
+  private M3U8KeyInfo mCurKey;
+  /**
+   * 播放列表第一个切片的媒体序列号
+   */
+  private long mMediaSequence;
+  /**
+   * 当前切片的媒体序列号
+   */
+  private long mCurSequence;
+  /**
+   * 使用自定义密钥保存路径的密钥地址，密钥轮换时其它密钥保存在同一目录下
+   */
+  private String mCustomKeyPathUrl;
+  /**
+   * 直播播放列表的目标时长（#EXT-X-TARGETDURATION），单位秒
+   */
+  private long mTargetDuration;
+  /**
+   * 服务器是否支持阻塞式重载（#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES）
+   */
+  private boolean isCanBlockReload;
+  /**
+   * 服务器允许增量更新跳过的时长（#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL），单位秒，0表示不支持增量更新
+   */
+  private double mCanSkipUntil;
+  /**
+   * 已获取的播放列表中最后一个切片的媒体序列号
+   */
+  private long mLastSequence = -1;
+  /**
+   * 上一次获取的直播播放列表第一个切片的媒体序列号
+   */
+  private long mLastMediaSequence = -1;
+  /**
+   * 本次获取的直播播放列表的媒体序列号是否被服务器重置（如：编码器重启），
+   * 协议规定媒体序列号不能减小，减小时说明序列号重新开始计数
+   */
+  private boolean isSequenceReset = false;
+  /**
+   * 最后一次成功获取播放列表的时间
+   */
+  private long mLastLoadTime;
+  /**
+   * 最后一次获取播放列表是否成功
+   */
+  private boolean isLastLoadSucceed;
+  /**
+   * 播放列表是否有结束标志
+   */
+  private boolean isEndList;
+  /**
+   * 多码率播放列表中的所有码率
+   */
+  private List<M3U8Variant> mVariants;
+  /**
+   * 当前下载的码率
+   */
+  private M3U8Variant mVariant;
+  /**
+   * 是否已根据目标完成时间重新选择码率
+   */
+  private boolean isReSelected = false;
+  /**
+   * 上一个有字节范围的切片地址和结束位置，字节范围没有开始位置时使用
+   */
+  private String mLastRangeUrl;
+  private long mLastRangeEnd;
+  /**
+   * #EXT-X-MAP 初始化片段
+   */
+  private M3U8MapInfo mMapInfo;
+  /**
+   * 密钥和初始化片段的下载器，在资源缓存的线程池中调用
+   */
+  private final M3U8ResCache.Fetcher mFetcher = new M3U8ResCache.Fetcher() {
+    @Override public byte[] fetch(String url, M3U8ByteRange range) throws IOException {
+      return M3U8InfoTask.this.fetch(url, range);
+    }
+  };
   /**
    * 是否停止获取切片信息，{@code true}停止获取切片信息
    */
@@ -95,11 +178,17 @@ final public class M3U8InfoTask implements IInfoTask {
     Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
     TrafficStats.setThreadStatsTag(UUID.randomUUID().toString().hashCode());
     HttpURLConnection conn = null;
+    isLastLoadSucceed = false;
+    boolean isBlocking = isLiveReload() && isCanBlockReload;
     try {
-      URL url = ConnectionHelp.handleUrl(mEntity.getUrl(), mHttpOption);
+      URL url = ConnectionHelp.handleUrl(getRequestUrl(), mHttpOption);
       conn = ConnectionHelp.handleConnection(url, mHttpOption);
       ConnectionHelp.setConnectParam(mHttpOption, conn);
       conn.setConnectTimeout(mConnectTimeOut);
+      if (isBlocking) {
+        // 阻塞式重载时，服务器会等到有新切片才返回，读取超时需要大于目标时长的3倍
+        conn.setReadTimeout((int) Math.max(mConnectTimeOut, mTargetDuration * 3000 + 1000));
+      }
       conn.connect();
       handleConnect(conn);
     } catch (IOException e) {
@@ -109,99 +198,115 @@ final public class M3U8InfoTask implements IInfoTask {
         conn.disconnect();
       }
     }
+    if (isBlocking && !isLastLoadSucceed) {
+      // 序列号重置后，服务器无法返回请求的切片，下一次使用普通的重新加载
+      mLastSequence = -1;
+    }
   }
 
   @Override public void setCallback(Callback callback) {
     mCallback = callback;
   }
 
+  /**
+   * 是否是直播播放列表的重新加载
+   */
+  private boolean isLiveReload() {
+    return mTaskWrapper.getRequestType() == ITaskWrapper.M3U8_LIVE && mLastSequence >= 0;
+  }
+
+  /**
+   * 获取播放列表的请求地址
+   * 直播重新加载时直接请求已选择码率的播放列表，服务器支持低延迟扩展时，
+   * 使用_HLS_msn阻塞到下一个切片生成，使用_HLS_skip只获取增量更新
+   */
+  private String getRequestUrl() {
+    if (mTaskWrapper.getRequestType() != ITaskWrapper.M3U8_LIVE) {
+      return mEntity.getUrl();
+    }
+    String url = TextUtils.isEmpty(mM3U8Option.getBandWidthUrl()) ? mEntity.getUrl()
+        : mM3U8Option.getBandWidthUrl();
+    if (!isLiveReload()) {
+      return url;
+    }
+    StringBuilder sb = new StringBuilder(url);
+    char sep = url.contains("?") ? '&' : '?';
+    if (isCanBlockReload) {
+      sb.append(sep).append("_HLS_msn=").append(mLastSequence + 1);
+      sep = '&';
+    }
+    // 协议要求本地播放列表的时间不超过跳过时长的一半才能请求增量更新
+    if (mCanSkipUntil > 0
+        && System.currentTimeMillis() - mLastLoadTime < mCanSkipUntil * 1000 / 2) {
+      sb.append(sep).append("_HLS_skip=YES");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * 直播播放列表的目标时长，单位秒，没有该标签时为0
+   */
+  public long getTargetDuration() {
+    return mTargetDuration;
+  }
+
+  /**
+   * 服务器是否支持阻塞式重载
+   */
+  public boolean isCanBlockReload() {
+    return isCanBlockReload;
+  }
+
+  /**
+   * 最后一次获取播放列表是否成功
+   */
+  public boolean isLastLoadSucceed() {
+    return isLastLoadSucceed;
+  }
+
+  /**
+   * 播放列表是否有结束标志，直播结束后不需要再重新加载
+   */
+  public boolean isEndList() {
+    return isEndList;
+  }
+
   private void handleConnect(HttpURLConnection conn) throws IOException {
     int code = conn.getResponseCode();
     if (code == HttpURLConnection.HTTP_OK) {
       BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-      String line = reader.readLine();
-      if (TextUtils.isEmpty(line) || !line.equalsIgnoreCase("#EXTM3U")) {
-        failDownload("读取M3U8信息失败，读取不到#EXTM3U标签", false);
-        return;
-      }
-      List<String> extInf = new ArrayList<>();
       boolean isLive = mTaskWrapper.getRequestType() == ITaskWrapper.M3U8_LIVE;
-      boolean isGenerateIndexFile =
-          ((M3U8TaskOption) mTaskWrapper.getM3u8Option()).isGenerateIndexFile();
-      // 写入索引信息的流
-      FileOutputStream fos = null;
-      if (isGenerateIndexFile) {
-        String indexPath = String.format(M3U8_INDEX_FORMAT, mEntity.getFilePath());
-        File indexFile = new File(indexPath);
-        if (!indexFile.exists()) {
-          FileUtil.createFile(indexPath);
-        } else {
-          //FileUtil.deleteFile(indexPath);
-        }
-        fos = new FileOutputStream(indexFile);
-        ALog.d(TAG, line);
-        addIndexInfo(isGenerateIndexFile, fos, line);
+      mLastRangeUrl = null;
+      mLastRangeEnd = 0;
+      mMapInfo = null;
+      mCurKey = null;
+      mMediaSequence = 0;
+      isSequenceReset = false;
+      if (!isLive) {
+        mM3U8Option.getKeyTable().clear();
       }
-      while ((line = reader.readLine()) != null) {
-        if (isStop) {
-          break;
-        }
-        ALog.d(TAG, line);
-        if (line.startsWith("#EXT-X-ENDLIST")) {
-          // 点播文件的下载写入结束标志，直播文件的下载在停止时才写入结束标志
-          addIndexInfo(isGenerateIndexFile && !isLive, fos, line);
-          break;
-        } else if (line.startsWith("#EXTINF")) {
-          String url = reader.readLine();
-          if (isLive) {
-            if (onGetPeerCallback != null) {
-              onGetPeerCallback.onGetPeer(url, line);
-            }
-          } else {
-            extInf.add(url);
-          }
-          ALog.d(TAG, url);
-          addIndexInfo(isGenerateIndexFile && !isLive, fos, line);
-          addIndexInfo(isGenerateIndexFile && !isLive, fos, url);
-        } else if (line.startsWith("#EXT-X-STREAM-INF")) {
-          addIndexInfo(isGenerateIndexFile, fos, line);
-          int setBand = mM3U8Option.getBandWidth();
-          int bandWidth = getBandWidth(line);
-          // 多码率的m3u8配置文件，清空信息
-          //if (isGenerateIndexFile && mInfos != null) {
-          //  mInfos.clear();
-          //}
-          if (setBand == 0) {
-            handleBandWidth(conn, reader.readLine());
-          } else if (bandWidth == setBand) {
-            handleBandWidth(conn, reader.readLine());
-          } else {
-            failDownload(String.format("【%s】码率不存在", setBand), false);
-          }
-          return;
-        } else if (line.startsWith("#EXT-X-KEY")) {
-          addIndexInfo(isGenerateIndexFile, fos, line);
-          getKeyInfo(line);
-        } else {
-          addIndexInfo(isGenerateIndexFile, fos, line);
-        }
+      PlaylistHandler handler = new PlaylistHandler(isLive);
+      boolean isPlaylist;
+      try {
+        isPlaylist = M3U8Parser.parse(reader, handler);
+      } finally {
+        handler.closeIndex();
       }
-
-      if (!isLive && extInf.isEmpty()) {
-        failDownload(String.format("获取M3U8下载地址列表失败，url: %s", mEntity.getUrl()), false);
+      if (!isPlaylist) {
+        failDownload("读取M3U8信息失败，读取不到#EXTM3U标签", false);
         return;
       }
-      if (!isLive && mEntity.getM3U8Entity().getPeerNum() == 0) {
-        mEntity.getM3U8Entity().setPeerNum(extInf.size());
-        mEntity.getM3U8Entity().update();
-      }
-      CompleteInfo info = new CompleteInfo();
-      info.obj = extInf;
-
-      mCallback.onSucceed(mEntity.getKey(), info);
-      if (fos != null) {
-        fos.close();
+      if (handler.isMaster) {
+        // 多码率的m3u8配置文件，读取所有码率后选择需要下载的码率
+        mVariants = handler.variants;
+        mM3U8Option.setVariants(mVariants);
+        M3U8Variant variant = selectVariant();
+        if (variant != null) {
+          handleBandWidth(conn, variant);
+        }
+        return;
       }
+      handlePlaylist(conn, handler, isLive);
     } else if (code == HttpURLConnection.HTTP_MOVED_TEMP
         || code == HttpURLConnection.HTTP_MOVED_PERM
         || code == HttpURLConnection.HTTP_SEE_OTHER
@@ -216,19 +321,176 @@ final public class M3U8InfoTask implements IInfoTask {
   }
 
   /**
-   * 添加切片信息到索引文件中
-   * 直播下载的索引只记录头部信息，不记录EXTINF中的信息，该信息在onGetPeer的方法中添加。
-   * 点播下载记录所有信息
-   *
-   * @param write true 将信息写入文件
-   * @param info 切片信息
+   * 处理解析完成的媒体播放列表
    */
-  private void addIndexInfo(boolean write, FileOutputStream fos, String info)
+  private void handlePlaylist(HttpURLConnection conn, PlaylistHandler handler, boolean isLive)
       throws IOException {
-    if (!write) {
+    M3U8PeerList peers = handler.peers;
+    if (!isLive && peers.isEmpty()) {
+      failDownload(String.format("获取M3U8下载地址列表失败，url: %s", mEntity.getUrl()), false);
       return;
     }
-    fos.write(info.concat("\r\n").getBytes(Charset.forName("UTF-8")));
+    // 设置了目标完成时间时，根据播放列表的总时长重新选择码率
+    if (!isLive && needReSelect()) {
+      M3U8Variant variant = M3U8VariantSelector.select(mVariants,
+          M3U8VariantSelector.getThroughput(), peers.getTotalDuration(),
+          mM3U8Option.getTargetCompleteTime());
+      isReSelected = true;
+      if (variant != mVariant) {
+        ALog.d(TAG, String.format("根据目标完成时间重新选择码率：%s", variant));
+        handleBandWidth(conn, variant);
+        return;
+      }
+    }
+    if (isLive && handler.peerNum > 0) {
+      mLastSequence = Math.max(mLastSequence, mMediaSequence + handler.peerNum - 1);
+    }
+    mLastLoadTime = System.currentTimeMillis();
+    isLastLoadSucceed = true;
+    if (!isLive) {
+      ALog.d(TAG, String.format("解析播放列表完成，切片数量：%s，总时长：%.1fs", peers.size(),
+          peers.getTotalDuration()));
+      if (mEntity.getM3U8Entity().getPeerNum() == 0) {
+        mEntity.getM3U8Entity().setPeerNum(peers.size());
+        mEntity.getM3U8Entity().update();
+      }
+      if (mMapInfo != null && !downloadMap(mMapInfo)) {
+        failDownload(String.format("初始化片段地址错误，url: %s", mMapInfo.url), false);
+        return;
+      }
+      mM3U8Option.setPeerList(peers);
+      mM3U8Option.setByteRanges(handler.hasByteRange ? handler.byteRanges : null);
+      mM3U8Option.setMapInfo(mMapInfo);
+    }
+    CompleteInfo info = new CompleteInfo();
+    info.obj = peers;
+    mCallback.onSucceed(mEntity.getKey(), info);
+  }
+
+  /**
+   * 处理播放列表的解析事件，每次解析创建一个新的处理器
+   * 点播的切片保存在{@link M3U8PeerList}中，直播的切片通过{@link OnGetLivePeerCallback}回调
+   */
+  private final class PlaylistHandler implements M3U8Parser.Handler {
+    private final boolean isLive;
+    private final M3U8PeerList peers = new M3U8PeerList();
+    private final List<M3U8ByteRange> byteRanges = new ArrayList<>();
+    private final List<M3U8Variant> variants = new ArrayList<>();
+    private boolean hasByteRange = false;
+    private boolean isMaster = false;
+    private int peerNum = 0;
+    /**
+     * 写入索引信息的流，第一次写入时创建
+     */
+    private Writer indexWriter;
+
+    private PlaylistHandler(boolean isLive) {
+      this.isLive = isLive;
+    }
+
+    @Override public boolean isStop() {
+      return isStop;
+    }
+
+    @Override public void onTag(String line) throws IOException {
+      if (line.startsWith("#EXT-X-KEY")) {
+        addIndexInfo(line);
+        getKeyInfo(line);
+      } else if (line.startsWith("#EXT-X-MAP")) {
+        addIndexInfo(line);
+        getMapInfo(line);
+      } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE")) {
+        addIndexInfo(line);
+        mMediaSequence = getLongValue(line);
+      } else if (line.startsWith("#EXT-X-TARGETDURATION")) {
+        addIndexInfo(line);
+        mTargetDuration = getLongValue(line);
+      } else if (line.startsWith("#EXT-X-SERVER-CONTROL")) {
+        addIndexInfo(line);
+        getServerControl(line);
+      } else if (line.startsWith("#EXT-X-SKIP")) {
+        // 增量更新跳过的切片，跳过的切片之后的切片序列号需要加上跳过的数量
+        String skipped = getAttribute(line, "SKIPPED-SEGMENTS");
+        try {
+          peerNum += skipped == null ? 0 : Integer.parseInt(skipped);
+        } catch (NumberFormatException e) {
+          ALog.w(TAG, String.format("标签值错误，%s", line));
+        }
+      } else {
+        addIndexInfo(line);
+      }
+    }
+
+    @Override public void onSegment(String extInf, double duration, String byteRange, String uri)
+        throws IOException {
+      if (isLive && peerNum == 0) {
+        checkSequenceReset();
+      }
+      mCurSequence = mMediaSequence + peerNum;
+      peerNum++;
+      if (isLive) {
+        if (onGetPeerCallback != null) {
+          onGetPeerCallback.onGetPeer(uri, extInf);
+        }
+        return;
+      }
+      M3U8ByteRange range = getByteRange(byteRange, uri);
+      mM3U8Option.getKeyTable().bind(peers.size(), mCurKey, mCurSequence);
+      peers.add(uri, duration);
+      byteRanges.add(range);
+      hasByteRange |= range != null;
+      // 本地的切片是完整的文件，索引文件中不需要字节范围
+      addIndexInfo(extInf);
+      addIndexInfo(uri);
+    }
+
+    @Override public void onVariant(String streamInf, String uri) {
+      if (!isMaster) {
+        isMaster = true;
+        if (!mM3U8Option.isUseDefConvert() && mM3U8Option.getBandWidthUrlConverter() == null) {
+          ALog.d(TAG, "没有设置码率转换器");
+        }
+      }
+      M3U8Variant variant = toVariant(streamInf, uri);
+      if (variant != null) {
+        variants.add(variant);
+      }
+    }
+
+    @Override public void onEndList(String line) throws IOException {
+      isEndList = true;
+      // 点播文件的下载写入结束标志，直播文件的下载在停止时才写入结束标志
+      if (!isLive) {
+        addIndexInfo(line);
+      }
+    }
+
+    /**
+     * 添加信息到索引文件中
+     * 直播下载的索引只记录头部信息，不记录EXTINF中的信息，该信息在onGetPeer的方法中添加。
+     * 点播下载记录所有信息
+     */
+    private void addIndexInfo(String info) throws IOException {
+      if (!mM3U8Option.isGenerateIndexFile()) {
+        return;
+      }
+      if (indexWriter == null) {
+        File indexFile = new File(String.format(M3U8_INDEX_FORMAT, mEntity.getFilePath()));
+        if (!indexFile.exists()) {
+          FileUtil.createFile(indexFile);
+        }
+        indexWriter = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(indexFile), Charset.forName("UTF-8")));
+      }
+      indexWriter.write(info);
+      indexWriter.write("\r\n");
+    }
+
+    private void closeIndex() throws IOException {
+      if (indexWriter != null) {
+        indexWriter.close();
+      }
+    }
   }
 
   /**
@@ -246,48 +508,300 @@ final public class M3U8InfoTask implements IInfoTask {
   }
 
   /**
-   * 获取加密的密钥信息
+   * 当前切片使用的密钥，用于直播切片的回调
+   */
+  public M3U8KeyInfo getCurKey() {
+    return mCurKey;
+  }
+
+  /**
+   * 本次获取的直播播放列表的媒体序列号是否被服务器重置，在直播切片的回调中使用
+   */
+  public boolean isSequenceReset() {
+    return isSequenceReset;
+  }
+
+  /**
+   * 第一个切片前检查媒体序列号是否减小，减小时重新记录已获取的最后一个序列号
+   */
+  private void checkSequenceReset() {
+    if (mLastMediaSequence >= 0 && mMediaSequence < mLastMediaSequence) {
+      ALog.w(TAG, String.format("直播的媒体序列号被重置，%s -> %s", mLastMediaSequence,
+          mMediaSequence));
+      isSequenceReset = true;
+      mLastSequence = -1;
+    }
+    mLastMediaSequence = mMediaSequence;
+  }
+
+  /**
+   * 当前切片的媒体序列号，用于直播切片的回调
+   */
+  public long getCurSequence() {
+    return mCurSequence;
+  }
+
+  /**
+   * 读取整数类型的标签值，如：#EXT-X-MEDIA-SEQUENCE、#EXT-X-TARGETDURATION
+   */
+  private long getLongValue(String line) {
+    try {
+      return Long.parseLong(line.substring(line.indexOf(":") + 1).trim());
+    } catch (NumberFormatException e) {
+      ALog.w(TAG, String.format("标签值错误，%s", line));
+      return 0;
+    }
+  }
+
+  /**
+   * 读取#EXT-X-SERVER-CONTROL中的低延迟扩展信息
+   */
+  private void getServerControl(String line) {
+    isCanBlockReload = "YES".equals(getAttribute(line, "CAN-BLOCK-RELOAD"));
+    String skipUntil = getAttribute(line, "CAN-SKIP-UNTIL");
+    try {
+      mCanSkipUntil = skipUntil == null ? 0 : Double.parseDouble(skipUntil);
+    } catch (NumberFormatException e) {
+      mCanSkipUntil = 0;
+    }
+  }
+
+  /**
+   * 读取标签中的属性值
+   *
+   * @return 没有该属性时返回null
+   */
+  private String getAttribute(String line, String name) {
+    String temp = line.substring(line.indexOf(":") + 1);
+    // 引号中的值可能包含逗号，如CODECS="avc1.4d401f,mp4a.40.2"
+    boolean inQuote = false;
+    int start = 0;
+    for (int i = 0; i <= temp.length(); i++) {
+      if (i < temp.length() && temp.charAt(i) == '"') {
+        inQuote = !inQuote;
+      } else if (i == temp.length() || (temp.charAt(i) == ',' && !inQuote)) {
+        String param = temp.substring(start, i);
+        int index = param.indexOf("=");
+        if (index != -1 && param.substring(0, index).trim().equals(name)) {
+          return param.substring(index + 1).trim().replaceAll("\"", "");
+        }
+        start = i + 1;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 获取切片的字节范围，没有开始位置时，从同一资源上一个字节范围的结束位置开始
+   *
+   * @param value #EXT-X-BYTERANGE的标签值
+   * @param url 切片地址
+   * @return 切片没有#EXT-X-BYTERANGE标签时返回null
+   */
+  private M3U8ByteRange getByteRange(String value, String url) {
+    if (value == null) {
+      return null;
+    }
+    M3U8ByteRange range = M3U8ByteRange.parse(value, url.equals(mLastRangeUrl) ? mLastRangeEnd : 0);
+    if (range == null) {
+      ALog.w(TAG, String.format("字节范围错误，#EXT-X-BYTERANGE:%s", value));
+    } else {
+      mLastRangeUrl = url;
+      mLastRangeEnd = range.getEnd();
+    }
+    return range;
+  }
+
+  /**
+   * 获取#EXT-X-MAP的初始化片段信息，只支持一个初始化片段
+   */
+  private void getMapInfo(String line) {
+    String uri = getAttribute(line, "URI");
+    if (TextUtils.isEmpty(uri)) {
+      ALog.w(TAG, String.format("初始化片段地址为空，%s", line));
+      return;
+    }
+    if (mMapInfo != null) {
+      if (!uri.equals(mMapInfo.url)) {
+        ALog.w(TAG, String.format("不支持多个初始化片段，忽略：%s", line));
+      }
+      return;
+    }
+    M3U8MapInfo mapInfo = new M3U8MapInfo();
+    mapInfo.url = uri;
+    String range = getAttribute(line, "BYTERANGE");
+    if (range != null) {
+      mapInfo.range = M3U8ByteRange.parse(range, 0);
+      if (mapInfo.range == null) {
+        ALog.w(TAG, String.format("初始化片段的字节范围错误，%s", line));
+        return;
+      }
+    }
+    mMapInfo = mapInfo;
+  }
+
+  /**
+   * 获取加密的密钥信息，密钥对之后的切片生效，直到出现新的#EXT-X-KEY
    */
   private void getKeyInfo(String line) {
     String temp = line.substring(line.indexOf(":") + 1);
     String[] params = temp.split(",");
     M3U8Entity m3U8Entity = mEntity.getM3U8Entity();
+    M3U8KeyInfo keyInfo = new M3U8KeyInfo();
     for (String param : params) {
-      if (param.startsWith("METHOD")) {
-        m3U8Entity.method = param.split("=")[1];
-      } else if (param.startsWith("URI")) {
-        m3U8Entity.keyUrl = param.split("=")[1].replaceAll("\"", "");
-        String keyPath;
-        if (((M3U8TaskOption) mTaskWrapper.getM3u8Option()).getKeyPath() == null) {
-          keyPath = new File(mEntity.getFilePath()).getParent() + "/"
-              + CommonUtil.getStrMd5(m3U8Entity.keyUrl) + ".key";
-        } else {
-          keyPath = ((M3U8TaskOption) mTaskWrapper.getM3u8Option()).getKeyPath();
+      int index = param.indexOf("=");
+      if (index == -1) {
+        continue;
+      }
+      String name = param.substring(0, index).trim();
+      String value = param.substring(index + 1).trim();
+      if (name.equals("METHOD")) {
+        keyInfo.method = value;
+      } else if (name.equals("URI")) {
+        keyInfo.keyUrl = value.replaceAll("\"", "");
+        keyInfo.keyPath = getKeyPath(keyInfo.keyUrl);
+      } else if (name.equals("IV")) {
+        keyInfo.iv = value;
+      } else if (name.equals("KEYFORMAT")) {
+        keyInfo.keyFormat = value.replaceAll("\"", "");
+      } else if (name.equals("KEYFORMATVERSIONS")) {
+        m3U8Entity.keyFormatVersion = value.replaceAll("\"", "");
+      }
+    }
+    m3U8Entity.method = keyInfo.method;
+    m3U8Entity.iv = keyInfo.iv;
+    m3U8Entity.keyFormat = keyInfo.keyFormat;
+    if (keyInfo.keyUrl != null) {
+      m3U8Entity.keyUrl = keyInfo.keyUrl;
+      m3U8Entity.keyPath = keyInfo.keyPath;
+    }
+    mCurKey = keyInfo.isNone() ? null : keyInfo;
+    if (mCurKey == null || TextUtils.isEmpty(keyInfo.keyUrl)) {
+      return;
+    }
+    if (mM3U8Option.isDecrypt() && !keyInfo.isAes128()) {
+      ALog.w(TAG, String.format("不支持解密【%s】加密的切片，切片将保持原样", keyInfo.method));
+    }
+    downloadKey(keyInfo.keyUrl, keyInfo.keyPath);
+  }
+
+  /**
+   * 获取密钥保存路径，设置了密钥保存路径时，第一个密钥保存在该路径，其它密钥保存在同一目录下
+   */
+  private String getKeyPath(String keyUrl) {
+    String customPath = mM3U8Option.getKeyPath();
+    if (customPath != null) {
+      if (mCustomKeyPathUrl == null || mCustomKeyPathUrl.equals(keyUrl)) {
+        mCustomKeyPathUrl = keyUrl;
+        return customPath;
+      }
+      return new File(customPath).getParent() + "/" + CommonUtil.getStrMd5(keyUrl) + ".key";
+    }
+    return new File(mEntity.getFilePath()).getParent() + "/" + CommonUtil.getStrMd5(keyUrl)
+        + ".key";
+  }
+
+  /**
+   * 解析多码率播放列表中的码率，码率地址使用码率转换器转换
+   *
+   * @param streamInf #EXT-X-STREAM-INF标签
+   * @param url 码率地址
+   * @return 转换后的地址无效时返回null
+   */
+  private M3U8Variant toVariant(String streamInf, String url) {
+    IBandWidthUrlConverter converter = mM3U8Option.isUseDefConvert() ? new BandWidthDefConverter()
+        : mM3U8Option.getBandWidthUrlConverter();
+    if (converter != null) {
+      url = converter.convert(mEntity.getUrl(), url);
+      if (url == null || !url.startsWith("http")) {
+        ALog.e(TAG, String.format("码率转换器转换后的url地址无效，转换后的url：%s", url));
+        return null;
+      }
+    }
+    M3U8Variant variant = new M3U8Variant();
+    variant.bandWidth = getIntAttribute(streamInf, "BANDWIDTH");
+    variant.averageBandWidth = getIntAttribute(streamInf, "AVERAGE-BANDWIDTH");
+    variant.codecs = getAttribute(streamInf, "CODECS");
+    String resolution = getAttribute(streamInf, "RESOLUTION");
+    if (resolution != null && resolution.indexOf('x') != -1) {
+      String[] temp = resolution.split("x");
+      try {
+        variant.width = Integer.parseInt(temp[0].trim());
+        variant.height = Integer.parseInt(temp[1].trim());
+      } catch (NumberFormatException e) {
+        ALog.w(TAG, String.format("分辨率错误，%s", resolution));
+      }
+    }
+    variant.url = url;
+    ALog.d(TAG, String.format("码率：%s", variant));
+    return variant;
+  }
+
+  /**
+   * 选择需要下载的码率
+   * 1、设置了码率时，下载该码率；
+   * 2、自动选择码率时，恢复任务使用上次选择的码率，否则根据吞吐量选择码率；
+   * 3、下载第一个码率
+   *
+   * @return 没有可下载的码率时返回null
+   */
+  private M3U8Variant selectVariant() {
+    if (mVariants.isEmpty()) {
+      failDownload("多码率播放列表中没有可用的码率", false);
+      return null;
+    }
+    int setBand = mM3U8Option.getBandWidth();
+    if (setBand != 0) {
+      for (M3U8Variant variant : mVariants) {
+        if (variant.bandWidth == setBand) {
+          return variant;
         }
-        m3U8Entity.keyPath = keyPath;
-      } else if (param.startsWith("IV")) {
-        m3U8Entity.iv = param.split("=")[1];
-      } else if (param.startsWith("KEYFORMAT")) {
-        m3U8Entity.keyFormat = param.split("=")[1];
-      } else if (param.startsWith("KEYFORMATVERSIONS")) {
-        m3U8Entity.keyFormatVersion = param.split("=")[1];
       }
+      failDownload(String.format("【%s】码率不存在", setBand), false);
+      return null;
     }
-    downloadKey(m3U8Entity);
+    if (!mM3U8Option.isAdaptiveVariant()) {
+      return mVariants.get(0);
+    }
+    M3U8Entity m3U8Entity = mEntity.getM3U8Entity();
+    if (m3U8Entity.getPeerNum() > 0 && m3U8Entity.getBandWidth() != 0) {
+      for (M3U8Variant variant : mVariants) {
+        if (variant.bandWidth == m3U8Entity.getBandWidth()) {
+          isReSelected = true;
+          return variant;
+        }
+      }
+    }
+    M3U8Variant variant =
+        M3U8VariantSelector.select(mVariants, M3U8VariantSelector.getThroughput(), 0, 0);
+    ALog.d(TAG, String.format("吞吐量：%.1fKB/s，选择码率：%s",
+        M3U8VariantSelector.getThroughput() / 1024, variant));
+    return variant;
   }
 
   /**
-   * 读取bandwidth
+   * 是否需要根据目标完成时间重新选择码率，只在第一次下载时选择一次
    */
-  private int getBandWidth(String line) {
-    Pattern p = Pattern.compile(Regular.BANDWIDTH);
-    Matcher m = p.matcher(line);
-    if (m.find()) {
-      return Integer.parseInt(m.group());
+  private boolean needReSelect() {
+    return mVariant != null
+        && !isReSelected
+        && mM3U8Option.isAdaptiveVariant()
+        && mM3U8Option.getBandWidth() == 0
+        && mM3U8Option.getTargetCompleteTime() > 0
+        && mEntity.getM3U8Entity().getPeerNum() == 0;
+  }
+
+  private int getIntAttribute(String line, String name) {
+    String value = getAttribute(line, name);
+    try {
+      return value == null ? 0 : Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      ALog.w(TAG, String.format("标签值错误，%s", line));
+      return 0;
     }
-    return 0;
   }
 
+
   /**
    * 处理30x跳转
    */
@@ -327,18 +841,10 @@ final public class M3U8InfoTask implements IInfoTask {
   /**
    * 处理码率
    */
-  private void handleBandWidth(HttpURLConnection conn, String bandWidthM3u8Url) throws IOException {
-    IBandWidthUrlConverter converter = mM3U8Option.isUseDefConvert() ? new BandWidthDefConverter()
-        : mM3U8Option.getBandWidthUrlConverter();
-    if (converter != null) {
-      bandWidthM3u8Url = converter.convert(mEntity.getUrl(), bandWidthM3u8Url);
-      if (!bandWidthM3u8Url.startsWith("http")) {
-        failDownload(String.format("码率转换器转换后的url地址无效，转换后的url：%s", bandWidthM3u8Url), false);
-        return;
-      }
-    } else {
-      ALog.d(TAG, "没有设置码率转换器");
-    }
+  private void handleBandWidth(HttpURLConnection conn, M3U8Variant variant) throws IOException {
+    mVariant = variant;
+    String bandWidthM3u8Url = variant.url;
+    mEntity.getM3U8Entity().setBandWidth(variant.bandWidth);
     mM3U8Option.setBandWidthUrl(bandWidthM3u8Url);
     ALog.d(TAG, String.format("新码率url：%s", bandWidthM3u8Url));
     String cookies = conn.getHeaderField("Set-Cookie");
@@ -358,54 +864,105 @@ final public class M3U8InfoTask implements IInfoTask {
   }
 
   /**
-   * 密钥不存在，下载密钥
+   * 密钥不存在，在线程池中异步下载密钥，切片解密前会等待密钥保存完成
    */
-  private void downloadKey(M3U8Entity info) {
-    HttpURLConnection conn = null;
-    FileOutputStream fos = null;
-    try {
-      File keyF = new File(info.keyPath);
-      if (!keyF.exists()) {
-        ALog.d(TAG, "密钥不存在，下载密钥");
-        FileUtil.createFile(keyF);
-      } else {
-        return;
-      }
+  private void downloadKey(String keyUrl, String keyPath) {
+    File keyF = new File(keyPath);
+    // 空文件是上次下载失败留下的，需要重新下载
+    if (keyF.exists() && keyF.length() > 0) {
+      return;
+    }
+    ALog.d(TAG, "密钥不存在，下载密钥");
+    IKeyUrlConverter keyUrlConverter = mM3U8Option.getKeyUrlConverter();
+    if (keyUrlConverter != null) {
+      keyUrl = keyUrlConverter.convert(mEntity.getUrl(), keyUrl);
+    }
+    if (TextUtils.isEmpty(keyUrl)) {
+      ALog.e(TAG, "m3u8密钥key url 为空");
+      FileUtil.createFile(keyF);
+      return;
+    }
+    keyUrl = resolveUrl(keyUrl);
+    if (keyUrl == null) {
+      return;
+    }
+    M3U8ResCache.getInstance().save(keyUrl, null, keyPath, mFetcher);
+  }
 
-      IKeyUrlConverter keyUrlConverter = mM3U8Option.getKeyUrlConverter();
-      String keyUrl = info.keyUrl;
-      if (keyUrlConverter != null) {
-        keyUrl = keyUrlConverter.convert(mEntity.getUrl(), keyUrl);
-      }
-      if (TextUtils.isEmpty(keyUrl)) {
-        ALog.e(TAG, "m3u8密钥key url 为空");
-        return;
-      }
+  /**
+   * 在线程池中异步下载初始化片段，合并切片前会等待初始化片段保存完成
+   *
+   * @return {@code false} 初始化片段地址错误
+   */
+  private boolean downloadMap(M3U8MapInfo mapInfo) {
+    String url = resolveUrl(mapInfo.url);
+    if (url == null) {
+      return false;
+    }
+    mapInfo.url = url;
+    String name = CommonUtil.getStrMd5(mapInfo.range == null ? mapInfo.url
+        : mapInfo.url + "@" + mapInfo.range);
+    mapInfo.path = new File(mEntity.getFilePath()).getParent() + "/" + name + ".init";
+    M3U8ResCache.getInstance().save(mapInfo.url, mapInfo.range, mapInfo.path, mFetcher);
+    return true;
+  }
+
+  /**
+   * 相对地址根据播放列表的地址转换为绝对地址
+   *
+   * @return 地址错误时返回null
+   */
+  private String resolveUrl(String url) {
+    String m3u8Url = TextUtils.isEmpty(mM3U8Option.getBandWidthUrl()) ? mEntity.getUrl()
+        : mM3U8Option.getBandWidthUrl();
+    try {
+      return new URL(new URL(m3u8Url), url).toString();
+    } catch (IOException e) {
+      ALog.e(TAG, String.format("资源地址错误，%s", url));
+      return null;
+    }
+  }
 
-      URL url = ConnectionHelp.handleUrl(keyUrl, mHttpOption);
+  /**
+   * 下载小文件，如：密钥、初始化片段
+   *
+   * @param range 字节范围，为null时下载整个文件
+   * @return 文件数据
+   */
+  private byte[] fetch(String fileUrl, M3U8ByteRange range) throws IOException {
+    HttpURLConnection conn = null;
+    try {
+      URL url = ConnectionHelp.handleUrl(fileUrl, mHttpOption);
       conn = ConnectionHelp.handleConnection(url, mHttpOption);
       ConnectionHelp.setConnectParam(mHttpOption, conn);
       conn.setConnectTimeout(mConnectTimeOut);
+      if (range != null) {
+        conn.setRequestProperty("Range", range.getRangeHeader());
+      }
       conn.connect();
       InputStream is = conn.getInputStream();
-      fos = new FileOutputStream(keyF);
+      // 服务器不支持断点时返回整个文件，需要跳过字节范围之前的数据
+      long skip = range != null && conn.getResponseCode() == HttpURLConnection.HTTP_OK
+          ? range.offset : 0;
+      long remain = range == null ? Long.MAX_VALUE : range.length;
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
       byte[] buffer = new byte[1024];
       int len;
-      while ((len = is.read(buffer)) != -1) {
-        fos.write(buffer, 0, len);
+      while (remain > 0 && (len = is.read(buffer)) != -1) {
+        int start = (int) Math.min(skip, len);
+        skip -= start;
+        int count = (int) Math.min(remain, len - start);
+        bos.write(buffer, start, count);
+        remain -= count;
       }
-    } catch (Exception e) {
-      e.printStackTrace();
+      // 不完整的数据不能使用
+      if (range != null && remain != 0) {
+        throw new IOException(String.format("数据不完整，url: %s，%s", fileUrl, range));
+      }
+      return bos.toByteArray();
     } finally {
-      try {
-        if (fos != null) {
-          fos.close();
-        }
-        if (conn != null) {
-          conn.disconnect();
-        }
-      } catch (IOException e) {
-        e.printStackTrace();
+      if (conn != null) {
+        conn.disconnect();
       }
     }
   }
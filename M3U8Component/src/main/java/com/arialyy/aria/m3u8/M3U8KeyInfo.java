@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+import android.text.TextUtils;
+
+/**
+ * #EXT-X-KEY 标签的密钥信息，播放列表中可能存在多个密钥（密钥轮换），
+ * 每个密钥对其后的切片生效，直到出现下一个#EXT-X-KEY
+ */
+public final class M3U8KeyInfo {
+  public static final String METHOD_NONE = "NONE";
+  public static final String METHOD_AES_128 = "AES-128";
+  public static final String METHOD_SAMPLE_AES = "SAMPLE-AES";
+
+  /**
+   * 加密算法
+   */
+  public String method;
+
+  /**
+   * 密钥的下载地址
+   */
+  public String keyUrl;
+
+  /**
+   * 密钥保存地址
+   */
+  public String keyPath;
+
+  /**
+   * 密钥的iv值，为空时使用切片的媒体序列号作为iv
+   */
+  public String iv;
+
+  /**
+   * 密钥的格式，可能为空
+   */
+  public String keyFormat;
+
+  /**
+   * 是否没有加密
+   */
+  public boolean isNone() {
+    return TextUtils.isEmpty(method) || METHOD_NONE.equalsIgnoreCase(method);
+  }
+
+  /**
+   * 是否是整个切片加密的AES-128
+   */
+  public boolean isAes128() {
+    return METHOD_AES_128.equalsIgnoreCase(method);
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof M3U8KeyInfo)) {
+      return false;
+    }
+    M3U8KeyInfo info = (M3U8KeyInfo) o;
+    return TextUtils.equals(method, info.method)
+        && TextUtils.equals(keyUrl, info.keyUrl)
+        && TextUtils.equals(iv, info.iv);
+  }
+
+  @Override public int hashCode() {
+    int result = method == null ? 0 : method.hashCode();
+    result = 31 * result + (keyUrl == null ? 0 : keyUrl.hashCode());
+    result = 31 * result + (iv == null ? 0 : iv.hashCode());
+    return result;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 切片和密钥、媒体序列号的对应关系
+ * 只在密钥变化或序列号不连续的位置保存一条记录，查找时取切片索引之前最近的记录
+ */
+public final class M3U8KeyTable {
+  private static final int KEY_LEN = 16;
+
+  private final TreeMap<Integer, M3U8KeyInfo> mKeys = new TreeMap<>();
+  private final TreeMap<Integer, Long> mSequences = new TreeMap<>();
+  /**
+   * 已读取的密钥，key为密钥保存路径
+   */
+  private final Map<String, byte[]> mKeyData = new ConcurrentHashMap<>();
+
+  /**
+   * 绑定切片的密钥和媒体序列号，需要按切片索引递增的顺序调用
+   *
+   * @param peerIndex 切片索引
+   * @param key 切片使用的密钥，没有加密时为null
+   * @param sequence 切片的媒体序列号
+   */
+  public synchronized void bind(int peerIndex, M3U8KeyInfo key, long sequence) {
+    Map.Entry<Integer, M3U8KeyInfo> keyEntry = mKeys.floorEntry(peerIndex);
+    if (keyEntry == null ? key != null : !equals(keyEntry.getValue(), key)) {
+      mKeys.put(peerIndex, key);
+    }
+    Map.Entry<Integer, Long> seqEntry = mSequences.floorEntry(peerIndex);
+    if (seqEntry == null || seqEntry.getValue() + peerIndex - seqEntry.getKey() != sequence) {
+      mSequences.put(peerIndex, sequence);
+    }
+  }
+
+  /**
+   * 获取切片使用的密钥
+   *
+   * @return 切片没有加密时返回null
+   */
+  public synchronized M3U8KeyInfo getKey(int peerIndex) {
+    Map.Entry<Integer, M3U8KeyInfo> entry = mKeys.floorEntry(peerIndex);
+    return entry == null ? null : entry.getValue();
+  }
+
+  /**
+   * 获取切片的媒体序列号
+   */
+  public synchronized long getSequence(int peerIndex) {
+    Map.Entry<Integer, Long> entry = mSequences.floorEntry(peerIndex);
+    return entry == null ? peerIndex : entry.getValue() + peerIndex - entry.getKey();
+  }
+
+  /**
+   * 是否有加密的切片
+   */
+  public synchronized boolean hasKey() {
+    for (M3U8KeyInfo key : mKeys.values()) {
+      if (key != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public synchronized void clear() {
+    mKeys.clear();
+    mSequences.clear();
+  }
+
+  /**
+   * 读取密钥，同一个密钥只会读取一次，密钥正在下载时等待下载完成
+   */
+  byte[] getKeyData(M3U8KeyInfo key) throws IOException {
+    byte[] data = mKeyData.get(key.keyPath);
+    if (data != null) {
+      return data;
+    }
+    M3U8ResCache.getInstance().await(key.keyPath);
+    File keyFile = new File(key.keyPath);
+    if (!keyFile.exists() || keyFile.length() != KEY_LEN) {
+      throw new IOException(String.format("密钥文件错误，keyPath: %s", key.keyPath));
+    }
+    data = new byte[KEY_LEN];
+    FileInputStream fis = new FileInputStream(keyFile);
+    try {
+      int off = 0;
+      int len;
+      while (off < KEY_LEN && (len = fis.read(data, off, KEY_LEN - off)) != -1) {
+        off += len;
+      }
+      if (off != KEY_LEN) {
+        throw new IOException(String.format("读取密钥失败，keyPath: %s", key.keyPath));
+      }
+    } finally {
+      fis.close();
+    }
+    mKeyData.put(key.keyPath, data);
+    return data;
+  }
+
+  private static boolean equals(M3U8KeyInfo a, M3U8KeyInfo b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+/**
+ * #EXT-X-MAP 标签的初始化片段信息，fMP4切片需要拼接在初始化片段之后才能播放
+ */
+public final class M3U8MapInfo {
+
+  /**
+   * 初始化片段的下载地址
+   */
+  public String url;
+
+  /**
+   * 初始化片段在资源文件中的字节范围，为null时是整个资源文件
+   */
+  public M3U8ByteRange range;
+
+  /**
+   * 初始化片段的保存地址
+   */
+  public String path;
+
+  @Override public String toString() {
+    return range == null ? url : url + "，" + range;
+  }
+}
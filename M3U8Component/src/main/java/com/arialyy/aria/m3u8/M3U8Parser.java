@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * m3u8播放列表的流式解析器，逐行读取播放列表，将标签和地址组合成切片、码率等事件回调，不保存播放列表的内容
+ * 协议地址：https://tools.ietf.org/html/rfc8216
+ */
+public final class M3U8Parser {
+  private static final String TAG_HEADER = "#EXTM3U";
+  private static final String TAG_EXTINF = "#EXTINF";
+  private static final String TAG_BYTERANGE = "#EXT-X-BYTERANGE";
+  private static final String TAG_STREAM_INF = "#EXT-X-STREAM-INF";
+  private static final String TAG_ENDLIST = "#EXT-X-ENDLIST";
+
+  public interface Handler {
+
+    /**
+     * 是否停止解析，每读取一行检查一次
+     */
+    boolean isStop();
+
+    /**
+     * 切片之外的其它标签，切片的#EXTINF和地址之间的标签在切片之前回调
+     *
+     * @param line 标签所在的行
+     */
+    void onTag(String line) throws IOException;
+
+    /**
+     * 切片
+     *
+     * @param extInf #EXTINF标签所在的行
+     * @param duration 切片时长，单位秒
+     * @param byteRange #EXT-X-BYTERANGE的标签值，没有该标签时为null
+     * @param uri 切片地址，和播放列表中的一致，可能是相对地址
+     */
+    void onSegment(String extInf, double duration, String byteRange, String uri)
+        throws IOException;
+
+    /**
+     * 多码率播放列表中的码率
+     *
+     * @param streamInf #EXT-X-STREAM-INF标签所在的行
+     * @param uri 码率地址，和播放列表中的一致，可能是相对地址
+     */
+    void onVariant(String streamInf, String uri) throws IOException;
+
+    /**
+     * 播放列表结束
+     *
+     * @param line #EXT-X-ENDLIST标签所在的行
+     */
+    void onEndList(String line) throws IOException;
+  }
+
+  private M3U8Parser() {
+  }
+
+  /**
+   * 解析播放列表，读取到#EXT-X-ENDLIST或停止时结束
+   *
+   * @return {@code false} 不是m3u8播放列表，第一行不是#EXTM3U
+   */
+  public static boolean parse(BufferedReader reader, Handler handler) throws IOException {
+    String line = reader.readLine();
+    if (line == null || !line.trim().equalsIgnoreCase(TAG_HEADER)) {
+      return false;
+    }
+    handler.onTag(line);
+    String extInf = null;
+    String byteRange = null;
+    String streamInf = null;
+    while (!handler.isStop() && (line = reader.readLine()) != null) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      if (line.charAt(0) != '#') {
+        if (streamInf != null) {
+          handler.onVariant(streamInf, line.trim());
+        } else if (extInf != null) {
+          handler.onSegment(extInf, getExtInfDuration(extInf), byteRange, line.trim());
+        }
+        extInf = null;
+        byteRange = null;
+        streamInf = null;
+      } else if (line.startsWith(TAG_EXTINF)) {
+        extInf = line;
+      } else if (line.startsWith(TAG_BYTERANGE)) {
+        byteRange = line.substring(line.indexOf(':') + 1);
+      } else if (line.startsWith(TAG_STREAM_INF)) {
+        streamInf = line;
+      } else if (line.startsWith(TAG_ENDLIST)) {
+        handler.onEndList(line);
+        break;
+      } else {
+        handler.onTag(line);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 获取#EXTINF标签中的切片时长
+   *
+   * @return 单位秒，格式错误时返回0
+   */
+  public static double getExtInfDuration(String extInf) {
+    int start = extInf.indexOf(':') + 1;
+    int end = extInf.indexOf(',');
+    try {
+      return Double.parseDouble(extInf.substring(start, end == -1 ? extInf.length() : end).trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.RandomAccess;
+
+/**
+ * 点播播放列表的切片列表，只读
+ * 切片地址去掉公共的前缀后保存，读取时再拼接；切片时长保存在基本类型数组中，
+ * 上万个切片的播放列表也不会为每个切片创建额外的对象
+ */
+public final class M3U8PeerList extends AbstractList<String> implements RandomAccess {
+  private static final int DEFAULT_CAPACITY = 64;
+
+  /**
+   * 切片地址的公共前缀，为第一个切片地址的目录
+   */
+  private String mBase;
+  private String[] mSuffixes = new String[DEFAULT_CAPACITY];
+  /**
+   * 去掉了公共前缀的切片
+   */
+  private final BitSet mHasBase = new BitSet();
+  private float[] mDurations = new float[DEFAULT_CAPACITY];
+  private int mSize;
+  private double mTotalDuration;
+
+  /**
+   * 添加切片，需要按切片的顺序添加
+   *
+   * @param uri 切片地址
+   * @param duration 切片时长，单位秒
+   */
+  void add(String uri, double duration) {
+    if (mBase == null) {
+      mBase = uri.substring(0, uri.lastIndexOf('/') + 1);
+    }
+    if (mSize == mSuffixes.length) {
+      int capacity = mSize + (mSize >> 1);
+      mSuffixes = Arrays.copyOf(mSuffixes, capacity);
+      mDurations = Arrays.copyOf(mDurations, capacity);
+    }
+    if (!mBase.isEmpty() && uri.startsWith(mBase)) {
+      mSuffixes[mSize] = uri.substring(mBase.length());
+      mHasBase.set(mSize);
+    } else {
+      mSuffixes[mSize] = uri;
+    }
+    mDurations[mSize] = (float) duration;
+    mTotalDuration += duration;
+    mSize++;
+  }
+
+  /**
+   * 获取切片地址，和播放列表中的一致
+   */
+  @Override public String get(int index) {
+    if (index < 0 || index >= mSize) {
+      throw new IndexOutOfBoundsException(String.format("index: %s, size: %s", index, mSize));
+    }
+    return mHasBase.get(index) ? mBase.concat(mSuffixes[index]) : mSuffixes[index];
+  }
+
+  @Override public int size() {
+    return mSize;
+  }
+
+  /**
+   * 获取切片时长，单位秒
+   */
+  public double getDuration(int index) {
+    return index < 0 || index >= mSize ? 0 : mDurations[index];
+  }
+
+  /**
+   * 所有切片的总时长，单位秒
+   */
+  public double getTotalDuration() {
+    return mTotalDuration;
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.FileUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 进程内共享的m3u8资源缓存，缓存密钥和#EXT-X-MAP初始化片段
+ * 1、资源以解析后的地址和字节范围为key保存在内存中，超过有效期后重新下载，同一资源同时只下载一次；
+ * 2、资源在线程池中异步下载，和切片的下载同时进行，使用前通过{@link #await(String)}等待保存完成；
+ * 3、资源先写入临时文件再重命名为任务的保存地址，恢复任务时已存在的文件不会重新下载。
+ */
+public final class M3U8ResCache {
+  private static final String TAG = "M3U8ResCache";
+  /**
+   * 内存缓存的有效期
+   */
+  private static final long CACHE_TTL = 10 * 60 * 1000;
+  /**
+   * 内存缓存的最大字节数
+   */
+  private static final long MAX_CACHE_SIZE = 4 * 1024 * 1024;
+  /**
+   * 超过该大小的资源不缓存在内存中
+   */
+  private static final int MAX_ITEM_SIZE = 1024 * 1024;
+  /**
+   * 等待资源保存的超时时间
+   */
+  private static final long AWAIT_TIMEOUT = 60 * 1000;
+  private static final int RETRY_NUM = 2;
+
+  private static volatile M3U8ResCache INSTANCE;
+
+  private final ExecutorService mPool;
+  /**
+   * 按访问顺序排列的内存缓存，最久未使用的在前面
+   */
+  private final LinkedHashMap<String, Entry> mCache = new LinkedHashMap<>(16, 0.75f, true);
+  private long mCacheSize;
+  /**
+   * 正在下载的资源，key为资源的缓存key
+   */
+  private final Map<String, Future<byte[]>> mLoading = new ConcurrentHashMap<>();
+  /**
+   * 正在保存的资源，key为资源的保存地址
+   */
+  private final Map<String, Future<Boolean>> mSaving = new ConcurrentHashMap<>();
+
+  /**
+   * 资源下载器
+   */
+  public interface Fetcher {
+    /**
+     * 下载资源
+     *
+     * @param url 资源地址
+     * @param range 字节范围，为null时下载整个资源
+     * @return 资源数据
+     */
+    byte[] fetch(String url, M3U8ByteRange range) throws IOException;
+  }
+
+  private static class Entry {
+    final byte[] data;
+    final long expireTime;
+
+    Entry(byte[] data, long expireTime) {
+      this.data = data;
+      this.expireTime = expireTime;
+    }
+  }
+
+  private M3U8ResCache() {
+    mPool = Executors.newFixedThreadPool(3, new ThreadFactory() {
+      private int mIndex;
+
+      @Override public synchronized Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Aria-M3U8Res-" + mIndex++);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  public static M3U8ResCache getInstance() {
+    if (INSTANCE == null) {
+      synchronized (M3U8ResCache.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new M3U8ResCache();
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  /**
+   * 异步保存资源，保存地址的文件已存在时不会重新下载
+   *
+   * @param url 解析后的资源地址
+   * @param range 字节范围，为null时是整个资源
+   * @param path 资源保存地址
+   * @param fetcher 资源下载器，缓存中没有资源时使用
+   */
+  public void save(final String url, final M3U8ByteRange range, final String path,
+      final Fetcher fetcher) {
+    final File file = new File(path);
+    // 空文件是上次下载失败留下的，需要重新下载
+    if (file.exists() && file.length() > 0) {
+      return;
+    }
+    FutureTask<Boolean> task = new FutureTask<>(new Callable<Boolean>() {
+      @Override public Boolean call() {
+        try {
+          byte[] data = load(url, range, fetcher);
+          return data != null && write(file, data);
+        } finally {
+          mSaving.remove(path);
+        }
+      }
+    });
+    synchronized (mSaving) {
+      if (mSaving.containsKey(path)) {
+        return;
+      }
+      mSaving.put(path, task);
+    }
+    mPool.execute(task);
+  }
+
+  /**
+   * 等待资源保存完成
+   *
+   * @param path 资源保存地址
+   * @return {@code true} 资源文件可用
+   */
+  public boolean await(String path) {
+    Future<Boolean> future = mSaving.get(path);
+    if (future != null) {
+      try {
+        future.get(AWAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException | TimeoutException e) {
+        ALog.e(TAG, String.format("等待资源保存失败，path: %s", path));
+      }
+    }
+    File file = new File(path);
+    return file.exists() && file.length() > 0;
+  }
+
+  /**
+   * 获取资源数据，优先使用内存缓存，同一资源正在下载时等待下载结果
+   *
+   * @return 下载失败时返回null
+   */
+  private byte[] load(final String url, final M3U8ByteRange range, final Fetcher fetcher) {
+    final String key = range == null ? url : url + "@" + range;
+    byte[] data = getCache(key);
+    if (data != null) {
+      return data;
+    }
+    Future<byte[]> future;
+    FutureTask<byte[]> task = null;
+    synchronized (mLoading) {
+      future = mLoading.get(key);
+      if (future == null) {
+        task = new FutureTask<>(new Callable<byte[]>() {
+          @Override public byte[] call() throws Exception {
+            return fetch(url, range, fetcher);
+          }
+        });
+        future = task;
+        mLoading.put(key, future);
+      }
+    }
+    try {
+      if (task != null) {
+        task.run();
+      }
+      data = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      ALog.e(TAG, String.format("资源下载失败，url: %s，%s", key, e.getCause()));
+      return null;
+    } finally {
+      if (task != null) {
+        mLoading.remove(key);
+      }
+    }
+    putCache(key, data);
+    return data;
+  }
+
+  private byte[] fetch(String url, M3U8ByteRange range, Fetcher fetcher) throws IOException {
+    IOException error = null;
+    for (int i = 0; i < RETRY_NUM; i++) {
+      try {
+        byte[] data = fetcher.fetch(url, range);
+        if (data != null && data.length > 0) {
+          return data;
+        }
+        error = new IOException("资源为空");
+      } catch (IOException e) {
+        error = e;
+      }
+    }
+    throw error;
+  }
+
+  /**
+   * 先写入临时文件再重命名，避免中断后留下不完整的文件
+   */
+  private boolean write(File file, byte[] data) {
+    File temp = new File(file.getPath() + ".tmp");
+    FileOutputStream fos = null;
+    boolean isSuccess = false;
+    try {
+      FileUtil.createFile(temp);
+      fos = new FileOutputStream(temp);
+      fos.write(data);
+      fos.close();
+      fos = null;
+      FileUtil.deleteFile(file);
+      isSuccess = temp.renameTo(file);
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      if (fos != null) {
+        try {
+          fos.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    if (!isSuccess) {
+      FileUtil.deleteFile(temp);
+      ALog.e(TAG, String.format("保存资源失败，path: %s", file.getPath()));
+    }
+    return isSuccess;
+  }
+
+  private byte[] getCache(String key) {
+    synchronized (mCache) {
+      Entry entry = mCache.get(key);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.expireTime < System.currentTimeMillis()) {
+        mCache.remove(key);
+        mCacheSize -= entry.data.length;
+        return null;
+      }
+      return entry.data;
+    }
+  }
+
+  private void putCache(String key, byte[] data) {
+    if (data == null || data.length > MAX_ITEM_SIZE) {
+      return;
+    }
+    synchronized (mCache) {
+      Entry old = mCache.put(key, new Entry(data, System.currentTimeMillis() + CACHE_TTL));
+      if (old != null) {
+        mCacheSize -= old.data.length;
+      }
+      mCacheSize += data.length;
+      Iterator<Entry> it = mCache.values().iterator();
+      while (mCacheSize > MAX_CACHE_SIZE && it.hasNext()) {
+        mCacheSize -= it.next().data.length;
+        it.remove();
+      }
+    }
+  }
+}
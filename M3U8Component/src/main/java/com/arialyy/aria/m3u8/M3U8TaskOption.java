@@ -34,6 +34,21 @@ public final class M3U8TaskOption implements ITaskOption {
    */
   private List<String> urls;
 
+  /**
+   * 点播文件的切片列表，保存切片在播放列表中的地址和时长，用于边下边播时生成播放列表
+   */
+  private M3U8PeerList peerList;
+
+  /**
+   * 点播文件每个切片的#EXT-X-BYTERANGE，没有字节范围的切片为null，播放列表中没有该标签时为null
+   */
+  private List<M3U8ByteRange> byteRanges;
+
+  /**
+   * #EXT-X-MAP 初始化片段，没有该标签时为null
+   */
+  private M3U8MapInfo mapInfo;
+
   /**
    * #EXTINF 标签信息处理器
    */
@@ -89,6 +104,11 @@ public final class M3U8TaskOption implements ITaskOption {
    */
   private long liveUpdateInterval = 10 * 1000;
 
+  /**
+   * 直播不合并切片时保留的切片数量，0表示保留所有切片
+   */
+  private int liveRetainPeerNum = 0;
+
   /**
    * 同时下载的分片数量
    */
@@ -120,6 +140,41 @@ public final class M3U8TaskOption implements ITaskOption {
    */
   private String keyPath;
 
+  /**
+   * 是否在下载时解密AES-128加密的切片
+   */
+  private boolean decrypt = false;
+
+  /**
+   * 切片和密钥的对应关系，解析m3u8文件时生成
+   */
+  private M3U8KeyTable keyTable;
+
+  /**
+   * 是否渐进式合并ts文件，{@code true} 下载过程中将已完成的连续切片追加到目标文件
+   */
+  private boolean progressiveMerge = false;
+
+  /**
+   * 是否根据吞吐量自动选择码率
+   */
+  private boolean adaptiveVariant = false;
+
+  /**
+   * 点播文件下载过程中是否根据吞吐量切换剩余切片的码率
+   */
+  private boolean switchVariant = false;
+
+  /**
+   * 点播文件的目标完成时间，单位秒，0表示不限制
+   */
+  private long targetCompleteTime = 0;
+
+  /**
+   * 多码率播放列表中的所有码率
+   */
+  private List<M3U8Variant> variants;
+
   /**
    * 是否使用默认的码率转换器和Ts转换器
    */
@@ -137,6 +192,61 @@ public final class M3U8TaskOption implements ITaskOption {
     return keyPath;
   }
 
+  public boolean isDecrypt() {
+    return decrypt;
+  }
+
+  public void setDecrypt(boolean decrypt) {
+    this.decrypt = decrypt;
+  }
+
+  public synchronized M3U8KeyTable getKeyTable() {
+    if (keyTable == null) {
+      keyTable = new M3U8KeyTable();
+    }
+    return keyTable;
+  }
+
+  public boolean isProgressiveMerge() {
+    return progressiveMerge;
+  }
+
+  public void setProgressiveMerge(boolean progressiveMerge) {
+    this.progressiveMerge = progressiveMerge;
+  }
+
+  public boolean isAdaptiveVariant() {
+    return adaptiveVariant;
+  }
+
+  public void setAdaptiveVariant(boolean adaptiveVariant) {
+    this.adaptiveVariant = adaptiveVariant;
+  }
+
+  public boolean isSwitchVariant() {
+    return switchVariant;
+  }
+
+  public void setSwitchVariant(boolean switchVariant) {
+    this.switchVariant = switchVariant;
+  }
+
+  public long getTargetCompleteTime() {
+    return targetCompleteTime;
+  }
+
+  public void setTargetCompleteTime(long targetCompleteTime) {
+    this.targetCompleteTime = targetCompleteTime;
+  }
+
+  public List<M3U8Variant> getVariants() {
+    return variants;
+  }
+
+  public void setVariants(List<M3U8Variant> variants) {
+    this.variants = variants;
+  }
+
   public boolean isIgnoreFailureTs() {
     return ignoreFailureTs;
   }
@@ -185,6 +295,14 @@ public final class M3U8TaskOption implements ITaskOption {
     this.liveUpdateInterval = liveUpdateInterval;
   }
 
+  public int getLiveRetainPeerNum() {
+    return liveRetainPeerNum;
+  }
+
+  public void setLiveRetainPeerNum(int liveRetainPeerNum) {
+    this.liveRetainPeerNum = liveRetainPeerNum;
+  }
+
   public ILiveTsUrlConverter getLiveTsUrlConverter() {
     return liveTsUrlConverter == null ? null : liveTsUrlConverter.get();
   }
@@ -265,6 +383,40 @@ public final class M3U8TaskOption implements ITaskOption {
     this.urls = urls;
   }
 
+  public M3U8PeerList getPeerList() {
+    return peerList;
+  }
+
+  public void setPeerList(M3U8PeerList peerList) {
+    this.peerList = peerList;
+  }
+
+  public List<M3U8ByteRange> getByteRanges() {
+    return byteRanges;
+  }
+
+  public void setByteRanges(List<M3U8ByteRange> byteRanges) {
+    this.byteRanges = byteRanges;
+  }
+
+  /**
+   * 获取切片的字节范围
+   *
+   * @return 切片没有字节范围时返回null
+   */
+  public M3U8ByteRange getByteRange(int peerIndex) {
+    return byteRanges == null || peerIndex < 0 || peerIndex >= byteRanges.size() ? null
+        : byteRanges.get(peerIndex);
+  }
+
+  public M3U8MapInfo getMapInfo() {
+    return mapInfo;
+  }
+
+  public void setMapInfo(M3U8MapInfo mapInfo) {
+    this.mapInfo = mapInfo;
+  }
+
   public String getCacheDir() {
     return cacheDir;
   }
@@ -16,10 +16,17 @@
 package com.arialyy.aria.m3u8;
 
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
 import android.text.TextUtils;
+import com.arialyy.aria.core.ThreadRecord;
 import com.arialyy.aria.core.common.RequestEnum;
 import com.arialyy.aria.core.common.SubThreadConfig;
+import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
+import com.arialyy.aria.core.inf.IThreadStateManager;
+import com.arialyy.aria.core.listener.ISchedulers;
 import com.arialyy.aria.core.task.AbsThreadTaskAdapter;
 import com.arialyy.aria.exception.AriaM3U8Exception;
 import com.arialyy.aria.http.ConnectionHelp;
@@ -28,6 +35,7 @@ import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CheckUtil;
 import com.arialyy.aria.util.CommonUtil;
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -40,20 +48,44 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * Created by lyy on 2017/1/18. 下载线程
+ * 有字节范围的切片使用Range请求，同一资源中相邻的切片合并为一个请求，
+ * 合并的切片保存在{@link SubThreadConfig#obj}中，按资源中的顺序排列，当前线程的切片是最后一个
  */
 public final class M3U8ThreadTaskAdapter extends AbsThreadTaskAdapter {
   private final String TAG = CommonUtil.getClassName(this);
   private HttpTaskOption mHttpTaskOption;
   private BufferedInputStream is = null;
+  /**
+   * 切片解密器，不需要解密时为null
+   */
+  private M3U8Decryptor mDecryptor;
+  private M3U8TaskOption mM3U8Option;
+  /**
+   * 合并到当前请求中的切片，不包括当前线程的切片
+   */
+  private List<ThreadRecord> mMembers;
+  /**
+   * 当前线程已经下载完成的合并切片数，合并切片的记录只在调度线程中读写，下载线程重试时使用该值
+   */
+  private int mMemberDone;
 
   public M3U8ThreadTaskAdapter(SubThreadConfig config) {
     super(config);
     mHttpTaskOption = (HttpTaskOption) getTaskWrapper().getTaskOption();
+    mM3U8Option = (M3U8TaskOption) ((DTaskWrapper) getTaskWrapper()).getM3u8Option();
+    mMembers = config.obj instanceof List ? (List<ThreadRecord>) config.obj
+        : Collections.<ThreadRecord>emptyList();
+    // 线程任务在调度线程中创建，这里读取记录是安全的
+    while (mMemberDone < mMembers.size() && mMembers.get(mMemberDone).isComplete) {
+      mMemberDone++;
+    }
   }
 
   @Override protected void handlerThreadTask() {
@@ -120,10 +152,25 @@ public final class M3U8ThreadTaskAdapter extends AbsThreadTaskAdapter {
     ConnectionHelp.setConnectParam(mHttpTaskOption, conn);
     conn.setConnectTimeout(getTaskConfig().getConnectTimeOut());
     conn.setReadTimeout(getTaskConfig().getIOTimeOut());  //设置读取流的等待时间,必须设置该参数
+    M3U8ByteRange range = getRequestRange();
+    if (range != null) {
+      conn.setRequestProperty("Range", range.getRangeHeader());
+    }
 
     conn.connect();
     int code = conn.getResponseCode();
-    if (code == HttpURLConnection.HTTP_OK) {
+    if (range != null && (code == HttpURLConnection.HTTP_OK
+        || code == HttpURLConnection.HTTP_PARTIAL)) {
+      is = new BufferedInputStream(ConnectionHelp.convertInputStream(conn));
+      // 服务器不支持断点时返回整个文件，需要跳过字节范围之前的数据
+      readRanges(is, code == HttpURLConnection.HTTP_OK ? range.offset : 0);
+    } else if (code == HttpURLConnection.HTTP_OK) {
+      try {
+        mDecryptor = M3U8Decryptor.create(mM3U8Option, getThreadConfig().peerIndex);
+      } catch (AriaM3U8Exception e) {
+        fail(e, false);
+        return;
+      }
       is = new BufferedInputStream(ConnectionHelp.convertInputStream(conn));
       if (mHttpTaskOption.isChunked()) {
         readChunked(is);
@@ -193,10 +240,19 @@ public final class M3U8ThreadTaskAdapter extends AbsThreadTaskAdapter {
         if (mSpeedBandUtil != null) {
           mSpeedBandUtil.limitNextBytes(len);
         }
-        fos.write(buffer, 0, len);
+        if (mDecryptor == null) {
+          fos.write(buffer, 0, len);
+        } else {
+          writeDecrypted(fos.getChannel(), mDecryptor.update(buffer, 0, len));
+        }
         progress(len);
       }
+      if (mDecryptor != null && !getThreadTask().isBreak()) {
+        writeDecrypted(fos.getChannel(), mDecryptor.doFinal());
+      }
       handleComplete();
+    } catch (AriaM3U8Exception e) {
+      fail(e, false);
     } catch (IOException e) {
       fail(new AriaM3U8Exception(
           String.format("文件下载失败，savePath: %s, url: %s", getThreadConfig().tempFile.getPath(),
@@ -235,11 +291,21 @@ public final class M3U8ThreadTaskAdapter extends AbsThreadTaskAdapter {
           mSpeedBandUtil.limitNextBytes(len);
         }
         bf.flip();
-        foc.write(bf);
-        bf.compact();
+        if (mDecryptor == null) {
+          foc.write(bf);
+          bf.compact();
+        } else {
+          writeDecrypted(foc, mDecryptor.update(bf.array(), bf.position(), bf.remaining()));
+          bf.clear();
+        }
         progress(len);
       }
+      if (mDecryptor != null && !getThreadTask().isBreak()) {
+        writeDecrypted(foc, mDecryptor.doFinal());
+      }
       handleComplete();
+    } catch (AriaM3U8Exception e) {
+      fail(e, false);
     } catch (IOException e) {
       fail(new AriaM3U8Exception(
           String.format("文件下载失败，savePath: %s, url: %s", getThreadConfig().tempFile.getPath(),
@@ -262,6 +328,137 @@ public final class M3U8ThreadTaskAdapter extends AbsThreadTaskAdapter {
     }
   }
 
+  /**
+   * 获取请求的字节范围，从第一个未完成的合并切片开始，到当前线程的切片结束
+   *
+   * @return 切片没有字节范围时返回null
+   */
+  private M3U8ByteRange getRequestRange() {
+    M3U8ByteRange range = mM3U8Option.getByteRange(getThreadConfig().peerIndex);
+    if (range == null) {
+      return null;
+    }
+    long start = range.offset;
+    if (mMemberDone < mMembers.size()) {
+      start = mM3U8Option.getByteRange(mMembers.get(mMemberDone).threadId).offset;
+    }
+    return new M3U8ByteRange(start, range.getEnd() - start);
+  }
+
+  /**
+   * 按字节范围将数据拆分到每个切片的文件中，合并的切片完成后立即发送完成消息。
+   * 合并切片的记录由调度器在调度线程中修改和保存，下载线程只发送消息
+   *
+   * @param skip 需要跳过的数据长度
+   */
+  private void readRanges(InputStream is, long skip) {
+    try {
+      while (skip > 0) {
+        long len = is.skip(skip);
+        if (len <= 0) {
+          throw new IOException("跳过字节范围之前的数据失败");
+        }
+        skip -= len;
+      }
+      byte[] buffer = new byte[getTaskConfig().getBuffSize()];
+      for (; mMemberDone < mMembers.size(); mMemberDone++) {
+        ThreadRecord tr = mMembers.get(mMemberDone);
+        File file = new File(
+            BaseM3U8Loader.getTsFilePath(getThreadConfig().tempFile.getParent(), tr.threadId));
+        if (!readRange(is, buffer, tr.threadId, file)) {
+          return;
+        }
+        sendMemberComplete(tr, file, mM3U8Option.getByteRange(tr.threadId).length);
+      }
+      if (readRange(is, buffer, getThreadConfig().peerIndex, getThreadConfig().tempFile)) {
+        handleComplete();
+      }
+    } catch (AriaM3U8Exception e) {
+      fail(e, false);
+    } catch (IOException e) {
+      fail(new AriaM3U8Exception(
+          String.format("文件下载失败，savePath: %s, url: %s", getThreadConfig().tempFile.getPath(),
+              getThreadConfig().url), e), true);
+    }
+  }
+
+  /**
+   * 读取一个切片的数据
+   *
+   * @return {@code false} 线程已停止
+   */
+  private boolean readRange(InputStream is, byte[] buffer, int peerIndex, File file)
+      throws IOException, AriaM3U8Exception {
+    M3U8Decryptor decryptor = M3U8Decryptor.create(mM3U8Option, peerIndex);
+    long remain = mM3U8Option.getByteRange(peerIndex).length;
+    FileOutputStream fos = null;
+    try {
+      fos = new FileOutputStream(file);
+      FileChannel foc = fos.getChannel();
+      while (remain > 0) {
+        if (!getThreadTask().isLive() || getThreadTask().isBreak()) {
+          return false;
+        }
+        int len = is.read(buffer, 0, (int) Math.min(buffer.length, remain));
+        if (len == -1) {
+          throw new IOException(String.format("切片【%s】数据不完整，缺少%s字节", peerIndex, remain));
+        }
+        if (mSpeedBandUtil != null) {
+          mSpeedBandUtil.limitNextBytes(len);
+        }
+        if (decryptor == null) {
+          fos.write(buffer, 0, len);
+        } else {
+          writeDecrypted(foc, decryptor.update(buffer, 0, len));
+        }
+        remain -= len;
+        progress(len);
+      }
+      if (decryptor != null) {
+        writeDecrypted(foc, decryptor.doFinal());
+      }
+      return true;
+    } finally {
+      if (fos != null) {
+        fos.close();
+      }
+    }
+  }
+
+  /**
+   * 发送合并切片的完成消息，消息中携带该切片下载的字节数，用于统计吞吐量
+   *
+   * @param len 合并切片下载的字节数
+   */
+  private void sendMemberComplete(ThreadRecord tr, File file, long len) {
+    Handler handler = getThreadConfig().stateHandler;
+    Thread loopThread = handler.getLooper().getThread();
+    if (!loopThread.isAlive() || loopThread.isInterrupted()) {
+      return;
+    }
+    Message msg = handler.obtainMessage(IThreadStateManager.STATE_COMPLETE, getThreadTask());
+    Bundle bundle = new Bundle();
+    bundle.putString(ISchedulers.DATA_M3U8_URL, tr.tsUrl);
+    bundle.putString(ISchedulers.DATA_M3U8_PEER_PATH, file.getPath());
+    bundle.putInt(ISchedulers.DATA_M3U8_PEER_INDEX, tr.threadId);
+    bundle.putLong(IThreadStateManager.DATA_THREAD_LOCATION, len);
+    msg.setData(bundle);
+    msg.sendToTarget();
+  }
+
+  /**
+   * 写入解密后的数据
+   */
+  private void writeDecrypted(FileChannel foc, byte[] data) throws IOException {
+    if (data == null || data.length == 0) {
+      return;
+    }
+    ByteBuffer bf = ByteBuffer.wrap(data);
+    while (bf.hasRemaining()) {
+      foc.write(bf);
+    }
+  }
+
   private DownloadEntity getEntity() {
     return (DownloadEntity) getTaskWrapper().getEntity();
   }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+/**
+ * 多码率播放列表中的一个码率（#EXT-X-STREAM-INF）
+ */
+public final class M3U8Variant {
+
+  /**
+   * 峰值码率（BANDWIDTH），单位bit/s
+   */
+  public int bandWidth;
+
+  /**
+   * 平均码率（AVERAGE-BANDWIDTH），单位bit/s，没有该属性时为0
+   */
+  public int averageBandWidth;
+
+  /**
+   * 分辨率（RESOLUTION），没有该属性时为0
+   */
+  public int width, height;
+
+  /**
+   * 编码格式（CODECS），可能为空
+   */
+  public String codecs;
+
+  /**
+   * 码率播放列表的地址，已使用码率转换器转换
+   */
+  public String url;
+
+  /**
+   * 估算下载量使用的码率，有平均码率时使用平均码率
+   */
+  public int getEstimateBandWidth() {
+    return averageBandWidth > 0 ? averageBandWidth : bandWidth;
+  }
+
+  @Override public String toString() {
+    return String.format("bandWidth=%s, resolution=%sx%s, codecs=%s", bandWidth, width, height,
+        codecs);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8;
+
+import android.text.TextUtils;
+import java.util.List;
+
+/**
+ * 根据吞吐量选择码率
+ * 吞吐量使用已完成切片的下载速度估算，所有任务共享同一个估算值（指数加权平均），
+ * 还没有测量数据时选择最低的码率，之后由切换码率功能逐步提高码率
+ */
+public final class M3U8VariantSelector {
+  /**
+   * 只使用吞吐量的80%，为速度波动留出余量
+   */
+  private static final double SAFETY = 0.8;
+  /**
+   * 新测量值的权重
+   */
+  private static final double ALPHA = 0.3;
+
+  /**
+   * 吞吐量估算值，单位byte/s
+   */
+  private static double sThroughput;
+
+  private M3U8VariantSelector() {
+  }
+
+  /**
+   * 更新吞吐量估算值
+   *
+   * @param throughput 测量的吞吐量，单位byte/s
+   */
+  public static synchronized void updateThroughput(double throughput) {
+    if (throughput <= 0) {
+      return;
+    }
+    sThroughput = sThroughput <= 0 ? throughput : sThroughput * (1 - ALPHA) + throughput * ALPHA;
+  }
+
+  /**
+   * 获取吞吐量估算值
+   *
+   * @return 单位byte/s，没有测量数据时返回0
+   */
+  public static synchronized double getThroughput() {
+    return sThroughput;
+  }
+
+  /**
+   * 选择吞吐量能够支持的最高码率
+   * 没有设置目标完成时间时，选择下载速度不低于播放速度的码率；
+   * 设置了目标完成时间时，选择能在目标时间内完成剩余切片的码率
+   *
+   * @param variants 可选的码率
+   * @param throughput 吞吐量，单位byte/s，小于等于0时选择最低的码率
+   * @param duration 剩余切片的总时长，单位秒，未知时为0
+   * @param targetTime 剩余的目标完成时间，单位秒，0表示不限制
+   * @return 码率列表为空时返回null
+   */
+  public static M3U8Variant select(List<M3U8Variant> variants, double throughput,
+      double duration, long targetTime) {
+    M3U8Variant lowest = null;
+    M3U8Variant best = null;
+    double budget = throughput * 8 * SAFETY;
+    if (duration > 0 && targetTime > 0) {
+      budget = budget * targetTime / duration;
+    }
+    for (M3U8Variant variant : variants) {
+      if (lowest == null || compare(variant, lowest) < 0) {
+        lowest = variant;
+      }
+      if (throughput > 0 && variant.getEstimateBandWidth() <= budget
+          && (best == null || compare(variant, best) > 0)) {
+        best = variant;
+      }
+    }
+    return best == null ? lowest : best;
+  }
+
+  /**
+   * 码率相同时比较分辨率
+   */
+  private static int compare(M3U8Variant v1, M3U8Variant v2) {
+    if (v1.getEstimateBandWidth() != v2.getEstimateBandWidth()) {
+      return v1.getEstimateBandWidth() < v2.getEstimateBandWidth() ? -1 : 1;
+    }
+    long p1 = (long) v1.width * v1.height, p2 = (long) v2.width * v2.height;
+    return p1 == p2 ? 0 : (p1 < p2 ? -1 : 1);
+  }
+
+  /**
+   * 编码格式是否相同，编码格式未知时认为相同
+   */
+  public static boolean isSameCodecs(M3U8Variant v1, M3U8Variant v2) {
+    return TextUtils.isEmpty(v1.codecs) || TextUtils.isEmpty(v2.codecs)
+        || v1.codecs.equals(v2.codecs);
+  }
+}
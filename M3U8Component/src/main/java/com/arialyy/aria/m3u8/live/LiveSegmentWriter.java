@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8.live;
+
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import com.arialyy.aria.util.FileUtil;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 直播切片的顺序写入管道
+ * 切片索引按媒体序列号的顺序分配，切片完成后按索引顺序处理：
+ * 合并文件时，切片追加到目标文件后立即删除；不合并时，只保留最近的若干个切片（环形缓冲），用于时移播放
+ * 并行下载的切片可能乱序完成，先放入重排缓冲区；重排缓冲区满时，由{@link #canAccept(int)}暂停新切片的下载，
+ * 保证磁盘占用有上限。只有下载失败或超时未完成的切片才会被跳过，跳过的切片会记录为录制的缺口
+ */
+final class LiveSegmentWriter {
+  private final String TAG = CommonUtil.getClassName(getClass());
+  private final String mTargetPath;
+  private final boolean isMerge;
+  private final int mRetainNum;
+  private final int mReorderNum;
+  /**
+   * 已完成但还没有处理的切片，key为切片索引
+   */
+  private final TreeMap<Integer, String> mPending = new TreeMap<>();
+  /**
+   * 下载失败的切片
+   */
+  private final Set<Integer> mFailed = new HashSet<>();
+  /**
+   * 正在下载的切片的开始时间，key为切片索引
+   */
+  private final Map<Integer, Long> mStartTimes = new HashMap<>();
+  /**
+   * 被跳过的切片，即录制的缺口
+   */
+  private final List<Integer> mGaps = new ArrayList<>();
+  /**
+   * 环形缓冲中保留的切片
+   */
+  private final LinkedList<String> mRetained = new LinkedList<>();
+  private int mNextIndex = 0;
+  private FileOutputStream mOut;
+  private boolean isClosed = false;
+  private boolean isSuccess = true;
+
+  /**
+   * @param targetPath 目标文件
+   * @param merge {@code true} 将切片追加到目标文件
+   * @param retainNum 不合并时保留的切片数量，小于等于0表示保留所有切片
+   * @param reorderNum 重排缓冲区最多缓存的切片数量，第一个未处理的切片之后最多下载该数量的切片
+   */
+  LiveSegmentWriter(String targetPath, boolean merge, int retainNum, int reorderNum) {
+    mTargetPath = targetPath;
+    isMerge = merge;
+    mRetainNum = retainNum;
+    mReorderNum = reorderNum;
+  }
+
+  /**
+   * 是否可以开始下载切片，切片索引超出重排缓冲区时需要等待前面的切片处理完成
+   */
+  synchronized boolean canAccept(int peerIndex) {
+    return isClosed || peerIndex < mNextIndex + mReorderNum;
+  }
+
+  synchronized void onPeerStart(int peerIndex) {
+    if (!isClosed && peerIndex >= mNextIndex) {
+      mStartTimes.put(peerIndex, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * 切片完成
+   *
+   * @return {@code false} 切片超时后已经被跳过并作为失败切片通知，切片文件已删除，不需要再通知完成
+   */
+  synchronized boolean onPeerComplete(int peerIndex, String peerPath) {
+    if (isClosed) {
+      return true;
+    }
+    if (peerIndex < mNextIndex) {
+      // 切片超时后已经被跳过了
+      ALog.w(TAG, String.format("切片【%s】已被跳过，删除该切片", peerIndex));
+      FileUtil.deleteFile(peerPath);
+      return false;
+    }
+    mPending.put(peerIndex, peerPath);
+    drain();
+    return true;
+  }
+
+  /**
+   * 切片失败
+   *
+   * @return {@code false} 切片超时后已经被跳过并作为失败切片通知，不需要再次通知
+   */
+  synchronized boolean onPeerFail(int peerIndex) {
+    if (isClosed) {
+      return true;
+    }
+    if (peerIndex < mNextIndex) {
+      return false;
+    }
+    mFailed.add(peerIndex);
+    drain();
+    return true;
+  }
+
+  /**
+   * 跳过超时未完成的切片，只有后面已经有完成的切片时才跳过
+   *
+   * @param timeout 切片的最长下载时间，单位毫秒
+   * @return 本次跳过的切片索引
+   */
+  synchronized List<Integer> skipTimeoutPeers(long timeout) {
+    List<Integer> skipped = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    while (!isClosed && !mPending.isEmpty()) {
+      Long startTime = mStartTimes.get(mNextIndex);
+      if (startTime == null || now - startTime < timeout) {
+        break;
+      }
+      ALog.w(TAG, String.format("切片【%s】超过%sms未完成，跳过该切片", mNextIndex, timeout));
+      skipped.add(mNextIndex);
+      skip();
+      drain();
+    }
+    return skipped;
+  }
+
+  /**
+   * 获取被跳过的切片索引，即录制的缺口
+   */
+  synchronized List<Integer> getGaps() {
+    return new ArrayList<>(mGaps);
+  }
+
+  /**
+   * 关闭管道
+   *
+   * @return {@code true} 所有切片都处理成功
+   */
+  synchronized boolean close() {
+    if (isClosed) {
+      return isSuccess;
+    }
+    // 停止时，已完成的切片按顺序全部处理，中间未完成的切片记录为缺口
+    for (Map.Entry<Integer, String> entry : mPending.entrySet()) {
+      while (mNextIndex < entry.getKey()) {
+        mGaps.add(mNextIndex++);
+      }
+      write(entry.getValue());
+      mNextIndex++;
+    }
+    mPending.clear();
+    mFailed.clear();
+    mStartTimes.clear();
+    isClosed = true;
+    if (!mGaps.isEmpty()) {
+      ALog.w(TAG, String.format("录制缺少%s个切片：%s", mGaps.size(), mGaps));
+    }
+    if (mOut != null) {
+      try {
+        mOut.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+        isSuccess = false;
+      }
+      mOut = null;
+    }
+    return isSuccess;
+  }
+
+  /**
+   * 按索引顺序处理连续完成的切片，下载失败的切片记录为缺口后跳过，仍在下载的切片需要等待
+   */
+  private void drain() {
+    while (true) {
+      String path = mPending.remove(mNextIndex);
+      if (path != null) {
+        write(path);
+        mStartTimes.remove(mNextIndex);
+        mNextIndex++;
+      } else if (mFailed.remove(mNextIndex)) {
+        ALog.w(TAG, String.format("切片【%s】下载失败，跳过该切片", mNextIndex));
+        skip();
+      } else {
+        break;
+      }
+    }
+  }
+
+  /**
+   * 跳过第一个未处理的切片，并记录缺口
+   */
+  private void skip() {
+    mGaps.add(mNextIndex);
+    mStartTimes.remove(mNextIndex);
+    mNextIndex++;
+  }
+
+  private void write(String peerPath) {
+    if (!isMerge) {
+      mRetained.add(peerPath);
+      while (mRetainNum > 0 && mRetained.size() > mRetainNum) {
+        FileUtil.deleteFile(mRetained.removeFirst());
+      }
+      return;
+    }
+    FileInputStream fis = null;
+    try {
+      if (mOut == null) {
+        mOut = new FileOutputStream(mTargetPath, true);
+      }
+      File peerFile = new File(peerPath);
+      fis = new FileInputStream(peerFile);
+      FileChannel fic = fis.getChannel();
+      FileChannel foc = mOut.getChannel();
+      long len = peerFile.length();
+      long pos = 0;
+      while (pos < len) {
+        long num = fic.transferTo(pos, len - pos, foc);
+        if (num <= 0) {
+          break;
+        }
+        pos += num;
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      ALog.e(TAG, String.format("追加切片【%s】失败", peerPath));
+      isSuccess = false;
+    } finally {
+      if (fis != null) {
+        try {
+          fis.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    FileUtil.deleteFile(peerPath);
+  }
+}
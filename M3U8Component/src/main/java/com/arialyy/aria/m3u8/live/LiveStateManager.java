@@ -73,7 +73,15 @@ final class LiveStateManager implements IThreadStateManager {
           }
           break;
         case STATE_COMPLETE:
+          // 先交给写入管道处理，唤醒下载线程时重排缓冲区已经更新
+          boolean accepted = mLoader.getSegmentWriter() == null
+              || mLoader.getSegmentWriter().onPeerComplete(peerIndex,
+              msg.getData().getString(ISchedulers.DATA_M3U8_PEER_PATH));
           mLoader.notifyLock(true, peerIndex);
+          if (!accepted) {
+            // 切片已经作为超时切片通知过失败，文件已删除
+            break;
+          }
           if (mM3U8Option.isGenerateIndexFile() && !mLoader.isBreak()) {
             addExtInf(mLoader.getCurExtInfo().url, mLoader.getCurExtInfo().extInf);
           }
@@ -88,7 +96,12 @@ final class LiveStateManager implements IThreadStateManager {
           }
           break;
         case STATE_FAIL:
+          boolean isNewFail = mLoader.getSegmentWriter() == null
+              || mLoader.getSegmentWriter().onPeerFail(peerIndex);
           mLoader.notifyLock(false, peerIndex);
+          if (!isNewFail) {
+            break;
+          }
           mListener.onPeerFail(mTaskWrapper.getKey(),
               msg.getData().getString(ISchedulers.DATA_M3U8_PEER_PATH), peerIndex);
           break;
@@ -37,6 +37,7 @@ import com.arialyy.aria.exception.AriaM3U8Exception;
 import com.arialyy.aria.m3u8.BaseM3U8Loader;
 import com.arialyy.aria.m3u8.IdGenerator;
 import com.arialyy.aria.m3u8.M3U8InfoTask;
+import com.arialyy.aria.m3u8.M3U8KeyInfo;
 import com.arialyy.aria.m3u8.M3U8Listener;
 import com.arialyy.aria.m3u8.M3U8TaskOption;
 import com.arialyy.aria.m3u8.M3U8ThreadTaskAdapter;
@@ -45,6 +46,7 @@ import com.arialyy.aria.util.FileUtil;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -61,6 +63,14 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
    * 最大执行数
    */
   private static int EXEC_MAX_NUM = 4;
+  /**
+   * 重排缓冲区已满时，暂停下载的最长等待时间
+   */
+  private static final long BLOCK_WAIT_TIME = 1000;
+  /**
+   * 切片超过该数量的目标时长仍未完成时跳过该切片
+   */
+  private static final int PEER_TIMEOUT_DURATION_NUM = 3;
   private Handler mStateHandler;
   private ArrayBlockingQueue<Long> mFlagQueue = new ArrayBlockingQueue<>(EXEC_MAX_NUM);
   private ReentrantLock LOCK = new ReentrantLock();
@@ -69,7 +79,15 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
   private ExtInfo mCurExtInfo;
   private M3U8InfoTask mInfoTask;
   private ScheduledThreadPoolExecutor mTimer;
-  private List<String> mPeerUrls = new ArrayList<>();
+  /**
+   * 已获取的最后一个切片的媒体序列号，序列号不大于该值的切片已经处理过
+   */
+  private long mLastPeerSequence = -1;
+  /**
+   * 本次重新加载获取到的新切片数量
+   */
+  private int mNewPeerNum;
+  private LiveSegmentWriter mSegmentWriter;
 
   M3U8LiveLoader(DTaskWrapper wrapper, M3U8Listener listener) {
     super(wrapper, listener);
@@ -83,6 +101,35 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
     return mCurExtInfo;
   }
 
+  LiveSegmentWriter getSegmentWriter() {
+    return mSegmentWriter;
+  }
+
+  /**
+   * 是否边下载边合并，自定义合并处理器和索引文件都需要完整的切片，这两种情况在结束时处理
+   */
+  private boolean isMergeWhileDownload() {
+    return mM3U8Option.isMergeFile()
+        && !mM3U8Option.isGenerateIndexFile()
+        && mM3U8Option.getMergeHandler() == null;
+  }
+
+  /**
+   * 创建切片写入管道，合并切片或设置了保留切片数量时才需要
+   */
+  private LiveSegmentWriter createSegmentWriter() {
+    boolean merge = isMergeWhileDownload();
+    int retainNum = mM3U8Option.getLiveRetainPeerNum();
+    if (!merge && retainNum > 0 && mM3U8Option.isGenerateIndexFile()) {
+      ALog.w(TAG, "创建索引文件时需要保留所有切片，保留切片数量的设置无效");
+      retainNum = 0;
+    }
+    if (!merge && retainNum <= 0) {
+      return null;
+    }
+    return new LiveSegmentWriter(getEntity().getFilePath(), merge, retainNum, EXEC_MAX_NUM * 2);
+  }
+
   private void offerPeer(ExtInfo extInfo) {
     mPeerQueue.offer(extInfo);
   }
@@ -96,6 +143,8 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
     getRecordHandler().setOption(mM3U8Option);
     mRecord = getRecordHandler().getRecord(0);
 
+    mSegmentWriter = createSegmentWriter();
+
     // 初始化状态管理器
     getStateManager().setLooper(mRecord, looper);
     getStateManager().setLoader(this);
@@ -114,18 +163,30 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
         while (!isBreak()) {
           try {
             LOCK.lock();
+            boolean isBlocked = false;
             while (mFlagQueue.size() < EXEC_MAX_NUM) {
+              if (mSegmentWriter != null && !mSegmentWriter.canAccept(index)) {
+                // 重排缓冲区已满，等待前面的切片完成、失败或超时跳过
+                isBlocked = true;
+                break;
+              }
               ExtInfo extInfo = mPeerQueue.poll();
               if (extInfo == null) {
                 break;
               }
               mCurExtInfo = extInfo;
+              mM3U8Option.getKeyTable().bind(index, extInfo.key, extInfo.sequence);
               ThreadTask task = createThreadTask(cacheDir, index, extInfo.url);
               getTaskList().add(task);
+              if (mSegmentWriter != null) {
+                mSegmentWriter.onPeerStart(index);
+              }
               mFlagQueue.offer(startThreadTask(task, task.getConfig().peerIndex));
               index++;
             }
-            if (mFlagQueue.size() > 0) {
+            if (isBlocked) {
+              mCondition.await(BLOCK_WAIT_TIME, TimeUnit.MILLISECONDS);
+            } else if (mFlagQueue.size() > 0) {
               mCondition.await();
             }
           } catch (InterruptedException e) {
@@ -219,12 +280,27 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
         return name.endsWith(".ts");
       }
     });
-    for (String tsName : tsNames) {
-      partPath.add(cacheDir + "/" + tsName);
+    // 文件列表的顺序是不确定的，需要按切片索引排序
+    List<Integer> peerIds = new ArrayList<>();
+    if (tsNames != null) {
+      for (String tsName : tsNames) {
+        try {
+          peerIds.add(Integer.parseInt(tsName.substring(0, tsName.lastIndexOf(".ts"))));
+        } catch (NumberFormatException e) {
+          ALog.w(TAG, String.format("忽略无法识别的切片【%s】", tsName));
+        }
+      }
+    }
+    Collections.sort(peerIds);
+    for (int peerId : peerIds) {
+      partPath.add(getTsFilePath(cacheDir, peerId));
     }
 
     boolean isSuccess;
-    if (mergeHandler != null) {
+    if (mSegmentWriter != null && isMergeWhileDownload()) {
+      // 切片已经按顺序追加到目标文件，只需要处理剩余的切片
+      isSuccess = mSegmentWriter.close();
+    } else if (mergeHandler != null) {
       isSuccess = mergeHandler.merge(getEntity().getM3U8Entity(), partPath);
     } else {
       isSuccess = FileUtil.mergeFile(getEntity().getFilePath(), partPath);
@@ -261,10 +337,17 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
 
     mInfoTask.setOnGetPeerCallback(new M3U8InfoTask.OnGetLivePeerCallback() {
       @Override public void onGetPeer(String url, String extInf) {
-        if (mPeerUrls.contains(url)) {
+        long sequence = mInfoTask.getCurSequence();
+        if (mInfoTask.isSequenceReset() && sequence <= mLastPeerSequence) {
+          // 服务器重置了媒体序列号，以新播放列表的第一个切片重新开始计数
+          ALog.w(TAG, String.format("媒体序列号被重置，从序列号【%s】继续获取切片", sequence));
+          mLastPeerSequence = sequence - 1;
+        }
+        if (sequence <= mLastPeerSequence) {
           return;
         }
-        mPeerUrls.add(url);
+        mLastPeerSequence = sequence;
+        mNewPeerNum++;
         ILiveTsUrlConverter converter = mM3U8Option.isUseDefConvert() ?
             new LiveTsDefConverter() :
             mM3U8Option.getLiveTsUrlConverter();
@@ -279,11 +362,31 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
           fail(new AriaM3U8Exception(String.format("ts地址错误，url：%s", url)), false);
           return;
         }
-        offerPeer(new M3U8LiveLoader.ExtInfo(url, extInf));
+        M3U8LiveLoader.ExtInfo extInfo = new M3U8LiveLoader.ExtInfo(url, extInf);
+        extInfo.key = mInfoTask.getCurKey();
+        extInfo.sequence = mInfoTask.getCurSequence();
+        offerPeer(extInfo);
       }
     });
   }
 
+  /**
+   * 停止任务时，将已完成的切片写入目标文件
+   */
+  @Override protected void onPostStop() {
+    super.onPostStop();
+    if (mInfoTask != null) {
+      mInfoTask.setStop(true);
+    }
+    closeInfoTimer();
+    if (mSegmentWriter != null) {
+      mSegmentWriter.close();
+      if (isMergeWhileDownload()) {
+        FileUtil.deleteDir(new File(getCacheDir()));
+      }
+    }
+  }
+
   private void fail(AriaM3U8Exception e, boolean needRetry) {
     getListener().onFail(needRetry, e);
     handleComplete();
@@ -316,11 +419,75 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
    */
   private void startLoaderLiveInfo() {
     mTimer = new ScheduledThreadPoolExecutor(1);
-    mTimer.scheduleWithFixedDelay(new Runnable() {
+    scheduleReload(0);
+  }
+
+  /**
+   * 加载m3u8信息，加载完成后根据本次的结果安排下一次加载
+   */
+  private void scheduleReload(long delay) {
+    if (isBreak() || mTimer == null || mTimer.isShutdown()) {
+      return;
+    }
+    mTimer.schedule(new Runnable() {
       @Override public void run() {
-        mInfoTask.run();
+        mNewPeerNum = 0;
+        try {
+          mInfoTask.run();
+          skipTimeoutPeers();
+        } finally {
+          if (mInfoTask.isEndList()) {
+            ALog.i(TAG, "直播已结束，停止更新m3u8文件");
+          } else {
+            scheduleReload(getReloadDelay());
+          }
+        }
       }
-    }, 0, mM3U8Option.getLiveUpdateInterval(), TimeUnit.MILLISECONDS);
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 计算下一次加载m3u8文件的间隔，参考协议6.3.4节：
+   * 播放列表有新切片时，间隔为目标时长；没有变化或加载失败时，间隔为目标时长的一半；
+   * 服务器支持阻塞式重载时，请求会等到有新切片才返回，因此立即发起下一次请求；
+   * 播放列表没有目标时长时，使用设置的更新间隔
+   */
+  private long getReloadDelay() {
+    long targetDuration = mInfoTask.getTargetDuration() * 1000;
+    if (targetDuration <= 0) {
+      return mM3U8Option.getLiveUpdateInterval();
+    }
+    if (!mInfoTask.isLastLoadSucceed() || mNewPeerNum == 0) {
+      return targetDuration / 2;
+    }
+    return mInfoTask.isCanBlockReload() ? 0 : targetDuration;
+  }
+
+  /**
+   * 跳过超时未完成的切片，跳过的切片作为失败的切片通知给监听器，并唤醒暂停的下载
+   */
+  private void skipTimeoutPeers() {
+    if (mSegmentWriter == null) {
+      return;
+    }
+    long targetDuration = mInfoTask.getTargetDuration() * 1000;
+    long timeout = PEER_TIMEOUT_DURATION_NUM * (targetDuration > 0 ? targetDuration
+        : mM3U8Option.getLiveUpdateInterval());
+    List<Integer> skipped = mSegmentWriter.skipTimeoutPeers(timeout);
+    if (skipped.isEmpty()) {
+      return;
+    }
+    String cacheDir = getCacheDir();
+    for (int peerIndex : skipped) {
+      ((M3U8Listener) getListener()).onPeerFail(mTaskWrapper.getKey(),
+          getTsFilePath(cacheDir, peerIndex), peerIndex);
+    }
+    try {
+      LOCK.lock();
+      mCondition.signalAll();
+    } finally {
+      LOCK.unlock();
+    }
   }
 
   private void closeInfoTimer() {
@@ -359,6 +526,14 @@ final class M3U8LiveLoader extends BaseM3U8Loader {
   static class ExtInfo {
     String url;
     String extInf;
+    /**
+     * 切片使用的密钥
+     */
+    M3U8KeyInfo key;
+    /**
+     * 切片的媒体序列号
+     */
+    long sequence;
 
     ExtInfo(String url, String extInf) {
       this.url = url;
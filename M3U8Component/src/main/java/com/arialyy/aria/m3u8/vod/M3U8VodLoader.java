@@ -18,12 +18,13 @@ package com.arialyy.aria.m3u8.vod;
 import android.os.Handler;
 import android.os.Looper;
 import android.text.TextUtils;
-import android.util.SparseArray;
 import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.ThreadRecordCodec;
 import com.arialyy.aria.core.common.AbsEntity;
 import com.arialyy.aria.core.common.CompleteInfo;
 import com.arialyy.aria.core.common.SubThreadConfig;
 import com.arialyy.aria.core.download.DTaskWrapper;
+import com.arialyy.aria.core.download.M3U8Entity;
 import com.arialyy.aria.core.event.Event;
 import com.arialyy.aria.core.event.EventMsgUtil;
 import com.arialyy.aria.core.event.PeerIndexEvent;
@@ -32,6 +33,7 @@ import com.arialyy.aria.core.loader.IInfoTask;
 import com.arialyy.aria.core.loader.IRecordHandler;
 import com.arialyy.aria.core.loader.IThreadTaskBuilder;
 import com.arialyy.aria.core.manager.ThreadTaskManager;
+import com.arialyy.aria.core.play.PlayServer;
 import com.arialyy.aria.core.processor.IVodTsUrlConverter;
 import com.arialyy.aria.core.task.ThreadTask;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
@@ -41,57 +43,29 @@ import com.arialyy.aria.m3u8.BaseM3U8Loader;
 import com.arialyy.aria.m3u8.M3U8Listener;
 import com.arialyy.aria.m3u8.M3U8TaskOption;
 import com.arialyy.aria.m3u8.M3U8ThreadTaskAdapter;
+import com.arialyy.aria.m3u8.M3U8Variant;
+import com.arialyy.aria.m3u8.M3U8VariantSelector;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.FileUtil;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * M3U8点播文件下载器
+ * 切片的调度由{@link VodScheduler}负责，调度器只在状态管理器的looper线程中运行，不需要加锁
  */
 final class M3U8VodLoader extends BaseM3U8Loader {
-  /**
-   * 最大执行数
-   */
-  private int EXEC_MAX_NUM;
   private Handler mStateHandler;
-  private ArrayBlockingQueue<TempFlag> mFlagQueue;
-  private ArrayBlockingQueue<PeerIndexEvent> mJumpQueue;
-  private ReentrantLock LOCK = new ReentrantLock();
-  private ReentrantLock EVENT_LOCK = new ReentrantLock();
-  private ReentrantLock JUMP_LOCK = new ReentrantLock();
-  private Condition mWaitCondition = LOCK.newCondition();
-  private Condition mEventQueueCondition = EVENT_LOCK.newCondition();
-  private Condition mJumpCondition = JUMP_LOCK.newCondition();
-  private SparseArray<ThreadRecord> mBeforePeer = new SparseArray<>();
-  private SparseArray<ThreadRecord> mAfterPeer = new SparseArray<>();
-  private PeerIndexEvent mCurrentEvent;
   private String mCacheDir;
-  private AtomicInteger afterPeerIndex = new AtomicInteger();
-  private AtomicInteger beforePeerIndex = new AtomicInteger();
-  private AtomicInteger mCompleteNum = new AtomicInteger();
-  private AtomicInteger mCurrentFlagSize = new AtomicInteger();
-  private boolean isJump = false, isDestroy = false;
-  private ExecutorService mJumpThreadPool;
-  private Thread jumpThread = null;
   private M3U8TaskOption mM3U8Option;
   private Looper mLooper;
+  private VodScheduler mScheduler;
+  private VodPlaySource mPlaySource;
+  private VodVariantSwitcher mSwitcher;
 
   M3U8VodLoader(DTaskWrapper wrapper, M3U8Listener listener) {
     super(wrapper, listener);
     mM3U8Option = (M3U8TaskOption) wrapper.getM3u8Option();
-    mFlagQueue = new ArrayBlockingQueue<>(mM3U8Option.getMaxTsQueueNum());
-    EXEC_MAX_NUM = mM3U8Option.getMaxTsQueueNum();
-    mJumpQueue = new ArrayBlockingQueue<>(10);
     EventMsgUtil.getDefault().register(this);
   }
 
@@ -99,29 +73,12 @@ final class M3U8VodLoader extends BaseM3U8Loader {
     return (M3U8Listener) super.getListener();
   }
 
-  SparseArray<ThreadRecord> getBeforePeer() {
-    return mBeforePeer;
-  }
-
-  int getCompleteNum() {
-    return mCompleteNum.get();
-  }
-
-  void setCompleteNum(int completeNum) {
-    mCompleteNum.set(completeNum);
+  VodScheduler getScheduler() {
+    return mScheduler;
   }
 
-  int getCurrentFlagSize() {
-    mCurrentFlagSize.set(mFlagQueue.size());
-    return mCurrentFlagSize.get();
-  }
-
-  void setCurrentFlagSize(int currentFlagSize) {
-    mCurrentFlagSize.set(currentFlagSize);
-  }
-
-  boolean isJump() {
-    return isJump;
+  VodPlaySource getPlaySource() {
+    return mPlaySource;
   }
 
   File getTempFile() {
@@ -130,10 +87,13 @@ final class M3U8VodLoader extends BaseM3U8Loader {
 
   @Override public void onDestroy() {
     super.onDestroy();
-    isDestroy = true;
     EventMsgUtil.getDefault().unRegister(this);
-    if (mJumpThreadPool != null && !mJumpThreadPool.isShutdown()) {
-      mJumpThreadPool.shutdown();
+    if (mPlaySource != null) {
+      mPlaySource.close();
+      PlayServer.getInstance().unregister(mTaskWrapper.getKey(), mPlaySource);
+    }
+    if (mSwitcher != null) {
+      mSwitcher.release();
     }
   }
 
@@ -158,51 +118,29 @@ final class M3U8VodLoader extends BaseM3U8Loader {
     // 初始化ts数据
     initData();
 
+    // 码率切换
+    M3U8Variant variant = getCurrentVariant();
+    if (VodVariantSwitcher.isSupport(mM3U8Option, variant)) {
+      mSwitcher = new VodVariantSwitcher(this, mTaskWrapper, mStateHandler, variant);
+    }
+
+    // 注册边下边播的数据源
+    mPlaySource = new VodPlaySource(this, mM3U8Option, mCacheDir, mRecord.threadRecords);
+    PlayServer.getInstance().register(mTaskWrapper.getKey(), mPlaySource);
+
     // 启动定时器
     startTimer();
 
-    // 启动线程开始下载ts切片
-    Thread th = new Thread(new Runnable() {
+    // 在looper线程中启动切片下载
+    mStateHandler.post(new Runnable() {
       @Override public void run() {
-        while (!isBreak()) {
-          try {
-            JUMP_LOCK.lock();
-            if (isJump) {
-              mJumpCondition.await(5, TimeUnit.SECONDS);
-              isJump = false;
-            }
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          } finally {
-            JUMP_LOCK.unlock();
-          }
-
-          try {
-            LOCK.lock();
-            while (mFlagQueue.size() < EXEC_MAX_NUM && !isBreak()) {
-              if (mCompleteNum.get() == mRecord.threadRecords.size()) {
-                break;
-              }
-
-              ThreadRecord tr = getThreadRecord();
-              if (tr == null || tr.isComplete) {
-                ALog.d(TAG, "记录为空或记录已完成");
-                break;
-              }
-              addTaskToQueue(tr);
-            }
-            if (mFlagQueue.size() > 0) {
-              mWaitCondition.await();
-            }
-          } catch (Exception e) {
-            e.printStackTrace();
-          } finally {
-            LOCK.unlock();
-          }
+        if (mM3U8Option.getJumpIndex() != 0) {
+          mScheduler.jump(mM3U8Option.getJumpIndex());
+        } else {
+          mScheduler.fill();
         }
       }
     });
-    th.start();
   }
 
   @Override public long getFileSize() {
@@ -210,43 +148,27 @@ final class M3U8VodLoader extends BaseM3U8Loader {
   }
 
   /**
-   * 获取线程记录
+   * 启动切片的下载
+   *
+   * @param members 合并到该切片的请求中一起下载的切片，按字节范围的顺序排列，都在该切片之前
+   * @return 任务已停止时返回null
    */
-  private ThreadRecord getThreadRecord() {
-    ThreadRecord tr = null;
-    try {
-      // 优先下载peer指针之后的数据
-      if (beforePeerIndex.get() == 0 && afterPeerIndex.get() < mAfterPeer.size()) {
-        //ALog.d(TAG, String.format("afterArray size:%s, index:%s", mAfterPeer.size(), aIndex));
-        tr = mAfterPeer.valueAt(afterPeerIndex.get());
-        afterPeerIndex.getAndIncrement();
-      }
-
-      // 如果指针之后的数组没有切片了，则重新初始化指针位置，并获取指针之前的数组获取切片进行下载
-      if (mBeforePeer.size() > 0
-          && (tr == null || beforePeerIndex.get() != 0)
-          && beforePeerIndex.get() < mBeforePeer.size()) {
-        tr = mBeforePeer.valueAt(beforePeerIndex.get());
-        beforePeerIndex.getAndIncrement();
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
+  ThreadTask startPeer(ThreadRecord tr, List<ThreadRecord> members) {
+    if (isBreak()) {
+      ALog.w(TAG, "任务已停止，启动线程任务失败");
+      return null;
     }
-
-    return tr;
-  }
-
-  /**
-   * 启动线程任务
-   */
-  private void addTaskToQueue(ThreadRecord tr) throws InterruptedException {
-    ThreadTask task = createThreadTask(mCacheDir, tr, tr.threadId);
+    ThreadTask task = createThreadTask(mCacheDir, tr, tr.threadId, members);
     getTaskList().add(task);
     getEntity().getM3U8Entity().setPeerIndex(tr.threadId);
-    TempFlag flag = startThreadTask(task, tr.threadId);
-    if (flag != null) {
-      mFlagQueue.put(flag);
+    ThreadTaskManager.getInstance().startThread(mTaskWrapper.getKey(), task);
+    for (ThreadRecord member : members) {
+      getListener().onPeerStart(mTaskWrapper.getKey(),
+          BaseM3U8Loader.getTsFilePath(mCacheDir, member.threadId), member.threadId);
     }
+    getListener().onPeerStart(mTaskWrapper.getKey(), task.getConfig().tempFile.getPath(),
+        tr.threadId);
+    return task;
   }
 
   /**
@@ -254,228 +176,120 @@ final class M3U8VodLoader extends BaseM3U8Loader {
    */
   private void initData() {
     mCacheDir = getCacheDir();
-    if (mM3U8Option.getJumpIndex() != 0) {
-      mCurrentEvent = new PeerIndexEvent(mTaskWrapper.getKey(), mM3U8Option.getJumpIndex());
-      resumeTask();
-      return;
-    }
-    // 设置需要下载的切片
-    mCompleteNum.set(0);
-    for (ThreadRecord tr : mRecord.threadRecords) {
-      if (!tr.isComplete) {
-        mAfterPeer.put(tr.threadId, tr);
-      } else {
-        mCompleteNum.getAndIncrement();
-      }
-    }
-    getStateManager().updateStateCount();
-    if (mCompleteNum.get() <= 0) {
+    mScheduler = new VodScheduler(this, mRecord.threadRecords, mM3U8Option.getByteRanges(),
+        mM3U8Option.getMaxTsQueueNum(), mM3U8Option.isIgnoreFailureTs());
+    int completeNum = mScheduler.getCompleteNum();
+    if (completeNum <= 0) {
       getListener().onStart(0);
     } else {
-      int percent = mCompleteNum.get() * 100 / mRecord.threadRecords.size();
+      int percent = completeNum * 100 / mRecord.threadRecords.size();
       getListener().onResume(percent);
     }
   }
 
-  /**
-   * 每隔几秒钟检查jump队列，取最新的事件处理
-   */
-  private synchronized void startJumpThread() {
-    jumpThread = new Thread(new Runnable() {
-      @Override public void run() {
-        try {
-          PeerIndexEvent event;
-          while (!isBreak()) {
-            try {
-              EVENT_LOCK.lock();
-              PeerIndexEvent temp = null;
-              // 取最新的事件
-              while ((event = mJumpQueue.poll(1, TimeUnit.SECONDS)) != null) {
-                temp = event;
-              }
-
-              if (temp != null) {
-                handleJump(temp);
-              }
-              mEventQueueCondition.await();
-            } finally {
-              EVENT_LOCK.unlock();
-            }
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      }
-    });
-    jumpThread.start();
-  }
-
-  /**
-   * 处理跳转
-   */
-  private void handleJump(PeerIndexEvent event) {
-    if (isBreak()) {
-      ALog.e(TAG, "任务已停止，处理跳转失败");
-      return;
-    }
-    mCurrentEvent = event;
-    if (mRecord == null || mRecord.threadRecords == null) {
-      ALog.e(TAG, "跳到指定位置失败，记录为空");
-      return;
-    }
-    if (event.peerIndex >= mRecord.threadRecords.size()) {
-      ALog.e(TAG,
-          String.format("切片索引设置错误，切片最大索引为：%s，当前设置的索引为：%s", mRecord.threadRecords.size(),
-              event.peerIndex));
-      return;
-    }
-    ALog.i(TAG, String.format("将优先下载索引【%s】之后的切片", event.peerIndex));
-
-    isJump = true;
-    notifyWaitLock(false);
-    mCurrentFlagSize.set(mFlagQueue.size());
-    // 停止所有正在执行的线程任务
-    try {
-      TempFlag flag;
-      while ((flag = mFlagQueue.poll()) != null) {
-        flag.threadTask.stop();
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    ALog.d(TAG, "完成停止队列中的切片任务");
-  }
-
   /**
    * 下载指定索引后面的切片
    * 如果指定的切片索引大于切片总数，则此操作无效
-   * 如果指定的切片索引小于当前正在下载的切片索引，并且指定索引和当前索引区间内有未下载的切片，则优先下载该区间的切片；否则此操作无效
-   * 如果指定索引后的切片已经全部下载完成，但是索引前有未下载的切片，间会自动下载未下载的切片
+   * 只调整下载的优先级，指定索引之后窗口内正在下载的切片不会被中断，窗口外的切片停止后重新排队
+   * 如果指定索引后的切片已经全部下载完成，但是索引前有未下载的切片，则会自动下载未下载的切片
    */
   @Event
-  public synchronized void jumpPeer(PeerIndexEvent event) {
+  public void jumpPeer(PeerIndexEvent event) {
     if (!event.key.equals(mTaskWrapper.getKey())) {
       return;
     }
-    if (isBreak()) {
+    jumpTo(event.peerIndex);
+  }
+
+  /**
+   * 在looper线程中调整下载的优先级
+   */
+  void jumpTo(final int peerIndex) {
+    if (isBreak() || mStateHandler == null) {
       ALog.e(TAG, "任务已停止，发送跳转事件失败");
       return;
     }
-    if (jumpThread == null) {
-      mJumpThreadPool = Executors.newSingleThreadExecutor();
-      startJumpThread();
-    }
-    mJumpQueue.offer(event);
-    mJumpThreadPool.submit(new Runnable() {
+    mStateHandler.post(new Runnable() {
       @Override public void run() {
-        try {
-          Thread.sleep(1000);
-          notifyJumpQueue();
-        } catch (Exception e) {
-          e.printStackTrace();
+        if (!isBreak()) {
+          mScheduler.jump(peerIndex);
         }
       }
     });
   }
 
-  private void notifyJumpQueue() {
-    try {
-      EVENT_LOCK.lock();
-      mEventQueueCondition.signalAll();
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      EVENT_LOCK.unlock();
+  /**
+   * 调度器每完成一轮切片的下载回调一次吞吐量，在looper线程中调用
+   *
+   * @param throughput 吞吐量，单位byte/s
+   */
+  void onThroughput(double throughput) {
+    M3U8VariantSelector.updateThroughput(throughput);
+    if (mSwitcher != null) {
+      mSwitcher.onThroughput(throughput, mRecord.threadRecords);
     }
   }
 
   /**
-   * 从指定位置恢复任务
+   * 将等待下载的切片切换到新的码率，在looper线程中调用
+   *
+   * @param urls 新码率所有切片的地址
    */
-  synchronized void resumeTask() {
-    if (isBreak()) {
-      ALog.e(TAG, "任务已停止，恢复任务失败");
+  void switchVariant(M3U8Variant variant, List<String> urls) {
+    List<Integer> ids = mScheduler.switchPeerUrls(urls);
+    if (ids.isEmpty()) {
       return;
     }
-    if (mJumpQueue.size() > 0) {
-      ALog.d(TAG, "有新定位，取消上一次操作");
-      notifyJumpQueue();
-      return;
-    }
-    ALog.d(TAG, "恢复切片任务");
-    // 重新初始化需要下载的分片
-    mBeforePeer.clear();
-    mAfterPeer.clear();
-    mFlagQueue.clear();
-    afterPeerIndex.set(0);
-    beforePeerIndex.set(0);
-    mCompleteNum.set(0);
-    for (ThreadRecord tr : mRecord.threadRecords) {
-      if (tr.isComplete) {
-        mCompleteNum.getAndIncrement();
-        continue;
-      }
-      if (tr.threadId < mCurrentEvent.peerIndex) {
-        mBeforePeer.put(tr.threadId, tr);
-      } else {
-        mAfterPeer.put(tr.threadId, tr);
+    if (mRecord.threadBlob != null) {
+      // 紧凑格式只能修改定长字段，地址变化后需要重新编码
+      ThreadRecordCodec.attach(mRecord);
+      mRecord.update();
+    } else {
+      for (int id : ids) {
+        mRecord.threadRecords.get(id).update();
       }
     }
-
-    ALog.i(TAG,
-        String.format("beforeSize = %s, afterSize = %s, mCompleteNum = %s", mBeforePeer.size(),
-            mAfterPeer.size(), mCompleteNum));
-    ALog.i(TAG, String.format("完成处理数据的操作，将优先下载【%s】之后的切片", mCurrentEvent.peerIndex));
-    getStateManager().updateStateCount();
-
-    try {
-      JUMP_LOCK.lock();
-      mJumpCondition.signalAll();
-    } finally {
-      JUMP_LOCK.unlock();
-    }
+    M3U8Entity m3U8Entity = getEntity().getM3U8Entity();
+    m3U8Entity.setPeerBandWidth(ids, variant.bandWidth);
+    m3U8Entity.setBandWidth(variant.bandWidth);
+    m3U8Entity.update();
+    ALog.i(TAG, String.format("%s个切片切换到码率：%s", ids.size(), variant.bandWidth));
   }
 
-  void notifyWaitLock(boolean isComplete) {
-    try {
-      LOCK.lock();
-      if (isComplete) {
-        TempFlag flag = mFlagQueue.poll(1, TimeUnit.SECONDS);
-        if (flag != null) {
-          ALog.d(TAG, String.format("切片【%s】完成", flag.threadId));
-        }
+  /**
+   * 当前使用的码率
+   */
+  private M3U8Variant getCurrentVariant() {
+    List<M3U8Variant> variants = mM3U8Option.getVariants();
+    if (variants == null) {
+      return null;
+    }
+    int bandWidth = getEntity().getM3U8Entity().getBandWidth();
+    for (M3U8Variant variant : variants) {
+      if (variant.bandWidth == bandWidth) {
+        return variant;
       }
-      mWaitCondition.signalAll();
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      LOCK.unlock();
     }
+    return null;
   }
 
   /**
-   * 启动线程任务
+   * 转换切片地址
    *
-   * @return 线程唯一id标志
+   * @param m3u8Url 切片所在的m3u8文件的地址
    */
-  private TempFlag startThreadTask(ThreadTask task, int peerIndex) {
-    if (isBreak()) {
-      ALog.w(TAG, "任务已停止，启动线程任务失败");
-      return null;
-    }
-    ThreadTaskManager.getInstance().startThread(mTaskWrapper.getKey(), task);
-    getListener().onPeerStart(mTaskWrapper.getKey(), task.getConfig().tempFile.getPath(),
-        peerIndex);
-    TempFlag flag = new TempFlag();
-    flag.threadTask = task;
-    flag.threadId = peerIndex;
-    return flag;
+  List<String> convertTsUrls(String m3u8Url, List<String> urls) {
+    IVodTsUrlConverter converter = mM3U8Option.isUseDefConvert() ?
+        new VodTsDefConverter() :
+        mM3U8Option.getVodUrlConverter();
+    return converter == null ? urls : converter.convert(m3u8Url, urls);
   }
 
   /**
    * 配置config
    */
-  private ThreadTask createThreadTask(String cacheDir, ThreadRecord record, int index) {
+  private ThreadTask createThreadTask(String cacheDir, ThreadRecord record, int index,
+      List<ThreadRecord> members) {
     SubThreadConfig config = new SubThreadConfig();
     config.url = record.tsUrl;
     config.tempFile = new File(BaseM3U8Loader.getTsFilePath(cacheDir, record.threadId));
@@ -486,6 +300,16 @@ final class M3U8VodLoader extends BaseM3U8Loader {
     config.peerIndex = index;
     config.threadType = SubThreadConfig.getThreadType(ITaskWrapper.M3U8_LIVE);
     config.updateInterval = SubThreadConfig.getUpdateInterval(ITaskWrapper.M3U8_LIVE);
+    resetPeerFile(record, config.tempFile);
+    if (!members.isEmpty()) {
+      // 合并下载的切片都需要重新下载，清除过期的完成状态，否则请求的字节范围会跳过这些切片
+      for (ThreadRecord member : members) {
+        resetPeerFile(member, new File(BaseM3U8Loader.getTsFilePath(cacheDir, member.threadId)));
+        member.isComplete = false;
+      }
+      record.isComplete = false;
+      config.obj = members;
+    }
     if (!config.tempFile.exists()) {
       FileUtil.createFile(config.tempFile);
     }
@@ -495,30 +319,31 @@ final class M3U8VodLoader extends BaseM3U8Loader {
     return threadTask;
   }
 
+  /**
+   * 切片总是从头下载，需要删除上次停止时留下的数据，并扣除已统计的进度
+   */
+  private void resetPeerFile(ThreadRecord record, File peerFile) {
+    if (peerFile.exists() && peerFile.length() > 0) {
+      getStateManager().updateCurrentProgress(
+          Math.max(0, getStateManager().getCurrentProgress() - peerFile.length()));
+      FileUtil.deleteFile(peerFile);
+      record.startLocation = 0;
+    }
+  }
+
   @Override public void addComponent(IRecordHandler recordHandler) {
     mRecordHandler = recordHandler;
   }
 
   @Override public void addComponent(IInfoTask infoTask) {
     mInfoTask = infoTask;
-    final List<String> urls = new ArrayList<>();
     mInfoTask.setCallback(new IInfoTask.Callback() {
       @Override public void onSucceed(String key, CompleteInfo info) {
-        IVodTsUrlConverter converter = mM3U8Option.isUseDefConvert() ?
-            new VodTsDefConverter() :
-            mM3U8Option.getVodUrlConverter();
-        if (converter != null) {
-          if (TextUtils.isEmpty(mM3U8Option.getBandWidthUrl())) {
-            urls.addAll(
-                converter.convert(getEntity().getUrl(), (List<String>) info.obj));
-          } else {
-            urls.addAll(
-                converter.convert(mM3U8Option.getBandWidthUrl(), (List<String>) info.obj));
-          }
-        } else {
-          urls.addAll((Collection<? extends String>) info.obj);
-        }
-        if (urls.isEmpty()) {
+        String m3u8Url = TextUtils.isEmpty(mM3U8Option.getBandWidthUrl()) ? getEntity().getUrl()
+            : mM3U8Option.getBandWidthUrl();
+        // 转换器可以返回按需转换的列表，切片地址在创建线程记录时才生成
+        List<String> urls = convertTsUrls(m3u8Url, (List<String>) info.obj);
+        if (urls == null || urls.isEmpty()) {
           fail(new AriaM3U8Exception("获取地址失败"), false);
           return;
         } else if (!urls.get(0).startsWith("http")) {
@@ -581,9 +406,4 @@ final class M3U8VodLoader extends BaseM3U8Loader {
       throw new NullPointerException("任务状态管理组件为空");
     }
   }
-
-  private static class TempFlag {
-    ThreadTask threadTask;
-    int threadId;
-  }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8.vod;
+
+import com.arialyy.aria.core.play.FileRangePlaySource;
+import com.arialyy.aria.core.play.IFilePlaySource;
+import com.arialyy.aria.core.play.IHlsPlaySource;
+import com.arialyy.aria.m3u8.BaseM3U8Loader;
+import java.io.File;
+
+/**
+ * 已完成的m3u8点播任务的边下边播数据源，任务完成后播放器依然可以继续请求切片
+ * 切片已合并时，切片是合并文件中的一段；没有合并时，直接读取缓存目录中的切片文件
+ */
+final class VodCompletePlaySource implements IHlsPlaySource {
+  private final String mPlaylist;
+  private final String mCacheDir;
+  private final String mMergedPath;
+  private final long[] mOffsets;
+  private final long[] mLengths;
+
+  /**
+   * 切片没有合并
+   *
+   * @param playlist 任务完成时的播放列表
+   */
+  VodCompletePlaySource(String playlist, String cacheDir) {
+    mPlaylist = playlist;
+    mCacheDir = cacheDir;
+    mMergedPath = null;
+    mOffsets = null;
+    mLengths = null;
+  }
+
+  /**
+   * 切片已合并
+   *
+   * @param playlist 任务完成时的播放列表
+   * @param mergedPath 合并后的文件
+   * @param offsets 每个切片在合并文件中的起始位置
+   * @param lengths 每个切片的长度
+   */
+  VodCompletePlaySource(String playlist, String mergedPath, long[] offsets, long[] lengths) {
+    mPlaylist = playlist;
+    mCacheDir = null;
+    mMergedPath = mergedPath;
+    mOffsets = offsets;
+    mLengths = lengths;
+  }
+
+  @Override public String getPlaylist() {
+    return mPlaylist;
+  }
+
+  @Override public IFilePlaySource waitPeer(int peerIndex, long timeout) {
+    if (mMergedPath != null) {
+      if (peerIndex < 0 || peerIndex >= mOffsets.length) {
+        return null;
+      }
+      return new FileRangePlaySource(mMergedPath, mOffsets[peerIndex], mLengths[peerIndex]);
+    }
+    File peer = new File(BaseM3U8Loader.getTsFilePath(mCacheDir, peerIndex));
+    return peer.exists() ? new FileRangePlaySource(peer.getPath(), 0, peer.length()) : null;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8.vod;
+
+import android.text.TextUtils;
+import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.play.FileRangePlaySource;
+import com.arialyy.aria.core.play.IFilePlaySource;
+import com.arialyy.aria.core.play.IHlsPlaySource;
+import com.arialyy.aria.m3u8.BaseM3U8Loader;
+import com.arialyy.aria.m3u8.M3U8KeyInfo;
+import com.arialyy.aria.m3u8.M3U8KeyTable;
+import com.arialyy.aria.m3u8.M3U8MapInfo;
+import com.arialyy.aria.m3u8.M3U8PeerList;
+import com.arialyy.aria.m3u8.M3U8TaskOption;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import java.io.File;
+import java.util.List;
+
+/**
+ * m3u8点播任务的边下边播数据源
+ * 播放列表中的切片地址改为本地服务的地址，播放器请求未完成的切片时，从该切片开始优先下载
+ */
+final class VodPlaySource implements IHlsPlaySource {
+  private final String TAG = CommonUtil.getClassName(getClass());
+  private final M3U8VodLoader mLoader;
+  private final M3U8TaskOption mOption;
+  private final String mCacheDir;
+  private final boolean[] mComplete;
+  private boolean isClosed = false;
+  private int mLastRequestIndex = -1;
+
+  VodPlaySource(M3U8VodLoader loader, M3U8TaskOption option, String cacheDir,
+      List<ThreadRecord> records) {
+    mLoader = loader;
+    mOption = option;
+    mCacheDir = cacheDir;
+    mComplete = new boolean[records.size()];
+    for (int i = 0; i < records.size(); i++) {
+      mComplete[i] = records.get(i).isComplete;
+    }
+  }
+
+  /**
+   * 切片下载完成，唤醒等待该切片的请求
+   */
+  synchronized void onPeerComplete(int peerIndex) {
+    if (peerIndex >= 0 && peerIndex < mComplete.length) {
+      mComplete[peerIndex] = true;
+      notifyAll();
+    }
+  }
+
+  /**
+   * 任务结束，唤醒所有等待的请求
+   */
+  synchronized void close() {
+    isClosed = true;
+    notifyAll();
+  }
+
+  @Override public String getPlaylist() {
+    M3U8PeerList peers = mOption.getPeerList();
+    if (peers == null || peers.size() != mComplete.length) {
+      ALog.e(TAG, "切片信息不存在，无法生成播放列表");
+      return null;
+    }
+    M3U8KeyTable keyTable = mOption.getKeyTable();
+    StringBuilder body = new StringBuilder();
+    long targetDuration = 1;
+    M3U8KeyInfo lastKey = null;
+    for (int i = 0; i < peers.size(); i++) {
+      double duration = peers.getDuration(i);
+      targetDuration = Math.max(targetDuration, (long) Math.ceil(duration));
+      M3U8KeyInfo key = keyTable.getKey(i);
+      if (isEncrypted(key)) {
+        // 没有iv的密钥使用媒体序列号作为iv，改写后的序列号不连续时需要写入每个切片的iv
+        if (TextUtils.isEmpty(key.iv) || !key.equals(lastKey)) {
+          body.append(getKeyLine(key, keyTable.getSequence(i)));
+        }
+      } else if (isEncrypted(lastKey)) {
+        body.append("#EXT-X-KEY:METHOD=NONE\n");
+      }
+      lastKey = key;
+      body.append("#EXTINF:").append((float) duration).append(",\n").append(i).append(".ts\n");
+    }
+    // 初始化片段直接使用源地址，本地切片是完整的文件，不需要字节范围
+    M3U8MapInfo mapInfo = mOption.getMapInfo();
+    String map = "";
+    if (mapInfo != null) {
+      map = mapInfo.range == null ? String.format("#EXT-X-MAP:URI=\"%s\"\n", mapInfo.url)
+          : String.format("#EXT-X-MAP:URI=\"%s\",BYTERANGE=\"%s\"\n", mapInfo.url, mapInfo.range);
+    }
+    return "#EXTM3U\n"
+        + String.format("#EXT-X-VERSION:%s\n", mapInfo == null ? 3 : 6)
+        + "#EXT-X-PLAYLIST-TYPE:VOD\n"
+        + String.format("#EXT-X-TARGETDURATION:%s\n", targetDuration)
+        + String.format("#EXT-X-MEDIA-SEQUENCE:%s\n", keyTable.getSequence(0))
+        + map
+        + body
+        + "#EXT-X-ENDLIST\n";
+  }
+
+  @Override public IFilePlaySource waitPeer(int peerIndex, long timeout)
+      throws InterruptedException {
+    if (peerIndex < 0 || peerIndex >= mComplete.length) {
+      return null;
+    }
+    long endTime = System.currentTimeMillis() + timeout;
+    synchronized (this) {
+      if (!mComplete[peerIndex] && peerIndex != mLastRequestIndex) {
+        // 播放器读取的切片决定下载的优先级
+        mLastRequestIndex = peerIndex;
+        mLoader.jumpTo(peerIndex);
+      }
+      while (!mComplete[peerIndex]) {
+        long remain = endTime - System.currentTimeMillis();
+        if (isClosed || remain <= 0) {
+          return null;
+        }
+        wait(remain);
+      }
+    }
+    File peer = new File(BaseM3U8Loader.getTsFilePath(mCacheDir, peerIndex));
+    return peer.exists() ? new FileRangePlaySource(peer.getPath(), 0, peer.length()) : null;
+  }
+
+  /**
+   * 切片是否需要播放器解密，下载时已解密的切片不需要
+   */
+  private boolean isEncrypted(M3U8KeyInfo key) {
+    return key != null && !key.isNone() && !(mOption.isDecrypt() && key.isAes128());
+  }
+
+  private String getKeyLine(M3U8KeyInfo key, long sequence) {
+    StringBuilder sb = new StringBuilder("#EXT-X-KEY:METHOD=").append(key.method)
+        .append(",URI=\"").append(key.keyUrl).append('"')
+        .append(",IV=")
+        .append(TextUtils.isEmpty(key.iv) ? String.format("0x%032x", sequence) : key.iv);
+    if (!TextUtils.isEmpty(key.keyFormat)) {
+      sb.append(",KEYFORMAT=\"").append(key.keyFormat).append('"');
+    }
+    return sb.append('\n').toString();
+  }
+}
@@ -63,7 +63,26 @@ final class VodRecordHandler extends RecordHandler {
         (m3U8Entity.getPeerNum() <= 0 || (mOption.isGenerateIndexFile() && !new File(
             String.format(M3U8InfoTask.M3U8_INDEX_FORMAT, getEntity().getFilePath())).exists()));
 
-    for (ThreadRecord record : mTaskRecord.threadRecords) {
+    // 已追加到目标文件的切片，ts文件已经删除，合并数据不可用时需要重新下载这些切片
+    int mergedNum = m3U8Entity.getMergedPeerNum();
+    if (mergedNum > 0 && (reDownload
+        || !VodStateManager.isProgressiveMerge(mOption)
+        || mergedNum > mTaskRecord.threadRecords.size()
+        || targetFile.length() < m3U8Entity.getMergedLength())) {
+      ALog.w(TAG, "已合并的切片数据不可用，将重新下载这些切片");
+      resetMergeState(m3U8Entity);
+      mergedNum = 0;
+    } else if (mergedNum > 0) {
+      currentProgress += m3U8Entity.getMergedLength();
+    }
+
+    for (int i = 0; i < mTaskRecord.threadRecords.size(); i++) {
+      ThreadRecord record = mTaskRecord.threadRecords.get(i);
+      if (i < mergedNum) {
+        record.isComplete = true;
+        completeNum++;
+        continue;
+      }
       File temp = new File(BaseM3U8Loader.getTsFilePath(cacheDir, record.threadId));
       if (!record.isComplete || reDownload) {
         if (temp.exists()) {
@@ -108,7 +127,21 @@ final class VodRecordHandler extends RecordHandler {
     return tr;
   }
 
+  /**
+   * 重置渐进式合并的位置
+   */
+  private void resetMergeState(M3U8Entity m3U8Entity) {
+    m3U8Entity.setMergedPeerNum(0);
+    m3U8Entity.setMergedLength(0);
+    m3U8Entity.update();
+  }
+
   @Override public TaskRecord createTaskRecord(int threadNum) {
+    // 新的任务记录，旧的合并位置已经失效
+    M3U8Entity m3U8Entity = ((DownloadEntity) getEntity()).getM3U8Entity();
+    if (m3U8Entity != null && m3U8Entity.getMergedPeerNum() > 0) {
+      resetMergeState(m3U8Entity);
+    }
     TaskRecord record = new TaskRecord();
     record.fileName = getEntity().getFileName();
     record.filePath = getEntity().getFilePath();
@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8.vod;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.task.ThreadTask;
+import com.arialyy.aria.m3u8.M3U8ByteRange;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * m3u8点播切片调度器
+ * 从播放位置开始维护一个下载窗口，优先下载播放位置之后的切片，之后的切片下载完成后再下载之前的切片；
+ * 跳转只调整播放位置，新窗口内正在下载的切片继续下载，窗口外的切片停止后重新排队；
+ * 窗口大小（同时下载的切片数）根据每轮切片的下载吞吐量在1和最大值之间调整；
+ * 同一资源中字节范围相邻的切片合并为一个线程任务下载，合并的切片只占用一个窗口位置
+ *
+ * 所有方法都需要在状态管理器的looper线程中调用
+ */
+final class VodScheduler {
+  /**
+   * 切片失败后最多重新排队的次数
+   */
+  private static final int MAX_FAIL_TIMES = 2;
+  /**
+   * 吞吐量变化超过该比例时才调整窗口
+   */
+  private static final float THRESHOLD = 0.1f;
+  /**
+   * 合并切片的最大数据长度
+   */
+  private static final long MAX_COALESCE_LEN = 4 * 1024 * 1024;
+
+  private final String TAG = CommonUtil.getClassName(getClass());
+  private final M3U8VodLoader mLoader;
+  private final SparseArray<ThreadRecord> mRecords = new SparseArray<>();
+  /**
+   * 切片的字节范围，播放列表中没有字节范围时为null
+   */
+  private final List<M3U8ByteRange> mByteRanges;
+  /**
+   * 等待下载的切片
+   */
+  private final TreeSet<Integer> mPending = new TreeSet<>();
+  /**
+   * 正在下载的切片，合并下载的切片对应同一个线程任务
+   */
+  private final SparseArray<ThreadTask> mRunning = new SparseArray<>();
+  /**
+   * 跳转时被停止，还没有收到停止消息的切片，收到停止消息后才能重新排队
+   */
+  private final SparseArray<ThreadTask> mStopping = new SparseArray<>();
+  private final SparseIntArray mFailTimes = new SparseIntArray();
+  /**
+   * 合并下载的线程任务中，已完成的合并切片的字节数。
+   * 合并切片的完成消息只携带自己的字节数，主切片完成时线程的进度包含了整个请求，需要扣除这部分
+   */
+  private final Map<ThreadTask, Long> mMemberBytes = new HashMap<>();
+  private final int mMaxWindow;
+  private final boolean isIgnoreFailure;
+  private int mWindow;
+  private int mCursor;
+  private int mCompleteNum;
+  private int mFailNum;
+
+  // 吞吐量统计，mDirection为最后一次调整窗口的方向
+  private int mDirection = 1;
+  private int mRoundNum;
+  private long mRoundBytes;
+  private long mRoundStartTime;
+  private double mLastThroughput;
+
+  VodScheduler(M3U8VodLoader loader, List<ThreadRecord> records,
+      List<M3U8ByteRange> byteRanges, int maxWindow, boolean ignoreFailure) {
+    mLoader = loader;
+    mByteRanges = byteRanges;
+    mMaxWindow = Math.max(1, maxWindow);
+    isIgnoreFailure = ignoreFailure;
+    mWindow = (mMaxWindow + 1) / 2;
+    for (ThreadRecord tr : records) {
+      mRecords.put(tr.threadId, tr);
+      if (tr.isComplete) {
+        mCompleteNum++;
+      } else {
+        mPending.add(tr.threadId);
+      }
+    }
+  }
+
+  int getCompleteNum() {
+    return mCompleteNum;
+  }
+
+  /**
+   * 所有切片都已处理完成，忽略失败切片时，失败的切片也算处理完成
+   */
+  boolean isComplete() {
+    return mRunning.size() == 0
+        && mStopping.size() == 0
+        && mPending.isEmpty()
+        && mCompleteNum + mFailNum == mRecords.size();
+  }
+
+  /**
+   * 设置播放位置，只调整下载的优先级
+   *
+   * @param peerIndex 切片索引
+   */
+  void jump(int peerIndex) {
+    if (peerIndex < 0 || peerIndex >= mRecords.size()) {
+      ALog.e(TAG, String.format("切片索引设置错误，切片最大索引为：%s，当前设置的索引为：%s", mRecords.size() - 1,
+          peerIndex));
+      return;
+    }
+    ALog.i(TAG, String.format("将优先下载索引【%s】之后的切片", peerIndex));
+    mCursor = peerIndex;
+
+    // 新窗口内的切片
+    Set<Integer> window = new HashSet<>();
+    List<Integer> order = getIncompleteOrder();
+    for (int i = 0; i < order.size() && window.size() < mWindow; i++) {
+      window.add(order.get(i));
+    }
+    // 合并下载的切片只要有一个在窗口内，就继续下载
+    Set<ThreadTask> keep = new HashSet<>();
+    for (int i = 0; i < mRunning.size(); i++) {
+      if (window.contains(mRunning.keyAt(i))) {
+        keep.add(mRunning.valueAt(i));
+      }
+    }
+    Set<ThreadTask> stopped = new HashSet<>();
+    for (int i = mRunning.size() - 1; i >= 0; i--) {
+      ThreadTask task = mRunning.valueAt(i);
+      if (!keep.contains(task)) {
+        mStopping.put(mRunning.keyAt(i), task);
+        mRunning.removeAt(i);
+        if (stopped.add(task)) {
+          task.stop();
+        }
+      }
+    }
+    fill();
+  }
+
+  /**
+   * 启动窗口内空闲的位置
+   */
+  void fill() {
+    while (getRunningTaskNum() < mWindow && !mLoader.isBreak()) {
+      Integer id = mPending.ceiling(mCursor);
+      if (id == null) {
+        // 播放位置之后的切片都已下载，下载之前的切片
+        id = mPending.isEmpty() ? null : mPending.first();
+      }
+      if (id == null) {
+        break;
+      }
+      mPending.remove(id);
+      List<ThreadRecord> members = coalesce(id);
+      ThreadRecord tr = members.remove(members.size() - 1);
+      ThreadTask task = mLoader.startPeer(tr, members);
+      if (task == null) {
+        mPending.add(tr.threadId);
+        for (ThreadRecord member : members) {
+          mPending.add(member.threadId);
+        }
+        break;
+      }
+      mRunning.put(tr.threadId, task);
+      for (ThreadRecord member : members) {
+        mRunning.put(member.threadId, task);
+      }
+    }
+  }
+
+  /**
+   * 合并之后等待下载的相邻切片，切片需要在同一资源中，并且字节范围连续
+   *
+   * @param peerIndex 第一个切片的索引，已从等待队列中移除
+   * @return 按顺序排列的切片，没有可合并的切片时只有第一个切片
+   */
+  private List<ThreadRecord> coalesce(int peerIndex) {
+    List<ThreadRecord> members = new ArrayList<>();
+    ThreadRecord first = mRecords.get(peerIndex);
+    members.add(first);
+    M3U8ByteRange range = getByteRange(peerIndex);
+    if (range == null) {
+      return members;
+    }
+    long len = range.length;
+    for (int id = peerIndex + 1; len < MAX_COALESCE_LEN && mPending.contains(id); id++) {
+      M3U8ByteRange next = getByteRange(id);
+      ThreadRecord tr = mRecords.get(id);
+      if (next == null || next.offset != range.getEnd() || !TextUtils.equals(tr.tsUrl,
+          first.tsUrl)) {
+        break;
+      }
+      mPending.remove(id);
+      members.add(tr);
+      range = next;
+      len += next.length;
+    }
+    return members;
+  }
+
+  private M3U8ByteRange getByteRange(int peerIndex) {
+    return mByteRanges == null || peerIndex >= mByteRanges.size() ? null
+        : mByteRanges.get(peerIndex);
+  }
+
+  /**
+   * 正在下载的线程任务数
+   */
+  private int getRunningTaskNum() {
+    Set<ThreadTask> tasks = new HashSet<>();
+    for (int i = 0; i < mRunning.size(); i++) {
+      tasks.add(mRunning.valueAt(i));
+    }
+    return tasks.size();
+  }
+
+  /**
+   * 切片完成
+   *
+   * @param peerPath 切片文件的路径
+   * @return {@code false} 过期的消息，切片已经重新排队
+   */
+  boolean onPeerComplete(int peerIndex, ThreadTask task, long len, String peerPath) {
+    if (mRunning.get(peerIndex) == task) {
+      mRunning.remove(peerIndex);
+      if (peerIndex != task.getConfig().peerIndex) {
+        // 合并下载的切片只由下载线程发送完成消息，记录在调度线程中修改
+        markComplete(peerIndex, peerPath);
+      }
+    } else if (mStopping.get(peerIndex) == task) {
+      // 停止前已经下载完成，停止时的记录可能覆盖了完成状态
+      mStopping.remove(peerIndex);
+      markComplete(peerIndex, peerPath);
+    } else {
+      return false;
+    }
+    if (peerIndex == task.getConfig().peerIndex) {
+      Long memberBytes = mMemberBytes.remove(task);
+      if (memberBytes != null) {
+        len = Math.max(0, len - memberBytes);
+      }
+    } else {
+      Long memberBytes = mMemberBytes.get(task);
+      mMemberBytes.put(task, memberBytes == null ? len : memberBytes + len);
+    }
+    mCompleteNum++;
+    updateWindow(len);
+    fill();
+    return true;
+  }
+
+  /**
+   * 将切片记录修改为完成并保存
+   */
+  private void markComplete(int peerIndex, String peerPath) {
+    ThreadRecord tr = mRecords.get(peerIndex);
+    if (tr.isComplete) {
+      return;
+    }
+    tr.isComplete = true;
+    if (!TextUtils.isEmpty(peerPath)) {
+      tr.startLocation = new File(peerPath).length();
+    }
+    tr.update();
+  }
+
+  /**
+   * 切片停止，跳转时停止的切片和与它合并下载的切片重新排队
+   */
+  void onPeerStop(int peerIndex, ThreadTask task) {
+    if (mStopping.get(peerIndex) != task) {
+      return;
+    }
+    mMemberBytes.remove(task);
+    for (int i = mStopping.size() - 1; i >= 0; i--) {
+      if (mStopping.valueAt(i) == task) {
+        mPending.add(mStopping.keyAt(i));
+        mStopping.removeAt(i);
+      }
+    }
+    fill();
+  }
+
+  /**
+   * 切片失败，失败次数没有超过限制时重新排队
+   *
+   * @return {@code false} 任务需要失败
+   */
+  boolean onPeerFail(int peerIndex, ThreadTask task) {
+    if (mRunning.get(peerIndex) != task) {
+      // 跳转时停止的切片，等待停止消息后重新排队
+      return true;
+    }
+    mMemberBytes.remove(task);
+    // 合并下载的切片一起失败
+    for (int i = mRunning.size() - 1; i >= 0; i--) {
+      if (mRunning.valueAt(i) != task) {
+        continue;
+      }
+      int id = mRunning.keyAt(i);
+      mRunning.removeAt(i);
+      int times = mFailTimes.get(id) + 1;
+      mFailTimes.put(id, times);
+      if (times < MAX_FAIL_TIMES) {
+        ALog.w(TAG, String.format("切片【%s】失败，重新排队", id));
+        mPending.add(id);
+      } else if (isIgnoreFailure) {
+        ALog.w(TAG, String.format("切片【%s】失败，忽略该切片", id));
+        mFailNum++;
+      } else {
+        return false;
+      }
+    }
+    fill();
+    return true;
+  }
+
+  /**
+   * 切换等待下载的切片的地址，正在下载的切片不切换
+   *
+   * @param urls 所有切片的新地址
+   * @return 切换了地址的切片索引
+   */
+  List<Integer> switchPeerUrls(List<String> urls) {
+    List<Integer> ids = new ArrayList<>();
+    for (int id : mPending) {
+      if (id < urls.size()) {
+        mRecords.get(id).tsUrl = urls.get(id);
+        ids.add(id);
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * 从播放位置开始排列未完成的切片，之前的切片排在最后
+   */
+  private List<Integer> getIncompleteOrder() {
+    TreeSet<Integer> ids = new TreeSet<>(mPending);
+    for (int i = 0; i < mRunning.size(); i++) {
+      ids.add(mRunning.keyAt(i));
+    }
+    List<Integer> order = new ArrayList<>(ids.tailSet(mCursor));
+    order.addAll(ids.headSet(mCursor));
+    return order;
+  }
+
+  /**
+   * 每完成一轮（窗口大小个切片）计算一次吞吐量，吞吐量提升时继续按原方向调整窗口，下降时反向调整
+   */
+  private void updateWindow(long len) {
+    long now = SystemClock.elapsedRealtime();
+    if (mRoundStartTime == 0) {
+      mRoundStartTime = now;
+    }
+    mRoundBytes += len;
+    mRoundNum++;
+    if (mRoundNum < mWindow || now <= mRoundStartTime) {
+      return;
+    }
+    double throughput = (double) mRoundBytes / (now - mRoundStartTime);
+    int move = mDirection;
+    if (mLastThroughput > 0) {
+      if (throughput < mLastThroughput * (1 - THRESHOLD)) {
+        move = -mDirection;
+      } else if (throughput < mLastThroughput * (1 + THRESHOLD)) {
+        move = 0;
+      }
+    }
+    if (move != 0) {
+      mDirection = move;
+    }
+    int window = Math.max(1, Math.min(mMaxWindow, mWindow + move));
+    if (window != mWindow) {
+      ALog.d(TAG, String.format("吞吐量：%.1fKB/s，下载窗口调整为：%s", throughput, window));
+      mWindow = window;
+    }
+    mLastThroughput = throughput;
+    mLoader.onThroughput(throughput * 1000);
+    mRoundNum = 0;
+    mRoundBytes = 0;
+    mRoundStartTime = now;
+  }
+}
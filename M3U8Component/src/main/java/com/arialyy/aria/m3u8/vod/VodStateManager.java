@@ -23,16 +23,20 @@ import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
+import com.arialyy.aria.core.download.M3U8Entity;
 import com.arialyy.aria.core.inf.IThreadStateManager;
 import com.arialyy.aria.core.listener.ISchedulers;
 import com.arialyy.aria.core.loader.ILoaderVisitor;
 import com.arialyy.aria.core.manager.ThreadTaskManager;
+import com.arialyy.aria.core.play.PlayServer;
 import com.arialyy.aria.core.processor.ITsMergeHandler;
 import com.arialyy.aria.core.task.ThreadTask;
 import com.arialyy.aria.exception.AriaException;
 import com.arialyy.aria.exception.AriaM3U8Exception;
 import com.arialyy.aria.m3u8.BaseM3U8Loader;
 import com.arialyy.aria.m3u8.M3U8Listener;
+import com.arialyy.aria.m3u8.M3U8MapInfo;
+import com.arialyy.aria.m3u8.M3U8ResCache;
 import com.arialyy.aria.m3u8.M3U8TaskOption;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
@@ -40,7 +44,6 @@ import com.arialyy.aria.util.FileUtil;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * m3u8 点播下载状态管理器
@@ -49,10 +52,7 @@ public final class VodStateManager implements IThreadStateManager {
   private final String TAG = CommonUtil.getClassName(getClass());
 
   private M3U8Listener listener;
-  private int startThreadNum;    // 启动的线程总数
-  private AtomicInteger cancelNum = new AtomicInteger(0); // 已经取消的线程的数
-  private AtomicInteger stopNum = new AtomicInteger(0);  // 已经停止的线程数
-  private AtomicInteger failNum = new AtomicInteger(0);  // 失败的线程数
+  private boolean isFail;
   private long progress;
   private TaskRecord taskRecord; // 任务记录
   private Looper looper;
@@ -72,27 +72,30 @@ public final class VodStateManager implements IThreadStateManager {
 
   private Handler.Callback callback = new Handler.Callback() {
     @Override public boolean handleMessage(Message msg) {
-      int peerIndex = msg.getData().getInt(ISchedulers.DATA_M3U8_PEER_INDEX);
+      if (msg.what == STATE_RUNNING) {
+        Bundle b = msg.getData();
+        if (b != null) {
+          progress += b.getLong(IThreadStateManager.DATA_ADD_LEN, 0);
+        }
+        return true;
+      }
+      ThreadTask task = (ThreadTask) msg.obj;
+      // 停止消息不携带切片索引，从线程配置中获取；合并下载的切片完成时，消息中的索引是合并的切片的索引
+      int peerIndex = task == null ? -1
+          : msg.getData().getInt(ISchedulers.DATA_M3U8_PEER_INDEX, task.getConfig().peerIndex);
       switch (msg.what) {
         case STATE_STOP:
-          stopNum.getAndIncrement();
-          removeSignThread((ThreadTask) msg.obj);
-          // 处理跳转位置后，恢复任务
-          if (loader.isJump()
-              && (stopNum.get() == loader.getCurrentFlagSize() || loader.getCurrentFlagSize() == 0)
-              && !loader.isBreak()) {
-            loader.resumeTask();
-            return true;
-          }
-
+          removeSignThread(task);
           if (loader.isBreak()) {
             ALog.d(TAG, String.format("vod任务【%s】停止", loader.getTempFile().getName()));
             quitLooper();
+          } else {
+            // 跳转时停止的切片，重新排队
+            loader.getScheduler().onPeerStop(peerIndex, task);
           }
           break;
         case STATE_CANCEL:
-          cancelNum.getAndIncrement();
-          removeSignThread((ThreadTask) msg.obj);
+          removeSignThread(task);
 
           if (loader.isBreak()) {
             ALog.d(TAG, String.format("vod任务【%s】取消", loader.getTempFile().getName()));
@@ -100,74 +103,50 @@ public final class VodStateManager implements IThreadStateManager {
           }
           break;
         case STATE_FAIL:
-          failNum.getAndIncrement();
-          for (ThreadRecord tr : taskRecord.threadRecords) {
-            if (tr.threadId == peerIndex) {
-              loader.getBeforePeer().put(peerIndex, tr);
-              break;
-            }
-          }
-
+          removeSignThread(task);
           getListener().onPeerFail(wrapper.getKey(),
               msg.getData().getString(ISchedulers.DATA_M3U8_PEER_PATH), peerIndex);
-          if (isFail()) {
+          if (loader.isBreak()) {
+            quitLooper();
+            break;
+          }
+          if (!loader.getScheduler().onPeerFail(peerIndex, task)) {
             ALog.d(TAG, String.format("vod任务【%s】失败", loader.getTempFile().getName()));
+            isFail = true;
             Bundle b = msg.getData();
             listener.onFail(b.getBoolean(DATA_RETRY, true),
                 (AriaException) b.getSerializable(DATA_ERROR_INFO));
             quitLooper();
+          } else if (isComplete()) {
+            handleComplete();
           }
           break;
         case STATE_COMPLETE:
+          // 合并下载的切片完成时，线程任务还在下载其它切片
+          if (peerIndex == task.getConfig().peerIndex) {
+            removeSignThread(task);
+          }
           if (loader.isBreak()) {
             quitLooper();
+            break;
           }
-          loader.setCompleteNum(loader.getCompleteNum() + 1);
-          // 正在切换位置时，切片完成，队列减小
-          if (loader.isJump()) {
-            loader.setCurrentFlagSize(loader.getCurrentFlagSize() - 1);
-            if (loader.getCurrentFlagSize() < 0) {
-              loader.setCurrentFlagSize(0);
-            }
+          if (!loader.getScheduler().onPeerComplete(peerIndex, task,
+              msg.getData().getLong(DATA_THREAD_LOCATION, 0),
+              msg.getData().getString(ISchedulers.DATA_M3U8_PEER_PATH))) {
+            break;
           }
-
-          removeSignThread((ThreadTask) msg.obj);
+          loader.getPlaySource().onPeerComplete(peerIndex);
           getListener().onPeerComplete(wrapper.getKey(),
               msg.getData().getString(ISchedulers.DATA_M3U8_PEER_PATH), peerIndex);
           handlerPercent();
-          if (!loader.isJump()) {
-            loader.notifyWaitLock(true);
+          // 边下边播时播放器需要读取切片文件，切片在任务完成后再追加
+          if (isProgressiveMerge(m3U8Option)
+              && !PlayServer.getInstance().isRunning()
+              && !appendPeers(false)) {
+            ALog.w(TAG, "追加切片失败，将在下载完成后重试");
           }
           if (isComplete()) {
-            ALog.d(TAG, String.format(
-                "startThreadNum = %s, stopNum = %s, cancelNum = %s, failNum = %s, completeNum = %s, flagQueueSize = %s",
-                startThreadNum, stopNum, cancelNum, failNum, loader.getCompleteNum(),
-                loader.getCurrentFlagSize()));
-            ALog.d(TAG, String.format("vod任务【%s】完成", loader.getTempFile().getName()));
-
-            if (m3U8Option.isGenerateIndexFile()) {
-              if (loader.generateIndexFile(false)) {
-                listener.onComplete();
-              } else {
-                listener.onFail(false, new AriaM3U8Exception("创建索引文件失败"));
-              }
-            } else if (m3U8Option.isMergeFile()) {
-              if (mergeFile()) {
-                listener.onComplete();
-              } else {
-                listener.onFail(false, null);
-              }
-            } else {
-              listener.onComplete();
-            }
-            quitLooper();
-          }
-          break;
-        case STATE_RUNNING:
-          Bundle b = msg.getData();
-          if (b != null) {
-            long len = b.getLong(IThreadStateManager.DATA_ADD_LEN, 0);
-            progress += len;
+            handleComplete();
           }
           break;
       }
@@ -175,20 +154,34 @@ public final class VodStateManager implements IThreadStateManager {
     }
   };
 
-  void updateStateCount() {
-    cancelNum.set(0);
-    stopNum.set(0);
-    failNum.set(0);
+  /**
+   * 所有切片处理完成，生成索引文件或合并文件
+   */
+  private void handleComplete() {
+    ALog.d(TAG, String.format("vod任务【%s】完成", loader.getTempFile().getName()));
+    if (m3U8Option.isGenerateIndexFile()) {
+      if (loader.generateIndexFile(false)) {
+        keepPlaySource(null);
+        listener.onComplete();
+      } else {
+        listener.onFail(false, new AriaM3U8Exception("创建索引文件失败"));
+      }
+    } else if (m3U8Option.isMergeFile()) {
+      if (mergeFile()) {
+        listener.onComplete();
+      } else {
+        listener.onFail(false, null);
+      }
+    } else {
+      keepPlaySource(null);
+      listener.onComplete();
+    }
+    quitLooper();
   }
 
   @Override public void setLooper(TaskRecord taskRecord, Looper looper) {
     this.looper = looper;
     this.taskRecord = taskRecord;
-    for (ThreadRecord record : taskRecord.threadRecords) {
-      if (!record.isComplete) {
-        startThreadNum++;
-      }
-    }
   }
 
   @Override public Handler.Callback getHandlerCallback() {
@@ -233,17 +226,11 @@ public final class VodStateManager implements IThreadStateManager {
   }
 
   @Override public boolean isFail() {
-    printInfo("isFail");
-    return failNum.get() != 0 && failNum.get() == loader.getCurrentFlagSize() && !loader.isJump();
+    return isFail;
   }
 
   @Override public boolean isComplete() {
-    if (m3U8Option.isIgnoreFailureTs()) {
-      return loader.getCompleteNum() + failNum.get() >= taskRecord.threadRecords.size()
-          && !loader.isJump();
-    } else {
-      return loader.getCompleteNum() == taskRecord.threadRecords.size() && !loader.isJump();
-    }
+    return loader.getScheduler().isComplete();
   }
 
   @Override public long getCurrentProgress() {
@@ -254,13 +241,113 @@ public final class VodStateManager implements IThreadStateManager {
     progress = currentProgress;
   }
 
-  private void printInfo(String tag) {
-    if (false) {
-      ALog.d(tag, String.format(
-          "startThreadNum = %s, stopNum = %s, cancelNum = %s, failNum = %s, completeNum = %s, flagQueueSize = %s",
-          startThreadNum, stopNum, cancelNum, failNum, loader.getCompleteNum(),
-          loader.getCurrentFlagSize()));
+  /**
+   * 获取所有切片文件的长度
+   *
+   * @return 有切片文件不存在时返回null
+   */
+  private long[] getPeerLengths(String cacheDir) {
+    List<ThreadRecord> records = taskRecord.threadRecords;
+    long[] lens = new long[records.size()];
+    for (int i = 0; i < lens.length; i++) {
+      File peer = new File(BaseM3U8Loader.getTsFilePath(cacheDir, records.get(i).threadId));
+      if (!peer.exists()) {
+        return null;
+      }
+      lens[i] = peer.length();
+    }
+    return lens;
+  }
+
+  /**
+   * 播放器正在使用边下边播地址时，任务完成后继续提供播放列表和切片，否则播放器无法读取剩余的切片
+   *
+   * @param peerLens 切片已合并时为每个切片的长度，切片在合并文件的末尾；切片没有合并时为null
+   */
+  private void keepPlaySource(long[] peerLens) {
+    if (!PlayServer.getInstance().isServing(wrapper.getKey())) {
+      return;
+    }
+    String playlist = loader.getPlaySource().getPlaylist();
+    if (playlist == null) {
+      return;
+    }
+    VodCompletePlaySource source;
+    if (peerLens == null) {
+      source = new VodCompletePlaySource(playlist, loader.getCacheDir());
+    } else {
+      // 初始化片段在第一个切片之前
+      long offset = new File(taskRecord.filePath).length();
+      for (long len : peerLens) {
+        offset -= len;
+      }
+      if (offset < 0) {
+        ALog.w(TAG, "合并文件的长度错误，无法继续提供切片");
+        return;
+      }
+      long[] offsets = new long[peerLens.length];
+      for (int i = 0; i < peerLens.length; i++) {
+        offsets[i] = offset;
+        offset += peerLens[i];
+      }
+      source = new VodCompletePlaySource(playlist, taskRecord.filePath, offsets, peerLens);
+    }
+    PlayServer.getInstance().register(wrapper.getKey(), source);
+  }
+
+  /**
+   * 是否使用渐进式合并，自定义合并处理器和索引文件都需要完整的ts文件，这两种情况不使用渐进式合并
+   */
+  static boolean isProgressiveMerge(M3U8TaskOption option) {
+    return option.isProgressiveMerge()
+        && option.isMergeFile()
+        && !option.isGenerateIndexFile()
+        && option.getMergeHandler() == null;
+  }
+
+  /**
+   * 渐进式合并，将合并位置之后连续完成的切片追加到目标文件，保存合并位置后删除已追加的ts文件
+   *
+   * @param isEnd {@code true} 任务已完成，追加剩余的所有切片
+   * @return {@code true} 追加成功，{@code false}追加失败
+   */
+  private boolean appendPeers(boolean isEnd) {
+    M3U8Entity m3U8Entity = getEntity().getM3U8Entity();
+    List<ThreadRecord> records = taskRecord.threadRecords;
+    String cacheDir = loader.getCacheDir();
+    int mergedNum = m3U8Entity.getMergedPeerNum();
+    List<String> partPath = new ArrayList<>();
+    for (int i = mergedNum; i < records.size(); i++) {
+      if (!isEnd && !records.get(i).isComplete) {
+        break;
+      }
+      partPath.add(BaseM3U8Loader.getTsFilePath(cacheDir, records.get(i).threadId));
+    }
+    if (partPath.isEmpty()) {
+      return true;
+    }
+    List<String> appendPath = partPath;
+    M3U8MapInfo mapInfo = m3U8Option.getMapInfo();
+    if (mapInfo != null && mergedNum == 0) {
+      if (!M3U8ResCache.getInstance().await(mapInfo.path)) {
+        ALog.e(TAG, String.format("初始化片段下载失败，url: %s", mapInfo.url));
+        return false;
+      }
+      // fMP4切片需要拼接在初始化片段之后
+      appendPath = new ArrayList<>(partPath);
+      appendPath.add(0, mapInfo.path);
     }
+    long len = FileUtil.appendFile(taskRecord.filePath, m3U8Entity.getMergedLength(), appendPath);
+    if (len < 0) {
+      return false;
+    }
+    m3U8Entity.setMergedPeerNum(mergedNum + partPath.size());
+    m3U8Entity.setMergedLength(len);
+    m3U8Entity.update();
+    for (String path : partPath) {
+      FileUtil.deleteFile(path);
+    }
+    return true;
   }
 
   /**
@@ -271,21 +358,48 @@ public final class VodStateManager implements IThreadStateManager {
   private boolean mergeFile() {
     ITsMergeHandler mergeHandler = m3U8Option.getMergeHandler();
     String cacheDir = loader.getCacheDir();
-    List<String> partPath = new ArrayList<>();
-    for (ThreadRecord tr : taskRecord.threadRecords) {
-      partPath.add(BaseM3U8Loader.getTsFilePath(cacheDir, tr.threadId));
+    // 播放器还在读取切片时，记录切片长度，合并后从合并文件中读取切片；
+    // 自定义合并处理器的文件结构未知，已渐进式合并的切片已删除，这两种情况无法继续提供切片
+    long[] peerLens = null;
+    if (PlayServer.getInstance().isServing(wrapper.getKey())
+        && mergeHandler == null
+        && getEntity().getM3U8Entity().getMergedPeerNum() == 0) {
+      peerLens = getPeerLengths(cacheDir);
     }
     boolean isSuccess;
-    if (mergeHandler != null) {
-      isSuccess = mergeHandler.merge(getEntity().getM3U8Entity(), partPath);
+    if (isProgressiveMerge(m3U8Option)) {
+      // 渐进式合并时，已合并的切片已经删除，只需要追加剩余的切片
+      isSuccess = appendPeers(true);
+    } else {
+      List<String> partPath = new ArrayList<>();
+      for (ThreadRecord tr : taskRecord.threadRecords) {
+        partPath.add(BaseM3U8Loader.getTsFilePath(cacheDir, tr.threadId));
+      }
+      if (mergeHandler != null) {
+        isSuccess = mergeHandler.merge(getEntity().getM3U8Entity(), partPath);
 
-      if (mergeHandler.getClass().isAnonymousClass()) {
-        m3U8Option.setMergeHandler(null);
+        if (mergeHandler.getClass().isAnonymousClass()) {
+          m3U8Option.setMergeHandler(null);
+        }
+      } else {
+        M3U8MapInfo mapInfo = m3U8Option.getMapInfo();
+        if (mapInfo != null) {
+          if (!M3U8ResCache.getInstance().await(mapInfo.path)) {
+            ALog.e(TAG, String.format("初始化片段下载失败，url: %s", mapInfo.url));
+            return false;
+          }
+          partPath.add(0, mapInfo.path);
+        }
+        isSuccess = FileUtil.mergeFile(taskRecord.filePath, partPath);
       }
-    } else {
-      isSuccess = FileUtil.mergeFile(taskRecord.filePath, partPath);
     }
     if (isSuccess) {
+      if (peerLens != null) {
+        keepPlaySource(peerLens);
+      }
+      if (m3U8Option.getMapInfo() != null) {
+        FileUtil.deleteFile(m3U8Option.getMapInfo().path);
+      }
       // 合并成功，删除缓存文件
       File[] files = new File(cacheDir).listFiles();
       for (File f : files) {
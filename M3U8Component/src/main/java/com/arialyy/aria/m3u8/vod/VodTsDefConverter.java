@@ -16,21 +16,25 @@
 package com.arialyy.aria.m3u8.vod;
 
 import com.arialyy.aria.core.processor.IVodTsUrlConverter;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 
 /**
- * 默认的m3u8 ts转换器
+ * 默认的m3u8 ts转换器，相对地址拼接m3u8文件所在的目录
+ * 返回的列表只在读取时转换地址，不会一次生成所有切片的地址
  */
 class VodTsDefConverter implements IVodTsUrlConverter {
-  @Override public List<String> convert(String m3u8Url, List<String> tsUrls) {
+  @Override public List<String> convert(String m3u8Url, final List<String> tsUrls) {
     int index = m3u8Url.lastIndexOf("/");
-    List<String> convertedTsUrl = new ArrayList<>();
+    final String parentUrl = m3u8Url.substring(0, index + 1);
+    return new AbstractList<String>() {
+      @Override public String get(int location) {
+        return parentUrl + tsUrls.get(location);
+      }
 
-    String parentUrl = m3u8Url.substring(0, index + 1);
-    for (String temp : tsUrls) {
-      convertedTsUrl.add(parentUrl + temp);
-    }
-    return convertedTsUrl;
+      @Override public int size() {
+        return tsUrls.size();
+      }
+    };
   }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.m3u8.vod;
+
+import android.os.Handler;
+import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.download.DTaskWrapper;
+import com.arialyy.aria.http.ConnectionHelp;
+import com.arialyy.aria.http.HttpTaskOption;
+import com.arialyy.aria.m3u8.M3U8Parser;
+import com.arialyy.aria.m3u8.M3U8PeerList;
+import com.arialyy.aria.m3u8.M3U8TaskOption;
+import com.arialyy.aria.m3u8.M3U8Variant;
+import com.arialyy.aria.m3u8.M3U8VariantSelector;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * m3u8点播任务的码率切换器，根据每轮切片的吞吐量切换剩余切片的码率
+ * 只在编码格式相同、切片数量一致、没有字节范围和初始化片段的未加密码率之间切换，正在下载的切片不切换
+ *
+ * 除码率播放列表的下载外，所有方法都在状态管理器的looper线程中调用
+ */
+final class VodVariantSwitcher {
+  /**
+   * 连续多轮选择同一码率才切换，避免速度波动导致频繁切换
+   */
+  private static final int STABLE_ROUND = 2;
+
+  private final String TAG = CommonUtil.getClassName(getClass());
+  private final M3U8VodLoader mLoader;
+  private final DTaskWrapper mWrapper;
+  private final M3U8TaskOption mOption;
+  private final Handler mStateHandler;
+  private final List<M3U8Variant> mVariants = new ArrayList<>();
+  private final M3U8PeerList mPeers;
+  private final long mStartTime;
+  private final ExecutorService mPool = Executors.newSingleThreadExecutor();
+  private M3U8Variant mCurrent;
+  private M3U8Variant mCandidate;
+  private int mCandidateRound;
+  private boolean isSwitching = false;
+
+  VodVariantSwitcher(M3U8VodLoader loader, DTaskWrapper wrapper, Handler stateHandler,
+      M3U8Variant current) {
+    mLoader = loader;
+    mWrapper = wrapper;
+    mOption = (M3U8TaskOption) wrapper.getM3u8Option();
+    mStateHandler = stateHandler;
+    mCurrent = current;
+    for (M3U8Variant variant : mOption.getVariants()) {
+      if (M3U8VariantSelector.isSameCodecs(variant, current)) {
+        mVariants.add(variant);
+      }
+    }
+    mPeers = mOption.getPeerList();
+    mStartTime = System.currentTimeMillis();
+  }
+
+  /**
+   * 是否可以切换码率
+   */
+  static boolean isSupport(M3U8TaskOption option, M3U8Variant current) {
+    return option.isSwitchVariant()
+        && current != null
+        && option.getVariants() != null
+        && option.getVariants().size() > 1
+        && option.getPeerList() != null
+        && option.getByteRanges() == null
+        && option.getMapInfo() == null
+        && !option.getKeyTable().hasKey();
+  }
+
+  /**
+   * 完成一轮切片的下载，检查是否需要切换码率
+   *
+   * @param throughput 本轮的吞吐量，单位byte/s
+   * @param records 线程记录
+   */
+  void onThroughput(double throughput, List<ThreadRecord> records) {
+    if (isSwitching || mVariants.size() < 2) {
+      return;
+    }
+    double duration = 0;
+    for (ThreadRecord tr : records) {
+      if (!tr.isComplete) {
+        duration += mPeers.getDuration(tr.threadId);
+      }
+    }
+    long targetTime = mOption.getTargetCompleteTime();
+    if (targetTime > 0) {
+      targetTime = Math.max(1, targetTime - (System.currentTimeMillis() - mStartTime) / 1000);
+    }
+    M3U8Variant variant = M3U8VariantSelector.select(mVariants, throughput, duration, targetTime);
+    if (variant == null || variant == mCurrent) {
+      mCandidate = null;
+      return;
+    }
+    if (variant != mCandidate) {
+      mCandidate = variant;
+      mCandidateRound = 1;
+      return;
+    }
+    if (++mCandidateRound < STABLE_ROUND) {
+      return;
+    }
+    mCandidate = null;
+    isSwitching = true;
+    ALog.i(TAG, String.format("吞吐量：%.1fKB/s，切换码率：%s", throughput / 1024, variant));
+    loadVariant(variant, records.size());
+  }
+
+  void release() {
+    mPool.shutdownNow();
+  }
+
+  /**
+   * 在后台线程中下载码率的播放列表，完成后在looper线程中切换剩余切片的地址
+   */
+  private void loadVariant(final M3U8Variant variant, final int peerNum) {
+    mPool.execute(new Runnable() {
+      @Override public void run() {
+        final List<String> urls = loadPeerUrls(variant, peerNum);
+        mStateHandler.post(new Runnable() {
+          @Override public void run() {
+            isSwitching = false;
+            if (urls == null) {
+              // 不能切换的码率不再选择
+              mVariants.remove(variant);
+              return;
+            }
+            mCurrent = variant;
+            if (!mLoader.isBreak()) {
+              mLoader.switchVariant(variant, urls);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * 获取码率播放列表中的切片地址
+   *
+   * @return 播放列表加密、切片数量不一致或下载失败时返回null
+   */
+  private List<String> loadPeerUrls(M3U8Variant variant, int peerNum) {
+    HttpURLConnection conn = null;
+    try {
+      HttpTaskOption httpOption = (HttpTaskOption) mWrapper.getTaskOption();
+      URL url = ConnectionHelp.handleUrl(variant.url, httpOption);
+      conn = ConnectionHelp.handleConnection(url, httpOption);
+      ConnectionHelp.setConnectParam(httpOption, conn);
+      conn.setConnectTimeout(AriaConfig.getInstance().getDConfig().getConnectTimeOut());
+      conn.connect();
+      if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        ALog.w(TAG, String.format("获取码率播放列表失败，code：%s", conn.getResponseCode()));
+        return null;
+      }
+      BufferedReader reader =
+          new BufferedReader(new InputStreamReader(ConnectionHelp.convertInputStream(conn)));
+      PeerUrlHandler handler = new PeerUrlHandler();
+      if (!M3U8Parser.parse(reader, handler)) {
+        ALog.w(TAG, "码率播放列表格式错误，读取不到#EXTM3U标签，不切换码率");
+        return null;
+      }
+      if (handler.reason != null) {
+        ALog.w(TAG, String.format("%s，不切换码率", handler.reason));
+        return null;
+      }
+      List<String> urls = handler.urls;
+      if (urls.size() != peerNum) {
+        ALog.w(TAG, String.format("切片数量不一致，不切换码率，当前切片数：%s，码率切片数：%s", peerNum,
+            urls.size()));
+        return null;
+      }
+      return mLoader.convertTsUrls(variant.url, urls);
+    } catch (IOException e) {
+      ALog.w(TAG, String.format("获取码率播放列表失败，%s", e.getMessage()));
+      return null;
+    } finally {
+      if (conn != null) {
+        conn.disconnect();
+      }
+    }
+  }
+
+  /**
+   * 读取码率播放列表中的切片地址，播放列表加密、使用了字节范围或初始化片段时不能切换
+   */
+  private static class PeerUrlHandler implements M3U8Parser.Handler {
+    private final List<String> urls = new ArrayList<>();
+    /**
+     * 不能切换的原因，为null表示可以切换
+     */
+    private String reason;
+
+    @Override public boolean isStop() {
+      return reason != null;
+    }
+
+    @Override public void onTag(String line) {
+      if (line.startsWith("#EXT-X-KEY") && !line.contains("METHOD=NONE")) {
+        reason = "码率播放列表已加密";
+      } else if (line.startsWith("#EXT-X-MAP")) {
+        reason = "码率播放列表使用了初始化片段";
+      }
+    }
+
+    @Override public void onSegment(String extInf, double duration, String byteRange, String uri) {
+      if (byteRange != null) {
+        reason = "码率播放列表使用了字节范围";
+        return;
+      }
+      urls.add(uri);
+    }
+
+    @Override public void onVariant(String streamInf, String uri) {
+      reason = "码率地址是多码率播放列表";
+    }
+
+    @Override public void onEndList(String line) {
+    }
+  }
+}
@@ -0,0 +1,4 @@
+# AriaCompiler生成的实体映射器通过类名加载
+-keep class * extends com.arialyy.aria.orm.AbsEntityMapper {
+  <init>();
+}
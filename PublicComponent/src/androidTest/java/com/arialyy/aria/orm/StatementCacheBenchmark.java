@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.File;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 进度更新的基准测试，对比日志模式和预编译语句缓存对单条更新和批量更新的影响。
+ * 表结构和更新的字段与ThreadRecord的进度写入一致，结果输出到logcat，tag为{@link #TAG}：
+ * <pre>
+ *   ./gradlew :PublicComponent:connectedAndroidTest \
+ *       -Pandroid.testInstrumentationRunnerArguments.class=com.arialyy.aria.orm.StatementCacheBenchmark
+ *   adb logcat -s StatementCacheBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatementCacheBenchmark {
+  private static final String TAG = "StatementCacheBenchmark";
+  private static final String TABLE = "BenchThreadRecord";
+  /**
+   * 记录数，相当于一个任务的线程数
+   */
+  private static final int ROW_NUM = 64;
+  /**
+   * 单条更新的次数，每次更新都是一个独立的事务
+   */
+  private static final int SINGLE_NUM = 2000;
+  /**
+   * 批量更新的轮数，每轮在一个事务中更新所有记录
+   */
+  private static final int BATCH_ROUND = 200;
+  private static final int WARM_UP = 200;
+
+  private File mDbFile;
+  private SQLiteDatabase mDb;
+  private StatementCache mCache;
+
+  @Before public void setUp() {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    mDbFile = context.getDatabasePath("aria_bench.db");
+    deleteDb();
+    mDbFile.getParentFile().mkdirs();
+  }
+
+  @After public void tearDown() {
+    closeDb();
+    deleteDb();
+  }
+
+  @Test public void benchmark() {
+    StringBuilder sb = new StringBuilder("\n");
+    sb.append(String.format("%-26s %12s %12s\n", "config", "single(us)", "batch(us)"));
+    for (boolean wal : new boolean[] { false, true }) {
+      for (boolean cache : new boolean[] { false, true }) {
+        openDb(wal);
+        long single = runSingle(cache);
+        long batch = runBatch(cache);
+        closeDb();
+        sb.append(String.format("%-26s %12.1f %12.1f\n",
+            (wal ? "WAL/NORMAL" : "DELETE/FULL") + (cache ? " + cache" : " + db.update"),
+            single / 1000f / SINGLE_NUM, batch / 1000f / BATCH_ROUND));
+      }
+    }
+    sb.append(String.format("single: 每次更新一条记录的耗时，batch: 每个事务更新%s条记录的耗时", ROW_NUM));
+    Log.i(TAG, sb.toString());
+  }
+
+  private void openDb(boolean wal) {
+    deleteDb();
+    mDb = SQLiteDatabase.openOrCreateDatabase(mDbFile, null);
+    if (wal) {
+      mDb.enableWriteAheadLogging();
+      mDb.execSQL("PRAGMA synchronous=NORMAL");
+    } else {
+      mDb.disableWriteAheadLogging();
+      mDb.execSQL("PRAGMA synchronous=FULL");
+    }
+    mDb.execSQL("CREATE TABLE " + TABLE + " (taskKey TEXT, threadId INTEGER, "
+        + "startLocation INTEGER, endLocation INTEGER, blockLen INTEGER, isComplete INTEGER)");
+    mDb.beginTransaction();
+    try {
+      for (int i = 0; i < ROW_NUM; i++) {
+        ContentValues values = new ContentValues();
+        values.put("taskKey", "/sdcard/Download/bench.apk");
+        values.put("threadId", i);
+        values.put("startLocation", 0L);
+        values.put("endLocation", 1024L * 1024);
+        values.put("blockLen", 1024L * 1024);
+        values.put("isComplete", false);
+        mDb.insert(TABLE, null, values);
+      }
+      mDb.setTransactionSuccessful();
+    } finally {
+      mDb.endTransaction();
+    }
+    mCache = new StatementCache();
+  }
+
+  private void closeDb() {
+    if (mCache != null) {
+      mCache.clear();
+      mCache = null;
+    }
+    if (mDb != null) {
+      mDb.close();
+      mDb = null;
+    }
+  }
+
+  private void deleteDb() {
+    for (String suffix : new String[] { "", "-journal", "-wal", "-shm" }) {
+      new File(mDbFile.getPath() + suffix).delete();
+    }
+  }
+
+  /**
+   * @return 总耗时，单位纳秒
+   */
+  private long runSingle(boolean cache) {
+    for (int i = 0; i < WARM_UP; i++) {
+      update(cache, i % ROW_NUM + 1, i);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < SINGLE_NUM; i++) {
+      update(cache, i % ROW_NUM + 1, i);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * @return 总耗时，单位纳秒
+   */
+  private long runBatch(boolean cache) {
+    long start = 0;
+    for (int round = -WARM_UP / ROW_NUM; round < BATCH_ROUND; round++) {
+      if (round == 0) {
+        start = System.nanoTime();
+      }
+      mDb.beginTransaction();
+      try {
+        for (int i = 0; i < ROW_NUM; i++) {
+          update(cache, i + 1, round);
+        }
+        mDb.setTransactionSuccessful();
+      } finally {
+        mDb.endTransaction();
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private void update(boolean cache, long rowId, long progress) {
+    ContentValues values = new ContentValues();
+    values.put("startLocation", progress * 1024);
+    values.put("isComplete", false);
+    int num = cache ? mCache.update(mDb, TABLE, values, rowId)
+        : mDb.update(TABLE, values, "rowid=?", new String[] { String.valueOf(rowId) });
+    Assert.assertEquals(1, num);
+  }
+}
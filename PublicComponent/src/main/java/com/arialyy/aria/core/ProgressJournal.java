@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core;
+
+import com.arialyy.aria.orm.WriteBehindQueue;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import com.arialyy.aria.util.FileUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * 线程进度日志，每个任务一个只追加的日志文件，用于代替线程进度的周期性数据库写入。
+ * 1、{@link #append(ThreadRecord)}只把线程进度写入内存缓冲区；
+ * 2、日志线程每隔{@link #COMMIT_INTERVAL}把所有任务的缓冲区写入各自的日志文件，每个文件只同步一次磁盘，
+ * 线程停止、失败时调用{@link #commit()}立即同步；
+ * 3、日志文件超过{@link #COMPACT_SIZE}或任务空闲超过{@link #IDLE_TIMEOUT}时，将线程记录合并到数据库后清空日志，
+ * 空闲的日志合并后会被关闭并删除；
+ * 4、进程异常退出时日志文件会保留下来，重新获取任务记录时通过{@link #replay(TaskRecord)}恢复进度。
+ * 格式（版本1，大端）：
+ * <pre>
+ *   magic(2) 'A''J' | version(1) | 保留(1)
+ *   多条记录：threadId(4) startLocation(8) flags(1) crc32(4)，crc32为前13个字节的校验值
+ * </pre>
+ * 读取时遇到不完整或校验失败的记录就停止，写到一半的记录不会影响前面的记录。
+ */
+public final class ProgressJournal {
+  private static final String TAG = "ProgressJournal";
+  private static final String JOURNAL_DIR = "/Aria/journal/";
+  private static final byte[] HEADER = new byte[] { 'A', 'J', 1, 0 };
+  private static final int ENTRY_LEN = 17;
+  private static final int FLAG_COMPLETE = 1;
+  private static final long COMMIT_INTERVAL = 1000;
+  private static final long COMPACT_SIZE = 64 * 1024;
+  private static final long IDLE_TIMEOUT = 10 * 1000;
+
+  /**
+   * 打开的日志，key为任务文件路径
+   */
+  private static final ConcurrentHashMap<String, ProgressJournal> JOURNALS =
+      new ConcurrentHashMap<>();
+  private static final AtomicBoolean isScheduled = new AtomicBoolean(false);
+  private static ScheduledExecutorService sWriter;
+
+  private final String mKey;
+  private final File mFile;
+  /**
+   * 写入日志后还没有合并到数据库的线程记录，key为线程id
+   */
+  private final Map<Integer, ThreadRecord> mDirty = new HashMap<>();
+  private final ByteArrayOutputStream mPending = new ByteArrayOutputStream();
+  private final byte[] mEntry = new byte[ENTRY_LEN];
+  private final CRC32 mCrc = new CRC32();
+  private FileOutputStream mOut;
+  private long mSize;
+  private long mLastAppendTime;
+  private boolean isClosed = false;
+
+  private ProgressJournal(String key) {
+    mKey = key;
+    mFile = getJournalFile(key);
+  }
+
+  /**
+   * 获取任务的进度日志，日志不存在时创建
+   *
+   * @param filePath 任务文件路径
+   */
+  public static ProgressJournal get(String filePath) {
+    ProgressJournal journal = JOURNALS.get(filePath);
+    if (journal == null) {
+      synchronized (JOURNALS) {
+        journal = JOURNALS.get(filePath);
+        if (journal == null) {
+          journal = new ProgressJournal(filePath);
+          JOURNALS.put(filePath, journal);
+        }
+      }
+    }
+    return journal;
+  }
+
+  /**
+   * 关闭任务的进度日志，日志中的进度会先合并到数据库，然后删除日志文件。
+   * 重新读取任务记录、修改任务记录前需要调用
+   *
+   * @param filePath 任务文件路径
+   */
+  public static void close(String filePath) {
+    ProgressJournal journal = JOURNALS.remove(filePath);
+    if (journal != null) {
+      journal.closeAndCompact();
+    }
+  }
+
+  /**
+   * 删除任务的进度日志，日志中的进度不会合并到数据库，用于删除任务记录和日志已经恢复到数据库的情况
+   *
+   * @param filePath 任务文件路径
+   */
+  public static void delete(String filePath) {
+    ProgressJournal journal = JOURNALS.remove(filePath);
+    if (journal != null) {
+      synchronized (journal) {
+        journal.closeLocked();
+      }
+    }
+    File file = getJournalFile(filePath);
+    if (file.exists()) {
+      FileUtil.deleteFile(file);
+    }
+  }
+
+  /**
+   * 使用进程异常退出后残留的日志恢复线程进度，只会增加线程进度，数据库中已经完成的线程不会修改。
+   * 恢复后需要保存任务记录，然后调用{@link #delete(String)}删除日志
+   *
+   * @return {@code true} 有线程进度被恢复
+   */
+  public static boolean replay(TaskRecord taskRecord) {
+    List<ThreadRecord> records = taskRecord.threadRecords;
+    File file = getJournalFile(taskRecord.filePath);
+    if (records == null || records.isEmpty() || !file.exists()) {
+      return false;
+    }
+    byte[] data = readFile(file);
+    if (data == null || data.length < HEADER.length
+        || data[0] != HEADER[0] || data[1] != HEADER[1] || data[2] != HEADER[2]) {
+      ALog.w(TAG, String.format("日志【%s】格式错误，忽略该日志", file.getPath()));
+      return false;
+    }
+    // 同一个线程只保留最后一条记录
+    Map<Integer, long[]> last = new HashMap<>();
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    buffer.position(HEADER.length);
+    CRC32 crc = new CRC32();
+    while (buffer.remaining() >= ENTRY_LEN) {
+      int pos = buffer.position();
+      crc.reset();
+      crc.update(data, pos, ENTRY_LEN - 4);
+      int threadId = buffer.getInt();
+      long startLocation = buffer.getLong();
+      byte flags = buffer.get();
+      if ((int) crc.getValue() != buffer.getInt()) {
+        ALog.w(TAG, String.format("日志【%s】在%s处校验失败，之后的记录被忽略", file.getPath(), pos));
+        break;
+      }
+      last.put(threadId, new long[] { startLocation, flags });
+    }
+    boolean changed = false;
+    for (ThreadRecord tr : records) {
+      long[] entry = last.get(tr.threadId);
+      if (entry == null || tr.isComplete) {
+        continue;
+      }
+      if (entry[0] > tr.startLocation && (tr.endLocation <= 0 || entry[0] <= tr.endLocation)) {
+        tr.startLocation = entry[0];
+        changed = true;
+      }
+      if ((entry[1] & FLAG_COMPLETE) != 0) {
+        tr.isComplete = true;
+        changed = true;
+      }
+    }
+    if (changed) {
+      ALog.i(TAG, String.format("任务【%s】从日志中恢复了线程进度", taskRecord.filePath));
+    }
+    return changed;
+  }
+
+  /**
+   * 记录线程进度，进度会在日志线程中写入日志文件
+   */
+  public void append(ThreadRecord record) {
+    synchronized (this) {
+      if (!isClosed) {
+        appendLocked(record);
+        schedule();
+        return;
+      }
+    }
+    // 日志因为空闲已经被关闭，使用新的日志
+    get(mKey).append(record);
+  }
+
+  /**
+   * 立即将缓冲区中的进度写入日志文件并同步磁盘
+   */
+  public synchronized void commit() {
+    if (!isClosed) {
+      writeLocked();
+    }
+  }
+
+  private void appendLocked(ThreadRecord record) {
+    ByteBuffer buffer = ByteBuffer.wrap(mEntry);
+    buffer.putInt(record.threadId);
+    buffer.putLong(record.startLocation);
+    buffer.put((byte) (record.isComplete ? FLAG_COMPLETE : 0));
+    mCrc.reset();
+    mCrc.update(mEntry, 0, ENTRY_LEN - 4);
+    buffer.putInt((int) mCrc.getValue());
+    mPending.write(mEntry, 0, ENTRY_LEN);
+    mDirty.put(record.threadId, record);
+    mLastAppendTime = System.currentTimeMillis();
+  }
+
+  /**
+   * 将缓冲区写入日志文件，缓冲区中的所有记录只同步一次磁盘
+   */
+  private void writeLocked() {
+    if (mPending.size() == 0) {
+      return;
+    }
+    try {
+      if (mOut == null) {
+        File dir = mFile.getParentFile();
+        if (dir != null && !dir.exists()) {
+          dir.mkdirs();
+        }
+        mOut = new FileOutputStream(mFile, true);
+        mSize = mFile.length();
+        if (mSize == 0) {
+          mOut.write(HEADER);
+          mSize = HEADER.length;
+        }
+      }
+      mPending.writeTo(mOut);
+      mOut.getFD().sync();
+      mSize += mPending.size();
+    } catch (IOException e) {
+      ALog.e(TAG, String.format("写入日志【%s】失败", mFile.getPath()), e);
+    } finally {
+      mPending.reset();
+    }
+  }
+
+  /**
+   * 将线程记录合并到数据库，合并完成后清空日志文件
+   */
+  private void compactLocked() {
+    if (!mDirty.isEmpty()) {
+      for (ThreadRecord record : mDirty.values()) {
+        record.updateLater();
+      }
+      WriteBehindQueue.getInstance().flush();
+      mDirty.clear();
+    }
+    if (mOut == null) {
+      return;
+    }
+    try {
+      mOut.close();
+      mOut = new FileOutputStream(mFile, false);
+      mOut.write(HEADER);
+      mOut.getFD().sync();
+      mSize = HEADER.length;
+    } catch (IOException e) {
+      ALog.e(TAG, String.format("清空日志【%s】失败", mFile.getPath()), e);
+      mOut = null;
+    }
+  }
+
+  private void closeLocked() {
+    isClosed = true;
+    mPending.reset();
+    mDirty.clear();
+    if (mOut != null) {
+      try {
+        mOut.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      mOut = null;
+    }
+  }
+
+  private synchronized void closeAndCompact() {
+    if (isClosed) {
+      return;
+    }
+    writeLocked();
+    compactLocked();
+    closeLocked();
+    FileUtil.deleteFile(mFile);
+  }
+
+  /**
+   * 日志线程的定时任务：组提交，并合并过大或空闲的日志
+   */
+  private synchronized void onTick() {
+    if (isClosed) {
+      return;
+    }
+    writeLocked();
+    if (mSize >= COMPACT_SIZE) {
+      compactLocked();
+    }
+  }
+
+  private static void tick() {
+    long now = System.currentTimeMillis();
+    for (ProgressJournal journal : JOURNALS.values()) {
+      boolean idle;
+      synchronized (journal) {
+        idle = now - journal.mLastAppendTime >= IDLE_TIMEOUT;
+      }
+      if (idle) {
+        JOURNALS.remove(journal.mKey, journal);
+        journal.closeAndCompact();
+      } else {
+        journal.onTick();
+      }
+    }
+    isScheduled.set(false);
+    if (!JOURNALS.isEmpty()) {
+      schedule();
+    }
+  }
+
+  private static void schedule() {
+    if (!isScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    synchronized (ProgressJournal.class) {
+      if (sWriter == null) {
+        sWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Aria-Journal");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+          @Override public void run() {
+            for (ProgressJournal journal : JOURNALS.values()) {
+              journal.commit();
+            }
+          }
+        }));
+      }
+      sWriter.schedule(new Runnable() {
+        @Override public void run() {
+          tick();
+        }
+      }, COMMIT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static File getJournalFile(String filePath) {
+    return new File(AriaConfig.getInstance().getAPP().getFilesDir().getPath() + JOURNAL_DIR
+        + CommonUtil.getStrMd5(filePath) + ".journal");
+  }
+
+  private static byte[] readFile(File file) {
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(file, "r");
+      byte[] data = new byte[(int) raf.length()];
+      raf.readFully(data);
+      return data;
+    } catch (IOException e) {
+      ALog.e(TAG, String.format("读取日志【%s】失败", file.getPath()), e);
+      return null;
+    } finally {
+      if (raf != null) {
+        try {
+          raf.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+}
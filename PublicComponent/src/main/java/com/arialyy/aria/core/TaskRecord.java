@@ -18,6 +18,7 @@ package com.arialyy.aria.core;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.orm.annotation.Ignore;
+import com.arialyy.aria.orm.annotation.Index;
 import com.arialyy.aria.orm.annotation.NoNull;
 import com.arialyy.aria.orm.annotation.Unique;
 import java.util.List;
@@ -42,6 +43,7 @@ public class TaskRecord extends DbEntity {
   /**
    * 任务文件路径
    */
+  @Index(name = "filePath_taskType")
   public String filePath;
 
   /**
@@ -64,6 +66,7 @@ public class TaskRecord extends DbEntity {
   /**
    * 下载任务组名
    */
+  @Index
   public String dGroupHash;
 
   /**
@@ -82,10 +85,44 @@ public class TaskRecord extends DbEntity {
    * 任务类型
    * {@link ITaskWrapper}
    */
+  @Index(name = "filePath_taskType", order = 1)
   public int taskType = 0;
 
   /**
    * m3u8文件码率
    */
   public long bandWidth = 0;
+
+  /**
+   * 紧凑格式的线程记录，详见{@link ThreadRecordCodec}，不为null时线程记录不保存在ThreadRecord表中
+   */
+  public byte[] threadBlob;
+
+  /**
+   * 清除数据库中的紧凑格式记录，值为null的字段不会被更新，所以需要单独处理
+   */
+  void clearThreadBlob() {
+    if (rowID != -1) {
+      DbEntity.exeSql("UPDATE TaskRecord SET threadBlob=NULL WHERE rowid=" + rowID);
+    }
+  }
+
+  /**
+   * 更新紧凑格式中的一条线程记录
+   *
+   * @param later {@code true} 延迟写入
+   */
+  void updateThreadRecord(ThreadRecord record, boolean later) {
+    synchronized (this) {
+      if (threadBlob == null) {
+        return;
+      }
+      ThreadRecordCodec.patch(threadBlob, record);
+    }
+    if (later) {
+      updateLater();
+    } else {
+      update();
+    }
+  }
 }
@@ -17,6 +17,8 @@ package com.arialyy.aria.core;
 
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.DbEntity;
+import com.arialyy.aria.orm.annotation.Ignore;
+import com.arialyy.aria.orm.annotation.Index;
 
 /**
  * Created by laoyuyu on 2018/5/8.
@@ -27,6 +29,7 @@ public class ThreadRecord extends DbEntity {
   /**
    * 任务的文件路径，不是当前线程记录的的分块文件路径
    */
+  @Index(name = "taskKey_threadType")
   public String taskKey;
 
   /**
@@ -59,10 +62,63 @@ public class ThreadRecord extends DbEntity {
    * 线程类型
    * {@link ITaskWrapper}
    */
+  @Index(name = "taskKey_threadType", order = 1)
   public int threadType = 0;
 
   /**
    * ts文件的下载地址
    */
   public String tsUrl;
+
+  /**
+   * 使用紧凑格式保存时所属的任务记录，为null表示记录保存在ThreadRecord表中
+   */
+  @Ignore TaskRecord blobOwner;
+
+  /**
+   * 在紧凑格式中的位置
+   */
+  @Ignore int blobIndex = -1;
+
+  /**
+   * 记录是否已保存在ThreadRecord表中
+   */
+  boolean isStored() {
+    return rowID != -1;
+  }
+
+  /**
+   * 使用紧凑格式时，每次写入都会重写整个任务记录，切片较多时同步写入的数据量和切片数的平方成正比，
+   * 因此线程记录的修改统一延迟合并写入，任务停止、完成、失败时监听器会同步写入所有延迟数据
+   */
+  @Override public void update() {
+    if (blobOwner != null) {
+      blobOwner.updateThreadRecord(this, true);
+      return;
+    }
+    super.update();
+  }
+
+  @Override public void updateLater() {
+    if (blobOwner != null) {
+      blobOwner.updateThreadRecord(this, true);
+      return;
+    }
+    super.updateLater();
+  }
+
+  @Override public void discardLater() {
+    super.discardLater();
+    if (blobOwner != null) {
+      blobOwner.discardLater();
+    }
+  }
+
+  @Override public void save() {
+    if (blobOwner != null) {
+      blobOwner.updateThreadRecord(this, false);
+      return;
+    }
+    super.save();
+  }
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core;
+
+import com.arialyy.aria.orm.DbEntity;
+import com.arialyy.aria.util.ALog;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 线程记录的紧凑格式，一个任务的所有线程记录保存为{@link TaskRecord#threadBlob}。
+ * 格式（版本1，大端）：
+ * <pre>
+ *   magic(2) 'A''R' | version(1) | flags(1) | count(4)
+ *   完成位图 (count + 7) / 8 字节，第i位表示第i条记录是否完成
+ *   count条定长记录：startLocation(8) endLocation(8) blockLen(8) threadId(4)
+ *   count条地址（flags包含{@link #FLAG_URL}时）：与上一条地址相同的前缀长度(varint) 剩余长度(varint) 剩余内容(UTF-8)
+ * </pre>
+ * 完成位图和定长记录的位置固定，更新线程记录时直接修改对应的字节，不需要重新编码；
+ * taskKey、threadType和任务记录一致，不保存。
+ */
+public final class ThreadRecordCodec {
+  private static final String TAG = "ThreadRecordCodec";
+  private static final byte MAGIC_0 = 'A';
+  private static final byte MAGIC_1 = 'R';
+  private static final byte VERSION = 1;
+  private static final int FLAG_URL = 1;
+  private static final int HEADER_LEN = 8;
+  private static final int ENTRY_LEN = 28;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private ThreadRecordCodec() {
+  }
+
+  /**
+   * 使用紧凑格式保存任务记录和线程记录，ThreadRecord表中已有的线程记录会被删除
+   */
+  public static void saveCompact(TaskRecord taskRecord) {
+    boolean hasRow = false;
+    for (ThreadRecord tr : taskRecord.threadRecords) {
+      if (tr.isStored()) {
+        hasRow = true;
+        break;
+      }
+    }
+    attach(taskRecord);
+    taskRecord.save();
+    // 迁移旧记录，保存成功后再删除，中途退出时下次仍然优先读取紧凑格式
+    if (hasRow) {
+      DbEntity.deleteData(ThreadRecord.class, "taskKey=? AND threadType=?", taskRecord.filePath,
+          String.valueOf(taskRecord.taskType));
+    }
+  }
+
+  /**
+   * 使用ThreadRecord表逐条保存线程记录，任务记录中已有的紧凑格式会被清除
+   */
+  public static void saveRows(TaskRecord taskRecord) {
+    if (taskRecord.threadBlob != null) {
+      detach(taskRecord);
+      taskRecord.clearThreadBlob();
+    }
+    taskRecord.save();
+    if (taskRecord.threadRecords != null && !taskRecord.threadRecords.isEmpty()) {
+      DbEntity.saveAll(taskRecord.threadRecords);
+    }
+  }
+
+  /**
+   * 将线程记录编码后保存到任务记录中，并将线程记录的修改关联到任务记录
+   */
+  public static void attach(TaskRecord taskRecord) {
+    List<ThreadRecord> records = taskRecord.threadRecords;
+    byte[] blob = encode(records);
+    synchronized (taskRecord) {
+      taskRecord.threadBlob = blob;
+      for (int i = 0, len = records.size(); i < len; i++) {
+        ThreadRecord tr = records.get(i);
+        tr.blobOwner = taskRecord;
+        tr.blobIndex = i;
+      }
+    }
+  }
+
+  /**
+   * 取消紧凑格式，线程记录重新使用ThreadRecord表保存
+   */
+  public static void detach(TaskRecord taskRecord) {
+    synchronized (taskRecord) {
+      taskRecord.threadBlob = null;
+      if (taskRecord.threadRecords != null) {
+        for (ThreadRecord tr : taskRecord.threadRecords) {
+          tr.blobOwner = null;
+          tr.blobIndex = -1;
+        }
+      }
+    }
+  }
+
+  /**
+   * 解码任务记录中的线程记录
+   *
+   * @return 格式错误或版本不支持时返回null
+   */
+  public static List<ThreadRecord> decode(TaskRecord taskRecord) {
+    byte[] blob = taskRecord.threadBlob;
+    if (blob == null || blob.length < HEADER_LEN) {
+      return null;
+    }
+    try {
+      return decode(taskRecord, blob);
+    } catch (RuntimeException e) {
+      ALog.w(TAG, String.format("解码任务【%s】的线程记录失败，%s", taskRecord.filePath, e.getMessage()));
+      return null;
+    }
+  }
+
+  private static List<ThreadRecord> decode(TaskRecord taskRecord, byte[] blob) {
+    ByteBuffer buffer = ByteBuffer.wrap(blob);
+    if (buffer.get() != MAGIC_0 || buffer.get() != MAGIC_1) {
+      ALog.w(TAG, String.format("任务【%s】的线程记录格式错误", taskRecord.filePath));
+      return null;
+    }
+    byte version = buffer.get();
+    if (version != VERSION) {
+      ALog.w(TAG, String.format("不支持的线程记录版本：%s", version));
+      return null;
+    }
+    int flags = buffer.get();
+    int count = buffer.getInt();
+    int bitmapLen = (count + 7) / 8;
+    if (count < 0 || blob.length < HEADER_LEN + bitmapLen + count * ENTRY_LEN) {
+      ALog.w(TAG, String.format("任务【%s】的线程记录长度错误", taskRecord.filePath));
+      return null;
+    }
+    List<ThreadRecord> records = new ArrayList<>(count);
+    int entryOffset = HEADER_LEN + bitmapLen;
+    for (int i = 0; i < count; i++) {
+      ThreadRecord tr = new ThreadRecord();
+      tr.taskKey = taskRecord.filePath;
+      tr.threadType = taskRecord.taskType;
+      tr.isComplete = (blob[HEADER_LEN + i / 8] & (1 << (i % 8))) != 0;
+      buffer.position(entryOffset + i * ENTRY_LEN);
+      tr.startLocation = buffer.getLong();
+      tr.endLocation = buffer.getLong();
+      tr.blockLen = buffer.getLong();
+      tr.threadId = buffer.getInt();
+      tr.blobOwner = taskRecord;
+      tr.blobIndex = i;
+      records.add(tr);
+    }
+    if ((flags & FLAG_URL) != 0) {
+      buffer.position(entryOffset + count * ENTRY_LEN);
+      byte[] last = new byte[0];
+      for (int i = 0; i < count; i++) {
+        int shared = readVarInt(buffer);
+        int suffixLen = readVarInt(buffer);
+        byte[] url = new byte[shared + suffixLen];
+        System.arraycopy(last, 0, url, 0, shared);
+        buffer.get(url, shared, suffixLen);
+        if (url.length > 0) {
+          records.get(i).tsUrl = new String(url, UTF_8);
+        }
+        last = url;
+      }
+    }
+    return records;
+  }
+
+  /**
+   * 更新一条线程记录对应的字节
+   */
+  static void patch(byte[] blob, ThreadRecord record) {
+    int index = record.blobIndex;
+    int count = ByteBuffer.wrap(blob).getInt(4);
+    if (index < 0 || index >= count) {
+      ALog.w(TAG, String.format("线程记录【%s】不在紧凑记录中", index));
+      return;
+    }
+    int bit = HEADER_LEN + index / 8;
+    if (record.isComplete) {
+      blob[bit] |= (1 << (index % 8));
+    } else {
+      blob[bit] &= ~(1 << (index % 8));
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(blob);
+    buffer.position(HEADER_LEN + (count + 7) / 8 + index * ENTRY_LEN);
+    buffer.putLong(record.startLocation);
+    buffer.putLong(record.endLocation);
+    buffer.putLong(record.blockLen);
+    buffer.putInt(record.threadId);
+  }
+
+  static byte[] encode(List<ThreadRecord> records) {
+    int count = records.size();
+    int bitmapLen = (count + 7) / 8;
+    boolean hasUrl = false;
+    byte[][] urls = new byte[count][];
+    int urlLen = 0;
+    for (int i = 0; i < count; i++) {
+      String url = records.get(i).tsUrl;
+      urls[i] = url == null ? new byte[0] : url.getBytes(UTF_8);
+      hasUrl |= url != null;
+      // 最坏情况：两个5字节的varint加上完整地址
+      urlLen += urls[i].length + 10;
+    }
+    ByteBuffer buffer =
+        ByteBuffer.allocate(HEADER_LEN + bitmapLen + count * ENTRY_LEN + (hasUrl ? urlLen : 0));
+    buffer.put(MAGIC_0).put(MAGIC_1).put(VERSION).put((byte) (hasUrl ? FLAG_URL : 0));
+    buffer.putInt(count);
+    byte[] bitmap = new byte[bitmapLen];
+    for (int i = 0; i < count; i++) {
+      if (records.get(i).isComplete) {
+        bitmap[i / 8] |= (1 << (i % 8));
+      }
+    }
+    buffer.put(bitmap);
+    for (ThreadRecord tr : records) {
+      buffer.putLong(tr.startLocation);
+      buffer.putLong(tr.endLocation);
+      buffer.putLong(tr.blockLen);
+      buffer.putInt(tr.threadId);
+    }
+    if (hasUrl) {
+      byte[] last = new byte[0];
+      for (byte[] url : urls) {
+        int shared = 0;
+        int max = Math.min(last.length, url.length);
+        while (shared < max && last[shared] == url[shared]) {
+          shared++;
+        }
+        writeVarInt(buffer, shared);
+        writeVarInt(buffer, url.length - shared);
+        buffer.put(url, shared, url.length - shared);
+        last = url;
+      }
+    }
+    byte[] blob = new byte[buffer.position()];
+    System.arraycopy(buffer.array(), 0, blob, 0, blob.length);
+    return blob;
+  }
+
+  private static void writeVarInt(ByteBuffer buffer, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static int readVarInt(ByteBuffer buffer) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
@@ -18,10 +18,12 @@ package com.arialyy.aria.core.common;
 import android.os.Parcel;
 import android.os.Parcelable;
 import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.inf.TaskPriority;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.orm.annotation.Default;
 import com.arialyy.aria.orm.annotation.Ignore;
+import com.arialyy.aria.orm.annotation.Index;
 import java.io.Serializable;
 
 /**
@@ -71,6 +73,7 @@ public abstract class AbsEntity extends DbEntity implements IEntity, Parcelable,
   /**
    * 完成时间
    */
+  @Index
   private long completeTime;
 
   /**
@@ -86,6 +89,18 @@ public abstract class AbsEntity extends DbEntity implements IEntity, Parcelable,
    */
   private long stopTime = 0;
 
+  /**
+   * 任务优先级{@link TaskPriority}
+   */
+  @Default("0")
+  private int priority = TaskPriority.NORMAL;
+
+  /**
+   * 任务截止时间，单位：毫秒，为0表示没有截止时间
+   */
+  @Default("0")
+  private long deadline = 0;
+
   /**
    * 获取剩余时间，单位：s
    * 如果是m3u8任务，无法获取剩余时间；m2u8任务如果需要获取剩余时间，请设置文件长度{@link #setFileSize(long)}
@@ -194,6 +209,22 @@ public abstract class AbsEntity extends DbEntity implements IEntity, Parcelable,
     this.stopTime = stopTime;
   }
 
+  public int getPriority() {
+    return priority;
+  }
+
+  public void setPriority(int priority) {
+    this.priority = priority;
+  }
+
+  public long getDeadline() {
+    return deadline;
+  }
+
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
   public long getId() {
     return getRowID();
   }
@@ -235,6 +266,8 @@ public abstract class AbsEntity extends DbEntity implements IEntity, Parcelable,
     dest.writeInt(this.percent);
     dest.writeByte(this.isComplete ? (byte) 1 : (byte) 0);
     dest.writeLong(this.stopTime);
+    dest.writeInt(this.priority);
+    dest.writeLong(this.deadline);
   }
 
   protected AbsEntity(Parcel in) {
@@ -250,5 +283,7 @@ public abstract class AbsEntity extends DbEntity implements IEntity, Parcelable,
     this.percent = in.readInt();
     this.isComplete = in.readByte() != 0;
     this.stopTime = in.readLong();
+    this.priority = in.readInt();
+    this.deadline = in.readLong();
   }
 }
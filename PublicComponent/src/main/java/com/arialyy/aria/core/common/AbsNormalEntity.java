@@ -19,6 +19,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.annotation.Default;
+import com.arialyy.aria.orm.annotation.Index;
 
 /**
  * Created by AriaL on 2017/6/3.
@@ -28,6 +29,7 @@ public abstract class AbsNormalEntity extends AbsEntity implements Parcelable {
   /**
    * 服务器地址
    */
+  @Index
   private String url;
 
   /**
@@ -15,8 +15,11 @@
  */
 package com.arialyy.aria.core.common;
 
+import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.core.ProgressJournal;
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.ThreadRecordCodec;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.loader.ILoaderVisitor;
 import com.arialyy.aria.core.loader.IRecordHandler;
@@ -78,6 +81,8 @@ public abstract class RecordHandler implements IRecordHandler {
   public TaskRecord getRecord(long fileSize) {
     mFileSize = fileSize;
     mConfigFile = new File(CommonUtil.getFileConfigPath(false, mEntity.getFileName()));
+    // 上次运行还没有合并的进度日志先合并到数据库
+    ProgressJournal.close(getFilePath());
     if (mConfigFile.exists()) {
       convertDb();
     } else {
@@ -90,10 +95,14 @@ public abstract class RecordHandler implements IRecordHandler {
           mTaskRecord.threadRecords = new ArrayList<>();
         }
         initRecord(false);
+      } else {
+        // 进程异常退出时残留的进度日志，恢复后再检查记录
+        ProgressJournal.replay(mTaskRecord);
       }
       handlerTaskRecord(mTaskRecord);
     }
     saveRecord();
+    ProgressJournal.delete(getFilePath());
     return mTaskRecord;
   }
 
@@ -180,13 +189,25 @@ public abstract class RecordHandler implements IRecordHandler {
    */
   private void saveRecord() {
     mTaskRecord.threadNum = mTaskRecord.threadRecords.size();
-    mTaskRecord.save();
-    if (mTaskRecord.threadRecords != null && !mTaskRecord.threadRecords.isEmpty()) {
-      DbEntity.saveAll(mTaskRecord.threadRecords);
+    if (useCompactRecord()) {
+      ThreadRecordCodec.saveCompact(mTaskRecord);
+    } else {
+      ThreadRecordCodec.saveRows(mTaskRecord);
     }
     ALog.d(TAG, String.format("保存记录，线程记录数：%s", mTaskRecord.threadRecords.size()));
   }
 
+  /**
+   * 线程记录较多的任务使用紧凑格式保存线程记录，直播和组合任务的子任务除外
+   */
+  private boolean useCompactRecord() {
+    int threshold = AriaConfig.getInstance().getAConfig().getCompactRecordThreshold();
+    return threshold > 0
+        && mTaskWrapper.getRequestType() != ITaskWrapper.M3U8_LIVE
+        && !mTaskRecord.isGroupRecord
+        && mTaskRecord.threadRecords.size() >= threshold;
+  }
+
   protected long getFileSize() {
     return mFileSize;
   }
@@ -50,6 +50,55 @@ public class AppConfig extends BaseConfig implements Serializable {
    */
   boolean notNetRetry = false;
 
+  /**
+   * 数据库的同步级别，数据库使用WAL日志模式，可选值：OFF、NORMAL、FULL、EXTRA，默认为NORMAL。
+   * NORMAL只在检查点时同步磁盘，断电时可能丢失最后几次提交，但不会损坏数据库；
+   * 修改后在下次打开数据库时生效
+   */
+  String dbSynchronous = "NORMAL";
+
+  public String getDbSynchronous() {
+    return dbSynchronous;
+  }
+
+  public AppConfig setDbSynchronous(String dbSynchronous) {
+    this.dbSynchronous = dbSynchronous;
+    save();
+    return this;
+  }
+
+  /**
+   * 线程记录数不小于该值时，任务的线程记录使用紧凑格式保存在任务记录中，不再逐条保存，
+   * 主要用于切片数量较多的m3u8点播任务；小于等于0表示不使用紧凑格式
+   */
+  int compactRecordThreshold = 64;
+
+  public int getCompactRecordThreshold() {
+    return compactRecordThreshold;
+  }
+
+  public AppConfig setCompactRecordThreshold(int compactRecordThreshold) {
+    this.compactRecordThreshold = compactRecordThreshold;
+    save();
+    return this;
+  }
+
+  /**
+   * 是否使用进度日志保存线程进度，{@code true}线程进度先追加到每个任务的日志文件中，再由后台线程批量合并到数据库，
+   * 可以减少频繁的数据库写入，进程异常退出后重新启动任务时会从日志中恢复进度
+   */
+  boolean useProgressJournal = false;
+
+  public boolean isUseProgressJournal() {
+    return useProgressJournal;
+  }
+
+  public AppConfig setUseProgressJournal(boolean useProgressJournal) {
+    this.useProgressJournal = useProgressJournal;
+    save();
+    return this;
+  }
+
   public boolean isNotNetRetry() {
     return notNetRetry;
   }
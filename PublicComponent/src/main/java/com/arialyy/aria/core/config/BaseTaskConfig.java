@@ -68,6 +68,17 @@ public abstract class BaseTaskConfig extends BaseConfig implements Serializable
    */
   String queueMod = "wait";
 
+  /**
+   * 缓存池调度策略，fifo：先进先出；priority：优先级；sjf：剩余文件长度最短的优先；deadline：截止时间最早的优先
+   */
+  String queuePolicy = "fifo";
+
+  /**
+   * 缓存池调度的老化间隔，单位为毫秒，默认60000毫秒
+   * 任务在缓存池中每等待一个老化间隔，相当于提升一个优先级，防止低优先级任务一直得不到执行
+   */
+  long queueAgingInterval = 60 * 1000;
+
   /**
    * 设置IO流读取时间，单位为毫秒，默认20000毫秒，该时间不能少于10000毫秒
    */
@@ -153,6 +164,40 @@ public abstract class BaseTaskConfig extends BaseConfig implements Serializable
     return this;
   }
 
+  public String getQueuePolicy() {
+    return queuePolicy;
+  }
+
+  /**
+   * 设置缓存池调度策略，对下一次从缓存池中取出任务时生效
+   *
+   * @param queuePolicy fifo、priority、sjf、deadline
+   */
+  public BaseTaskConfig setQueuePolicy(String queuePolicy) {
+    this.queuePolicy = queuePolicy;
+    save();
+    return this;
+  }
+
+  public long getQueueAgingInterval() {
+    return queueAgingInterval;
+  }
+
+  /**
+   * 设置缓存池调度的老化间隔
+   *
+   * @param queueAgingInterval 单位为毫秒，不能小于等于0
+   */
+  public BaseTaskConfig setQueueAgingInterval(long queueAgingInterval) {
+    if (queueAgingInterval <= 0) {
+      ALog.w(TAG, "老化间隔不能小于等于0");
+      return this;
+    }
+    this.queueAgingInterval = queueAgingInterval;
+    save();
+    return this;
+  }
+
   public int getMaxTaskNum() {
     return maxTaskNum;
   }
@@ -131,6 +131,22 @@ public class XMLReader extends DefaultHandler {
           }
           setField("queueMod", mod, mType);
           break;
+        case "queuePolicy":  // 缓存池调度策略
+          String policy = "fifo";
+          if (!TextUtils.isEmpty(value) && (value.equalsIgnoreCase("priority")
+              || value.equalsIgnoreCase("sjf")
+              || value.equalsIgnoreCase("deadline"))) {
+            policy = value.toLowerCase();
+          }
+          setField("queuePolicy", policy, mType);
+          break;
+        case "queueAgingInterval":  // 缓存池调度的老化间隔
+          long agingInterval = checkLong(value) ? Long.parseLong(value) : 60 * 1000;
+          if (agingInterval <= 0) {
+            agingInterval = 60 * 1000;
+          }
+          setField("queueAgingInterval", agingInterval, mType);
+          break;
         case "updateInterval":  // 进度更新时间
           setField("updateInterval", checkLong(value) ? Long.parseLong(value) : 1000,
               mType);
@@ -184,6 +200,23 @@ public class XMLReader extends DefaultHandler {
           setField("notNetRetry", checkBoolean(value) ? Boolean.valueOf(value) : false,
               ConfigType.APP);
           break;
+        case "dbSynchronous":   // 数据库同步级别
+          String syncLevel = TextUtils.isEmpty(value) ? "" : value.toUpperCase();
+          if (!syncLevel.equals("OFF") && !syncLevel.equals("NORMAL") && !syncLevel.equals("FULL")
+              && !syncLevel.equals("EXTRA")) {
+            ALog.w(TAG, "dbSynchronous【" + value + "】错误");
+            syncLevel = "NORMAL";
+          }
+          setField("dbSynchronous", syncLevel, ConfigType.APP);
+          break;
+        case "compactRecordThreshold":  // 使用紧凑格式保存线程记录的阈值
+          int threshold = checkInt(value) ? Integer.parseInt(value) : 64;
+          setField("compactRecordThreshold", threshold, ConfigType.APP);
+          break;
+        case "useProgressJournal":  // 使用进度日志保存线程进度
+          setField("useProgressJournal", checkBoolean(value) ? Boolean.valueOf(value) : false,
+              ConfigType.APP);
+          break;
       }
     }
   }
@@ -21,6 +21,7 @@ import com.arialyy.aria.orm.AbsDbWrapper;
 import com.arialyy.aria.orm.annotation.Many;
 import com.arialyy.aria.orm.annotation.One;
 import com.arialyy.aria.orm.annotation.Wrapper;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -37,8 +38,11 @@ public class DGEntityWrapper extends AbsDbWrapper {
   public List<DownloadEntity> subEntity;
 
   @Override protected void handleConvert() {
-    if (subEntity != null && !subEntity.isEmpty()) {
-      groupEntity.setSubEntities(subEntity);
+    if (groupEntity == null) {
+      return;
     }
+    // 关联查询已经查出了所有子任务，没有子任务时也设置为空列表，避免再次从数据库加载
+    groupEntity.setSubEntities(
+        subEntity == null ? new ArrayList<DownloadEntity>() : subEntity);
   }
 }
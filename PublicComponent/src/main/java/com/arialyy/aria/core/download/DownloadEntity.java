@@ -23,6 +23,7 @@ import com.arialyy.aria.core.common.AbsNormalEntity;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.orm.annotation.Ignore;
+import com.arialyy.aria.orm.annotation.Index;
 import com.arialyy.aria.orm.annotation.Unique;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
@@ -37,6 +38,7 @@ public class DownloadEntity extends AbsNormalEntity implements Parcelable {
   /**
    * 所属任务组
    */
+  @Index
   private String groupHash;
 
   /**
@@ -19,6 +19,7 @@ import android.os.Parcel;
 import android.text.TextUtils;
 import com.arialyy.aria.core.common.AbsGroupEntity;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
+import com.arialyy.aria.orm.Query;
 import com.arialyy.aria.orm.annotation.Ignore;
 import java.util.ArrayList;
 import java.util.List;
@@ -28,35 +29,94 @@ import java.util.List;
  */
 public class DownloadGroupEntity extends AbsGroupEntity {
 
-  @Ignore private List<DownloadEntity> subEntities;
+  @Ignore private volatile List<DownloadEntity> subEntities;
 
   /**
-   * 子任务实体列表
+   * 子任务实体列表，从数据库读取的任务组如果没有加载子任务，第一次调用时才会从数据库中加载。
+   * 只需要子任务数量时使用{@link #getSubTaskNum()}
    */
   public List<DownloadEntity> getSubEntities() {
-    if (subEntities == null) {
-      subEntities = new ArrayList<>();
+    List<DownloadEntity> subs = subEntities;
+    if (subs == null) {
+      synchronized (this) {
+        if (subEntities == null) {
+          subEntities = canLoadSub() ? Query.of(DownloadEntity.class)
+              .eq("groupHash", groupHash)
+              .orderBy("rowid", true)
+              .find() : new ArrayList<DownloadEntity>();
+        }
+        subs = subEntities;
+      }
     }
-    return subEntities;
+    return subs;
   }
 
   public void setSubEntities(List<DownloadEntity> subTasks) {
     this.subEntities = subTasks;
   }
 
+  /**
+   * 子任务是否已经加载
+   *
+   * @return {@code false} 子任务还没有从数据库中加载
+   */
+  public boolean isSubEntitiesLoaded() {
+    return subEntities != null;
+  }
+
+  /**
+   * 子任务数量，子任务没有加载时只查询数量，不会加载子任务
+   */
+  public int getSubTaskNum() {
+    List<DownloadEntity> subs = subEntities;
+    if (subs != null) {
+      return subs.size();
+    }
+    return canLoadSub() ? Query.of(DownloadEntity.class).eq("groupHash", groupHash).count() : 0;
+  }
+
+  /**
+   * 新建的任务组保存前先确定子任务列表，避免保存后再添加子任务时从数据库中重复加载子任务
+   */
+  @Override public void insert() {
+    getSubEntities();
+    super.insert();
+  }
+
+  /**
+   * 只有已经保存到数据库的任务组才能从数据库中加载子任务
+   */
+  private boolean canLoadSub() {
+    return getRowID() != -1 && !TextUtils.isEmpty(groupHash);
+  }
+
   public void setGroupHash(String key) {
     this.groupHash = key;
   }
 
   @Override public int getTaskType() {
-    if (getSubEntities() == null || getSubEntities().isEmpty() || TextUtils.isEmpty(
-        getSubEntities().get(0).getUrl())) {
+    DownloadEntity first = getFirstSubEntity();
+    if (first == null || TextUtils.isEmpty(first.getUrl())) {
       return ITaskWrapper.ERROR;
     }
     return (groupHash.startsWith("ftp") || groupHash.startsWith("sftp")) ? ITaskWrapper.D_FTP_DIR
         : ITaskWrapper.DG_HTTP;
   }
 
+  /**
+   * 获取第一个子任务，子任务没有加载时只查询第一个子任务
+   */
+  private DownloadEntity getFirstSubEntity() {
+    List<DownloadEntity> subs = subEntities;
+    if (subs != null || !canLoadSub()) {
+      return subs == null || subs.isEmpty() ? null : subs.get(0);
+    }
+    return Query.of(DownloadEntity.class)
+        .eq("groupHash", groupHash)
+        .orderBy("rowid", true)
+        .findFirst();
+  }
+
   public DownloadGroupEntity() {
   }
 
@@ -66,7 +126,7 @@ public class DownloadGroupEntity extends AbsGroupEntity {
 
   @Override public void writeToParcel(Parcel dest, int flags) {
     super.writeToParcel(dest, flags);
-    dest.writeTypedList(this.subEntities);
+    dest.writeTypedList(getSubEntities());
   }
 
   protected DownloadGroupEntity(Parcel in) {
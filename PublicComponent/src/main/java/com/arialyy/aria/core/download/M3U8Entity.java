@@ -23,11 +23,13 @@ import com.arialyy.aria.core.ThreadRecord;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.orm.annotation.Default;
+import com.arialyy.aria.orm.annotation.Index;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.DbDataHelper;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -38,6 +40,7 @@ public class M3U8Entity extends DbEntity implements Parcelable {
   /**
    * 文件保存路径
    */
+  @Index
   private String filePath;
 
   /**
@@ -60,6 +63,27 @@ public class M3U8Entity extends DbEntity implements Parcelable {
    */
   private String cacheDir;
 
+  /**
+   * 渐进式合并时，已追加到目标文件的切片数（按切片顺序的连续前缀）
+   */
+  private int mergedPeerNum;
+
+  /**
+   * 渐进式合并时，目标文件中已合并数据的长度
+   */
+  private long mergedLength;
+
+  /**
+   * 多码率播放列表中当前下载的码率（#EXT-X-STREAM-INF的BANDWIDTH），0表示不是多码率播放列表
+   */
+  private int bandWidth;
+
+  /**
+   * 切换码率后每个切片使用的码率，格式为"切片索引:码率"，以";"分隔，表示从该切片开始使用的码率，
+   * 为空表示所有切片都使用{@link #bandWidth}
+   */
+  private String peerBandWidths;
+
   /**
    * 加密key保存地址
    */
@@ -147,6 +171,7 @@ public class M3U8Entity extends DbEntity implements Parcelable {
    * 获取m3u8切片
    * 如果任务未完成，则返回所有已下载完成的切片；
    * 如果任务已完成，如果你设置了合并分块的请求，返回null；如果没有设置该请求，则返回所有已下载完成的切片
+   * 渐进式合并时，已追加到目标文件的切片会被删除，因此不会出现在返回结果中
    */
   public List<PeerInfo> getCompletedPeer() {
     if (TextUtils.isEmpty(getCacheDir())) {
@@ -234,6 +259,89 @@ public class M3U8Entity extends DbEntity implements Parcelable {
     this.peerIndex = peerIndex;
   }
 
+  public int getMergedPeerNum() {
+    return mergedPeerNum;
+  }
+
+  public void setMergedPeerNum(int mergedPeerNum) {
+    this.mergedPeerNum = mergedPeerNum;
+  }
+
+  public long getMergedLength() {
+    return mergedLength;
+  }
+
+  public void setMergedLength(long mergedLength) {
+    this.mergedLength = mergedLength;
+  }
+
+  public int getBandWidth() {
+    return bandWidth;
+  }
+
+  public void setBandWidth(int bandWidth) {
+    this.bandWidth = bandWidth;
+  }
+
+  /**
+   * 获取切片下载时使用的码率
+   *
+   * @param peerIndex 切片索引
+   * @return 不是多码率播放列表时返回0
+   */
+  public int getPeerBandWidth(int peerIndex) {
+    if (peerIndex < 0 || peerIndex >= peerNum) {
+      return 0;
+    }
+    return getPeerBandWidths()[peerIndex];
+  }
+
+  /**
+   * 记录切换码率后切片使用的码率
+   *
+   * @param peerIndexes 切换码率的切片索引
+   * @param bandWidth 切片使用的码率
+   */
+  public void setPeerBandWidth(List<Integer> peerIndexes, int bandWidth) {
+    int[] values = getPeerBandWidths();
+    for (int index : peerIndexes) {
+      if (index >= 0 && index < values.length) {
+        values[index] = bandWidth;
+      }
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      if (i == 0 ? values[i] != this.bandWidth : values[i] != values[i - 1]) {
+        if (sb.length() > 0) {
+          sb.append(';');
+        }
+        sb.append(i).append(':').append(values[i]);
+      }
+    }
+    peerBandWidths = sb.length() == 0 ? null : sb.toString();
+  }
+
+  private int[] getPeerBandWidths() {
+    int[] values = new int[peerNum];
+    Arrays.fill(values, bandWidth);
+    if (TextUtils.isEmpty(peerBandWidths)) {
+      return values;
+    }
+    for (String run : peerBandWidths.split(";")) {
+      String[] temp = run.split(":");
+      try {
+        int start = Integer.parseInt(temp[0]);
+        int value = Integer.parseInt(temp[1]);
+        if (start >= 0 && start < values.length) {
+          Arrays.fill(values, start, values.length, value);
+        }
+      } catch (Exception e) {
+        ALog.w("M3U8Entity", String.format("切片码率记录错误：%s", run));
+      }
+    }
+    return values;
+  }
+
   public int getPeerNum() {
     return peerNum;
   }
@@ -269,6 +377,10 @@ public class M3U8Entity extends DbEntity implements Parcelable {
     dest.writeString(this.keyUrl);
     dest.writeString(this.method);
     dest.writeString(this.iv);
+    dest.writeInt(this.mergedPeerNum);
+    dest.writeLong(this.mergedLength);
+    dest.writeInt(this.bandWidth);
+    dest.writeString(this.peerBandWidths);
   }
 
   protected M3U8Entity(Parcel in) {
@@ -281,6 +393,10 @@ public class M3U8Entity extends DbEntity implements Parcelable {
     this.keyUrl = in.readString();
     this.method = in.readString();
     this.iv = in.readString();
+    this.mergedPeerNum = in.readInt();
+    this.mergedLength = in.readLong();
+    this.bandWidth = in.readInt();
+    this.peerBandWidths = in.readString();
   }
 
   public static final Creator<M3U8Entity> CREATOR = new Creator<M3U8Entity>() {
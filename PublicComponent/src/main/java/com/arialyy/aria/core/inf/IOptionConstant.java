@@ -45,6 +45,10 @@ public interface IOptionConstant {
   String vodUrlConverter = "vodUrlConverter";
   String maxTsQueueNum = "maxTsQueueNum";
   String jumpIndex = "jumpIndex";
+  String progressiveMerge = "progressiveMerge";
+  String adaptiveVariant = "adaptiveVariant";
+  String switchVariant = "switchVariant";
+  String targetCompleteTime = "targetCompleteTime";
 
   // m3u8 live
   String liveTsUrlConverter = "liveTsUrlConverter";
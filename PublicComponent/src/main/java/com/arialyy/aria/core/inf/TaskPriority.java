@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.inf;
+
+/**
+ * 任务优先级，缓存池使用非fifo调度策略时，优先级高的任务会被优先执行
+ * 可以使用任意整数作为优先级，以下为常用的优先级
+ */
+public interface TaskPriority {
+  /**
+   * 后台任务
+   */
+  int LOW = -1;
+
+  /**
+   * 默认优先级
+   */
+  int NORMAL = 0;
+
+  /**
+   * 高优先级
+   */
+  int HIGH = 1;
+
+  /**
+   * 紧急任务
+   */
+  int URGENT = 2;
+}
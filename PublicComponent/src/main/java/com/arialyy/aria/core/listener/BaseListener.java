@@ -23,6 +23,7 @@ import com.arialyy.aria.core.task.AbsTask;
 import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.exception.AriaException;
+import com.arialyy.aria.orm.WriteBehindQueue;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
 import com.arialyy.aria.util.ErrorHelp;
@@ -176,10 +177,22 @@ public abstract class BaseListener implements IEventListener {
     }
   }
 
+  /**
+   * 丢弃实体的延迟数据，只在实体会被删除时调用，重新开始的任务会继续使用原来的实体
+   */
+  protected void discardLater() {
+    mEntity.discardLater();
+  }
+
   protected void saveData(int state, long location) {
     mEntity.setState(state);
 
     if (state == IEntity.STATE_CANCEL) {
+      // 删除记录前丢弃任务的延迟数据，并写入其它延迟数据，避免删除后的rowid被延迟写入覆盖
+      if (mTask.getSchedulerType() != TaskSchedulerType.TYPE_CANCEL_AND_NOT_NOTIFY) {
+        discardLater();
+      }
+      WriteBehindQueue.getInstance().flush();
       handleCancel();
       return;
     } else if (state == IEntity.STATE_STOP) {
@@ -190,6 +203,11 @@ public abstract class BaseListener implements IEventListener {
     if (location > 0) {
       mEntity.setCurrentProgress(location);
     }
-    mEntity.update();
+    if (state == IEntity.STATE_RUNNING || state == IEntity.STATE_PRE
+        || state == IEntity.STATE_POST_PRE) {
+      mEntity.updateLater();
+    } else {
+      WriteBehindQueue.getInstance().flush(mEntity);
+    }
   }
 }
@@ -24,10 +24,12 @@ import com.arialyy.aria.core.inf.TaskSchedulerType;
 import com.arialyy.aria.core.task.AbsTask;
 import com.arialyy.aria.core.task.DownloadGroupTask;
 import com.arialyy.aria.exception.AriaException;
+import com.arialyy.aria.orm.WriteBehindQueue;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
 import com.arialyy.aria.util.DeleteDGRecord;
 import com.arialyy.aria.util.ErrorHelp;
+import java.util.List;
 
 import static com.arialyy.aria.core.task.AbsTask.ERROR_INFO_KEY;
 
@@ -158,7 +160,11 @@ public class DownloadGroupListener extends BaseListener implements IDGroupListen
       subEntity.setConvertSpeed("0kb/s");
       subEntity.setSpeed(0);
     }
-    subEntity.update();
+    if (state == IEntity.STATE_RUNNING || state == IEntity.STATE_PRE) {
+      subEntity.updateLater();
+    } else {
+      WriteBehindQueue.getInstance().flush(subEntity);
+    }
   }
 
   private void saveCurrentLocation() {
@@ -191,6 +197,16 @@ public class DownloadGroupListener extends BaseListener implements IDGroupListen
 
   }
 
+  @Override protected void discardLater() {
+    super.discardLater();
+    List<DownloadEntity> subEntities = ((DownloadGroupEntity) mEntity).getSubEntities();
+    if (subEntities != null) {
+      for (DownloadEntity subEntity : subEntities) {
+        subEntity.discardLater();
+      }
+    }
+  }
+
   @Override protected void handleCancel() {
     int sType = getTask(DownloadGroupTask.class).getSchedulerType();
     if (sType == TaskSchedulerType.TYPE_CANCEL_AND_NOT_NOTIFY) {
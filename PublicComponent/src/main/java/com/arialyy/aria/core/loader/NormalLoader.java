@@ -20,11 +20,13 @@ import android.os.Looper;
 import com.arialyy.aria.core.common.AbsEntity;
 import com.arialyy.aria.core.common.AbsNormalEntity;
 import com.arialyy.aria.core.common.CompleteInfo;
+import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.event.EventMsgUtil;
 import com.arialyy.aria.core.inf.IThreadStateManager;
 import com.arialyy.aria.core.listener.IDLoadListener;
 import com.arialyy.aria.core.listener.IEventListener;
 import com.arialyy.aria.core.manager.ThreadTaskManager;
+import com.arialyy.aria.core.play.PlayServer;
 import com.arialyy.aria.core.task.AbsTask;
 import com.arialyy.aria.core.task.IThreadTask;
 import com.arialyy.aria.core.wrapper.AbsTaskWrapper;
@@ -41,6 +43,7 @@ public class NormalLoader<T extends AbsTaskWrapper> extends AbsNormalLoader<T> {
   private int startThreadNum; //启动的线程数
   protected boolean isComplete = false;
   private Looper looper;
+  private NormalPlaySource mPlaySource;
 
   public NormalLoader(T wrapper, IEventListener listener) {
     super(wrapper, listener);
@@ -72,6 +75,9 @@ public class NormalLoader<T extends AbsTaskWrapper> extends AbsNormalLoader<T> {
 
   @Override public void onDestroy() {
     super.onDestroy();
+    if (mPlaySource != null) {
+      PlayServer.getInstance().unregister(mTaskWrapper.getKey(), mPlaySource);
+    }
     EventMsgUtil.getDefault().unRegister(this);
   }
 
@@ -132,6 +138,12 @@ public class NormalLoader<T extends AbsTaskWrapper> extends AbsNormalLoader<T> {
       ThreadTaskManager.getInstance().startThread(mTaskWrapper.getKey(), threadTask);
     }
 
+    // 注册边下边播的数据源
+    if (getEntity() instanceof DownloadEntity) {
+      mPlaySource = new NormalPlaySource(this, mRecord, getTaskList());
+      PlayServer.getInstance().register(mTaskWrapper.getKey(), mPlaySource);
+    }
+
     // 启动定时器
     startTimer();
   }
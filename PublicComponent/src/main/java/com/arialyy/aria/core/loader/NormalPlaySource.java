@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.loader;
+
+import android.util.SparseArray;
+import com.arialyy.aria.core.TaskRecord;
+import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.play.IFilePlaySource;
+import com.arialyy.aria.core.task.IThreadTask;
+import com.arialyy.aria.core.task.ThreadTask;
+import com.arialyy.aria.util.FileUtil;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 普通下载任务的边下边播数据源，根据线程记录计算每个线程区间已下载的数据。
+ * 多线程任务的每个线程同时下载各自的区间，没有下载队列，因此读取请求不会改变下载的优先级
+ */
+final class NormalPlaySource implements IFilePlaySource {
+  /**
+   * 等待数据时检查下载进度的间隔，单位毫秒
+   */
+  private static final long CHECK_INTERVAL = 200;
+
+  private final NormalLoader mLoader;
+  private final TaskRecord mRecord;
+  private final SparseArray<ThreadTask> mTasks = new SparseArray<>();
+  private final String mPath;
+  private final long mLength;
+
+  NormalPlaySource(NormalLoader loader, TaskRecord record, List<IThreadTask> tasks) {
+    mLoader = loader;
+    mRecord = record;
+    mPath = loader.getEntity().getFilePath();
+    mLength = loader.getFileSize();
+    for (IThreadTask task : tasks) {
+      if (task instanceof ThreadTask) {
+        ThreadTask threadTask = (ThreadTask) task;
+        mTasks.put(threadTask.getConfig().record.threadId, threadTask);
+      }
+    }
+  }
+
+  @Override public String getFilePath() {
+    return mPath;
+  }
+
+  @Override public long getFileLength() {
+    return mLength > 0 ? mLength : -1;
+  }
+
+  @Override public long waitData(long offset, long timeout) throws InterruptedException {
+    long endTime = System.currentTimeMillis() + timeout;
+    while (true) {
+      if (mLength > 0 && offset >= mLength) {
+        return -1;
+      }
+      ThreadRecord tr = getThreadRecord(offset);
+      if (tr == null) {
+        return -1;
+      }
+      long available = getRegionStart(tr) + getWrittenLen(tr) - offset;
+      if (available > 0) {
+        return available;
+      }
+      if (tr.isComplete || mLoader.isBreak() || !mLoader.isRunning()) {
+        return -1;
+      }
+      long remain = endTime - System.currentTimeMillis();
+      if (remain <= 0) {
+        return 0;
+      }
+      Thread.sleep(Math.min(CHECK_INTERVAL, remain));
+    }
+  }
+
+  @Override public int read(long offset, byte[] buffer, int len) throws IOException {
+    ThreadRecord tr = getThreadRecord(offset);
+    if (mRecord.isBlock && tr != null && !tr.isComplete) {
+      File block = getBlockFile(tr);
+      try {
+        return FileUtil.readFile(block, offset - getRegionStart(tr), buffer, len);
+      } catch (FileNotFoundException e) {
+        // 分块已合并到目标文件
+      }
+    }
+    return FileUtil.readFile(new File(mPath), offset, buffer, len);
+  }
+
+  /**
+   * 获取数据所在线程区间的线程记录
+   */
+  private ThreadRecord getThreadRecord(long offset) {
+    for (ThreadRecord tr : mRecord.threadRecords) {
+      long end = mLength > 0 ? tr.endLocation : Long.MAX_VALUE;
+      if (getRegionStart(tr) <= offset && offset < end) {
+        return tr;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 线程区间的开始位置，线程记录中的开始位置会随下载进度更新，因此使用结束位置和分块长度计算
+   */
+  private long getRegionStart(ThreadRecord tr) {
+    if (mRecord.threadRecords.size() == 1 || tr.blockLen <= 0) {
+      return 0;
+    }
+    return tr.endLocation - tr.blockLen;
+  }
+
+  /**
+   * 线程区间已下载的数据长度
+   */
+  private long getWrittenLen(ThreadRecord tr) {
+    long regionStart = getRegionStart(tr);
+    if (tr.isComplete) {
+      return mLength > 0 ? tr.endLocation - regionStart : new File(mPath).length();
+    }
+    if (mRecord.isBlock) {
+      return getBlockFile(tr).length();
+    }
+    ThreadTask task = mTasks.get(tr.threadId);
+    long location = task != null ? task.getThreadProgress() : tr.startLocation;
+    return Math.max(0, location - regionStart);
+  }
+
+  private File getBlockFile(ThreadRecord tr) {
+    return new File(String.format(IRecordHandler.SUB_PATH, mPath, tr.threadId));
+  }
+
+}
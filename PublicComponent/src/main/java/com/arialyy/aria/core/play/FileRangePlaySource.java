@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.play;
+
+import com.arialyy.aria.util.FileUtil;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 已下载完成的文件中的一段数据，如：已合并文件中的一个切片
+ */
+public final class FileRangePlaySource implements IFilePlaySource {
+  private final String mPath;
+  private final long mOffset;
+  private final long mLength;
+
+  /**
+   * @param path 文件路径
+   * @param offset 数据在文件中的起始位置
+   * @param length 数据长度
+   */
+  public FileRangePlaySource(String path, long offset, long length) {
+    mPath = path;
+    mOffset = offset;
+    mLength = length;
+  }
+
+  @Override public String getFilePath() {
+    return mPath;
+  }
+
+  @Override public long getFileLength() {
+    return mLength;
+  }
+
+  @Override public long waitData(long offset, long timeout) {
+    return offset < mLength ? mLength - offset : -1;
+  }
+
+  @Override public int read(long offset, byte[] buffer, int len) throws IOException {
+    return FileUtil.readFile(new File(mPath), mOffset + offset,
+        buffer, (int) Math.min(len, mLength - offset));
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.play;
+
+import java.io.IOException;
+
+/**
+ * 边下边播的文件数据源，可以读取部分下载的文件
+ */
+public interface IFilePlaySource {
+
+  /**
+   * 文件路径，用于判断文件类型
+   */
+  String getFilePath();
+
+  /**
+   * 文件长度
+   *
+   * @return 长度未知时返回-1
+   */
+  long getFileLength();
+
+  /**
+   * 等待指定位置的数据下载完成
+   *
+   * @param offset 数据位置
+   * @param timeout 最长等待时间，单位毫秒
+   * @return 从offset开始可以连续读取的字节数，超时返回0，文件已结束或任务已停止返回-1
+   */
+  long waitData(long offset, long timeout) throws InterruptedException;
+
+  /**
+   * 读取数据，调用前需要通过{@link #waitData(long, long)}确认数据已下载
+   *
+   * @param offset 数据位置
+   * @return 读取的字节数
+   */
+  int read(long offset, byte[] buffer, int len) throws IOException;
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.play;
+
+/**
+ * 边下边播的HLS数据源，由m3u8点播任务提供，任务完成后由已下载的切片或合并后的文件提供
+ */
+public interface IHlsPlaySource {
+
+  /**
+   * 获取改写后的播放列表，切片地址为相对地址"{切片索引}.ts"
+   *
+   * @return 播放列表不可用时返回null
+   */
+  String getPlaylist();
+
+  /**
+   * 等待切片下载完成，切片未完成时会优先下载该切片
+   *
+   * @param peerIndex 切片索引
+   * @param timeout 最长等待时间，单位毫秒
+   * @return 切片数据，切片可能是单独的文件，也可能是已合并文件中的一段；超时、任务已停止或切片不可用时返回null
+   */
+  IFilePlaySource waitPeer(int peerIndex, long timeout) throws InterruptedException;
+}
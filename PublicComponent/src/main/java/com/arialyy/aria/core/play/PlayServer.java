@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.play;
+
+import com.arialyy.aria.core.download.DownloadEntity;
+import com.arialyy.aria.orm.DbEntity;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 边下边播服务，只监听本机地址
+ * 1、m3u8点播任务提供改写后的播放列表和已下载的切片，请求未下载的切片时会优先下载该切片；
+ * 2、普通下载任务提供部分下载文件的范围读取；
+ * 请求的数据未下载时，请求会阻塞到数据下载完成或超时
+ */
+public class PlayServer {
+  private final String TAG = CommonUtil.getClassName(this);
+  private static volatile PlayServer INSTANCE = null;
+  private static final String HOST = "127.0.0.1";
+  static final String PLAYLIST_NAME = "index.m3u8";
+  static final String FILE_NAME = "file";
+
+  /**
+   * 请求等待数据的最长时间，单位毫秒
+   */
+  static final long WAIT_TIMEOUT = 30 * 1000;
+
+  /**
+   * 数据源，key为任务key的md5
+   */
+  private final Map<String, Object> mSources = new HashMap<>();
+
+  /**
+   * 已生成播放地址的任务，key为任务key的md5，value为任务key
+   */
+  private final Map<String, String> mKeys = new ConcurrentHashMap<>();
+  private ServerSocket mServer;
+  private ExecutorService mPool;
+
+  public static synchronized PlayServer getInstance() {
+    if (INSTANCE == null) {
+      INSTANCE = new PlayServer();
+    }
+    return INSTANCE;
+  }
+
+  private PlayServer() {
+  }
+
+  /**
+   * 启动服务，服务已启动时不做处理
+   *
+   * @return {@code true} 服务已启动
+   */
+  public synchronized boolean start() {
+    if (isRunning()) {
+      return true;
+    }
+    try {
+      mServer = new ServerSocket(0, 16, InetAddress.getByName(HOST));
+    } catch (IOException e) {
+      ALog.e(TAG, "启动边下边播服务失败");
+      e.printStackTrace();
+      return false;
+    }
+    mPool = Executors.newCachedThreadPool();
+    final ServerSocket server = mServer;
+    mPool.execute(new Runnable() {
+      @Override public void run() {
+        while (!server.isClosed()) {
+          try {
+            Socket socket = server.accept();
+            mPool.execute(new PlaySession(PlayServer.this, socket));
+          } catch (Exception e) {
+            if (!server.isClosed()) {
+              ALog.e(TAG, String.format("接收请求失败，%s", e.getMessage()));
+            }
+          }
+        }
+      }
+    });
+    ALog.i(TAG, String.format("边下边播服务已启动，端口：%s", mServer.getLocalPort()));
+    return true;
+  }
+
+  /**
+   * 停止服务，正在等待数据的请求会被中断
+   */
+  public synchronized void stop() {
+    if (mServer == null) {
+      return;
+    }
+    try {
+      mServer.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    mPool.shutdownNow();
+    mServer = null;
+    mPool = null;
+  }
+
+  public synchronized boolean isRunning() {
+    return mServer != null && !mServer.isClosed();
+  }
+
+  /**
+   * 获取任务的播放地址，服务未启动时会先启动服务
+   *
+   * @param key 任务key
+   * @param isHls {@code true} 获取HLS播放列表的地址，{@code false} 获取文件的地址
+   * @return 服务启动失败时返回null
+   */
+  public synchronized String getPlayUrl(String key, boolean isHls) {
+    if (!start()) {
+      return null;
+    }
+    String id = CommonUtil.getStrMd5(key);
+    mKeys.put(id, key);
+    return String.format("http://%s:%s/%s/%s", HOST, mServer.getLocalPort(), id,
+        isHls ? PLAYLIST_NAME : FILE_NAME);
+  }
+
+  /**
+   * 任务是否已生成播放地址，并且服务正在运行
+   *
+   * @param key 任务key
+   */
+  public synchronized boolean isServing(String key) {
+    return isRunning() && mKeys.containsKey(CommonUtil.getStrMd5(key));
+  }
+
+  /**
+   * 注册m3u8点播任务的数据源
+   */
+  public void register(String key, IHlsPlaySource source) {
+    putSource(key, source);
+  }
+
+  /**
+   * 注册普通任务的数据源
+   */
+  public void register(String key, IFilePlaySource source) {
+    putSource(key, source);
+  }
+
+  /**
+   * 注销数据源，只有注册的数据源和当前数据源相同时才注销
+   */
+  public synchronized void unregister(String key, Object source) {
+    String id = CommonUtil.getStrMd5(key);
+    if (mSources.get(id) == source) {
+      mSources.remove(id);
+    }
+  }
+
+  private synchronized void putSource(String key, Object source) {
+    mSources.put(CommonUtil.getStrMd5(key), source);
+    notifyAll();
+  }
+
+  /**
+   * 等待数据源注册，任务已完成时使用下载完成的文件作为数据源
+   *
+   * @param id 任务key的md5
+   * @return 超时返回null
+   */
+  Object waitSource(String id, long timeout) throws InterruptedException {
+    long endTime = System.currentTimeMillis() + timeout;
+    while (true) {
+      synchronized (this) {
+        Object source = mSources.get(id);
+        if (source != null) {
+          return source;
+        }
+      }
+      IFilePlaySource completeSource = getCompleteSource(id);
+      if (completeSource != null) {
+        return completeSource;
+      }
+      long remain = endTime - System.currentTimeMillis();
+      if (remain <= 0) {
+        return null;
+      }
+      synchronized (this) {
+        if (!mSources.containsKey(id)) {
+          // 任务可能在等待期间完成，定期检查任务状态
+          wait(Math.min(remain, 1000));
+        }
+      }
+    }
+  }
+
+  private IFilePlaySource getCompleteSource(String id) {
+    String key = mKeys.get(id);
+    if (key == null) {
+      return null;
+    }
+    DownloadEntity entity =
+        DbEntity.findFirst(DownloadEntity.class, "url=? and isGroupChild='false'", key);
+    if (entity == null || !entity.isComplete() || !new File(entity.getFilePath()).exists()) {
+      return null;
+    }
+    return new CompleteFilePlaySource(entity.getFilePath());
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.play;
+
+import android.text.TextUtils;
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+
+/**
+ * 处理一个播放器请求，每个连接只处理一个请求
+ * 请求地址格式：/{任务id}/index.m3u8、/{任务id}/{切片索引}.ts、/{任务id}/file
+ */
+final class PlaySession implements Runnable {
+  private final String TAG = CommonUtil.getClassName(this);
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_LINE_LEN = 8 * 1024;
+  private static final Charset CHARSET = Charset.forName("UTF-8");
+
+  private final PlayServer mServer;
+  private final Socket mSocket;
+
+  PlaySession(PlayServer server, Socket socket) {
+    mServer = server;
+    mSocket = socket;
+  }
+
+  @Override public void run() {
+    try {
+      mSocket.setSoTimeout((int) PlayServer.WAIT_TIMEOUT);
+      InputStream in = new BufferedInputStream(mSocket.getInputStream());
+      OutputStream out = new BufferedOutputStream(mSocket.getOutputStream());
+      handleRequest(in, out);
+      out.flush();
+    } catch (InterruptedException e) {
+      ALog.d(TAG, "边下边播服务已停止");
+    } catch (IOException e) {
+      // 播放器跳转或关闭时会断开连接
+      ALog.d(TAG, String.format("连接已断开，%s", e.getMessage()));
+    } finally {
+      try {
+        mSocket.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private void handleRequest(InputStream in, OutputStream out)
+      throws IOException, InterruptedException {
+    String requestLine = readLine(in);
+    if (TextUtils.isEmpty(requestLine)) {
+      return;
+    }
+    String[] request = requestLine.split(" ");
+    String range = null;
+    String line;
+    while (!TextUtils.isEmpty(line = readLine(in))) {
+      if (line.regionMatches(true, 0, "Range:", 0, 6)) {
+        range = line.substring(6).trim();
+      }
+    }
+    if (request.length < 2) {
+      sendError(out, 400, "Bad Request");
+      return;
+    }
+    boolean isHead = "HEAD".equals(request[0]);
+    if (!isHead && !"GET".equals(request[0])) {
+      sendError(out, 405, "Method Not Allowed");
+      return;
+    }
+    String path = request[1];
+    int queryIndex = path.indexOf('?');
+    if (queryIndex != -1) {
+      path = path.substring(0, queryIndex);
+    }
+    String[] names = path.startsWith("/") ? path.substring(1).split("/") : path.split("/");
+    if (names.length != 2) {
+      sendError(out, 404, "Not Found");
+      return;
+    }
+    Object source = mServer.waitSource(names[0], PlayServer.WAIT_TIMEOUT);
+    if (source == null) {
+      sendError(out, 404, "Not Found");
+      return;
+    }
+    String name = names[1];
+    if (PlayServer.PLAYLIST_NAME.equals(name)) {
+      if (source instanceof IHlsPlaySource) {
+        sendPlaylist(out, (IHlsPlaySource) source, isHead);
+      } else {
+        // 切片已合并为一个文件，重定向到文件地址
+        writeHeader(out, "302 Found", null, 0, null);
+        writeLine(out, String.format("Location: %s", PlayServer.FILE_NAME));
+        writeLine(out, "");
+      }
+    } else if (PlayServer.FILE_NAME.equals(name) && source instanceof IFilePlaySource) {
+      IFilePlaySource fileSource = (IFilePlaySource) source;
+      sendData(out, fileSource, getContentType(fileSource.getFilePath()), range, isHead);
+    } else if (name.endsWith(".ts") && source instanceof IHlsPlaySource) {
+      int peerIndex;
+      try {
+        peerIndex = Integer.parseInt(name.substring(0, name.length() - 3));
+      } catch (NumberFormatException e) {
+        sendError(out, 404, "Not Found");
+        return;
+      }
+      IFilePlaySource peer =
+          ((IHlsPlaySource) source).waitPeer(peerIndex, PlayServer.WAIT_TIMEOUT);
+      if (peer == null || !new File(peer.getFilePath()).exists()) {
+        sendError(out, 404, "Not Found");
+        return;
+      }
+      sendData(out, peer, "video/mp2t", range, isHead);
+    } else {
+      sendError(out, 404, "Not Found");
+    }
+  }
+
+  private void sendPlaylist(OutputStream out, IHlsPlaySource source, boolean isHead)
+      throws IOException {
+    String playlist = source.getPlaylist();
+    if (playlist == null) {
+      sendError(out, 404, "Not Found");
+      return;
+    }
+    byte[] data = playlist.getBytes(CHARSET);
+    writeHeader(out, "200 OK", "application/vnd.apple.mpegurl", data.length, null);
+    writeLine(out, "");
+    if (!isHead) {
+      out.write(data);
+    }
+  }
+
+  /**
+   * 发送文件数据，支持单个范围的Range请求，文件长度未知时只支持从头读取
+   */
+  private void sendData(OutputStream out, IFilePlaySource source, String contentType,
+      String range, boolean isHead) throws IOException, InterruptedException {
+    long length = source.getFileLength();
+    long start = 0, end = length - 1;
+    boolean isPartial = false;
+    if (range != null && range.startsWith("bytes=") && range.indexOf(',') == -1) {
+      String[] values = range.substring(6).split("-", 2);
+      try {
+        if (values.length < 2) {
+          throw new NumberFormatException();
+        } else if (values[0].isEmpty()) {
+          // 后缀范围超过文件长度时返回整个文件（RFC 7233 2.1）
+          long suffix = Long.parseLong(values[1]);
+          start = length > 0 && suffix > 0 ? Math.max(length - suffix, 0) : -1;
+        } else {
+          start = Long.parseLong(values[0]);
+          if (!values[1].isEmpty() && length > 0) {
+            end = Math.min(end, Long.parseLong(values[1]));
+          }
+        }
+        isPartial = true;
+      } catch (NumberFormatException e) {
+        ALog.w(TAG, String.format("Range格式错误：%s", range));
+      }
+    }
+    if (start < 0 || (length > 0 && (start >= length || end < start)) || (length <= 0
+        && start > 0)) {
+      writeHeader(out, "416 Range Not Satisfiable", null, 0,
+          length > 0 ? String.format("bytes */%s", length) : null);
+      writeLine(out, "");
+      return;
+    }
+    if (length > 0 && isPartial) {
+      writeHeader(out, "206 Partial Content", contentType, end - start + 1,
+          String.format("bytes %s-%s/%s", start, end, length));
+    } else {
+      writeHeader(out, "200 OK", contentType, length > 0 ? length : -1, null);
+    }
+    writeLine(out, "");
+    if (isHead) {
+      return;
+    }
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long pos = start;
+    while (length <= 0 || pos <= end) {
+      long available = source.waitData(pos, PlayServer.WAIT_TIMEOUT);
+      if (available <= 0) {
+        // 任务停止或等待超时，断开连接，由播放器重新请求
+        break;
+      }
+      int len = (int) Math.min(BUFFER_SIZE, available);
+      if (length > 0) {
+        len = (int) Math.min(len, end - pos + 1);
+      }
+      int readLen = source.read(pos, buffer, len);
+      if (readLen <= 0) {
+        break;
+      }
+      out.write(buffer, 0, readLen);
+      pos += readLen;
+    }
+  }
+
+  private void sendError(OutputStream out, int code, String msg) throws IOException {
+    writeHeader(out, String.format("%s %s", code, msg), null, 0, null);
+    writeLine(out, "");
+  }
+
+  /**
+   * 写入响应头，调用后需要写入空行结束响应头
+   *
+   * @param contentLength 小于0时不写入长度
+   */
+  private void writeHeader(OutputStream out, String status, String contentType,
+      long contentLength, String contentRange) throws IOException {
+    writeLine(out, String.format("HTTP/1.1 %s", status));
+    if (contentType != null) {
+      writeLine(out, String.format("Content-Type: %s", contentType));
+    }
+    if (contentLength >= 0) {
+      writeLine(out, String.format("Content-Length: %s", contentLength));
+    }
+    if (contentRange != null) {
+      writeLine(out, String.format("Content-Range: %s", contentRange));
+    }
+    writeLine(out, "Accept-Ranges: bytes");
+    writeLine(out, "Connection: close");
+  }
+
+  private void writeLine(OutputStream out, String line) throws IOException {
+    out.write(line.concat("\r\n").getBytes(CHARSET));
+  }
+
+  private String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1 && b != '\n') {
+      if (b != '\r') {
+        bos.write(b);
+      }
+      if (bos.size() > MAX_LINE_LEN) {
+        throw new IOException("请求头过长");
+      }
+    }
+    if (b == -1 && bos.size() == 0) {
+      return null;
+    }
+    return new String(bos.toByteArray(), CHARSET);
+  }
+
+  private String getContentType(String path) {
+    String type = URLConnection.guessContentTypeFromName(path);
+    if (type == null) {
+      if (path.endsWith(".ts")) {
+        return "video/mp2t";
+      } else if (path.endsWith(".m3u8")) {
+        return "application/vnd.apple.mpegurl";
+      }
+      return "application/octet-stream";
+    }
+    return type;
+  }
+}
@@ -27,8 +27,11 @@ public interface IVodTsUrlConverter extends IEventHandler {
   /**
    * 处理#EXTINF信息，对于某些服务器，返回的切片信息有可能是相对地址，因此，你需要自行转换为可下载http连接
    *
+   * 切片很多时，可以返回{@link java.util.AbstractList}等按需转换的列表，在读取地址时才进行转换，
+   * 避免一次生成所有切片的地址
+   *
    * @param m3u8Url m3u8文件下载地址
-   * @param tsUrls ts文件下载地址列表
+   * @param tsUrls ts文件下载地址列表，只读
    * @return 根据切片信息转换后的http连接列表，如果你的切片信息是可以直接下载的http连接，直接返回extInf便可
    */
   List<String> convert(String m3u8Url, List<String> tsUrls);
@@ -21,8 +21,10 @@ import android.os.Handler;
 import android.os.Message;
 import android.os.Process;
 import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.core.ProgressJournal;
 import com.arialyy.aria.core.ThreadRecord;
 import com.arialyy.aria.core.common.AbsEntity;
+import com.arialyy.aria.core.common.AbsNormalEntity;
 import com.arialyy.aria.core.common.SubThreadConfig;
 import com.arialyy.aria.core.inf.IThreadStateManager;
 import com.arialyy.aria.core.listener.ISchedulers;
@@ -69,12 +71,13 @@ public class ThreadTask implements IThreadTask, IThreadTaskObserver {
   private ThreadRecord mRecord;
   private String mThreadName;
   private long updateInterval; // 更新间隔
+  private String mJournalKey; // 进度日志对应的任务文件路径，为null时不使用进度日志
 
   private Thread mConfigThread = new Thread(new Runnable() {
     @Override public void run() {
       Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
       final long currentTemp = mRangeProgress;
-      writeConfig(false, currentTemp);
+      writeConfig(false, currentTemp, true);
     }
   });
 
@@ -90,9 +93,22 @@ public class ThreadTask implements IThreadTask, IThreadTaskObserver {
     mRangeProgress = mRecord.startLocation;
     mLastRangeProgress = mRangeProgress;
     updateInterval = config.updateInterval;
+    mJournalKey = getJournalKey();
     checkFileExist();
   }
 
+  /**
+   * 使用进度日志时返回日志对应的任务文件路径，直播任务的切片记录不需要恢复，不使用进度日志
+   */
+  private String getJournalKey() {
+    if (!AriaConfig.getInstance().getAConfig().isUseProgressJournal()
+        || mTaskWrapper.getRequestType() == ITaskWrapper.M3U8_LIVE
+        || !(mEntity instanceof AbsNormalEntity)) {
+      return null;
+    }
+    return ((AbsNormalEntity) mEntity).getFilePath();
+  }
+
   private void checkFileExist() {
     if (!getConfig().tempFile.exists()) {
       FileUtil.createFile(getConfig().tempFile);
@@ -385,6 +401,8 @@ public class ThreadTask implements IThreadTask, IThreadTaskObserver {
   @Override
   public void cancel() {
     isCancel = true;
+    // 取消后记录会被删除，线程中还未写入的进度不再写入
+    mRecord.discardLater();
     updateState(IThreadStateManager.STATE_CANCEL, null);
     ALog.d(TAG,
         String.format("任务【%s】thread__%s__取消", getFileName(), mRecord.threadId));
@@ -522,6 +540,18 @@ public class ThreadTask implements IThreadTask, IThreadTaskObserver {
    * @param record 当前进度
    */
   private void writeConfig(boolean isComplete, final long record) {
+    writeConfig(isComplete, record, false);
+  }
+
+  /**
+   * 将记录写入到配置文件，使用进度日志时写入进度日志，线程停止、失败时立即同步日志，
+   * 周期性的进度和完成状态由日志线程批量同步
+   *
+   * @param isComplete 当前线程是否完成 {@code true}完成
+   * @param record 当前进度
+   * @param later {@code true} 延迟写入，用于周期性的进度保存
+   */
+  private void writeConfig(boolean isComplete, final long record, boolean later) {
     if (mRecord != null) {
       mRecord.isComplete = isComplete;
       if (mConfig.isBlock) {
@@ -531,7 +561,17 @@ public class ThreadTask implements IThreadTask, IThreadTaskObserver {
           mRecord.startLocation = record;
         }
       }
-      mRecord.update();
+      if (mJournalKey != null) {
+        ProgressJournal journal = ProgressJournal.get(mJournalKey);
+        journal.append(mRecord);
+        if (!later && !isComplete) {
+          journal.commit();
+        }
+      } else if (later) {
+        mRecord.updateLater();
+      } else {
+        mRecord.update();
+      }
     }
   }
 
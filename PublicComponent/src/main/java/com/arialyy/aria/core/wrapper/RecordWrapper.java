@@ -17,6 +17,7 @@ package com.arialyy.aria.core.wrapper;
 
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.ThreadRecordCodec;
 import com.arialyy.aria.orm.AbsDbWrapper;
 import com.arialyy.aria.orm.annotation.Many;
 import com.arialyy.aria.orm.annotation.One;
@@ -38,7 +39,10 @@ public class RecordWrapper extends AbsDbWrapper {
   public List<ThreadRecord> threadRecords;
 
   @Override protected void handleConvert() {
-    if (threadRecords != null && !threadRecords.isEmpty()) {
+    List<ThreadRecord> records = ThreadRecordCodec.decode(taskRecord);
+    if (records != null) {
+      taskRecord.threadRecords = records;
+    } else if (threadRecords != null && !threadRecords.isEmpty()) {
       taskRecord.threadRecords = threadRecords;
     } else {
       taskRecord.threadRecords = new ArrayList<>();
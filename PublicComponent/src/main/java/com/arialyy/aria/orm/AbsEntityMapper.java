@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.text.TextUtils;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实体映射器，由AriaCompiler为每个非抽象的{@link DbEntity}子类生成，类名为"实体类名$$EntityMapper"。
+ * 字段的过滤、类型判断、列名都在编译期确定，游标的列索引每次查询只计算一次；
+ * 没有生成映射器的实体继续使用反射读写。
+ *
+ * 生成的映射器可以直接访问的字段直接读写，其它字段使用类加载时缓存的{@link Field}读写，
+ * 读写结果和反射方式保持一致。
+ */
+public abstract class AbsEntityMapper<T extends DbEntity> {
+  private final String[] mColumns;
+  private final String mRowIdColumn;
+
+  /**
+   * @param columns 需要读取的列名，顺序和{@link #fromCursor(Cursor, int[])}的索引一致
+   * @param rowIdColumn 行id所在的列，主键为int类型时为主键名，否则为"rowid"
+   */
+  protected AbsEntityMapper(String[] columns, String rowIdColumn) {
+    mColumns = columns;
+    mRowIdColumn = rowIdColumn;
+  }
+
+  /**
+   * 创建存储数据、更新数据时使用的ContentValues，为空的字段和自增的主键会被忽略
+   */
+  protected abstract ContentValues toContentValues(T entity) throws IllegalAccessException;
+
+  /**
+   * 根据游标的当前行创建实体，不处理rowID
+   *
+   * @param index 列索引，由{@link #getColumnIndex(Cursor, String)}获取，值为-1的列将被忽略
+   */
+  protected abstract T fromCursor(Cursor cursor, int[] index) throws IllegalAccessException;
+
+  /**
+   * 获取列索引，最后一位为行id的索引
+   *
+   * @param prefix 关联查询时列名的前缀，普通查询为空字符串
+   */
+  int[] getColumnIndex(Cursor cursor, String prefix) {
+    int[] index = new int[mColumns.length + 1];
+    for (int i = 0, len = mColumns.length; i < len; i++) {
+      index[i] = cursor.getColumnIndex(prefix.concat(mColumns[i]));
+    }
+    index[mColumns.length] = cursor.getColumnIndex(prefix.concat(mRowIdColumn));
+    return index;
+  }
+
+  /**
+   * 读取游标中的所有数据
+   */
+  List<T> readAll(Cursor cursor) throws IllegalAccessException {
+    List<T> entities = new ArrayList<>();
+    int[] index = getColumnIndex(cursor, "");
+    int rowIdIndex = index[index.length - 1];
+    while (cursor.moveToNext()) {
+      entities.add(readRow(cursor, index, rowIdIndex));
+    }
+    return entities;
+  }
+
+  /**
+   * 读取游标当前行的数据
+   *
+   * @param index {@link #getColumnIndex(Cursor, String)}获取的列索引
+   * @param rowIdIndex 行id的列索引
+   */
+  T readRow(Cursor cursor, int[] index, int rowIdIndex) throws IllegalAccessException {
+    T entity = fromCursor(cursor, index);
+    entity.rowID = cursor.getInt(rowIdIndex);
+    return entity;
+  }
+
+  @SuppressWarnings("unchecked") ContentValues createValues(DbEntity entity)
+      throws IllegalAccessException {
+    return toContentValues((T) entity);
+  }
+
+  /**
+   * 获取实体中不能直接访问的字段
+   *
+   * @param clazz 实体类
+   * @param level 字段所在的父类层级，0为实体类本身
+   */
+  protected static Field getField(Class<?> clazz, int level, String name) {
+    for (int i = 0; i < level; i++) {
+      clazz = clazz.getSuperclass();
+    }
+    try {
+      Field field = clazz.getDeclaredField(name);
+      field.setAccessible(true);
+      return field;
+    } catch (NoSuchFieldException e) {
+      throw new IllegalStateException(String.format("映射器和实体【%s】不匹配，请重新编译", clazz.getName()),
+          e);
+    }
+  }
+
+  protected static boolean isEmpty(CharSequence str) {
+    return TextUtils.isEmpty(str);
+  }
+
+  protected static boolean str2Boolean(String str) {
+    return !TextUtils.isEmpty(str) && !str.equalsIgnoreCase("false");
+  }
+
+  protected static String list2Str(List<String> list) {
+    StringBuilder sb = new StringBuilder();
+    for (String str : list) {
+      sb.append(str).append("$$");
+    }
+    return sb.toString();
+  }
+
+  protected static List<String> str2List(String str) {
+    List<String> list = new ArrayList<>();
+    for (String data : str.split("\\$\\$")) {
+      list.add(data);
+    }
+    return list;
+  }
+
+  protected static String map2Str(Map<String, String> map) {
+    return SqlUtil.map2Str(map);
+  }
+
+  protected static Map<String, String> str2Map(String str) {
+    return SqlUtil.str2Map(str);
+  }
+}
@@ -16,7 +16,9 @@
 
 package com.arialyy.aria.orm;
 
+import com.arialyy.aria.orm.annotation.Ignore;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -24,7 +26,15 @@ import java.util.List;
  */
 public abstract class DbEntity {
   private static final Object LOCK = new Object();
+  /**
+   * IN查询时每批的参数个数，sqlite单条语句的参数个数不能超过999
+   */
+  public static final int IN_QUERY_BATCH_SIZE = 500;
   protected long rowID = -1;
+  /**
+   * 记录已被删除，延迟写入队列不再写入该记录，详见{@link #discardLater()}
+   */
+  @Ignore volatile boolean isDiscarded = false;
 
   protected DbEntity() {
 
@@ -113,6 +123,7 @@ public abstract class DbEntity {
    * <code>
    * DbEntity.findFirst(DownloadEntity.class, "downloadUrl=?", downloadUrl);
    * </code>
+   * 条件参数使用绑定参数传递，新代码建议使用{@link Query}
    *
    * @return 没有数据返回null
    */
@@ -138,6 +149,82 @@ public abstract class DbEntity {
     return DelegateWrapper.getInstance().findData(clazz, page, num, expression);
   }
 
+  /**
+   * 流式查询数据，数据量大时使用，读取完成后需要关闭游标，详见{@link EntityCursor}
+   * <code>
+   * EntityCursor<DownloadEntity> cursor =
+   * DbEntity.iterateData(DownloadEntity.class, "isGroupChild=?", "false");
+   * </code>
+   *
+   * @param expression 查询条件，为空时查询所有数据
+   */
+  public static <T extends DbEntity> EntityCursor<T> iterateData(Class<T> clazz,
+      String... expression) {
+    return toQuery(clazz, expression).iterate();
+  }
+
+  /**
+   * 按行id游标分页查询数据，翻页的耗时不会随页数增加
+   * <code>
+   * List<DownloadEntity> page =
+   * DbEntity.findDatasAfter(DownloadEntity.class, lastId, 20, "isGroupChild=?", "false");
+   * </code>
+   *
+   * @param lastRowId 上一页最后一条数据的行id，小于0时查询第一页
+   * @param num 每页返回的数量
+   * @param expression 查询条件，为空时查询所有数据
+   * @return 没有数据返回空列表
+   */
+  public static <T extends DbEntity> List<T> findDatasAfter(Class<T> clazz, long lastRowId,
+      int num, String... expression) {
+    return toQuery(clazz, expression)
+        .after("rowid", true, lastRowId < 0 ? null : lastRowId, lastRowId)
+        .limit(num)
+        .find();
+  }
+
+  private static <T extends DbEntity> Query<T> toQuery(Class<T> clazz, String... expression) {
+    Query<T> query = Query.of(clazz);
+    if (expression != null && expression.length > 0) {
+      query.where(expression[0], (Object[]) Arrays.copyOfRange(expression, 1, expression.length));
+    }
+    return query;
+  }
+
+  /**
+   * 查询字段值在指定集合中的数据，集合过大时会分批查询，每批不超过{@link #IN_QUERY_BATCH_SIZE}个参数
+   * <code>
+   * DbEntity.findDatasIn(DownloadEntity.class, "downloadPath", paths);
+   * </code>
+   *
+   * @param column 字段名
+   * @param values 字段值
+   * @return 没有数据返回空列表
+   */
+  public static <T extends DbEntity> List<T> findDatasIn(Class<T> clazz, String column,
+      List<String> values) {
+    List<T> result = new ArrayList<>();
+    if (values == null || values.isEmpty()) {
+      return result;
+    }
+    DelegateWrapper util = DelegateWrapper.getInstance();
+    for (int start = 0, size = values.size(); start < size; start += IN_QUERY_BATCH_SIZE) {
+      int end = Math.min(start + IN_QUERY_BATCH_SIZE, size);
+      String[] expression = new String[end - start + 1];
+      StringBuilder where = new StringBuilder(column).append(" IN (");
+      for (int i = start; i < end; i++) {
+        where.append(i == start ? "?" : ",?");
+        expression[i - start + 1] = values.get(i);
+      }
+      expression[0] = where.append(")").toString();
+      List<T> datas = util.findData(clazz, expression);
+      if (datas != null) {
+        result.addAll(datas);
+      }
+    }
+    return result;
+  }
+
   /**
    * 模糊查询一组数据
    * <code>
@@ -256,6 +343,21 @@ public abstract class DbEntity {
     DelegateWrapper.getInstance().updateData(this);
   }
 
+  /**
+   * 延迟修改数据，用于频繁的进度更新，数据会和其它延迟修改合并后批量写入，详见{@link WriteBehindQueue}
+   */
+  public void updateLater() {
+    WriteBehindQueue.getInstance().offer(this);
+  }
+
+  /**
+   * 丢弃延迟修改的数据，记录被删除前调用，之后的{@link #updateLater()}也不会再写入，
+   * 避免延迟写入落到已删除或被复用的rowid上
+   */
+  public void discardLater() {
+    WriteBehindQueue.getInstance().discard(this);
+  }
+
   /**
    * 保存自身，如果表中已经有数据，则更新数据，否则插入数据 只有 target中checkEntity成功后才能保存，创建实体部分也不允许保存
    */
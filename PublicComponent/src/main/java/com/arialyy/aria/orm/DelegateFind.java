@@ -25,8 +25,6 @@ import com.arialyy.aria.orm.annotation.Wrapper;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
 import java.lang.reflect.Field;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -143,8 +141,8 @@ class DelegateFind extends AbsDelegate {
         SqlUtil.checkOrCreateTable(db, childClazz);
         final String pTableName = parentClazz.getSimpleName();
         final String cTableName = childClazz.getSimpleName();
-        List<Field> pColumn = SqlUtil.getAllNotIgnoreField(parentClazz);
-        List<Field> cColumn = SqlUtil.getAllNotIgnoreField(childClazz);
+        List<Field> pColumn = SchemaRegistry.getNotIgnoreFields(parentClazz);
+        List<Field> cColumn = SchemaRegistry.getNotIgnoreFields(childClazz);
         StringBuilder pSb = new StringBuilder();
         StringBuilder cSb = new StringBuilder();
 
@@ -200,29 +198,23 @@ class DelegateFind extends AbsDelegate {
             .append(pTableName.concat(".").concat(m.parentColumn()))
             .append(" = ")
             .append(cTableName.concat(".").concat(m.entityColumn()));
-        String sql;
+        String[] args = null;
         if (expression != null && expression.length > 0) {
           if (!CommonUtil.checkSqlExpression(expression)) {
             return null;
           }
           sb.append(" WHERE ").append(expression[0]).append(" ");
-          sql = sb.toString();
-          sql = sql.replace("?", "%s");
-          Object[] params = new String[expression.length - 1];
-          for (int i = 0, len = params.length; i < len; i++) {
-            params[i] = String.format("'%s'", SqlUtil.encodeStr(expression[i + 1]));
-          }
-          sql = String.format(sql, params);
-        } else {
-          sql = sb.toString();
+          args = new String[expression.length - 1];
+          System.arraycopy(expression, 1, args, 0, args.length);
         }
+        String sql = sb.toString();
         boolean paged = false;
         if (page != -1 && num != -1) {
           paged = true;
           sql = sql.concat(String.format(" Group by %s LIMIT %s,%s",
               pTableName.concat(".").concat(m.parentColumn()), (page - 1) * num, num));
         }
-        Cursor cursor = db.rawQuery(sql, null);
+        Cursor cursor = db.rawQuery(sql, args);
         List<T> data =
             newInstanceEntity(wrapperClazz, parentClazz, childClazz, cursor, pColumn, cColumn,
                 paged, db, m.entityColumn(), m.parentColumn());
@@ -254,13 +246,19 @@ class DelegateFind extends AbsDelegate {
     List<T> wrappers = new ArrayList<>();
     SparseArray<List<DbEntity>> childs = new SparseArray<>(); // 所有子表数据
     SparseArray<DbEntity> parents = new SparseArray<>(); // 所有父表数据
+    AbsEntityMapper<P> pMapper = EntityMappers.get(parentClazz);
+    AbsEntityMapper<C> cMapper = EntityMappers.get(childClazz);
+    int[] pIndex = pMapper == null ? null : pMapper.getColumnIndex(cursor, PARENT_COLUMN_ALIAS);
+    int[] cIndex = cMapper == null ? null : cMapper.getColumnIndex(cursor, CHILD_COLUMN_ALIAS);
+    int cRowIdIndex = cursor.getColumnIndex(CHILD_COLUMN_ALIAS.concat("rowid"));
 
     try {
       while (cursor.moveToNext()) {
         int pRowId = cursor.getInt(cursor.getColumnIndex(PARENT_COLUMN_ALIAS.concat("rowid")));
         if (childs.get(pRowId) == null) {
           childs.put(pRowId, new ArrayList<DbEntity>());
-          parents.put(pRowId, createParent(pRowId, parentClazz, pColumn, cursor));
+          parents.put(pRowId, pMapper == null ? createParent(pRowId, parentClazz, pColumn, cursor)
+              : createByMapper(pMapper, pIndex, pRowId, cursor));
         }
         if (paged) {
           List<C> list = createChildren(db, childClazz, pColumn, entityColumn, parentColumn,
@@ -269,11 +267,12 @@ class DelegateFind extends AbsDelegate {
             childs.get(pRowId).addAll(list);
           }
         } else {
-          childs.get(pRowId).add(createChild(childClazz, cColumn, cursor));
+          childs.get(pRowId).add(cMapper == null ? createChild(childClazz, cColumn, cursor)
+              : createByMapper(cMapper, cIndex, cursor.getInt(cRowIdIndex), cursor));
         }
       }
 
-      List<Field> wFields = SqlUtil.getAllNotIgnoreField(wrapperClazz);
+      List<Field> wFields = SchemaRegistry.getNotIgnoreFields(wrapperClazz);
       if (wFields == null || wFields.isEmpty()) {
         return null;
       }
@@ -313,15 +312,25 @@ class DelegateFind extends AbsDelegate {
       field.setAccessible(true);
       if (field.getName().equals(parentColumn)) {
         Object o = field.get(parents);
-        if (o instanceof String) {
-          o = URLEncoder.encode((String) o);
+        if (o == null) {
+          return new ArrayList<T>();
         }
-        return findData(db, childClazz, entityColumn + "='" + o + "'");
+        return findData(db, childClazz, entityColumn + "=?", String.valueOf(o));
       }
     }
     return new ArrayList<T>();
   }
 
+  /**
+   * 使用映射器创建关联查询的对象
+   */
+  private <T extends DbEntity> T createByMapper(AbsEntityMapper<T> mapper, int[] index, int rowId,
+      Cursor cursor) throws IllegalAccessException {
+    T entity = mapper.fromCursor(cursor, index);
+    entity.rowID = rowId;
+    return entity;
+  }
+
   /**
    * 创建子对象
    */
@@ -358,12 +367,9 @@ class DelegateFind extends AbsDelegate {
    * 条件查寻数据
    */
   <T extends DbEntity> List<T> findData(SQLiteDatabase db, Class<T> clazz, String... expression) {
-    db = checkDb(db);
     if (!CommonUtil.checkSqlExpression(expression)) {
       return null;
     }
-    String sql = String.format("SELECT rowid, * FROM %s WHERE %s", CommonUtil.getClassName(clazz),
-        expression[0]);
     String[] params = new String[expression.length - 1];
     try {
       // 处理系统出现的问题：https://github.com/AriaLyy/Aria/issues/450
@@ -373,7 +379,7 @@ class DelegateFind extends AbsDelegate {
       return null;
     }
 
-    return exeNormalDataSql(db, clazz, sql, params);
+    return findData(db, clazz, expression[0], params, null, null);
   }
 
   /**
@@ -385,14 +391,9 @@ class DelegateFind extends AbsDelegate {
       ALog.w(TAG, "page, bum 小于1");
       return null;
     }
-    db = checkDb(db);
     if (!CommonUtil.checkSqlExpression(expression)) {
       return null;
     }
-    String sql = String.format("SELECT rowid, * FROM %s WHERE %s LIMIT %s,%s",
-        CommonUtil.getClassName(clazz),
-        expression[0], (page - 1) * num, num);
-
     String[] params = new String[expression.length - 1];
     try {
       // 处理系统出现的问题：https://github.com/AriaLyy/Aria/issues/450
@@ -402,7 +403,89 @@ class DelegateFind extends AbsDelegate {
       return null;
     }
 
-    return exeNormalDataSql(db, clazz, sql, params);
+    return findData(db, clazz, expression[0], params, null,
+        String.format("%s,%s", (page - 1) * num, num));
+  }
+
+  /**
+   * 使用绑定参数查询数据
+   *
+   * @param where 查询条件，为null时查询所有数据
+   * @param args 条件参数
+   * @param orderBy 排序，可以为null
+   * @param limit 分页，可以为null
+   * @return 没有数据返回null
+   */
+  <T extends DbEntity> List<T> findData(SQLiteDatabase db, Class<T> clazz, String where,
+      String[] args, String orderBy, String limit) {
+    db = checkDb(db);
+    StringBuilder sb = new StringBuilder("SELECT rowid, * FROM ")
+        .append(CommonUtil.getClassName(clazz));
+    if (!TextUtils.isEmpty(where)) {
+      sb.append(" WHERE ").append(where);
+    }
+    if (!TextUtils.isEmpty(orderBy)) {
+      sb.append(" ORDER BY ").append(orderBy);
+    }
+    if (!TextUtils.isEmpty(limit)) {
+      sb.append(" LIMIT ").append(limit);
+    }
+    return exeNormalDataSql(db, clazz, sb.toString(), args);
+  }
+
+  /**
+   * 使用绑定参数流式查询数据，参数和{@link #findData(SQLiteDatabase, Class, String, String[],
+   * String, String)}一致
+   */
+  <T extends DbEntity> EntityCursor<T> iterateData(SQLiteDatabase db, final Class<T> clazz,
+      String where, String[] args, String orderBy, String limit) {
+    db = checkDb(db);
+    SqlUtil.checkOrCreateTable(db, clazz);
+    StringBuilder sb = new StringBuilder("SELECT rowid, * FROM ")
+        .append(CommonUtil.getClassName(clazz));
+    if (!TextUtils.isEmpty(where)) {
+      sb.append(" WHERE ").append(where);
+    }
+    if (!TextUtils.isEmpty(orderBy)) {
+      sb.append(" ORDER BY ").append(orderBy);
+    }
+    if (!TextUtils.isEmpty(limit)) {
+      sb.append(" LIMIT ").append(limit);
+    }
+    Cursor cursor = db.rawQuery(sb.toString(), args);
+    final AbsEntityMapper<T> mapper = EntityMappers.get(clazz);
+    if (mapper != null) {
+      final int[] index = mapper.getColumnIndex(cursor, "");
+      final int rowIdIndex = index[index.length - 1];
+      return new EntityCursor<>(cursor, new EntityCursor.RowReader<T>() {
+        @Override public T read(Cursor cursor) throws IllegalAccessException {
+          return mapper.readRow(cursor, index, rowIdIndex);
+        }
+      });
+    }
+    final List<Field> fields = CommonUtil.getAllFields(clazz);
+    return new EntityCursor<>(cursor, new EntityCursor.RowReader<T>() {
+      @Override public T read(Cursor cursor)
+          throws IllegalAccessException, InstantiationException {
+        return createEntity(clazz, fields, cursor);
+      }
+    });
+  }
+
+  /**
+   * 使用绑定参数统计数据数量
+   *
+   * @param where 查询条件，为null时统计所有数据
+   */
+  <T extends DbEntity> int count(SQLiteDatabase db, Class<T> clazz, String where, String[] args) {
+    db = checkDb(db);
+    SqlUtil.checkOrCreateTable(db, clazz);
+    String sql = String.format("SELECT COUNT(*) FROM %s%s", CommonUtil.getClassName(clazz),
+        TextUtils.isEmpty(where) ? "" : " WHERE ".concat(where));
+    Cursor cursor = db.rawQuery(sql, args);
+    int count = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+    closeCursor(cursor);
+    return count;
   }
 
   /**
@@ -461,19 +544,7 @@ class DelegateFind extends AbsDelegate {
   private <T extends DbEntity> List<T> exeNormalDataSql(SQLiteDatabase db, Class<T> clazz,
       String sql, String[] selectionArgs) {
     SqlUtil.checkOrCreateTable(db, clazz);
-    Cursor cursor;
-    if (selectionArgs != null) {
-
-      String[] temp = new String[selectionArgs.length];
-      int i = 0;
-      for (String arg : selectionArgs) {
-        temp[i] = SqlUtil.encodeStr(arg);
-        i++;
-      }
-      cursor = db.rawQuery(sql, temp);
-    } else {
-      cursor = db.rawQuery(sql, null);
-    }
+    Cursor cursor = db.rawQuery(sql, selectionArgs);
     List<T> data = cursor.getCount() > 0 ? newInstanceEntity(clazz, cursor) : null;
     closeCursor(cursor);
     return data;
@@ -484,33 +555,23 @@ class DelegateFind extends AbsDelegate {
    */
   private synchronized <T extends DbEntity> List<T> newInstanceEntity(Class<T> clazz,
       Cursor cursor) {
+    AbsEntityMapper<T> mapper = EntityMappers.get(clazz);
+    if (mapper != null) {
+      try {
+        return mapper.readAll(cursor);
+      } catch (IllegalAccessException e) {
+        e.printStackTrace();
+        return new ArrayList<>();
+      } finally {
+        closeCursor(cursor);
+      }
+    }
     List<Field> fields = CommonUtil.getAllFields(clazz);
     List<T> entitys = new ArrayList<>();
     if (fields != null && fields.size() > 0) {
       try {
         while (cursor.moveToNext()) {
-          T entity = clazz.newInstance();
-          String primaryName = "";
-          for (Field field : fields) {
-            field.setAccessible(true);
-            if (SqlUtil.isIgnore(field)) {
-              continue;
-            }
-
-            Class<?> type = field.getType();
-            if (SqlUtil.isPrimary(field) && (type == int.class || type == Integer.class)) {
-              primaryName = field.getName();
-            }
-
-            int column = cursor.getColumnIndex(field.getName());
-            if (column == -1) continue;
-            setFieldValue(type, field, column, cursor, entity);
-          }
-          //当设置了主键，而且主键的类型为integer时，查询RowID等于主键
-          entity.rowID = cursor.getInt(
-              cursor.getColumnIndex(TextUtils.isEmpty(primaryName) ? "rowid" : primaryName));
-          //mDataCache.put(getCacheKey(entity), entity);
-          entitys.add(entity);
+          entitys.add(createEntity(clazz, fields, cursor));
         }
         closeCursor(cursor);
       } catch (InstantiationException e) {
@@ -522,6 +583,34 @@ class DelegateFind extends AbsDelegate {
     return entitys;
   }
 
+  /**
+   * 使用反射根据游标的当前行创建对象
+   */
+  private <T extends DbEntity> T createEntity(Class<T> clazz, List<Field> fields, Cursor cursor)
+      throws InstantiationException, IllegalAccessException {
+    T entity = clazz.newInstance();
+    String primaryName = "";
+    for (Field field : fields) {
+      field.setAccessible(true);
+      if (SqlUtil.isIgnore(field)) {
+        continue;
+      }
+
+      Class<?> type = field.getType();
+      if (SqlUtil.isPrimary(field) && (type == int.class || type == Integer.class)) {
+        primaryName = field.getName();
+      }
+
+      int column = cursor.getColumnIndex(field.getName());
+      if (column == -1) continue;
+      setFieldValue(type, field, column, cursor, entity);
+    }
+    //当设置了主键，而且主键的类型为integer时，查询RowID等于主键
+    entity.rowID = cursor.getInt(
+        cursor.getColumnIndex(TextUtils.isEmpty(primaryName) ? "rowid" : primaryName));
+    return entity;
+  }
+
   /**
    * 设置字段的值
    *
@@ -537,7 +626,7 @@ class DelegateFind extends AbsDelegate {
     if (type == String.class) {
       String temp = cursor.getString(columnIndex);
       if (!TextUtils.isEmpty(temp)) {
-        field.set(entity, URLDecoder.decode(temp));
+        field.set(entity, temp);
       }
     } else if (type == int.class || type == Integer.class) {
       field.setInt(entity, cursor.getInt(columnIndex));
@@ -555,18 +644,18 @@ class DelegateFind extends AbsDelegate {
         field.setBoolean(entity, !temp.equalsIgnoreCase("false"));
       }
     } else if (type == java.util.Date.class || type == java.sql.Date.class) {
-      field.set(entity, new Date(URLDecoder.decode(cursor.getString(columnIndex))));
+      field.set(entity, new Date(cursor.getString(columnIndex)));
     } else if (type == byte[].class) {
       field.set(entity, cursor.getBlob(columnIndex));
     } else if (type == Map.class) {
       String temp = cursor.getString(columnIndex);
       if (!TextUtils.isEmpty(temp)) {
-        field.set(entity, SqlUtil.str2Map(URLDecoder.decode(temp)));
+        field.set(entity, SqlUtil.str2Map(temp));
       }
     } else if (type == List.class) {
       String value = cursor.getString(columnIndex);
       if (!TextUtils.isEmpty(value)) {
-        field.set(entity, SqlUtil.str2List(URLDecoder.decode(value), field));
+        field.set(entity, SqlUtil.str2List(value, field));
       }
     }
   }
@@ -601,13 +690,15 @@ class DelegateFind extends AbsDelegate {
     }
     StringBuilder sb = new StringBuilder();
     sb.append("SELECT rowid FROM ").append(CommonUtil.getClassName(clazz)).append(" WHERE ");
+    String[] args = new String[values.length];
     int i = 0;
     for (Object where : wheres) {
-      sb.append(where).append("=").append("'").append(values[i]).append("'");
-      sb.append(i >= wheres.length - 1 ? "" : ",");
+      sb.append(where).append("=?");
+      sb.append(i >= wheres.length - 1 ? "" : " AND ");
+      args[i] = String.valueOf(values[i]);
       i++;
     }
-    Cursor c = db.rawQuery(sb.toString(), null);
+    Cursor c = db.rawQuery(sb.toString(), args);
     int id = c.getColumnIndex("rowid");
     c.close();
     return id;
@@ -23,6 +23,7 @@ import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -30,6 +31,8 @@ import java.util.Map;
  * Created by laoyuyu on 2018/3/22. 增加数据、更新数据
  */
 class DelegateUpdate extends AbsDelegate {
+  private final StatementCache mStatementCache = new StatementCache();
+
   private DelegateUpdate() {
   }
 
@@ -38,20 +41,24 @@ class DelegateUpdate extends AbsDelegate {
    */
   synchronized <T extends DbEntity> void delData(SQLiteDatabase db, Class<T> clazz,
       String... expression) {
-    SqlUtil.checkOrCreateTable(db, clazz);
-    db = checkDb(db);
     if (!CommonUtil.checkSqlExpression(expression)) {
       return;
     }
+    String[] args = new String[expression.length - 1];
+    System.arraycopy(expression, 1, args, 0, args.length);
+    delData(db, clazz, expression[0], args);
+  }
 
-    String sql = "DELETE FROM " + CommonUtil.getClassName(clazz) + " WHERE " + expression[0] + " ";
-    sql = sql.replace("?", "%s");
-    Object[] params = new String[expression.length - 1];
-    for (int i = 0, len = params.length; i < len; i++) {
-      params[i] = String.format("'%s'", SqlUtil.encodeStr(expression[i + 1]));
-    }
-    sql = String.format(sql, params);
-    db.execSQL(sql);
+  /**
+   * 使用绑定参数删除数据
+   *
+   * @param where 删除条件，为null时删除所有数据
+   */
+  synchronized <T extends DbEntity> void delData(SQLiteDatabase db, Class<T> clazz, String where,
+      String[] args) {
+    SqlUtil.checkOrCreateTable(db, clazz);
+    db = checkDb(db);
+    db.delete(CommonUtil.getClassName(clazz), where, args);
   }
 
   /**
@@ -61,9 +68,8 @@ class DelegateUpdate extends AbsDelegate {
     SqlUtil.checkOrCreateTable(db, dbEntity.getClass());
     db = checkDb(db);
     ContentValues values = createValues(dbEntity);
-    if (values != null) {
-      db.update(CommonUtil.getClassName(dbEntity), values, "rowid=?",
-          new String[] { String.valueOf(dbEntity.rowID) });
+    if (values != null && values.size() > 0) {
+      mStatementCache.update(db, CommonUtil.getClassName(dbEntity), values, dbEntity.rowID);
     } else {
       ALog.e(TAG, "更新记录失败，记录没有属性字段");
     }
@@ -84,10 +90,10 @@ class DelegateUpdate extends AbsDelegate {
           table = CommonUtil.getClassName(oldClazz);
         }
         ContentValues value = createValues(entity);
-        if (value == null) {
+        if (value == null || value.size() == 0) {
           ALog.e(TAG, "更新记录失败，记录没有属性字段");
         } else {
-          db.update(table, value, "rowid=?", new String[] { String.valueOf(entity.rowID) });
+          mStatementCache.update(db, table, value, entity.rowID);
         }
       }
       db.setTransactionSuccessful();
@@ -115,15 +121,19 @@ class DelegateUpdate extends AbsDelegate {
         }
 
         ContentValues value = createValues(entity);
-        if (value == null) {
+        if (value == null || value.size() == 0) {
           ALog.e(TAG, "保存记录失败，记录没有属性字段");
         } else {
-          entity.rowID = db.insert(table, null, value);
+          entity.rowID = mStatementCache.insert(db, table, value);
         }
       }
       db.setTransactionSuccessful();
     } catch (Exception e) {
       e.printStackTrace();
+      // 事务已回滚，重置rowID，避免调用者误认为记录已保存
+      for (DbEntity entity : dbEntities) {
+        entity.rowID = -1;
+      }
     } finally {
       db.endTransaction();
     }
@@ -136,19 +146,44 @@ class DelegateUpdate extends AbsDelegate {
     SqlUtil.checkOrCreateTable(db, dbEntity.getClass());
     db = checkDb(db);
     ContentValues values = createValues(dbEntity);
-    if (values != null) {
-      dbEntity.rowID = db.insert(CommonUtil.getClassName(dbEntity), null, values);
+    if (values != null && values.size() > 0) {
+      dbEntity.rowID = mStatementCache.insert(db, CommonUtil.getClassName(dbEntity), values);
     } else {
       ALog.e(TAG, "保存记录失败，记录没有属性字段");
     }
   }
 
   /**
-   * 创建存储数据\更新数据时使用的ContentValues
+   * 创建存储数据\更新数据时使用的ContentValues。
+   * 读取字段时持有实体的锁，紧凑格式的线程记录在持有任务记录的锁时修改，
+   * 复制byte[]字段，避免写入数据库前被修改
    *
    * @return 如果没有字段属性，返回null
    */
   private ContentValues createValues(DbEntity dbEntity) {
+    synchronized (dbEntity) {
+      ContentValues values = readValues(dbEntity);
+      if (values != null) {
+        for (String key : new ArrayList<>(values.keySet())) {
+          Object value = values.get(key);
+          if (value instanceof byte[]) {
+            values.put(key, ((byte[]) value).clone());
+          }
+        }
+      }
+      return values;
+    }
+  }
+
+  private ContentValues readValues(DbEntity dbEntity) {
+    AbsEntityMapper mapper = EntityMappers.get(dbEntity.getClass());
+    if (mapper != null) {
+      try {
+        return mapper.createValues(dbEntity);
+      } catch (IllegalAccessException e) {
+        e.printStackTrace();
+      }
+    }
     List<Field> fields = CommonUtil.getAllFields(dbEntity.getClass());
     if (fields.size() > 0) {
       ContentValues values = new ContentValues();
@@ -160,6 +195,10 @@ class DelegateUpdate extends AbsDelegate {
           }
           String value = null;
           Type type = field.getType();
+          if (type == byte[].class) {
+            values.put(field.getName(), (byte[]) field.get(dbEntity));
+            continue;
+          }
           if (type == Map.class && SqlUtil.checkMap(field)) {
             value = SqlUtil.map2Str((Map<String, String>) field.get(dbEntity));
           } else if (type == List.class && SqlUtil.checkList(field)) {
@@ -170,7 +209,7 @@ class DelegateUpdate extends AbsDelegate {
               value = field.get(dbEntity).toString();
             }
           }
-          values.put(field.getName(), SqlUtil.encodeStr(value));
+          values.put(field.getName(), value);
         }
         return values;
       } catch (IllegalAccessException e) {
@@ -100,6 +100,9 @@ public class DelegateWrapper {
    */
   void exeSql(String sql) {
     mDb.execSQL(sql);
+    if (SqlUtil.isSchemaSql(sql)) {
+      SchemaRegistry.get(mDb).invalidate();
+    }
   }
 
   /**
@@ -137,6 +140,49 @@ public class DelegateWrapper {
     return mDManager.getDelegate(DelegateFind.class).findData(mDb, clazz, expression);
   }
 
+  /**
+   * 使用绑定参数查询数据
+   *
+   * @param where 查询条件，为null时查询所有数据
+   * @param orderBy 排序，可以为null
+   * @param limit 分页，可以为null
+   */
+  <T extends DbEntity> List<T> findData(Class<T> clazz, String where, String[] args,
+      String orderBy, String limit) {
+    return mDManager.getDelegate(DelegateFind.class)
+        .findData(mDb, clazz, where, args, orderBy, limit);
+  }
+
+  /**
+   * 使用绑定参数流式查询数据，详见{@link EntityCursor}
+   */
+  <T extends DbEntity> EntityCursor<T> iterateData(Class<T> clazz, String where, String[] args,
+      String orderBy, String limit) {
+    return mDManager.getDelegate(DelegateFind.class)
+        .iterateData(mDb, clazz, where, args, orderBy, limit);
+  }
+
+  /**
+   * 使用绑定参数统计数据数量
+   */
+  <T extends DbEntity> int count(Class<T> clazz, String where, String[] args) {
+    return mDManager.getDelegate(DelegateFind.class).count(mDb, clazz, where, args);
+  }
+
+  /**
+   * 使用绑定参数判断数据是否存在
+   */
+  boolean exists(Class<? extends DbEntity> clazz, String where, String[] args) {
+    return SqlUtil.exists(mDb, clazz, where, args);
+  }
+
+  /**
+   * 使用绑定参数删除数据
+   */
+  <T extends DbEntity> void delData(Class<T> clazz, String where, String[] args) {
+    mDManager.getDelegate(DelegateUpdate.class).delData(mDb, clazz, where, args);
+  }
+
   /**
    * 获取分页数据
    */
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.database.Cursor;
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 流式读取的查询结果，每次只创建当前行的实体，数据量大时内存占用不会随结果数量增长。
+ * 读取完所有数据后会自动关闭游标，提前结束读取时需要调用{@link #close()}。
+ * <code>
+ * EntityCursor<DownloadEntity> cursor = Query.of(DownloadEntity.class).iterate();
+ * try {
+ * for (DownloadEntity entity : cursor) {
+ * ...
+ * }
+ * } finally {
+ * cursor.close();
+ * }
+ * </code>
+ * 游标不是线程安全的，只能在一个线程中读取。
+ */
+public final class EntityCursor<T extends DbEntity> implements Iterator<T>, Iterable<T>, Closeable {
+  private final Cursor mCursor;
+  private final RowReader<T> mReader;
+  private T mNext;
+  private boolean isClosed = false;
+
+  EntityCursor(Cursor cursor, RowReader<T> reader) {
+    mCursor = cursor;
+    mReader = reader;
+  }
+
+  /**
+   * 结果的数量，调用后数据库会先遍历一次结果，只需要读取数据时不需要调用
+   */
+  public int getCount() {
+    return isClosed ? 0 : mCursor.getCount();
+  }
+
+  @Override public boolean hasNext() {
+    if (mNext != null) {
+      return true;
+    }
+    if (isClosed) {
+      return false;
+    }
+    if (!mCursor.moveToNext()) {
+      close();
+      return false;
+    }
+    try {
+      mNext = mReader.read(mCursor);
+    } catch (IllegalAccessException | InstantiationException e) {
+      close();
+      throw new IllegalStateException("创建实体失败", e);
+    }
+    return true;
+  }
+
+  @Override public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    T entity = mNext;
+    mNext = null;
+    return entity;
+  }
+
+  @Override public void remove() {
+    throw new UnsupportedOperationException("不支持删除，请使用DbEntity#deleteData()");
+  }
+
+  @Override public Iterator<T> iterator() {
+    return this;
+  }
+
+  @Override public void close() {
+    if (!isClosed) {
+      isClosed = true;
+      mNext = null;
+      SqlUtil.closeCursor(mCursor);
+    }
+  }
+
+  /**
+   * 将游标的当前行转换为实体
+   */
+  interface RowReader<T extends DbEntity> {
+    T read(Cursor cursor) throws IllegalAccessException, InstantiationException;
+  }
+}
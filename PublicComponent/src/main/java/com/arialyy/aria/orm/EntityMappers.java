@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import com.arialyy.aria.util.ALog;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体映射器的查找和缓存
+ */
+final class EntityMappers {
+  private static final String TAG = "EntityMappers";
+  private static final String MAPPER_SUFFIX = "$$EntityMapper";
+
+  private static final Map<Class, AbsEntityMapper> MAPPERS = new ConcurrentHashMap<>();
+  /**
+   * 没有生成映射器的实体
+   */
+  private static final Set<Class> MISSING =
+      Collections.newSetFromMap(new ConcurrentHashMap<Class, Boolean>());
+
+  private EntityMappers() {
+  }
+
+  /**
+   * 获取实体的映射器
+   *
+   * @return 实体没有生成映射器时返回null，调用者需要使用反射读写
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends DbEntity> AbsEntityMapper<T> get(Class<T> clazz) {
+    AbsEntityMapper mapper = MAPPERS.get(clazz);
+    if (mapper != null || MISSING.contains(clazz)) {
+      return mapper;
+    }
+    try {
+      Class<?> mapperClazz =
+          Class.forName(clazz.getName().concat(MAPPER_SUFFIX), true, clazz.getClassLoader());
+      mapper = (AbsEntityMapper) mapperClazz.newInstance();
+      MAPPERS.put(clazz, mapper);
+    } catch (ClassNotFoundException e) {
+      MISSING.add(clazz);
+    } catch (Exception e) {
+      ALog.w(TAG, String.format("加载实体【%s】的映射器失败，使用反射读写", clazz.getName()));
+      e.printStackTrace();
+      MISSING.add(clazz);
+    }
+    return mapper;
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.text.TextUtils;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 查询条件构造器，条件的值通过绑定参数传递给数据库，不需要拼接和转义sql。
+ * 多个条件之间使用AND连接。
+ * <code>
+ * List<DownloadEntity> list = Query.of(DownloadEntity.class)
+ * .eq("url", url)
+ * .eq("isGroupChild", false)
+ * .orderBy("rowid", false)
+ * .find();
+ * </code>
+ */
+public final class Query<T extends DbEntity> {
+  private final Class<T> mClazz;
+  private final StringBuilder mWhere = new StringBuilder();
+  private final List<String> mArgs = new ArrayList<>();
+  private String mOrderBy;
+  private String mLimit;
+  private boolean isKeyset = false;
+
+  private Query(Class<T> clazz) {
+    mClazz = clazz;
+  }
+
+  public static <T extends DbEntity> Query<T> of(Class<T> clazz) {
+    return new Query<>(clazz);
+  }
+
+  /**
+   * 字段等于某个值，值为null时查询字段为null的数据
+   */
+  public Query<T> eq(String column, Object value) {
+    checkColumn(column);
+    if (value == null) {
+      return append(column.concat(" IS NULL"));
+    }
+    append(column.concat("=?"));
+    mArgs.add(toArg(value));
+    return this;
+  }
+
+  /**
+   * 字段不等于某个值，值为null时查询字段不为null的数据
+   */
+  public Query<T> notEq(String column, Object value) {
+    checkColumn(column);
+    if (value == null) {
+      return append(column.concat(" IS NOT NULL"));
+    }
+    append(column.concat("!=?"));
+    mArgs.add(toArg(value));
+    return this;
+  }
+
+  /**
+   * 字段值在指定集合中，集合为空时查询不到数据
+   */
+  public Query<T> in(String column, List<?> values) {
+    checkColumn(column);
+    if (values == null || values.isEmpty()) {
+      return append("0");
+    }
+    StringBuilder sb = new StringBuilder(column).append(" IN (");
+    for (int i = 0, len = values.size(); i < len; i++) {
+      sb.append(i == 0 ? "?" : ",?");
+      mArgs.add(toArg(values.get(i)));
+    }
+    return append(sb.append(")").toString());
+  }
+
+  /**
+   * 自定义条件，条件中的值使用"?"占位
+   * <code>
+   * query.where("isGroupChild=? and downloadPath!=''", false)
+   * </code>
+   */
+  public Query<T> where(String clause, Object... args) {
+    if (TextUtils.isEmpty(clause)) {
+      throw new IllegalArgumentException("sql语句表达式不能为null或\"\"");
+    }
+    int count = 0;
+    for (int i = 0, len = clause.length(); i < len; i++) {
+      if (clause.charAt(i) == '?') {
+        count++;
+      }
+    }
+    int argNum = args == null ? 0 : args.length;
+    if (count != argNum) {
+      throw new IllegalArgumentException(
+          String.format("条件语句的?个数和参数个数不一致，条件：%s，参数个数：%s", clause, argNum));
+    }
+    append("(".concat(clause).concat(")"));
+    for (int i = 0; i < argNum; i++) {
+      mArgs.add(toArg(args[i]));
+    }
+    return this;
+  }
+
+  /**
+   * 排序，可以多次调用
+   *
+   * @param asc {@code true} 升序，{@code false} 降序
+   */
+  public Query<T> orderBy(String column, boolean asc) {
+    checkColumn(column);
+    if (isKeyset) {
+      throw new IllegalStateException("游标分页不能和orderBy同时使用");
+    }
+    String order = column.concat(asc ? " ASC" : " DESC");
+    mOrderBy = mOrderBy == null ? order : mOrderBy.concat(",").concat(order);
+    return this;
+  }
+
+  /**
+   * 分页
+   *
+   * @param page 需要查询的页数，从1开始
+   * @param num 每页返回的数量
+   */
+  public Query<T> limit(int page, int num) {
+    if (page < 1 || num < 1) {
+      throw new IllegalArgumentException("page，num 不能小于1");
+    }
+    mLimit = String.format("%s,%s", (page - 1) * num, num);
+    return this;
+  }
+
+  /**
+   * 只返回前num条数据，一般和{@link #after(String, boolean, Object, long)}配合使用
+   */
+  public Query<T> limit(int num) {
+    if (num < 1) {
+      throw new IllegalArgumentException("num 不能小于1");
+    }
+    mLimit = String.valueOf(num);
+    return this;
+  }
+
+  /**
+   * 游标分页，根据上一页最后一条数据的字段值和行id查询下一页，和{@link #limit(int, int)}不同，
+   * 翻页的耗时不会随页数增加，分页期间有数据插入或删除也不会出现重复或遗漏的数据。
+   * 排序为先按column排序，column值相同的再按行id排序，所以不能再调用{@link #orderBy(String, boolean)}。
+   * <code>
+   * List<DownloadEntity> page = Query.of(DownloadEntity.class)
+   * .after("completeTime", false, last == null ? null : last.getCompleteTime(),
+   * last == null ? -1 : last.getId())
+   * .limit(20)
+   * .find();
+   * </code>
+   *
+   * @param column 排序字段，为"rowid"时只按行id分页
+   * @param asc {@code true} 升序，{@code false} 降序
+   * @param lastValue 上一页最后一条数据的column值，为null时查询第一页
+   * @param lastRowId 上一页最后一条数据的行id
+   */
+  public Query<T> after(String column, boolean asc, Object lastValue, long lastRowId) {
+    checkColumn(column);
+    if (mOrderBy != null) {
+      throw new IllegalStateException("游标分页不能和orderBy同时使用");
+    }
+    isKeyset = true;
+    String op = asc ? ">" : "<";
+    boolean isRowId = "rowid".equalsIgnoreCase(column);
+    if (lastValue != null) {
+      if (isRowId) {
+        append("rowid".concat(op).concat("?"));
+        mArgs.add(toArg(lastValue));
+      } else {
+        append(String.format("(%s%s? OR (%s=? AND rowid%s?))", column, op, column, op));
+        String arg = toArg(lastValue);
+        mArgs.add(arg);
+        mArgs.add(arg);
+        mArgs.add(String.valueOf(lastRowId));
+      }
+    }
+    String order = asc ? " ASC" : " DESC";
+    mOrderBy = isRowId ? "rowid".concat(order)
+        : column.concat(order).concat(",rowid").concat(order);
+    return this;
+  }
+
+  /**
+   * 流式查询数据，数据量大时使用，读取完成后需要关闭游标，详见{@link EntityCursor}
+   */
+  public EntityCursor<T> iterate() {
+    return DelegateWrapper.getInstance()
+        .iterateData(mClazz, getWhere(), getArgs(), mOrderBy, mLimit);
+  }
+
+  /**
+   * 查询数据
+   *
+   * @return 没有数据返回空列表
+   */
+  public List<T> find() {
+    List<T> data = DelegateWrapper.getInstance()
+        .findData(mClazz, getWhere(), getArgs(), mOrderBy, mLimit);
+    return data == null ? new ArrayList<T>() : data;
+  }
+
+  /**
+   * 查询第一条数据
+   *
+   * @return 没有数据返回null
+   */
+  public T findFirst() {
+    List<T> data = DelegateWrapper.getInstance()
+        .findData(mClazz, getWhere(), getArgs(), mOrderBy, mLimit == null ? "1" : mLimit);
+    return data == null || data.isEmpty() ? null : data.get(0);
+  }
+
+  /**
+   * 符合条件的数据数量
+   */
+  public int count() {
+    return DelegateWrapper.getInstance().count(mClazz, getWhere(), getArgs());
+  }
+
+  /**
+   * 是否存在符合条件的数据
+   */
+  public boolean exists() {
+    return DelegateWrapper.getInstance().exists(mClazz, getWhere(), getArgs());
+  }
+
+  /**
+   * 删除符合条件的数据，排序和分页条件不起作用
+   */
+  public void delete() {
+    DelegateWrapper.getInstance().delData(mClazz, getWhere(), getArgs());
+  }
+
+  String getWhere() {
+    return mWhere.length() == 0 ? null : mWhere.toString();
+  }
+
+  String[] getArgs() {
+    return mArgs.isEmpty() ? null : mArgs.toArray(new String[mArgs.size()]);
+  }
+
+  private Query<T> append(String condition) {
+    if (mWhere.length() > 0) {
+      mWhere.append(" AND ");
+    }
+    mWhere.append(condition);
+    return this;
+  }
+
+  /**
+   * 字段名不能使用绑定参数，只允许表中存在的字段
+   */
+  private void checkColumn(String column) {
+    if ("rowid".equalsIgnoreCase(column) || SqlUtil.getColumns(mClazz).contains(column)) {
+      return;
+    }
+    throw new IllegalArgumentException(
+        String.format("表【%s】中没有字段【%s】", mClazz.getSimpleName(), column));
+  }
+
+  /**
+   * 布尔值转换后为"true"、"false"，和数据库中保存的值一致
+   */
+  private static String toArg(Object value) {
+    if (value == null) {
+      throw new IllegalArgumentException("参数不能为null，查询null请使用eq(column, null)");
+    }
+    return String.valueOf(value);
+  }
+}
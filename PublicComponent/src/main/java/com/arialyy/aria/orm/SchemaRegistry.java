@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据库结构缓存，每个数据库一份。
+ * 1、表名在数据库打开后从sqlite_master中读取一次，之后通过{@link SqlUtil#createTable(SQLiteDatabase,
+ * Class)}、{@link SqlUtil#dropTable(SQLiteDatabase, String)}同步修改，不再每次读写都查询sqlite_master；
+ * 2、创建、升级、降级数据库期间表结构会变化，而且事务可能回滚，这段时间直接查询sqlite_master，
+ * 数据库打开后重新加载；
+ * 3、实体的字段、列名、主键和数据库无关，按实体类缓存。
+ */
+final class SchemaRegistry {
+  private static final Map<String, SchemaRegistry> REGISTRIES = new ConcurrentHashMap<>();
+  private static final Map<Class, List<Field>> FIELDS = new ConcurrentHashMap<>();
+  private static final Map<Class, List<String>> COLUMNS = new ConcurrentHashMap<>();
+  /**
+   * 主键名，没有主键的实体为空字符串
+   */
+  private static final Map<Class, String> PRIMARY_NAMES = new ConcurrentHashMap<>();
+
+  private final Set<String> mTables =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private volatile boolean isLoaded = false;
+  private volatile boolean isMigrating = false;
+
+  private SchemaRegistry() {
+  }
+
+  /**
+   * 获取数据库对应的结构缓存
+   */
+  static SchemaRegistry get(SQLiteDatabase db) {
+    String key = db.getPath();
+    SchemaRegistry registry = REGISTRIES.get(key);
+    if (registry == null) {
+      synchronized (REGISTRIES) {
+        registry = REGISTRIES.get(key);
+        if (registry == null) {
+          registry = new SchemaRegistry();
+          REGISTRIES.put(key, registry);
+        }
+      }
+    }
+    return registry;
+  }
+
+  /**
+   * 查找表是否存在
+   */
+  boolean tableExists(SQLiteDatabase db, String tableName) {
+    if (isMigrating) {
+      return SqlUtil.queryTableExists(db, tableName);
+    }
+    if (!isLoaded) {
+      load(db);
+    }
+    return mTables.contains(tableName);
+  }
+
+  /**
+   * 从sqlite_master中加载所有的表名
+   */
+  synchronized void load(SQLiteDatabase db) {
+    if (isLoaded || isMigrating) {
+      return;
+    }
+    Cursor cursor = null;
+    try {
+      cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table'", null);
+      mTables.clear();
+      while (cursor.moveToNext()) {
+        mTables.add(cursor.getString(0));
+      }
+      isLoaded = true;
+    } catch (Exception e) {
+      e.printStackTrace();
+    } finally {
+      SqlUtil.closeCursor(cursor);
+    }
+  }
+
+  void onTableCreated(String tableName) {
+    if (!isMigrating && isLoaded) {
+      mTables.add(tableName);
+    }
+  }
+
+  void onTableDropped(String tableName) {
+    mTables.remove(tableName);
+  }
+
+  /**
+   * 表结构可能被外部修改，清空缓存，下次查询时重新加载
+   */
+  synchronized void invalidate() {
+    isLoaded = false;
+    mTables.clear();
+  }
+
+  /**
+   * 开始创建、升级或降级数据库
+   */
+  synchronized void beginMigration() {
+    isMigrating = true;
+    invalidate();
+  }
+
+  /**
+   * 数据库已经打开，结束迁移并重新加载表名
+   */
+  void endMigration(SQLiteDatabase db) {
+    synchronized (this) {
+      isMigrating = false;
+      invalidate();
+    }
+    load(db);
+  }
+
+  /**
+   * 获取实体中所有不被忽略的字段
+   */
+  static List<Field> getNotIgnoreFields(Class clazz) {
+    List<Field> fields = FIELDS.get(clazz);
+    if (fields == null) {
+      List<Field> temp = SqlUtil.getAllNotIgnoreField(clazz);
+      fields = temp == null ? Collections.<Field>emptyList() : Collections.unmodifiableList(temp);
+      FIELDS.put(clazz, fields);
+    }
+    return fields;
+  }
+
+  /**
+   * 获取实体对应的表字段
+   */
+  static List<String> getColumns(Class<? extends DbEntity> clazz) {
+    List<String> columns = COLUMNS.get(clazz);
+    if (columns == null) {
+      List<Field> fields = getNotIgnoreFields(clazz);
+      List<String> temp = new ArrayList<>(fields.size());
+      for (Field field : fields) {
+        temp.add(field.getName());
+      }
+      columns = Collections.unmodifiableList(temp);
+      COLUMNS.put(clazz, columns);
+    }
+    return columns;
+  }
+
+  /**
+   * 获取主键字段名
+   *
+   * @return 没有主键时返回null
+   */
+  static String getPrimaryName(Class<? extends DbEntity> clazz) {
+    String name = PRIMARY_NAMES.get(clazz);
+    if (name == null) {
+      name = "";
+      for (Field field : getNotIgnoreFields(clazz)) {
+        if (SqlUtil.isPrimary(field)) {
+          name = field.getName();
+          break;
+        }
+      }
+      PRIMARY_NAMES.put(clazz, name);
+    }
+    return name.isEmpty() ? null : name;
+  }
+}
@@ -20,16 +20,21 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.text.TextUtils;
+import com.arialyy.aria.core.AriaConfig;
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.config.AppConfig;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.M3U8Entity;
 import com.arialyy.aria.core.upload.UploadEntity;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.CommonUtil;
 import java.io.File;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -68,6 +73,7 @@ final class SqlHelper extends SQLiteOpenHelper {
 
   @Override public void onOpen(SQLiteDatabase db) {
     super.onOpen(db);
+    SchemaRegistry.get(db).endMigration(db);
   }
 
   @Override public void onConfigure(SQLiteDatabase db) {
@@ -81,9 +87,26 @@ final class SqlHelper extends SQLiteOpenHelper {
       // 需要使用如下语句：
       db.execSQL("PRAGMA foreign_keys=ON;");
     }
+    configJournal(db);
+  }
+
+  /**
+   * 使用WAL日志模式，读写不再互相阻塞，进度写入也不需要每次提交都同步磁盘；
+   * 同步级别由{@link AppConfig#getDbSynchronous()}配置
+   */
+  private void configJournal(SQLiteDatabase db) {
+    db.enableWriteAheadLogging();
+    String level = "NORMAL";
+    AriaConfig config = AriaConfig.getInstance();
+    if (config != null && config.getAConfig() != null && !TextUtils.isEmpty(
+        config.getAConfig().getDbSynchronous())) {
+      level = config.getAConfig().getDbSynchronous();
+    }
+    db.execSQL("PRAGMA synchronous=" + level);
   }
 
   @Override public void onCreate(SQLiteDatabase db) {
+    SchemaRegistry.get(db).beginMigration();
     Set<String> tables = DBConfig.mapping.keySet();
     for (String tableName : tables) {
       Class clazz = DBConfig.mapping.get(tableName);
@@ -94,6 +117,7 @@ final class SqlHelper extends SQLiteOpenHelper {
   }
 
   @Override public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    SchemaRegistry.get(db).beginMigration();
     if (oldVersion < newVersion) {
       if (oldVersion < 31) {
         handleLowAriaUpdate(db);
@@ -110,10 +134,118 @@ final class SqlHelper extends SQLiteOpenHelper {
       if (newVersion == 57) {
         addTaskRecordType(db);
       }
+      // 60版本增加索引，63版本增加completeTime索引，旧的升级流程不一定会重建表，这里统一补上
+      if (oldVersion < 63) {
+        createIndexes(db);
+      }
+      // 61版本开始字符串不再使用URL编码保存
+      if (oldVersion < 61) {
+        decodeLegacyStrings(db);
+      }
+    }
+  }
+
+  /**
+   * 61版本以前字符串字段都经过URL编码后保存，这里将旧数据统一解码一次，
+   * 解码失败时抛出异常，整个升级回滚
+   */
+  private void decodeLegacyStrings(SQLiteDatabase db) {
+    try {
+      db.beginTransaction();
+      for (Class<? extends DbEntity> clazz : DBConfig.mapping.values()) {
+        String tableName = CommonUtil.getClassName(clazz);
+        if (!SqlUtil.tableExists(db, tableName)) {
+          continue;
+        }
+        List<String> oldColumns = new ArrayList<>();
+        Cursor columnC = db.rawQuery(String.format("PRAGMA table_info(%s)", tableName), null);
+        while (columnC.moveToNext()) {
+          oldColumns.add(columnC.getString(columnC.getColumnIndex("name")));
+        }
+        columnC.close();
+        List<String> columns = new ArrayList<>();
+        for (Field field : SchemaRegistry.getNotIgnoreFields(clazz)) {
+          String type = SqlUtil.getColumnType(field.getType());
+          if (("VARCHAR".equals(type) || "TEXT".equals(type) || "DATA".equals(type))
+              && oldColumns.contains(field.getName())) {
+            columns.add(field.getName());
+          }
+        }
+        if (!columns.isEmpty()) {
+          decodeTable(db, tableName, columns);
+        }
+      }
+      db.setTransactionSuccessful();
+    } catch (Exception e) {
+      ALog.e(TAG, String.format("解码旧数据失败，%s", e.getMessage()));
+      // 解码失败时不能让升级完成，否则版本号更新后旧数据不会再被解码，抛出异常后下次打开数据库时重新升级
+      throw new RuntimeException("解码旧数据失败", e);
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /**
+   * 解码表中指定字段的数据，只更新有变化的行
+   */
+  private void decodeTable(SQLiteDatabase db, String tableName, List<String> columns) {
+    StringBuilder select = new StringBuilder("SELECT rowid");
+    StringBuilder update = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+    for (int i = 0, len = columns.size(); i < len; i++) {
+      select.append(",").append(columns.get(i));
+      update.append(i == 0 ? "" : ",").append(columns.get(i)).append("=?");
+    }
+    select.append(" FROM ").append(tableName);
+    update.append(" WHERE rowid=?");
+    SQLiteStatement statement = db.compileStatement(update.toString());
+    Cursor cursor = db.rawQuery(select.toString(), null);
+    try {
+      int len = columns.size();
+      while (cursor.moveToNext()) {
+        boolean changed = false;
+        for (int i = 0; i < len; i++) {
+          String value = cursor.getString(i + 1);
+          if (value == null) {
+            statement.bindNull(i + 1);
+            continue;
+          }
+          String decoded = SqlUtil.decodeStr(value);
+          changed |= !decoded.equals(value);
+          statement.bindString(i + 1, decoded);
+        }
+        if (changed) {
+          statement.bindLong(len + 1, cursor.getLong(0));
+          statement.executeUpdateDelete();
+        }
+        statement.clearBindings();
+      }
+    } finally {
+      cursor.close();
+      statement.close();
+    }
+  }
+
+  /**
+   * 为已存在的表创建索引
+   */
+  private void createIndexes(SQLiteDatabase db) {
+    try {
+      db.beginTransaction();
+      for (Class<? extends DbEntity> clazz : DBConfig.mapping.values()) {
+        if (SqlUtil.tableExists(db, clazz)) {
+          SqlUtil.createIndexes(db, clazz);
+        }
+      }
+      db.setTransactionSuccessful();
+    } catch (Exception e) {
+      e.printStackTrace();
+    } finally {
+      db.endTransaction();
     }
   }
 
   @Override public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    SchemaRegistry.get(db).beginMigration();
     if (oldVersion > newVersion) {
       handleDbUpdate(db, null);
     }
@@ -124,6 +256,7 @@ final class SqlHelper extends SQLiteOpenHelper {
    */
   SQLiteDatabase getDb() {
     SQLiteDatabase db;
+    boolean directOpen = false;
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
       SQLiteDatabase.OpenParams params = new SQLiteDatabase.OpenParams.Builder().setOpenFlags(
           SQLiteDatabase.NO_LOCALIZED_COLLATORS | SQLiteDatabase.OPEN_READWRITE |
@@ -142,9 +275,14 @@ final class SqlHelper extends SQLiteOpenHelper {
         db = SQLiteDatabase.openDatabase(dbFile.getPath(), null,
             SQLiteDatabase.NO_LOCALIZED_COLLATORS | SQLiteDatabase.OPEN_READWRITE |
                 SQLiteDatabase.CREATE_IF_NECESSARY);
+        // 直接打开的数据库不会回调onConfigure
+        directOpen = true;
       }
     }
-    db.enableWriteAheadLogging();
+    // 4.1以下的系统不会回调onConfigure
+    if (directOpen || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+      configJournal(db);
+    }
     return db;
   }
 
@@ -245,7 +383,8 @@ final class SqlHelper extends SQLiteOpenHelper {
             }
           }
 
-          // ----------- 3、将旧表备份下，并创建新表
+          // ----------- 3、将旧表备份下，并创建新表，索引会跟随旧表，需要先删除
+          SqlUtil.dropIndexes(db, tableName);
           String alertSql = String.format("ALTER TABLE %s RENAME TO %s_temp", tableName, tableName);
           db.execSQL(alertSql);
 
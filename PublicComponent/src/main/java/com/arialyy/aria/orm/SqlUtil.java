@@ -22,6 +22,7 @@ import com.arialyy.aria.core.AriaConfig;
 import com.arialyy.aria.orm.annotation.Default;
 import com.arialyy.aria.orm.annotation.Foreign;
 import com.arialyy.aria.orm.annotation.Ignore;
+import com.arialyy.aria.orm.annotation.Index;
 import com.arialyy.aria.orm.annotation.Many;
 import com.arialyy.aria.orm.annotation.NoNull;
 import com.arialyy.aria.orm.annotation.One;
@@ -32,9 +33,13 @@ import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -85,6 +90,14 @@ final class SqlUtil {
    */
   static boolean tableExists(SQLiteDatabase db, String tableName) {
     db = checkDb(db);
+    return SchemaRegistry.get(db).tableExists(db, tableName);
+  }
+
+  /**
+   * 通过sqlite_master查找表是否存在，只在数据库结构变化期间使用，其它情况使用{@link
+   * #tableExists(SQLiteDatabase, String)}
+   */
+  static boolean queryTableExists(SQLiteDatabase db, String tableName) {
     Cursor cursor = null;
     try {
       String sql =
@@ -139,6 +152,14 @@ final class SqlUtil {
     }
   }
 
+  /**
+   * 判断sql语句是否会修改表结构
+   */
+  static boolean isSchemaSql(String sql) {
+    String temp = sql.trim().toUpperCase();
+    return temp.startsWith("CREATE") || temp.startsWith("DROP") || temp.startsWith("ALTER");
+  }
+
   /**
    * 删除指定的表
    */
@@ -147,6 +168,7 @@ final class SqlUtil {
     String deleteSQL = String.format("DROP TABLE IF EXISTS %s", tableName);
     //db.beginTransaction();
     db.execSQL(deleteSQL);
+    SchemaRegistry.get(db).onTableDropped(tableName);
     //db.setTransactionSuccessful();
     //db.endTransaction();
   }
@@ -175,15 +197,22 @@ final class SqlUtil {
     if (!CommonUtil.checkSqlExpression(expression)) {
       return false;
     }
-    String sql = String.format("SELECT rowid, * FROM %s WHERE %s ", CommonUtil.getClassName(clazz),
-        expression[0]);
-    sql = sql.replace("?", "%s");
-    Object[] params = new String[expression.length - 1];
-    for (int i = 0, len = params.length; i < len; i++) {
-      params[i] = String.format("'%s'", SqlUtil.encodeStr(expression[i + 1]));
-    }
-    sql = String.format(sql, params);
-    Cursor cursor = db.rawQuery(sql, null);
+    String[] args = new String[expression.length - 1];
+    System.arraycopy(expression, 1, args, 0, args.length);
+    return exists(db, clazz, expression[0], args);
+  }
+
+  /**
+   * 使用绑定参数判断数据是否存在
+   *
+   * @param where 查询条件，为null时判断表中是否有数据
+   */
+  static boolean exists(SQLiteDatabase db, Class<? extends DbEntity> clazz, String where,
+      String[] args) {
+    db = checkDb(db);
+    String sql = String.format("SELECT rowid FROM %s%s LIMIT 1", CommonUtil.getClassName(clazz),
+        TextUtils.isEmpty(where) ? "" : " WHERE ".concat(where));
+    Cursor cursor = db.rawQuery(sql, args);
     final boolean isExist = cursor.getCount() > 0;
     closeCursor(cursor);
     return isExist;
@@ -195,16 +224,7 @@ final class SqlUtil {
    * @return 表字段列表
    */
   static List<String> getColumns(Class<? extends DbEntity> clazz) {
-    List<String> columns = new ArrayList<>();
-    List<Field> fields = CommonUtil.getAllFields(clazz);
-    for (Field field : fields) {
-      field.setAccessible(true);
-      if (SqlUtil.isIgnore(field)) {
-        continue;
-      }
-      columns.add(field.getName());
-    }
-    return columns;
+    return SchemaRegistry.getColumns(clazz);
   }
 
   /**
@@ -302,9 +322,88 @@ final class SqlUtil {
       str = str.substring(0, str.length() - 1) + ");";
       ALog.d(TAG, "创建表的sql：" + str);
       db.execSQL(str);
+      createIndexes(db, clazz);
+      SchemaRegistry.get(db).onTableCreated(CommonUtil.getClassName(clazz));
+    }
+  }
+
+  /**
+   * 创建{@link Index}注解声明的索引，索引已存在时忽略
+   */
+  static void createIndexes(SQLiteDatabase db, Class<? extends DbEntity> clazz) {
+    db = checkDb(db);
+    String tableName = CommonUtil.getClassName(clazz);
+    Map<String, List<Field>> indexes = getIndexes(clazz);
+    for (Map.Entry<String, List<Field>> entry : indexes.entrySet()) {
+      List<Field> columns = entry.getValue();
+      boolean unique = false;
+      StringBuilder sb = new StringBuilder();
+      for (Field field : columns) {
+        unique |= field.getAnnotation(Index.class).unique();
+        sb.append(field.getName()).append(",");
+      }
+      sb.deleteCharAt(sb.length() - 1);
+      String sql = String.format("CREATE %sINDEX IF NOT EXISTS idx_%s_%s ON %s (%s)",
+          unique ? "UNIQUE " : "", tableName, entry.getKey(), tableName, sb.toString());
+      ALog.d(TAG, "创建索引的sql：" + sql);
+      db.execSQL(sql);
+    }
+  }
+
+  /**
+   * 删除表上所有手动创建的索引，不包括主键和UNIQUE约束自动生成的索引。
+   * 重命名表时索引会跟随旧表，所以重建表前需要先删除索引
+   */
+  static void dropIndexes(SQLiteDatabase db, String tableName) {
+    db = checkDb(db);
+    List<String> names = new ArrayList<>();
+    Cursor cursor = null;
+    try {
+      cursor = db.rawQuery(
+          "SELECT name FROM sqlite_master WHERE type='index' AND tbl_name=? AND sql IS NOT NULL",
+          new String[] { tableName });
+      while (cursor.moveToNext()) {
+        names.add(cursor.getString(0));
+      }
+    } finally {
+      closeCursor(cursor);
+    }
+    for (String name : names) {
+      db.execSQL(String.format("DROP INDEX IF EXISTS %s", name));
     }
   }
 
+  /**
+   * 获取表的索引，key为索引名，value为按{@link Index#order()}排列的索引字段
+   */
+  private static Map<String, List<Field>> getIndexes(Class<? extends DbEntity> clazz) {
+    Map<String, List<Field>> indexes = new LinkedHashMap<>();
+    for (Field field : SchemaRegistry.getNotIgnoreFields(clazz)) {
+      Index index = field.getAnnotation(Index.class);
+      if (index == null) {
+        continue;
+      }
+      String name = TextUtils.isEmpty(index.name()) ? field.getName() : index.name();
+      List<Field> columns = indexes.get(name);
+      if (columns == null) {
+        columns = new ArrayList<>();
+        indexes.put(name, columns);
+      }
+      columns.add(field);
+    }
+    Comparator<Field> comparator = new Comparator<Field>() {
+      @Override public int compare(Field o1, Field o2) {
+        int order1 = o1.getAnnotation(Index.class).order();
+        int order2 = o2.getAnnotation(Index.class).order();
+        return order1 < order2 ? -1 : (order1 == order2 ? 0 : 1);
+      }
+    };
+    for (List<Field> columns : indexes.values()) {
+      Collections.sort(columns, comparator);
+    }
+    return indexes;
+  }
+
   /**
    * 根据字段名获取字段类型
    */
@@ -336,7 +435,7 @@ final class SqlUtil {
       return "BOOLEAN";
     } else if (fieldtype == java.util.Date.class || fieldtype == java.sql.Date.class) {
       return "DATA";
-    } else if (fieldtype == byte.class || fieldtype == Byte.class) {
+    } else if (fieldtype == byte.class || fieldtype == Byte.class || fieldtype == byte[].class) {
       return "BLOB";
     } else if (fieldtype == Map.class || fieldtype == List.class) {
       return "TEXT";
@@ -346,7 +445,7 @@ final class SqlUtil {
   }
 
   /**
-   * URL编码字符串
+   * URL编码字符串，61版本以前的数据库中的字符串都经过了编码，只在处理旧数据时使用
    *
    * @param str 原始字符串
    * @return 编码后的字符串
@@ -356,23 +455,23 @@ final class SqlUtil {
     return URLEncoder.encode(str);
   }
 
+  /**
+   * 解码61版本以前保存的字符串，只在数据库升级时使用
+   */
+  static String decodeStr(String str) {
+    try {
+      return URLDecoder.decode(str);
+    } catch (IllegalArgumentException e) {
+      // 不是合法的编码，保持原样
+      return str;
+    }
+  }
+
   /**
    * 获取主键字段名
    */
   static String getPrimaryName(Class<? extends DbEntity> clazz) {
-    List<Field> fields = CommonUtil.getAllFields(clazz);
-    String column;
-    if (fields != null && !fields.isEmpty()) {
-
-      for (Field field : fields) {
-        field.setAccessible(true);
-        if (isPrimary(field)) {
-          column = field.getName();
-          return column;
-        }
-      }
-    }
-    return null;
+    return SchemaRegistry.getPrimaryName(clazz);
   }
 
   /**
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import com.arialyy.aria.util.ALog;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译语句缓存，key为（表名，操作，字段集合）。
+ * 任务运行时会频繁更新DownloadEntity、ThreadRecord、TaskRecord，每次都通过{@link SQLiteDatabase#update(String,
+ * ContentValues, String, String[])}拼接sql，缓存后只需要重新绑定参数。
+ * {@link SQLiteStatement}不是线程安全的，只能在{@link DelegateUpdate}的同步方法中使用。
+ */
+final class StatementCache {
+  private static final String TAG = "StatementCache";
+  private static final int MAX_SIZE = 32;
+
+  private SQLiteDatabase mDb;
+  private final LinkedHashMap<String, SQLiteStatement> mStatements =
+      new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+          if (size() > MAX_SIZE) {
+            eldest.getValue().close();
+            return true;
+          }
+          return false;
+        }
+      };
+
+  /**
+   * 更新rowid对应的记录
+   *
+   * @return 受影响的行数，失败返回-1
+   */
+  int update(SQLiteDatabase db, String table, ContentValues values, long rowId) {
+    List<String> columns = getColumns(values);
+    String key = table + "|UPDATE|" + columns;
+    SQLiteStatement statement = getStatement(db, key);
+    if (statement == null) {
+      StringBuilder sb = new StringBuilder("UPDATE ").append(table).append(" SET ");
+      for (int i = 0, size = columns.size(); i < size; i++) {
+        sb.append(i == 0 ? "" : ",").append(columns.get(i)).append("=?");
+      }
+      sb.append(" WHERE rowid=?");
+      statement = putStatement(db, key, sb.toString());
+    }
+    bindValues(statement, columns, values);
+    statement.bindLong(columns.size() + 1, rowId);
+    try {
+      return statement.executeUpdateDelete();
+    } catch (SQLException e) {
+      ALog.e(TAG, String.format("更新数据失败，表：%s，%s", table, e.getMessage()));
+      return -1;
+    }
+  }
+
+  /**
+   * 插入记录
+   *
+   * @return 新记录的rowid，失败返回-1
+   */
+  long insert(SQLiteDatabase db, String table, ContentValues values) {
+    List<String> columns = getColumns(values);
+    String key = table + "|INSERT|" + columns;
+    SQLiteStatement statement = getStatement(db, key);
+    if (statement == null) {
+      StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append(" (");
+      StringBuilder params = new StringBuilder();
+      for (int i = 0, size = columns.size(); i < size; i++) {
+        sb.append(i == 0 ? "" : ",").append(columns.get(i));
+        params.append(i == 0 ? "?" : ",?");
+      }
+      sb.append(") VALUES (").append(params).append(")");
+      statement = putStatement(db, key, sb.toString());
+    }
+    bindValues(statement, columns, values);
+    try {
+      return statement.executeInsert();
+    } catch (SQLException e) {
+      ALog.e(TAG, String.format("插入数据失败，表：%s，%s", table, e.getMessage()));
+      return -1;
+    }
+  }
+
+  /**
+   * 关闭所有缓存的语句
+   */
+  void clear() {
+    Iterator<SQLiteStatement> it = mStatements.values().iterator();
+    while (it.hasNext()) {
+      it.next().close();
+    }
+    mStatements.clear();
+  }
+
+  private SQLiteStatement getStatement(SQLiteDatabase db, String key) {
+    if (db != mDb) {
+      // 数据库重新打开后，旧的语句不可用
+      clear();
+      mDb = db;
+    }
+    return mStatements.get(key);
+  }
+
+  private SQLiteStatement putStatement(SQLiteDatabase db, String key, String sql) {
+    SQLiteStatement statement = db.compileStatement(sql);
+    mStatements.put(key, statement);
+    return statement;
+  }
+
+  /**
+   * 字段按名称排序，保证同一个字段集合对应同一条语句
+   */
+  private List<String> getColumns(ContentValues values) {
+    List<String> columns = new ArrayList<>(values.keySet());
+    Collections.sort(columns);
+    return columns;
+  }
+
+  private void bindValues(SQLiteStatement statement, List<String> columns, ContentValues values) {
+    statement.clearBindings();
+    for (int i = 0, size = columns.size(); i < size; i++) {
+      Object value = values.get(columns.get(i));
+      int index = i + 1;
+      if (value == null) {
+        statement.bindNull(index);
+      } else if (value instanceof Boolean) {
+        statement.bindLong(index, (Boolean) value ? 1 : 0);
+      } else if (value instanceof byte[]) {
+        statement.bindBlob(index, (byte[]) value);
+      } else if (value instanceof Float || value instanceof Double) {
+        statement.bindDouble(index, ((Number) value).doubleValue());
+      } else if (value instanceof Number) {
+        statement.bindLong(index, ((Number) value).longValue());
+      } else {
+        statement.bindString(index, value.toString());
+      }
+    }
+  }
+}
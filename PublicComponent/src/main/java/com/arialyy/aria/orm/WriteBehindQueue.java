@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import com.arialyy.aria.core.AriaConfig;
+import com.arialyy.aria.util.ALog;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 延迟写入队列，用于任务进度这类频繁的更新。
+ * 1、{@link #offer(DbEntity)}只把记录标记为脏数据，同一条记录只保留最新的值；
+ * 2、写入线程每隔{@link #FLUSH_INTERVAL}将脏数据合并到一个事务中批量写入；
+ * 3、任务进入终止状态时调用{@link #flush(DbEntity)}同步写入，应用进入后台、内存不足、进程退出时也会写入；
+ * 4、任务删除时调用{@link #discard(DbEntity)}丢弃记录的脏数据，之后线程再标记该记录也不会写入。
+ */
+public final class WriteBehindQueue {
+  private static final String TAG = "WriteBehindQueue";
+  private static final long FLUSH_INTERVAL = 1000;
+  private static volatile WriteBehindQueue INSTANCE;
+
+  /**
+   * 脏数据，key为"类名_rowID"
+   */
+  private final Map<String, DbEntity> mDirty = new ConcurrentHashMap<>();
+  private final Object mFlushLock = new Object();
+  private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+  private final ScheduledExecutorService mWriter;
+  private final Runnable mFlushTask = new Runnable() {
+    @Override public void run() {
+      isScheduled.set(false);
+      flush();
+    }
+  };
+
+  public static WriteBehindQueue getInstance() {
+    if (INSTANCE == null) {
+      synchronized (WriteBehindQueue.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new WriteBehindQueue();
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  private WriteBehindQueue() {
+    mWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Aria-WriteBehind");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override public void run() {
+        flush();
+      }
+    }));
+    AriaConfig config = AriaConfig.getInstance();
+    Context context = config == null ? null : config.getAPP();
+    if (context != null) {
+      context.registerComponentCallbacks(new ComponentCallbacks2() {
+        @Override public void onTrimMemory(int level) {
+          // 应用进入后台后随时可能被杀死
+          if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            flushAsync();
+          }
+        }
+
+        @Override public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override public void onLowMemory() {
+          flushAsync();
+        }
+      });
+    }
+  }
+
+  /**
+   * 标记需要更新的记录，记录会在写入线程中批量写入。没有保存过的记录直接更新
+   */
+  public void offer(DbEntity entity) {
+    if (entity.isDiscarded) {
+      return;
+    }
+    if (entity.rowID == -1) {
+      entity.update();
+      return;
+    }
+    mDirty.put(getKey(entity), entity);
+    if (isScheduled.compareAndSet(false, true)) {
+      mWriter.schedule(mFlushTask, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 丢弃记录的脏数据，之后的{@link #offer(DbEntity)}将被忽略
+   */
+  public void discard(DbEntity entity) {
+    entity.isDiscarded = true;
+    if (entity.rowID != -1) {
+      mDirty.remove(getKey(entity), entity);
+    }
+  }
+
+  /**
+   * 同步写入所有脏数据和指定的记录
+   */
+  public void flush(DbEntity entity) {
+    synchronized (mFlushLock) {
+      flushLocked();
+      entity.update();
+    }
+  }
+
+  /**
+   * 同步写入所有脏数据
+   */
+  public void flush() {
+    synchronized (mFlushLock) {
+      flushLocked();
+    }
+  }
+
+  private void flushAsync() {
+    if (!mDirty.isEmpty()) {
+      mWriter.execute(mFlushTask);
+    }
+  }
+
+  private void flushLocked() {
+    if (mDirty.isEmpty()) {
+      return;
+    }
+    List<DbEntity> entities = new ArrayList<>(mDirty.size());
+    Iterator<Map.Entry<String, DbEntity>> it = mDirty.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, DbEntity> entry = it.next();
+      // 只移除取出的值，写入期间重新标记的记录留到下一次
+      if (mDirty.remove(entry.getKey(), entry.getValue()) && !entry.getValue().isDiscarded) {
+        entities.add(entry.getValue());
+      }
+    }
+    if (entities.isEmpty()) {
+      return;
+    }
+    try {
+      DelegateWrapper.getInstance().updateManyData(entities);
+    } catch (Exception e) {
+      ALog.e(TAG, String.format("批量写入失败，%s", e.getMessage()));
+    }
+  }
+
+  private String getKey(DbEntity entity) {
+    return entity.getClass().getName().concat("_").concat(String.valueOf(entity.rowID));
+  }
+}
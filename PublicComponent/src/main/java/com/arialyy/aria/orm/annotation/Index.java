@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 数据库索引，用于经常作为查询条件的字段。
+ * 1、不设置{@link #name()}时，为该字段创建单列索引；
+ * 2、同一个表中{@link #name()}相同的字段组成复合索引，字段顺序由{@link #order()}决定。
+ */
+@Target(ElementType.FIELD) @Retention(RetentionPolicy.RUNTIME)
+public @interface Index {
+
+  /**
+   * 索引名，为空时使用字段名
+   */
+  String name() default "";
+
+  /**
+   * 字段在复合索引中的位置，从小到大排列
+   */
+  int order() default 0;
+
+  /**
+   * 是否是唯一索引，复合索引中任意一个字段设置为{@code true}即可
+   */
+  boolean unique() default false;
+}
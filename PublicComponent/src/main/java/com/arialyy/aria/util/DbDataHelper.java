@@ -15,17 +15,23 @@
  */
 package com.arialyy.aria.util;
 
+import android.text.TextUtils;
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
+import com.arialyy.aria.core.ThreadRecordCodec;
+import com.arialyy.aria.core.common.AbsEntity;
 import com.arialyy.aria.core.download.DGEntityWrapper;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.DownloadGroupEntity;
+import com.arialyy.aria.core.inf.IEntity;
 import com.arialyy.aria.core.wrapper.ITaskWrapper;
 import com.arialyy.aria.orm.DbEntity;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 数据库帮助类
@@ -44,9 +50,16 @@ public class DbDataHelper {
         DbEntity.findFirst(TaskRecord.class, "filePath=? AND taskType=?", filePath,
             String.valueOf(taskType));
     if (taskRecord != null) {
-      taskRecord.threadRecords =
-          DbEntity.findDatas(ThreadRecord.class, "taskKey=? AND threadType=?", filePath,
-              String.valueOf(taskType));
+      // 优先使用紧凑格式的线程记录，解码失败时使用ThreadRecord表中的记录
+      List<ThreadRecord> records = ThreadRecordCodec.decode(taskRecord);
+      if (records == null) {
+        if (taskRecord.threadBlob != null) {
+          ThreadRecordCodec.detach(taskRecord);
+        }
+        records = DbEntity.findDatas(ThreadRecord.class, "taskKey=? AND threadType=?", filePath,
+            String.valueOf(taskType));
+      }
+      taskRecord.threadRecords = records;
     }
 
     return taskRecord;
@@ -94,6 +107,40 @@ public class DbDataHelper {
     return wrapper == null || wrapper.size() == 0 ? null : wrapper.get(0).groupEntity;
   }
 
+  /**
+   * 批量加载任务组的子任务，已经加载过子任务的任务组会被忽略。
+   * 从数据库直接读取的任务组不会加载子任务，需要遍历多个任务组的子任务时，先调用该方法一次加载，
+   * 避免每个任务组单独查询一次
+   */
+  public static void fetchSubEntities(List<DownloadGroupEntity> groups) {
+    if (groups == null || groups.isEmpty()) {
+      return;
+    }
+    Map<String, List<DownloadEntity>> subMap = new HashMap<>();
+    for (DownloadGroupEntity group : groups) {
+      if (!group.isSubEntitiesLoaded() && !TextUtils.isEmpty(group.getGroupHash())) {
+        subMap.put(group.getGroupHash(), new ArrayList<DownloadEntity>());
+      }
+    }
+    if (subMap.isEmpty()) {
+      return;
+    }
+    List<DownloadEntity> subs =
+        DbEntity.findDatasIn(DownloadEntity.class, "groupHash", new ArrayList<>(subMap.keySet()));
+    for (DownloadEntity sub : subs) {
+      List<DownloadEntity> list = subMap.get(sub.getGroupHash());
+      if (list != null) {
+        list.add(sub);
+      }
+    }
+    for (DownloadGroupEntity group : groups) {
+      List<DownloadEntity> list = subMap.get(group.getGroupHash());
+      if (list != null && !group.isSubEntitiesLoaded()) {
+        group.setSubEntities(list);
+      }
+    }
+  }
+
   /**
    * 创建HTTP子任务实体
    */
@@ -152,4 +199,25 @@ public class DbDataHelper {
     }
     return list;
   }
+
+  /**
+   * 批量修改任务状态，只修改状态字段，不会读取和写入整个实体
+   *
+   * @param clazz 任务实体类型
+   * @param taskIds 任务id
+   * @param state 任务状态{@link IEntity}
+   */
+  public static void updateTaskState(Class<? extends AbsEntity> clazz, List<Long> taskIds,
+      int state) {
+    if (taskIds == null || taskIds.isEmpty()) {
+      return;
+    }
+    String table = CommonUtil.getClassName(clazz);
+    for (int start = 0, size = taskIds.size(); start < size;
+        start += DbEntity.IN_QUERY_BATCH_SIZE) {
+      int end = Math.min(start + DbEntity.IN_QUERY_BATCH_SIZE, size);
+      DbEntity.exeSql(String.format("UPDATE %s SET state=%s WHERE rowid IN (%s)", table, state,
+          TextUtils.join(",", taskIds.subList(start, end))));
+    }
+  }
 }
@@ -16,6 +16,7 @@
 package com.arialyy.aria.util;
 
 import android.text.TextUtils;
+import com.arialyy.aria.core.ProgressJournal;
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
 import com.arialyy.aria.core.common.AbsEntity;
@@ -86,6 +87,7 @@ public class DeleteDGRecord implements IDeleteRecord {
         if (record.taskRecord.isBlock) {
           removeBlockFile(record.taskRecord);
         }
+        ProgressJournal.delete(record.taskRecord.filePath);
         DbEntity.deleteData(ThreadRecord.class, "taskKey=?", record.taskRecord.filePath);
         record.taskRecord.deleteData();
       }
@@ -16,6 +16,7 @@
 package com.arialyy.aria.util;
 
 import android.text.TextUtils;
+import com.arialyy.aria.core.ProgressJournal;
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
 import com.arialyy.aria.core.common.AbsEntity;
@@ -99,6 +100,7 @@ public class DeleteDRecord implements IDeleteRecord {
     }
 
     // 删除下载的线程记录和任务记录
+    ProgressJournal.delete(filePath);
     DbEntity.deleteData(ThreadRecord.class, "taskKey=? AND threadType=?", filePath,
         String.valueOf(entity.getTaskType()));
     DbEntity.deleteData(TaskRecord.class, "filePath=? AND taskType=?", filePath,
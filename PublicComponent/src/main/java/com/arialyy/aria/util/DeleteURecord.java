@@ -16,6 +16,7 @@
 package com.arialyy.aria.util;
 
 import android.text.TextUtils;
+import com.arialyy.aria.core.ProgressJournal;
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
 import com.arialyy.aria.core.common.AbsEntity;
@@ -79,6 +80,7 @@ public class DeleteURecord implements IDeleteRecord {
     UploadEntity entity = (UploadEntity) absEntity;
 
     // 删除下载的线程记录和任务记录
+    ProgressJournal.delete(entity.getFilePath());
     DbEntity.deleteData(ThreadRecord.class, "taskKey=? AND threadType=?", entity.getFilePath(),
         String.valueOf(entity.getTaskType()));
     DbEntity.deleteData(TaskRecord.class, "filePath=? AND taskType=?", entity.getFilePath(),
@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -375,6 +376,90 @@ public class FileUtil {
     return false;
   }
 
+  /**
+   * 从目标文件的指定位置开始追加文件，目标文件中该位置之后的数据会被截断
+   *
+   * @param targetPath 目标文件
+   * @param offset 开始追加的位置，一般为目标文件中已有的有效数据长度
+   * @param subPaths 需要追加的文件路径
+   * @return 追加后目标文件的长度，追加失败返回-1
+   */
+  public static long appendFile(String targetPath, long offset, List<String> subPaths) {
+    File file = new File(targetPath);
+    RandomAccessFile raf = null;
+    FileChannel foc = null;
+    try {
+      if (!file.exists()) {
+        FileUtil.createFile(file);
+      }
+      if (file.length() < offset) {
+        ALog.e(TAG, String.format("追加文件失败，文件【%s】长度小于追加位置【%s】", targetPath, offset));
+        return -1;
+      }
+
+      raf = new RandomAccessFile(file, "rw");
+      foc = raf.getChannel();
+      foc.truncate(offset);
+      long fileLen = offset;
+      for (String subPath : subPaths) {
+        File f = new File(subPath);
+        if (!f.exists()) {
+          ALog.d(TAG, String.format("追加文件失败，文件【%s】不存在", subPath));
+          return -1;
+        }
+        FileInputStream fis = new FileInputStream(f);
+        try {
+          FileChannel fic = fis.getChannel();
+          long len = f.length();
+          long pos = 0;
+          while (pos < len) {
+            long num = foc.transferFrom(fic, fileLen + pos, len - pos);
+            if (num <= 0) {
+              break;
+            }
+            pos += num;
+          }
+          fileLen += pos;
+        } finally {
+          fis.close();
+        }
+      }
+      // 数据落盘后调用方才会保存合并位置
+      foc.force(false);
+      return fileLen;
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      try {
+        if (foc != null) {
+          foc.close();
+        }
+        if (raf != null) {
+          raf.close();
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return -1;
+  }
+  /**
+   * 从文件的指定位置读取数据
+   *
+   * @param offset 读取的位置
+   * @return 读取的字节数，文件已结束返回-1
+   */
+  public static int readFile(File file, long offset, byte[] buffer, int len) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      raf.seek(offset);
+      return raf.read(buffer, 0, len);
+    } finally {
+      raf.close();
+    }
+  }
+
+
   /**
    * 合并sftp的分块文件，sftp的分块可能会超出规定的长度，因此需要使用本方法
    *
@@ -16,6 +16,7 @@
 package com.arialyy.aria.util;
 
 import android.text.TextUtils;
+import com.arialyy.aria.core.ProgressJournal;
 import com.arialyy.aria.core.TaskRecord;
 import com.arialyy.aria.core.ThreadRecord;
 import com.arialyy.aria.core.common.AbsNormalEntity;
@@ -117,6 +118,8 @@ public class RecordUtil {
       ALog.w(TAG, "修改任务记录失败，新文件路径和旧文件路径一致");
       return;
     }
+    // 进度日志合并后再读取记录，避免日志合并时把旧路径写回数据库
+    ProgressJournal.close(oldPath);
     TaskRecord record = DbDataHelper.getTaskRecord(oldPath, taskType);
     if (record == null) {
       if (new File(oldPath).exists()) {
@@ -133,7 +136,7 @@ public class RecordUtil {
 
     record.filePath = newPath;
     record.update();
-    // 修改线程记录
+    // 修改线程记录，紧凑格式的线程记录不保存taskKey，不需要更新
     if (record.threadRecords != null && !record.threadRecords.isEmpty()) {
       for (ThreadRecord tr : record.threadRecords) {
         tr.taskKey = newPath;
@@ -143,7 +146,9 @@ public class RecordUtil {
               new File(String.format(IRecordHandler.SUB_PATH, newPath, tr.threadId)));
         }
       }
-      DbEntity.updateManyData(record.threadRecords);
+      if (record.threadBlob == null) {
+        DbEntity.updateManyData(record.threadRecords);
+      }
     }
   }
 
@@ -0,0 +1,96 @@
+# coding=utf-8
+#!/usr/bin/python3
+
+"""
+进度更新的主机端基准测试，和 StatementCacheBenchmark 使用相同的表结构和更新方式，
+用于在没有设备时对比日志模式和预编译语句的影响，设备上的结果以 StatementCacheBenchmark 为准。
+
+  python3 py/db_bench.py [数据库目录]
+
+compile：每次更新都重新编译sql，相当于没有任何语句缓存
+reuse：编译一次后只重新绑定参数，相当于 StatementCache
+每种配置运行 REPEAT 次，取中位数
+"""
+
+import os
+import sqlite3
+import sys
+import tempfile
+import time
+from statistics import median
+
+TABLE = "BenchThreadRecord"
+ROW_NUM = 64
+SINGLE_NUM = 2000
+BATCH_ROUND = 200
+WARM_UP = 200
+REPEAT = 5
+SQL = "UPDATE %s SET isComplete=?,startLocation=? WHERE rowid=?" % TABLE
+
+
+def open_db(path, wal, reuse):
+    for suffix in ("", "-journal", "-wal", "-shm"):
+        if os.path.exists(path + suffix):
+            os.remove(path + suffix)
+    # cached_statements 为0时每次执行都重新编译语句，否则按sql复用已编译的语句
+    db = sqlite3.connect(path, isolation_level=None, cached_statements=16 if reuse else 0)
+    db.execute("PRAGMA journal_mode=%s" % ("WAL" if wal else "DELETE"))
+    db.execute("PRAGMA synchronous=%s" % ("NORMAL" if wal else "FULL"))
+    db.execute("CREATE TABLE %s (taskKey TEXT, threadId INTEGER, startLocation INTEGER, "
+               "endLocation INTEGER, blockLen INTEGER, isComplete INTEGER)" % TABLE)
+    db.execute("BEGIN")
+    for i in range(ROW_NUM):
+        db.execute("INSERT INTO %s VALUES (?,?,?,?,?,?)" % TABLE,
+                   ("/sdcard/Download/bench.apk", i, 0, 1 << 20, 1 << 20, 0))
+    db.execute("COMMIT")
+    return db
+
+
+def make_update(db):
+    return lambda row_id, progress: db.execute(SQL, (0, progress * 1024, row_id))
+
+
+def run_single(update):
+    for i in range(WARM_UP):
+        update(i % ROW_NUM + 1, i)
+    start = time.perf_counter_ns()
+    for i in range(SINGLE_NUM):
+        update(i % ROW_NUM + 1, i)
+    return time.perf_counter_ns() - start
+
+
+def run_batch(db, update):
+    start = 0
+    for r in range(-WARM_UP // ROW_NUM, BATCH_ROUND):
+        if r == 0:
+            start = time.perf_counter_ns()
+        db.execute("BEGIN")
+        for i in range(ROW_NUM):
+            update(i + 1, r)
+        db.execute("COMMIT")
+    return time.perf_counter_ns() - start
+
+
+def main():
+    path = os.path.join(sys.argv[1] if len(sys.argv) > 1 else tempfile.gettempdir(),
+                        "aria_bench.db")
+    print("sqlite %s" % sqlite3.sqlite_version)
+    print("%-22s %12s %12s" % ("config", "single(us)", "batch(us)"))
+    for wal in (False, True):
+        for reuse in (False, True):
+            singles = []
+            batches = []
+            for _ in range(REPEAT):
+                db = open_db(path, wal, reuse)
+                update = make_update(db)
+                singles.append(run_single(update))
+                batches.append(run_batch(db, update))
+                db.close()
+            print("%-22s %12.1f %12.1f" % (
+                ("WAL/NORMAL" if wal else "DELETE/FULL") + (" + reuse" if reuse else " + compile"),
+                median(singles) / 1000 / SINGLE_NUM, median(batches) / 1000 / BATCH_ROUND))
+    print("single: 每次更新一条记录的耗时，batch: 每个事务更新%s条记录的耗时" % ROW_NUM)
+
+
+if __name__ == "__main__":
+    main()